@@ -24,6 +24,10 @@
 package org.projectforge.access;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.Validate;
 import org.projectforge.common.StringHelper;
@@ -56,6 +60,24 @@ public class AccessChecker
 
   private final UserRights userRights = UserRights.initialize(this);
 
+  private static final int MAX_USER_TASK_PERMISSIONS_SIZE = 200;
+
+  /**
+   * Compiled task permissions per user (key is the user id). The permissions of the least recently used user are evicted if more than
+   * MAX_USER_TASK_PERMISSIONS_SIZE users are cached (the permissions of an evicted user are compiled again on his next access). The task
+   * masks of one user are bounded by the number of tasks.
+   */
+  private final Map<Integer, UserTaskPermissions> userTaskPermissionsMap = Collections
+      .synchronizedMap(new LinkedHashMap<Integer, UserTaskPermissions>(16, 0.75f, true) {
+        private static final long serialVersionUID = 4620624391427431385L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, UserTaskPermissions> eldest)
+        {
+          return size() > MAX_USER_TASK_PERMISSIONS_SIZE;
+        }
+      });
+
   /**
    * Tests for every group the user is assigned to, if the given permission is given.
    * @return true, if the user owns the required permission, otherwise false.
@@ -94,10 +116,9 @@ public class AccessChecker
       }
       return false;
     }
-    for (final Integer groupId : groupIds) {
-      if (node.hasPermission(groupId, accessType, operationType) == true) {
-        return true;
-      }
+    final int permissionMask = getPermissionMask(user.getId(), node, groupIds);
+    if ((permissionMask & TaskNode.getPermissionBit(accessType, operationType)) != 0) {
+      return true;
     }
     if (throwException == true) {
       throw new AccessException(taskId, accessType, operationType);
@@ -105,6 +126,35 @@ public class AccessChecker
     return false;
   }
 
+  /**
+   * The permission mask of the user for a task is the union of the permission masks of all groups of the user. The masks are cached per
+   * user and task and are invalidated if the TaskTree (group task access entries or task hierarchy) or the UserGroupCache (group
+   * memberships) are modified.
+   * @see TaskNode#getPermissionMask(Integer)
+   */
+  private int getPermissionMask(final Integer userId, final TaskNode node, final Collection<Integer> groupIds)
+  {
+    final long taskTreeVersion = taskTree.getPermissionVersion();
+    final long userGroupCacheVersion = userGroupCache.getRefreshCounter();
+    UserTaskPermissions permissions = userTaskPermissionsMap.get(userId);
+    if (permissions == null
+        || permissions.taskTreeVersion != taskTreeVersion
+        || permissions.userGroupCacheVersion != userGroupCacheVersion) {
+      permissions = new UserTaskPermissions(taskTreeVersion, userGroupCacheVersion);
+      userTaskPermissionsMap.put(userId, permissions);
+    }
+    final Integer mask = permissions.masks.get(node.getId());
+    if (mask != null) {
+      return mask;
+    }
+    int value = 0;
+    for (final Integer groupId : groupIds) {
+      value |= node.getPermissionMask(groupId);
+    }
+    permissions.masks.put(node.getId(), value);
+    return value;
+  }
+
   public void setTaskTree(final TaskTree taskTree)
   {
     this.taskTree = taskTree;
@@ -790,4 +840,20 @@ public class AccessChecker
     }
     return false;
   }
+
+  private static class UserTaskPermissions
+  {
+    private final long taskTreeVersion;
+
+    private final long userGroupCacheVersion;
+
+    /** The key is the task id. */
+    private final Map<Integer, Integer> masks = new ConcurrentHashMap<Integer, Integer>();
+
+    private UserTaskPermissions(final long taskTreeVersion, final long userGroupCacheVersion)
+    {
+      this.taskTreeVersion = taskTreeVersion;
+      this.userGroupCacheVersion = userGroupCacheVersion;
+    }
+  }
 }
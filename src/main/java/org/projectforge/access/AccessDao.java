@@ -304,7 +304,8 @@ public class AccessDao extends BaseDao<GroupTaskAccessDO>
   protected void afterSaveOrModify(final GroupTaskAccessDO obj)
   {
     super.afterSaveOrModify(obj);
-    taskTree.setGroupTaskAccess(obj);
+    // Reread it from the database to get the current version (the last update time stamp is only set on the data base object):
+    taskTree.setGroupTaskAccess(internalGetById(obj.getId()));
   }
 
   @Override
@@ -371,7 +372,7 @@ public class AccessDao extends BaseDao<GroupTaskAccessDO>
   @Override
   protected void afterUndelete(final GroupTaskAccessDO obj)
   {
-    taskTree.setGroupTaskAccess(obj);
+    taskTree.setGroupTaskAccess(internalGetById(obj.getId()));
   }
 
   @Override
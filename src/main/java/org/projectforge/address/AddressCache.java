@@ -0,0 +1,382 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.address;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.log4j.Logger;
+import org.projectforge.common.AbstractCache;
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.NumberHelper;
+import org.projectforge.common.StringHelper;
+import org.springframework.orm.hibernate3.HibernateTemplate;
+
+/**
+ * Caches the addresses (not deleted) with an index of their phone numbers (business, mobile, fax, private and private mobile phone) and
+ * their birthdays. The keys of the phone number index are the reversed digits of the normalized numbers, so the addresses with numbers
+ * ending with a given number (e. g. the caller id of an incoming call without area code) are found by a prefix search of the sorted index.
+ * The birthdays are bucketed by month and day of month. The address ids of the favorite cards of the users are cached as well.<br/>
+ * The cache is updated by {@link AddressDao} after the commit of every modification of an address and by {@link PersonalAddressDao} after
+ * the commit of every modification of the personal address book.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class AddressCache extends AbstractCache
+{
+  private static Logger log = Logger.getLogger(AddressCache.class);
+
+  private HibernateTemplate hibernateTemplate;
+
+  /** The key is the address id. */
+  private volatile Map<Integer, AddressDO> addressMap;
+
+  /** The key is the reversed phone number, the value the ids of the addresses with this phone number (copy on write). */
+  private volatile ConcurrentSkipListMap<String, Integer[]> phoneNumberIndex;
+
+  /** The addresses by day of birthday, the index is month * 31 + day of month - 1 (copy on write). */
+  private volatile AtomicReferenceArray<AddressDO[]> birthdays;
+
+  /**
+   * Modifications during a refresh (the key is the address id, the value the modified address or null if removed). They may be missed by
+   * the data base query of the refresh and are applied to the new maps after the swap. Null, if no refresh is in progress.
+   */
+  private Map<Integer, AddressDO> modificationsDuringRefresh;
+
+  /**
+   * Lock of the modifications and the swap of the maps. The cache itself is locked during the whole refresh (including the data base query)
+   * and the modifications shouldn't wait for it.
+   */
+  private final Object lock = new Object();
+
+  /** The key is the user id, the value the ids of the addresses marked as favorite card in the personal address book of the user. */
+  private final ConcurrentMap<Integer, Set<Integer>> favoritesByUser = new ConcurrentHashMap<Integer, Set<Integer>>();
+
+  public AddressDO getAddress(final Integer id)
+  {
+    if (id == null) {
+      return null;
+    }
+    checkRefresh();
+    return addressMap.get(id);
+  }
+
+  /**
+   * @param number The phone number or the last digits of the phone number.
+   * @return All addresses with a phone number ending with the given number. Please note: the addresses are cached objects which must not
+   *         be modified.
+   */
+  public List<AddressDO> getAddressesByPhoneNumber(final String number)
+  {
+    final String digits = NumberHelper.extractPhonenumber(number);
+    if (StringUtils.isEmpty(digits) == true) {
+      return new ArrayList<AddressDO>();
+    }
+    checkRefresh();
+    final String key = StringUtils.reverse(digits);
+    final Set<Integer> ids = new LinkedHashSet<Integer>();
+    for (final Integer[] entry : phoneNumberIndex.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+      ids.addAll(Arrays.asList(entry));
+    }
+    final List<AddressDO> result = new ArrayList<AddressDO>(ids.size());
+    for (final Integer id : ids) {
+      final AddressDO address = addressMap.get(id);
+      if (address != null) {
+        result.add(address);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The from and to dates are given as month and day of month (the year is ignored). If from month is greater than to month, the period
+   * includes the year change (e. g. NOV - FEB).
+   * @return All addresses with birthdays in the given period ordered by month and day of month. Only the buckets of the days of the period
+   *         are visited. Please note: the addresses are cached objects which must not be modified.
+   * @see DateHelper#dateOfYearBetween(int, int, int, int, int, int)
+   */
+  public List<AddressDO> getBirthdayAddresses(final int fromMonth, final int fromDayOfMonth, final int toMonth, final int toDayOfMonth)
+  {
+    checkRefresh();
+    final List<AddressDO> result = new ArrayList<AddressDO>();
+    int month = fromMonth;
+    while (true) {
+      final int firstDay = month == fromMonth ? fromDayOfMonth : 1;
+      final int lastDay = month == toMonth ? toDayOfMonth : 31;
+      for (int day = firstDay; day <= lastDay; day++) {
+        final AddressDO[] addresses = birthdays.get(getBirthdayIndex(month, day));
+        if (addresses != null) {
+          result.addAll(Arrays.asList(addresses));
+        }
+      }
+      if (month == toMonth) {
+        break;
+      }
+      month = (month + 1) % 12;
+    }
+    return result;
+  }
+
+  /**
+   * @param userId
+   * @return The ids of the addresses marked as favorite card in the personal address book of the given user.
+   */
+  @SuppressWarnings("unchecked")
+  public Set<Integer> getFavorites(final Integer userId)
+  {
+    Validate.notNull(userId);
+    Set<Integer> favorites = favoritesByUser.get(userId);
+    if (favorites == null) {
+      final List<Integer> list = hibernateTemplate.find(
+          "select t.address.id from PersonalAddressDO t where t.owner.id=? and t.favoriteCard=true and t.address.deleted=false", userId);
+      favorites = Collections.unmodifiableSet(new HashSet<Integer>(list));
+      favoritesByUser.put(userId, favorites);
+    }
+    return favorites;
+  }
+
+  /**
+   * Forces the reload of the favorites of the given user.
+   * @param userId
+   */
+  public void setFavoritesExpired(final Integer userId)
+  {
+    if (userId != null) {
+      favoritesByUser.remove(userId);
+    }
+  }
+
+  /**
+   * Updates the cached address and its phone numbers (or removes it, if the address is deleted).
+   * @param address
+   */
+  void updateAddress(final AddressDO address)
+  {
+    if (address == null || address.getId() == null) {
+      return;
+    }
+    // Copy the object, the given object may be modified afterwards by the caller.
+    final AddressDO copy = new AddressDO();
+    copy.copyValuesFrom(address);
+    copy.setCreated(address.getCreated());
+    copy.setLastUpdate(address.getLastUpdate());
+    copy.setDeleted(address.isDeleted());
+    synchronized (lock) {
+      if (modificationsDuringRefresh != null) {
+        modificationsDuringRefresh.put(copy.getId(), copy);
+      }
+      if (addressMap == null) {
+        // Not yet loaded, nothing to do.
+        return;
+      }
+      update(copy);
+    }
+  }
+
+  private void update(final AddressDO copy)
+  {
+    final AddressDO oldAddress = remove(copy.getId());
+    if (copy.isDeleted() == true) {
+      if (oldAddress != null) {
+        favoritesByUser.clear();
+      }
+      return;
+    }
+    addressMap.put(copy.getId(), copy);
+    addPhoneNumbers(phoneNumberIndex, copy);
+    addBirthday(birthdays, copy);
+    if (oldAddress == null) {
+      // Undeleted or new address, the favorites contain only addresses which aren't deleted.
+      favoritesByUser.clear();
+    }
+  }
+
+  void removeAddress(final Integer id)
+  {
+    if (id == null) {
+      return;
+    }
+    synchronized (lock) {
+      if (modificationsDuringRefresh != null) {
+        modificationsDuringRefresh.put(id, null);
+      }
+      if (addressMap == null) {
+        return;
+      }
+      if (remove(id) != null) {
+        favoritesByUser.clear();
+      }
+    }
+  }
+
+  /**
+   * @return The removed address or null if not cached.
+   */
+  private AddressDO remove(final Integer id)
+  {
+    final AddressDO oldAddress = addressMap.remove(id);
+    if (oldAddress == null) {
+      return null;
+    }
+    final int birthdayIndex = getBirthdayIndex(oldAddress);
+    if (birthdayIndex >= 0) {
+      final AddressDO[] addresses = (AddressDO[]) ArrayUtils.removeElement(birthdays.get(birthdayIndex), oldAddress);
+      birthdays.set(birthdayIndex, addresses.length > 0 ? addresses : null);
+    }
+    for (final String key : getPhoneNumberKeys(oldAddress)) {
+      final Integer[] ids = phoneNumberIndex.get(key);
+      if (ids == null) {
+        continue;
+      }
+      final Integer[] newIds = (Integer[]) ArrayUtils.removeElement(ids, id);
+      if (newIds.length == 0) {
+        phoneNumberIndex.remove(key);
+      } else {
+        phoneNumberIndex.put(key, newIds);
+      }
+    }
+    return oldAddress;
+  }
+
+  private static void addPhoneNumbers(final Map<String, Integer[]> index, final AddressDO address)
+  {
+    for (final String key : getPhoneNumberKeys(address)) {
+      final Integer[] ids = index.get(key);
+      index.put(key, (Integer[]) ArrayUtils.add(ids, address.getId()));
+    }
+  }
+
+  private static void addBirthday(final AtomicReferenceArray<AddressDO[]> birthdays, final AddressDO address)
+  {
+    final int index = getBirthdayIndex(address);
+    if (index >= 0) {
+      birthdays.set(index, (AddressDO[]) ArrayUtils.add(birthdays.get(index), address));
+    }
+  }
+
+  /**
+   * The month and day of month of the birthday are taken in the default time zone of the server (the time zone of the stored dates).
+   * @return The index of the birthday bucket or -1 if the address has no birthday.
+   */
+  private static int getBirthdayIndex(final AddressDO address)
+  {
+    if (address.getBirthday() == null) {
+      return -1;
+    }
+    final Calendar cal = Calendar.getInstance();
+    cal.setTime(address.getBirthday());
+    return getBirthdayIndex(cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH));
+  }
+
+  private static int getBirthdayIndex(final int month, final int dayOfMonth)
+  {
+    return month * 31 + dayOfMonth - 1;
+  }
+
+  /**
+   * @return The reversed phone numbers of the given address. Like the full text index every number is normalized by
+   *         {@link NumberHelper#extractPhonenumber(String)} and reduced to its digits.
+   * @see org.projectforge.core.HibernateSearchPhoneNumberBridge
+   */
+  private static Collection<String> getPhoneNumberKeys(final AddressDO address)
+  {
+    final Set<String> keys = new LinkedHashSet<String>();
+    for (final String number : new String[] { address.getBusinessPhone(), address.getMobilePhone(), address.getFax(),
+        address.getPrivatePhone(), address.getPrivateMobilePhone()}) {
+      if (StringUtils.isBlank(number) == true) {
+        continue;
+      }
+      for (final String digits : new String[] { NumberHelper.extractPhonenumber(number), StringHelper.removeNonDigits(number)}) {
+        if (StringUtils.isNotEmpty(digits) == true) {
+          keys.add(StringUtils.reverse(digits));
+        }
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * This method will be called by CacheHelper and is synchronized via getData();
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void refresh()
+  {
+    log.info("Initializing AddressCache ...");
+    // This method must not be synchronized because it works with a new copy of maps.
+    synchronized (lock) {
+      // Record the modifications from now on, they may be committed after the data base query is done:
+      this.modificationsDuringRefresh = new LinkedHashMap<Integer, AddressDO>();
+    }
+    final Map<Integer, AddressDO> map = new ConcurrentHashMap<Integer, AddressDO>();
+    final ConcurrentSkipListMap<String, Integer[]> index = new ConcurrentSkipListMap<String, Integer[]>();
+    final AtomicReferenceArray<AddressDO[]> birthdayBuckets = new AtomicReferenceArray<AddressDO[]>(12 * 31);
+    try {
+      final List<AddressDO> list = hibernateTemplate.find("from AddressDO t where deleted=false");
+      for (final AddressDO address : list) {
+        map.put(address.getId(), address);
+        addPhoneNumbers(index, address);
+        addBirthday(birthdayBuckets, address);
+      }
+      synchronized (lock) {
+        this.addressMap = map;
+        this.phoneNumberIndex = index;
+        this.birthdays = birthdayBuckets;
+        this.favoritesByUser.clear();
+        for (final Map.Entry<Integer, AddressDO> entry : modificationsDuringRefresh.entrySet()) {
+          if (entry.getValue() != null) {
+            update(entry.getValue());
+          } else {
+            remove(entry.getKey());
+          }
+        }
+      }
+    } finally {
+      synchronized (lock) {
+        this.modificationsDuringRefresh = null;
+      }
+    }
+    log.info("Initializing of AddressCache done.");
+  }
+
+  public void setHibernateTemplate(final HibernateTemplate hibernateTemplate)
+  {
+    this.hibernateTemplate = hibernateTemplate;
+  }
+}
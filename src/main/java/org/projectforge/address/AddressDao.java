@@ -44,7 +44,6 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
-import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseDao;
@@ -52,8 +51,10 @@ import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.Configuration;
 import org.projectforge.core.ConfigurationParam;
 import org.projectforge.core.QueryFilter;
+import org.projectforge.database.TransactionHelper;
 import org.projectforge.task.TaskDO;
 import org.projectforge.task.TaskDao;
+import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 
 /**
@@ -93,6 +94,18 @@ public class AddressDao extends BaseDao<AddressDO>
     return personalAddressDao;
   }
 
+  private AddressCache addressCache;
+
+  public void setAddressCache(final AddressCache addressCache)
+  {
+    this.addressCache = addressCache;
+  }
+
+  public AddressCache getAddressCache()
+  {
+    return addressCache;
+  }
+
   public AddressDao()
   {
     super(AddressDO.class);
@@ -254,6 +267,48 @@ public class AddressDao extends BaseDao<AddressDO>
     return true;
   }
 
+  /**
+   * @param number The phone number or the last digits of the phone number.
+   * @return The addresses (with select access of the logged-in user) with a phone number ending with the given number.
+   * @see AddressCache#getAddressesByPhoneNumber(String)
+   */
+  public List<AddressDO> getListByPhoneNumber(final String number)
+  {
+    return extractEntriesWithSelectAccess(addressCache.getAddressesByPhoneNumber(number));
+  }
+
+  /**
+   * Updates the {@link AddressCache} after the commit (rolled back modifications must not reach the cache).
+   * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSaveOrModify(final AddressDO obj)
+  {
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        addressCache.updateAddress(obj);
+      }
+    });
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#afterDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterDelete(final AddressDO obj)
+  {
+    final Integer id = obj.getId();
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        addressCache.removeAddress(id);
+      }
+    });
+  }
+
   private void beforeUpdateOrSave(final AddressDO address)
   {
     if (address != null && address.getTaskId() == null) {
@@ -301,41 +356,35 @@ public class AddressDao extends BaseDao<AddressDO>
   }
 
   /**
-   * Get the birthdays of address entries.
+   * Get the birthdays of address entries. Uses the birthday index of the {@link AddressCache}, so only the addresses with birthdays in the
+   * given period are checked for access.
    * @param fromDate Search for birthdays from given date (ignoring the year).
    * @param toDate Search for birthdays until given date (ignoring the year).
    * @param max Maximum number of result entries.
    * @param all If false, only the birthdays of favorites will be returned.
-   * @return The entries are ordered by date of year and name.
+   * @return The entries are ordered by date of year and name. Please note: the addresses of the entries are cached objects which must
+   *         not be modified.
    */
   public Set<BirthdayAddress> getBirthdays(final Date fromDate, final Date toDate, final int max, final boolean all)
   {
-    final QueryFilter filter = new QueryFilter();
-    filter.add(Restrictions.isNotNull("birthday"));
-    final List<AddressDO> list = getList(filter);
     // Uses not Collections.sort because every comparison needs Calendar.getDayOfYear().
     final Set<BirthdayAddress> set = new TreeSet<BirthdayAddress>();
     final Set<Integer> favorites = getFavorites();
     final DateHolder from = new DateHolder(fromDate);
     final DateHolder to = new DateHolder(toDate);
-    DateHolder dh;
-    final int fromMonth = from.getMonth();
-    final int fromDayOfMonth = from.getDayOfMonth();
-    final int toMonth = to.getMonth();
-    final int toDayOfMonth = to.getDayOfMonth();
+    final List<AddressDO> list = addressCache.getBirthdayAddresses(from.getMonth(), from.getDayOfMonth(), to.getMonth(),
+        to.getDayOfMonth());
     for (final AddressDO address : list) {
-      if (all == false && favorites.contains(address.getId()) == false) {
+      final boolean favorite = favorites.contains(address.getId());
+      if (all == false && favorite == false) {
         // Address is not a favorite address, so ignore it.
         continue;
       }
-      dh = new DateHolder(address.getBirthday());
-      final int month = dh.getMonth();
-      final int dayOfMonth = dh.getDayOfMonth();
-      if (DateHelper.dateOfYearBetween(month, dayOfMonth, fromMonth, fromDayOfMonth, toMonth, toDayOfMonth) == false) {
+      if (hasLoggedInUserSelectAccess(address, false) == false) {
         continue;
       }
       final BirthdayAddress ba = new BirthdayAddress(address);
-      if (favorites.contains(address.getId()) == true) {
+      if (favorite == true) {
         ba.setFavorite(true);
       }
       set.add(ba);
@@ -357,18 +406,13 @@ public class AddressDao extends BaseDao<AddressDO>
     return result;
   }
 
+  /**
+   * @return The ids of the addresses marked as favorite card in the personal address book of the logged-in user.
+   * @see AddressCache#getFavorites(Integer)
+   */
   public Set<Integer> getFavorites()
   {
-    final List<PersonalAddressDO> list = personalAddressDao.getList();
-    final Set<Integer> result = new HashSet<Integer>();
-    if (CollectionUtils.isNotEmpty(list) == true) {
-      for (final PersonalAddressDO entry : list) {
-        if (entry.isFavoriteCard() == true) {
-          result.add(entry.getAddressId());
-        }
-      }
-    }
-    return result;
+    return addressCache.getFavorites(PFUserContext.getUserId());
   }
 
   public void exportFavoriteVCards(final Writer out, final List<PersonalAddressDO> favorites)
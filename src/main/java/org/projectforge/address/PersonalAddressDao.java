@@ -36,6 +36,7 @@ import org.projectforge.access.AccessChecker;
 import org.projectforge.access.AccessException;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.ModificationStatus;
+import org.projectforge.database.TransactionHelper;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
@@ -57,6 +58,8 @@ public class PersonalAddressDao extends HibernateDaoSupport
 
   private UserDao userDao;
 
+  private AddressCache addressCache;
+
   public void setAccessChecker(final AccessChecker accessChecker)
   {
     this.accessChecker = accessChecker;
@@ -67,6 +70,11 @@ public class PersonalAddressDao extends HibernateDaoSupport
     this.userDao = userDao;
   }
 
+  public void setAddressCache(final AddressCache addressCache)
+  {
+    this.addressCache = addressCache;
+  }
+
   /**
    * @param personalAddress
    * @param ownerId If null, then task will be set to null;
@@ -85,10 +93,22 @@ public class PersonalAddressDao extends HibernateDaoSupport
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public Serializable saveOrUpdate(final PersonalAddressDO obj)
   {
+    final Serializable id;
     if (internalUpdate(obj) == true) {
-      return obj.getId();
+      id = obj.getId();
+    } else {
+      id = internalSave(obj);
     }
-    return internalSave(obj);
+    // The favorites of the owner may be changed (reloaded not until commit, otherwise the old favorites may be cached again):
+    final Integer ownerId = obj.getOwnerId();
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        addressCache.setFavoritesExpired(ownerId);
+      }
+    });
+    return id;
   }
 
   private void checkAccess(final PersonalAddressDO obj)
@@ -35,7 +35,6 @@ import org.apache.commons.lang.Validate;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.DatePrecision;
-import org.projectforge.core.UserException;
 
 
 /**
@@ -72,6 +71,13 @@ public class DayHolder extends DateHolder
     return getNumberOfWorkingDays(fromDay, toDay);
   }
 
+  /**
+   * Counts the working days via the working day index of the years (days with work fractions are counted with their fraction).
+   * @param from
+   * @param to
+   * @return The number of working days of the given period (inclusive).
+   * @see Holidays#getWorkingDays(int)
+   */
   public static BigDecimal getNumberOfWorkingDays(final DateHolder from, final DateHolder to)
   {
     Validate.notNull(from);
@@ -79,35 +85,17 @@ public class DayHolder extends DateHolder
     if (to.before(from) == true) {
       return BigDecimal.ZERO;
     }
-    final DayHolder day = new DayHolder(from);
+    final Holidays holidays = Holidays.getInstance();
+    final int toYear = to.getYear();
+    int year = from.getYear();
+    int fromDayOfYear = from.getDayOfYear();
     BigDecimal numberOfWorkingDays = BigDecimal.ZERO;
-    int numberOfFullWorkingDays = 0;
-    int dayCounter = 1;
-    if (day.isWorkingDay() == true) {
-      final BigDecimal workFraction = day.getWorkFraction();
-      if (workFraction != null) {
-        numberOfWorkingDays = numberOfWorkingDays.add(day.getWorkFraction());
-      } else {
-        numberOfFullWorkingDays++;
-      }
+    for (; year < toYear; year++) {
+      final WorkingDaysOfYear workingDays = holidays.getWorkingDays(year);
+      numberOfWorkingDays = numberOfWorkingDays.add(workingDays.getNumberOfWorkingDays(fromDayOfYear, workingDays.getNumberOfDays()));
+      fromDayOfYear = 1;
     }
-    do {
-      day.add(Calendar.DAY_OF_MONTH, 1);
-      if (dayCounter++ > 740) { // Endless loop protection, time period greater 2 years.
-        throw new UserException(
-            "getNumberOfWorkingDays does not support calculation of working days for a time period greater than two years!");
-      }
-      if (day.isWorkingDay() == true) {
-        final BigDecimal workFraction = day.getWorkFraction();
-        if (workFraction != null) {
-          numberOfWorkingDays = numberOfWorkingDays.add(day.getWorkFraction());
-        } else {
-          numberOfFullWorkingDays++;
-        }
-      }
-    } while (day.isSameDay(to) == false);
-    numberOfWorkingDays = numberOfWorkingDays.add(new BigDecimal(numberOfFullWorkingDays));
-    return numberOfWorkingDays;
+    return numberOfWorkingDays.add(holidays.getWorkingDays(toYear).getNumberOfWorkingDays(fromDayOfYear, to.getDayOfYear()));
   }
 
   /**
@@ -27,6 +27,8 @@ import java.math.BigDecimal;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -51,6 +53,9 @@ public class Holidays
   /** Contains all holidays of a year. Key is the year. Value is a map of all holidays in the year with the day of the year as key. */
   private Map<Integer, Map<Integer, Holiday>> holidaysByYear = new HashMap<Integer, Map<Integer, Holiday>>();
 
+  /** The working day index of the years, read lock free. */
+  private final ConcurrentMap<Integer, WorkingDaysOfYear> workingDaysByYear = new ConcurrentHashMap<Integer, WorkingDaysOfYear>();
+
   private Map<HolidayDefinition, ConfigureHoliday> reconfiguredHolidays = new HashMap<HolidayDefinition, ConfigureHoliday>();
 
   private ConfigXml xmlConfiguration;
@@ -198,28 +203,32 @@ public class Holidays
     return (getHolidays(year).containsKey(dayOfYear) == true);
   }
 
-  public boolean isWorkingDay(final DayHolder date)
+  /**
+   * @param year
+   * @return The immutable working day index of the given year (built once per year from the holidays including the holidays configured
+   *         in config.xml).
+   */
+  public WorkingDaysOfYear getWorkingDays(final int year)
   {
-    if (date.isWeekend() == true) {
-      return false;
-    }
-    final Holiday day = getHolidays(date.getYear()).get(date.getDayOfYear());
-    if (day != null && day.isWorkingDay() == false) {
-      return false;
+    WorkingDaysOfYear workingDays = workingDaysByYear.get(year);
+    if (workingDays == null) {
+      workingDays = new WorkingDaysOfYear(year, getHolidays(year));
+      final WorkingDaysOfYear existing = workingDaysByYear.putIfAbsent(year, workingDays);
+      if (existing != null) {
+        workingDays = existing;
+      }
     }
-    return true;
+    return workingDays;
+  }
+
+  public boolean isWorkingDay(final DayHolder date)
+  {
+    return getWorkingDays(date.getYear()).isWorkingDay(date.getDayOfYear());
   }
 
   public BigDecimal getWorkFraction(final DayHolder date)
   {
-    if (date.isWeekend() == true) {
-      return null;
-    }
-    final Holiday day = getHolidays(date.getYear()).get(date.getDayOfYear());
-    if (day == null) {
-      return null;
-    }
-    return day.getWorkFraction();
+    return getWorkingDays(date.getYear()).getWorkFraction(date.getDayOfYear());
   }
 
   public String getHolidayInfo(int year, int dayOfYear)
@@ -0,0 +1,185 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.calendar;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.projectforge.common.DateHelper;
+
+/**
+ * Immutable index of the working days of one year: a bit set of the working days and prefix sums of the number of working days and the
+ * work fractions, so the working days between two days can be counted and added without iterating over the days. All days are given as
+ * day of year (1-based).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see Holidays#getWorkingDays(int)
+ */
+public class WorkingDaysOfYear
+{
+  private final int year;
+
+  private final int numberOfDays;
+
+  private final BitSet workingDays;
+
+  /** Number of working days from the first day of the year until the given day (inclusive). Index 0 is the day before the year. */
+  private final int[] workingDaysSum;
+
+  /** Number of working days without work fraction from the first day of the year until the given day (inclusive). */
+  private final int[] fullWorkingDaysSum;
+
+  /** Sum of the work fractions from the first day of the year until the given day (inclusive). */
+  private final BigDecimal[] workFractionsSum;
+
+  private final BigDecimal[] workFractions;
+
+  /**
+   * @param year
+   * @param holidays The holidays of the year by day of year.
+   */
+  WorkingDaysOfYear(final int year, final Map<Integer, Holiday> holidays)
+  {
+    this.year = year;
+    final Calendar cal = new GregorianCalendar(DateHelper.UTC);
+    cal.clear();
+    cal.set(Calendar.YEAR, year);
+    this.numberOfDays = cal.getActualMaximum(Calendar.DAY_OF_YEAR);
+    this.workingDays = new BitSet(numberOfDays + 1);
+    this.workingDaysSum = new int[numberOfDays + 1];
+    this.fullWorkingDaysSum = new int[numberOfDays + 1];
+    this.workFractionsSum = new BigDecimal[numberOfDays + 1];
+    this.workFractions = new BigDecimal[numberOfDays + 1];
+    workFractionsSum[0] = BigDecimal.ZERO;
+    for (int day = 1; day <= numberOfDays; day++) {
+      cal.set(Calendar.DAY_OF_YEAR, day);
+      final int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+      boolean working = dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY;
+      BigDecimal workFraction = null;
+      if (working == true) {
+        // Weekend days have always no work fraction!
+        final Holiday holiday = holidays != null ? holidays.get(day) : null;
+        if (holiday != null) {
+          working = holiday.isWorkingDay();
+          workFraction = holiday.getWorkFraction();
+        }
+      }
+      workingDaysSum[day] = workingDaysSum[day - 1];
+      fullWorkingDaysSum[day] = fullWorkingDaysSum[day - 1];
+      workFractionsSum[day] = workFractionsSum[day - 1];
+      workFractions[day] = workFraction;
+      if (working == true) {
+        workingDays.set(day);
+        workingDaysSum[day]++;
+        if (workFraction != null) {
+          workFractionsSum[day] = workFractionsSum[day].add(workFraction);
+        } else {
+          fullWorkingDaysSum[day]++;
+        }
+      }
+    }
+  }
+
+  public int getYear()
+  {
+    return year;
+  }
+
+  /**
+   * @return 365 or 366.
+   */
+  public int getNumberOfDays()
+  {
+    return numberOfDays;
+  }
+
+  public boolean isWorkingDay(final int dayOfYear)
+  {
+    return workingDays.get(dayOfYear);
+  }
+
+  /**
+   * @return The work fraction of the given day or null if not defined (weekend days have always no work fraction).
+   */
+  public BigDecimal getWorkFraction(final int dayOfYear)
+  {
+    return workFractions[dayOfYear];
+  }
+
+  /**
+   * @return The number of working days of the whole year (days with work fractions are counted as full days).
+   */
+  public int getNumberOfWorkingDays()
+  {
+    return workingDaysSum[numberOfDays];
+  }
+
+  /**
+   * @param dayOfYear 0 (the day before the year) up to the last day of the year.
+   * @return The number of working days from the first day of the year until the given day (inclusive).
+   */
+  public int getNumberOfWorkingDaysUntil(final int dayOfYear)
+  {
+    return workingDaysSum[dayOfYear];
+  }
+
+  /**
+   * Days with work fractions are counted with their fraction.
+   * @param fromDayOfYear
+   * @param toDayOfYear
+   * @return The number of working days between both days (inclusive).
+   */
+  public BigDecimal getNumberOfWorkingDays(final int fromDayOfYear, final int toDayOfYear)
+  {
+    if (toDayOfYear < fromDayOfYear) {
+      return BigDecimal.ZERO;
+    }
+    final int fullWorkingDays = fullWorkingDaysSum[toDayOfYear] - fullWorkingDaysSum[fromDayOfYear - 1];
+    final BigDecimal workFractions = workFractionsSum[toDayOfYear].subtract(workFractionsSum[fromDayOfYear - 1]);
+    return workFractions.add(new BigDecimal(fullWorkingDays));
+  }
+
+  /**
+   * @param number 1 for the first working day of the year etc.
+   * @return The day of year of the working day with the given number (binary search of the prefix sums).
+   */
+  public int getWorkingDay(final int number)
+  {
+    Validate.isTrue(number >= 1 && number <= getNumberOfWorkingDays(), "Year " + year + " has no working day #" + number);
+    int low = 1;
+    int high = numberOfDays;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (workingDaysSum[mid] < number) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -23,9 +23,25 @@
 
 package org.projectforge.common;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class is usefull, if the stored object of derived classes has to be cached. After reaching expireTime during a request, the method
- * refresh will be called.
+ * refresh will be called.<br/>
+ * Reading of a non expired cache doesn't lock. If async refresh is enabled (see {@link #setAsyncRefresh(boolean)}) the first caller after
+ * the expire time isn't blocked by the refresh: the current (stale) data is served and refresh is done by a shared background thread
+ * (stale-while-revalidate). Derived classes using async refresh must build their data as new copies and assign them to volatile fields
+ * (copy-on-write) in {@link #refresh()}. A cache explicitly expired by {@link #setExpired()} is always refreshed synchronously.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public abstract class AbstractCache
@@ -38,20 +54,49 @@ public abstract class AbstractCache
 
   public static final long TICKS_PER_HOUR = TICKS_PER_MINUTE * 60;
 
+  private static final int REFRESH_THREADS = 2;
+
+  /** All instantiated caches (for statistics). */
+  private static final Set<AbstractCache> caches = Collections.synchronizedSet(Collections
+      .newSetFromMap(new WeakHashMap<AbstractCache, Boolean>()));
+
+  private static ExecutorService refreshExecutor;
+
   protected long expireTime = 60 * TICKS_PER_MINUTE;
 
-  private transient long timeOfLastRefresh = -1;
+  /** Start time of the last finished refresh. */
+  private transient volatile long timeOfLastRefresh = -1;
+
+  /** Incremented by every {@link #setExpired()} call. */
+  private transient final AtomicLong expireGeneration = new AtomicLong();
+
+  /** Value of {@link #expireGeneration} at the start of the last finished refresh, the cache is expired if they differ. */
+  private transient volatile long refreshedGeneration = -1;
+
+  private transient volatile boolean refreshInProgress = false;
+
+  private boolean asyncRefresh = false;
+
+  private transient final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+  private transient final AtomicLong hitCounter = new AtomicLong();
+
+  private transient final AtomicLong staleReadCounter = new AtomicLong();
 
-  private transient boolean isExpired = true;
+  private transient final AtomicLong refreshCounter = new AtomicLong();
 
-  private transient boolean refreshInProgress = false;
+  private transient final AtomicLong totalRefreshDuration = new AtomicLong();
+
+  private transient volatile long lastRefreshDuration = -1;
 
   protected AbstractCache()
   {
+    caches.add(this);
   }
 
   protected AbstractCache(final long expireTime)
   {
+    this();
     this.expireTime = expireTime;
   }
 
@@ -70,12 +115,27 @@ public abstract class AbstractCache
     this.expireTime = expireTime * TICKS_PER_HOUR;
   }
 
+  /**
+   * If true, an expired cache will be refreshed in the background and the readers will get the current data until the refresh is finished.
+   * The first load and any refresh after {@link #setExpired()} are done synchronously. Default is false.
+   * @param asyncRefresh
+   */
+  public void setAsyncRefresh(final boolean asyncRefresh)
+  {
+    this.asyncRefresh = asyncRefresh;
+  }
+
+  public boolean isAsyncRefresh()
+  {
+    return asyncRefresh;
+  }
+
   /**
    * Cache will be refreshed before next use.
    */
   public void setExpired()
   {
-    this.isExpired = true;
+    this.expireGeneration.incrementAndGet();
   }
 
   /**
@@ -88,30 +148,115 @@ public abstract class AbstractCache
   }
 
   /**
-   * Checks the expire time and calls refresh, if cache is expired.
+   * Checks the expire time and calls refresh, if cache is expired. Doesn't lock if the cache isn't expired.
    */
-  protected synchronized void checkRefresh()
+  protected void checkRefresh()
+  {
+    final boolean expired = isExpired();
+    if (expired == false && System.currentTimeMillis() - this.timeOfLastRefresh <= this.expireTime) {
+      hitCounter.incrementAndGet();
+      return;
+    }
+    if (asyncRefresh == true && expired == false) {
+      // Expired by time only: serve the current data and refresh in the background.
+      staleReadCounter.incrementAndGet();
+      scheduleRefresh();
+      return;
+    }
+    checkRefreshSynchronized();
+  }
+
+  private synchronized void checkRefreshSynchronized()
   {
     if (refreshInProgress == true) {
       // Do nothing because refreshing is already in progress.
       return;
     }
-    if (this.isExpired == true || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
+    if (isExpired() == true || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
       try {
         refreshInProgress = true;
-        this.timeOfLastRefresh = System.currentTimeMillis();
+        final long begin = System.currentTimeMillis();
+        // Read before refreshing, so a setExpired() call during refresh forces another refresh.
+        final long generation = this.expireGeneration.get();
         try {
           this.refresh();
         } catch (final Throwable ex) {
           log.error(ex.getMessage(), ex);
         }
-        this.isExpired = false;
+        // Mark the cache as fresh not until refresh is finished, otherwise the lock-free readers would see the half-built data:
+        this.timeOfLastRefresh = begin;
+        this.refreshedGeneration = generation;
+        this.lastRefreshDuration = System.currentTimeMillis() - begin;
+        this.refreshCounter.incrementAndGet();
+        this.totalRefreshDuration.addAndGet(this.lastRefreshDuration);
       } finally {
         refreshInProgress = false;
       }
     }
   }
 
+  private void scheduleRefresh()
+  {
+    if (refreshScheduled.compareAndSet(false, true) == false) {
+      // Refresh is already scheduled or running.
+      return;
+    }
+    try {
+      getRefreshExecutor().execute(new Runnable() {
+        @Override
+        public void run()
+        {
+          try {
+            checkRefreshSynchronized();
+          } finally {
+            refreshScheduled.set(false);
+          }
+        }
+      });
+    } catch (final RejectedExecutionException ex) {
+      refreshScheduled.set(false);
+      log.error("Can't schedule refresh of " + getClass().getSimpleName() + ", refreshing synchronously: " + ex.getMessage());
+      checkRefreshSynchronized();
+    }
+  }
+
+  private static synchronized ExecutorService getRefreshExecutor()
+  {
+    if (refreshExecutor == null) {
+      refreshExecutor = Executors.newFixedThreadPool(REFRESH_THREADS, new ThreadFactory() {
+        private int counter = 0;
+
+        @Override
+        public synchronized Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "CacheRefresh-" + (++counter));
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return refreshExecutor;
+  }
+
+  /**
+   * Stops the background refresh threads (called on shutdown).
+   */
+  public static synchronized void shutdownRefreshExecutor()
+  {
+    if (refreshExecutor != null) {
+      refreshExecutor.shutdown();
+      refreshExecutor = null;
+    }
+  }
+
+  /**
+   * @return true if the cache was never refreshed or {@link #setExpired()} was called after the start of the last refresh.
+   */
+  private boolean isExpired()
+  {
+    return this.refreshedGeneration != this.expireGeneration.get();
+  }
+
   /**
    * @return true if currently a cache refresh is running, otherwise false.
    */
@@ -120,6 +265,66 @@ public abstract class AbstractCache
     return refreshInProgress;
   }
 
+  /**
+   * @return Number of reads without any refresh.
+   */
+  public long getHitCounter()
+  {
+    return hitCounter.get();
+  }
+
+  /**
+   * @return Number of reads of expired data while refreshing in the background (only for async refresh).
+   */
+  public long getStaleReadCounter()
+  {
+    return staleReadCounter.get();
+  }
+
+  public long getRefreshCounter()
+  {
+    return refreshCounter.get();
+  }
+
+  /**
+   * @return Duration of the last refresh in milliseconds or -1 if not yet refreshed.
+   */
+  public long getLastRefreshDuration()
+  {
+    return lastRefreshDuration;
+  }
+
+  /**
+   * @return Average duration of all refreshs in milliseconds or -1 if not yet refreshed.
+   */
+  public long getAverageRefreshDuration()
+  {
+    final long counter = refreshCounter.get();
+    return counter > 0 ? totalRefreshDuration.get() / counter : -1;
+  }
+
+  /**
+   * @return Human readable statistics (refresh durations, hits, stale reads) of this cache.
+   */
+  public String getStatistics()
+  {
+    final StringBuffer buf = new StringBuffer();
+    buf.append(getClass().getSimpleName()).append(": refreshs=").append(getRefreshCounter()).append(", lastRefreshDuration=")
+    .append(getLastRefreshDuration()).append("ms, averageRefreshDuration=").append(getAverageRefreshDuration()).append("ms, hits=")
+    .append(getHitCounter()).append(", staleReads=").append(getStaleReadCounter()).append(", asyncRefresh=").append(asyncRefresh);
+    return buf.toString();
+  }
+
+  /**
+   * @return All instantiated caches.
+   */
+  public static List<AbstractCache> getAllCaches()
+  {
+    synchronized (caches) {
+      return new ArrayList<AbstractCache>(caches);
+    }
+  }
+
   /**
    * Please implement this method refreshing the stored object _data. Do not forget to call checkRefresh in your cache methods.
    * @see #checkRefresh()
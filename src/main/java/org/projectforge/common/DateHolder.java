@@ -32,7 +32,8 @@ import java.util.TimeZone;
 
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.builder.HashCodeBuilder;
-import org.projectforge.calendar.DayHolder;
+import org.projectforge.calendar.Holidays;
+import org.projectforge.calendar.WorkingDaysOfYear;
 import org.projectforge.user.PFUserContext;
 
 /**
@@ -712,26 +713,37 @@ public class DateHolder implements Serializable, Cloneable, Comparable<DateHolde
   }
 
   /**
-   * Adds the given number of days (non-working days will be skipped). Maximum allowed value is 10.000 (for avoiding end-less loops).
+   * Adds the given number of days (non-working days will be skipped). Maximum allowed value is 10.000. The target day is found via the
+   * working day index of the years (no iteration over the days).
    * @param days Value can be positive or negative.
+   * @see Holidays#getWorkingDays(int)
    */
   public DateHolder addWorkingDays(final int days)
   {
     Validate.isTrue(days <= 10000);
-    short sign = 1;
-    if (days < 0) {
-      sign = -1;
+    if (days == 0) {
+      return this;
     }
-    int counter = 0;
-    for (int i = 0; i < 10000; i++) {
-      if (counter == days) {
-        break;
+    final Holidays holidays = Holidays.getInstance();
+    int year = getYear();
+    final int dayOfYear = getDayOfYear();
+    WorkingDaysOfYear workingDays = holidays.getWorkingDays(year);
+    int number; // Number of the target working day in its year.
+    if (days > 0) {
+      number = workingDays.getNumberOfWorkingDaysUntil(dayOfYear) + days;
+      while (number > workingDays.getNumberOfWorkingDays()) {
+        number -= workingDays.getNumberOfWorkingDays();
+        workingDays = holidays.getWorkingDays(++year);
+      }
+    } else {
+      number = workingDays.getNumberOfWorkingDaysUntil(dayOfYear - 1) + days + 1;
+      while (number < 1) {
+        workingDays = holidays.getWorkingDays(--year);
+        number += workingDays.getNumberOfWorkingDays();
       }
-      do {
-        calendar.add(Calendar.DAY_OF_MONTH, sign);
-      } while (new DayHolder(this).isWorkingDay() == false);
-      counter += sign;
     }
+    calendar.set(Calendar.YEAR, year);
+    calendar.set(Calendar.DAY_OF_YEAR, workingDays.getWorkingDay(number));
     return this;
   }
 
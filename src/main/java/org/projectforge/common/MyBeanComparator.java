@@ -21,20 +21,45 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
+
 package org.projectforge.common;
 
+import java.lang.reflect.Method;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.ClassUtils;
+import org.apache.commons.lang.StringUtils;
+import org.projectforge.user.PFUserContext;
 
+/**
+ * Compares beans by a (nested) property and an optional second property. The getters of the property paths are resolved only once per
+ * class. Strings are compared by the collator of the user's locale.<br/>
+ * For sorting lists please use {@link #sort(List)}: the property values of each element are read only once (instead of reading them for
+ * each comparison).
+ */
 public class MyBeanComparator<T> implements Comparator<T>
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(MyBeanComparator.class);
 
+  /** The getters (or null if not available) by class and property name. */
+  private static final ConcurrentMap<Class< ? >, ConcurrentMap<String, Getter>> getterCache = //
+  new ConcurrentHashMap<Class< ? >, ConcurrentMap<String, Getter>>();
+
   private String property, secondProperty;
 
   private boolean ascending, secondAscending;
 
+  private final String[] propertyPath, secondPropertyPath;
+
+  private Collator collator;
+
   public MyBeanComparator(final String property)
   {
     this(property, true);
@@ -43,8 +68,7 @@ public class MyBeanComparator<T> implements Comparator<T>
 
   public MyBeanComparator(final String property, final boolean asc)
   {
-    this.property = property;
-    this.ascending = asc;
+    this(property, asc, null, true);
   }
 
   public MyBeanComparator(final String property, final boolean ascending, final String secondProperty, final boolean secondAscending)
@@ -53,53 +77,221 @@ public class MyBeanComparator<T> implements Comparator<T>
     this.ascending = ascending;
     this.secondProperty = secondProperty;
     this.secondAscending = secondAscending;
+    this.propertyPath = property != null ? StringUtils.split(property, '.') : null;
+    this.secondPropertyPath = secondProperty != null ? StringUtils.split(secondProperty, '.') : null;
   }
 
   public int compare(final T o1, final T o2)
   {
-    final int result = compare(o1, o2, property, ascending);
+    prepare(o1);
+    prepare(o2);
+    final int result = compare(o1, o2, property, propertyPath, ascending);
     if (result != 0) {
       return result;
     }
-    return compare(o1, o2, secondProperty, secondAscending);
+    return compare(o1, o2, secondProperty, secondPropertyPath, secondAscending);
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes"})
-  private int compare(final T o1, final T o2, final String prop, final boolean asc)
+  /**
+   * Sorts the given list (decorate-sort-undecorate): the values of the sort properties of every element are read only once and strings are
+   * converted to collation keys before sorting.
+   * @param list
+   */
+  @SuppressWarnings("unchecked")
+  public void sort(final List<T> list)
+  {
+    if (list == null || list.size() < 2) {
+      return;
+    }
+    final Entry[] entries = new Entry[list.size()];
+    int i = 0;
+    for (final T obj : list) {
+      prepare(obj);
+      entries[i++] = new Entry(obj, getKey(obj, property, propertyPath), getKey(obj, secondProperty, secondPropertyPath));
+    }
+    Arrays.sort(entries, new Comparator<Entry>() {
+      public int compare(final Entry e1, final Entry e2)
+      {
+        final int result = compareValues(e1.key, e2.key, property, ascending);
+        if (result != 0) {
+          return result;
+        }
+        return compareValues(e1.secondKey, e2.secondKey, secondProperty, secondAscending);
+      }
+    });
+    final ListIterator<T> it = list.listIterator();
+    for (final Entry entry : entries) {
+      it.next();
+      it.set((T) entry.obj);
+    }
+  }
+
+  /**
+   * Will be called for every object before reading its properties (e. g. for initializing lazy loaded properties). Does nothing at default.
+   * @param obj
+   */
+  protected void prepare(final T obj)
+  {
+  }
+
+  private int compare(final T o1, final T o2, final String prop, final String[] path, final boolean asc)
   {
     if (prop == null) {
       // Not comparable.
       return 0;
     }
     try {
-      final Object value1 = BeanHelper.getNestedProperty(o1, prop);
-      final Object value2 = BeanHelper.getNestedProperty(o2, prop);
-      if (value1 == null) {
-        if (value2 == null)
-          return 0;
-        else return (asc == true) ? -1 : 1;
-      }
-      if (value2 == null) {
-        return (asc == true) ? 1 : -1;
+      final Object value1 = getNestedProperty(o1, prop, path);
+      final Object value2 = getNestedProperty(o2, prop, path);
+      return compareValues(value1, value2, prop, asc);
+    } catch (final Exception ex) {
+      log.error("Exception while comparing values of property '" + prop + "': " + ex.getMessage());
+      return 0;
+    }
+  }
+
+  /**
+   * @return The value of the given property or its collation key if the value is a string.
+   */
+  private Object getKey(final T obj, final String prop, final String[] path)
+  {
+    if (prop == null) {
+      return null;
+    }
+    try {
+      final Object value = getNestedProperty(obj, prop, path);
+      if (value instanceof String) {
+        return getCollator().getCollationKey((String) value);
       }
-      if (ClassUtils.isAssignable(value2.getClass(), value1.getClass()) == true) {
-        if (asc == true) {
-          return ((Comparable) value1).compareTo(value2);
-        } else {
-          return -((Comparable) value1).compareTo(value2);
-        }
+      return value;
+    } catch (final Exception ex) {
+      log.error("Exception while getting value of property '" + prop + "': " + ex.getMessage());
+      return null;
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes"})
+  private int compareValues(final Object value1, final Object value2, final String prop, final boolean asc)
+  {
+    if (prop == null) {
+      // Not comparable.
+      return 0;
+    }
+    if (value1 == null) {
+      if (value2 == null)
+        return 0;
+      else return (asc == true) ? -1 : 1;
+    }
+    if (value2 == null) {
+      return (asc == true) ? 1 : -1;
+    }
+    final int result;
+    try {
+      if (value1 instanceof String && value2 instanceof String) {
+        result = getCollator().compare(value1, value2);
+      } else if (ClassUtils.isAssignable(value2.getClass(), value1.getClass()) == true) {
+        result = ((Comparable) value1).compareTo(value2);
       } else {
-        final String sval1 = String.valueOf(value1);
-        final String sval2 = String.valueOf(value2);
-        if (asc == true) {
-          return sval1.compareTo(sval2);
-        } else {
-          return -sval1.compareTo(sval2);
-        }
+        result = asString(value1).compareTo(asString(value2));
       }
     } catch (final Exception ex) {
       log.error("Exception while comparing values of property '" + prop + "': " + ex.getMessage());
       return 0;
     }
+    return (asc == true) ? result : -result;
+  }
+
+  private String asString(final Object value)
+  {
+    if (value instanceof CollationKey) {
+      return ((CollationKey) value).getSourceString();
+    }
+    return String.valueOf(value);
+  }
+
+  private Collator getCollator()
+  {
+    if (collator == null) {
+      collator = Collator.getInstance(PFUserContext.getLocale());
+    }
+    return collator;
+  }
+
+  /**
+   * Uses the cached getters of the classes of the property path. If a getter isn't available (e. g. for properties of maps), the
+   * BeanHelper is used.
+   */
+  private static Object getNestedProperty(final Object bean, final String prop, final String[] path) throws Exception
+  {
+    Object value = bean;
+    for (final String name : path) {
+      if (value == null) {
+        return null;
+      }
+      final Getter getter = getGetter(value.getClass(), name);
+      if (getter.method == null) {
+        return BeanHelper.getNestedProperty(bean, prop);
+      }
+      value = getter.method.invoke(value);
+    }
+    return value;
+  }
+
+  private static Getter getGetter(final Class< ? > clazz, final String name)
+  {
+    ConcurrentMap<String, Getter> getters = getterCache.get(clazz);
+    if (getters == null) {
+      getterCache.putIfAbsent(clazz, new ConcurrentHashMap<String, Getter>());
+      getters = getterCache.get(clazz);
+    }
+    Getter getter = getters.get(name);
+    if (getter == null) {
+      getter = new Getter(findGetter(clazz, name));
+      getters.put(name, getter);
+    }
+    return getter;
+  }
+
+  private static Method findGetter(final Class< ? > clazz, final String name)
+  {
+    final String capitalized = StringUtils.capitalize(name);
+    for (final String prefix : new String[] { "get", "is"}) {
+      try {
+        final Method method = clazz.getMethod(prefix + capitalized);
+        if (method.getReturnType() != void.class) {
+          method.setAccessible(true);
+          return method;
+        }
+      } catch (final NoSuchMethodException ex) {
+        // Try next prefix.
+      }
+    }
+    return null;
+  }
+
+  private static class Getter
+  {
+    private final Method method;
+
+    private Getter(final Method method)
+    {
+      this.method = method;
+    }
+  }
+
+  private static class Entry
+  {
+    private final Object obj;
+
+    private final Object key;
+
+    private final Object secondKey;
+
+    private Entry(final Object obj, final Object key, final Object secondKey)
+    {
+      this.obj = obj;
+      this.key = key;
+      this.secondKey = secondKey;
+    }
   }
 }
@@ -36,6 +36,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.Basic;
 import javax.persistence.Column;
@@ -64,6 +65,9 @@ public abstract class AbstractBaseDO<I extends Serializable> implements Extended
 
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(AbstractBaseDO.class);
 
+  /** The fields to copy by {@link #copyValues(BaseDO, BaseDO, Collection, String...)} per class. */
+  private static final Map<Class< ? >, CopyField[]> copyFieldsCache = new ConcurrentHashMap<Class< ? >, CopyField[]>();
+
   @PropertyInfo(i18nKey = "created")
   private Date created;
 
@@ -197,8 +201,25 @@ public abstract class AbstractBaseDO<I extends Serializable> implements Extended
    * @param ignoreFields Does not copy these properties (by field name).
    * @return true, if any modifications are detected, otherwise false;
    */
-  @SuppressWarnings("unchecked")
+  @SuppressWarnings("rawtypes")
   public static ModificationStatus copyValues(final BaseDO src, final BaseDO dest, final String... ignoreFields)
+  {
+    return copyValues(src, dest, null, ignoreFields);
+  }
+
+  /**
+   * Copies all values from the given src object excluding the values created and lastUpdate. Do not overwrite created and lastUpdate from
+   * the original database object.
+   * @param src
+   * @param dest
+   * @param modifiedFields If given, the names of all modified fields are added (modified entries of auto updated collections are added as
+   *          modification of the collection field).
+   * @param ignoreFields Does not copy these properties (by field name).
+   * @return true, if any modifications are detected, otherwise false;
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes"})
+  public static ModificationStatus copyValues(final BaseDO src, final BaseDO dest, final Collection<String> modifiedFields,
+      final String... ignoreFields)
   {
     if (ClassUtils.isAssignable(src.getClass(), dest.getClass()) == false) {
       throw new RuntimeException("Try to copyValues from different BaseDO classes: this from type "
@@ -207,152 +228,197 @@ public abstract class AbstractBaseDO<I extends Serializable> implements Extended
           + src.getClass().getName()
           + "!");
     }
-    if (src.getId() != null && (ignoreFields == null || ArrayUtils.contains(ignoreFields, "id") == false)) {
+    final boolean hasIgnoreFields = ignoreFields != null && ignoreFields.length > 0;
+    if (src.getId() != null && (hasIgnoreFields == false || ArrayUtils.contains(ignoreFields, "id") == false)) {
       dest.setId(src.getId());
     }
-    return copyDeclaredFields(src.getClass(), src, dest, ignoreFields);
+    ModificationStatus modificationStatus = ModificationStatus.NONE;
+    for (final CopyField copyField : getCopyFields(src.getClass())) {
+      if (hasIgnoreFields == true && ArrayUtils.contains(ignoreFields, copyField.name) == true) {
+        continue;
+      }
+      final ModificationStatus st;
+      try {
+        st = copyField.copy(src, dest);
+      } catch (final IllegalAccessException ex) {
+        throw new InternalError("Unexpected IllegalAccessException: " + ex.getMessage());
+      }
+      if (st == ModificationStatus.NONE) {
+        continue;
+      }
+      if (modifiedFields != null) {
+        modifiedFields.add(copyField.name);
+      }
+      modificationStatus = getModificationStatus(modificationStatus, st);
+    }
+    return modificationStatus;
   }
 
   /**
-   * 
-   * @param srcClazz
-   * @param src
-   * @param dest
-   * @param ignoreFields
-   * @return true, if any modifications are detected, otherwise false;
+   * The fields to copy of the given class and all super classes (fields of the class first). They're determined only once per class.
+   * @param clazz
    */
-  @SuppressWarnings("unchecked")
-  private static ModificationStatus copyDeclaredFields(final Class< ? > srcClazz, final BaseDO< ? > src, final BaseDO< ? > dest,
-      final String... ignoreFields)
+  private static CopyField[] getCopyFields(final Class< ? > clazz)
   {
-    final Field[] fields = srcClazz.getDeclaredFields();
-    AccessibleObject.setAccessible(fields, true);
-    ModificationStatus modificationStatus = null;
-    for (final Field field : fields) {
-      final String fieldName = field.getName();
-      if ((ignoreFields != null && ArrayUtils.contains(ignoreFields, fieldName) == true) || accept(field) == false) {
-        continue;
+    CopyField[] copyFields = copyFieldsCache.get(clazz);
+    if (copyFields != null) {
+      return copyFields;
+    }
+    final List<CopyField> list = new ArrayList<CopyField>();
+    for (Class< ? > cls = clazz; cls != null; cls = cls.getSuperclass()) {
+      final Field[] fields = cls.getDeclaredFields();
+      AccessibleObject.setAccessible(fields, true);
+      for (final Field field : fields) {
+        if (accept(field) == true) {
+          list.add(new CopyField(field));
+        }
       }
-      try {
-        final Object srcFieldValue = field.get(src);
-        final Object destFieldValue = field.get(dest);
-        if (field.getType().isPrimitive() == true) {
-          if (ObjectUtils.equals(destFieldValue, srcFieldValue) == false) {
-            field.set(dest, srcFieldValue);
-            modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
-          }
-          continue;
-        } else if (srcFieldValue == null) {
-          if (field.getType() == String.class) {
-            if (StringUtils.isNotEmpty((String) destFieldValue) == true) {
-              field.set(dest, null);
-              modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
-            }
-          } else if (destFieldValue != null) {
+    }
+    copyFields = list.toArray(new CopyField[list.size()]);
+    copyFieldsCache.put(clazz, copyFields);
+    return copyFields;
+  }
+
+  /**
+   * Copies the value of a single field. The type dependent handling (except the checks of the field value type) is determined once.
+   */
+  private static class CopyField
+  {
+    private final Field field;
+
+    private final String name;
+
+    private final boolean primitive;
+
+    private final boolean string;
+
+    private final boolean autoUpdateCollectionEntries;
+
+    private CopyField(final Field field)
+    {
+      this.field = field;
+      this.name = field.getName();
+      this.primitive = field.getType().isPrimitive();
+      this.string = field.getType() == String.class;
+      final PFPersistancyBehavior behavior = field.getAnnotation(PFPersistancyBehavior.class);
+      this.autoUpdateCollectionEntries = behavior != null && behavior.autoUpdateCollectionEntries() == true;
+    }
+
+    /**
+     * @return The modification status of this field (NONE if not modified).
+     */
+    @SuppressWarnings("unchecked")
+    private ModificationStatus copy(final BaseDO< ? > src, final BaseDO< ? > dest) throws IllegalAccessException
+    {
+      final Object srcFieldValue = field.get(src);
+      final Object destFieldValue = field.get(dest);
+      if (primitive == true) {
+        if (ObjectUtils.equals(destFieldValue, srcFieldValue) == false) {
+          field.set(dest, srcFieldValue);
+          return getModificationStatus(ModificationStatus.NONE, src, name);
+        }
+      } else if (srcFieldValue == null) {
+        if (string == true) {
+          if (StringUtils.isNotEmpty((String) destFieldValue) == true) {
             field.set(dest, null);
-            modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
+            return getModificationStatus(ModificationStatus.NONE, src, name);
+          }
+        } else if (destFieldValue != null) {
+          field.set(dest, null);
+          return getModificationStatus(ModificationStatus.NONE, src, name);
+        } else {
+          // dest was already null
+        }
+      } else if (srcFieldValue instanceof Collection) {
+        Collection<Object> destColl = (Collection<Object>) destFieldValue;
+        final Collection<Object> srcColl = (Collection<Object>) srcFieldValue;
+        final Collection<Object> toRemove = new ArrayList<Object>();
+        ModificationStatus modificationStatus = ModificationStatus.NONE;
+        if (srcColl != null && destColl == null) {
+          if (srcColl instanceof TreeSet) {
+            destColl = new TreeSet<Object>();
+          } else if (srcColl instanceof HashSet) {
+            destColl = new HashSet<Object>();
+          } else if (srcColl instanceof List) {
+            destColl = new ArrayList<Object>();
+          } else if (srcColl instanceof PersistentSet) {
+            destColl = new HashSet<Object>();
           } else {
-            // dest was already null
+            log.error("Unsupported collection type: " + srcColl.getClass().getName());
           }
-        } else if (srcFieldValue instanceof Collection) {
-          Collection<Object> destColl = (Collection<Object>) destFieldValue;
-          final Collection<Object> srcColl = (Collection<Object>) srcFieldValue;
-          final Collection<Object> toRemove = new ArrayList<Object>();
-          if (srcColl != null && destColl == null) {
-            if (srcColl instanceof TreeSet) {
-              destColl = new TreeSet<Object>();
-            } else if (srcColl instanceof HashSet) {
-              destColl = new HashSet<Object>();
-            } else if (srcColl instanceof List) {
-              destColl = new ArrayList<Object>();
-            } else if (srcColl instanceof PersistentSet) {
-              destColl = new HashSet<Object>();
-            } else {
-              log.error("Unsupported collection type: " + srcColl.getClass().getName());
-            }
-            field.set(dest, destColl);
+          field.set(dest, destColl);
+        }
+        for (final Object o : destColl) {
+          if (srcColl.contains(o) == false) {
+            toRemove.add(o);
           }
-          for (final Object o : destColl) {
-            if (srcColl.contains(o) == false) {
-              toRemove.add(o);
-            }
+        }
+        for (final Object o : toRemove) {
+          if (log.isDebugEnabled() == true) {
+            log.debug("Removing collection entry: " + o);
           }
-          for (final Object o : toRemove) {
+          destColl.remove(o);
+          modificationStatus = getModificationStatus(modificationStatus, src, name);
+        }
+        for (final Object srcEntry : srcColl) {
+          if (destColl.contains(srcEntry) == false) {
             if (log.isDebugEnabled() == true) {
-              log.debug("Removing collection entry: " + o);
+              log.debug("Adding new collection entry: " + srcEntry);
             }
-            destColl.remove(o);
-            modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
-          }
-          for (final Object srcEntry : srcColl) {
-            if (destColl.contains(srcEntry) == false) {
-              if (log.isDebugEnabled() == true) {
-                log.debug("Adding new collection entry: " + srcEntry);
+            destColl.add(srcEntry);
+            modificationStatus = getModificationStatus(modificationStatus, src, name);
+          } else if (autoUpdateCollectionEntries == true && srcEntry instanceof BaseDO) {
+            BaseDO< ? > destEntry = null;
+            for (final Object entry : destColl) {
+              if (entry.equals(srcEntry) == true) {
+                destEntry = (BaseDO< ? >) entry;
+                break;
               }
-              destColl.add(srcEntry);
-              modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
-            } else if (srcEntry instanceof BaseDO) {
-              final PFPersistancyBehavior behavior = field.getAnnotation(PFPersistancyBehavior.class);
-              if (behavior != null && behavior.autoUpdateCollectionEntries() == true) {
-                BaseDO< ? > destEntry = null;
-                for (final Object entry : destColl) {
-                  if (entry.equals(srcEntry) == true) {
-                    destEntry = (BaseDO< ? >) entry;
-                    break;
-                  }
-                }
-                Validate.notNull(destEntry);
-                final ModificationStatus st = destEntry.copyValuesFrom((BaseDO< ? >) srcEntry);
-                modificationStatus = getModificationStatus(modificationStatus, st);
-              }
-            }
-          }
-        } else if (srcFieldValue instanceof BaseDO) {
-          final Serializable srcFieldValueId = HibernateUtils.getIdentifier((BaseDO< ? >) srcFieldValue);
-          if (srcFieldValueId != null) {
-            if (destFieldValue == null || ObjectUtils.equals(srcFieldValueId, ((BaseDO< ? >) destFieldValue).getId()) == false) {
-              field.set(dest, srcFieldValue);
-              modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
-            }
-          } else {
-            log.error("Can't get id though can't copy the BaseDO (see error message above about HHH-3502).");
-          }
-        } else if (srcFieldValue instanceof java.sql.Date) {
-          if (destFieldValue == null) {
-            field.set(dest, srcFieldValue);
-            modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
-          } else {
-            final DayHolder srcDay = new DayHolder((Date) srcFieldValue);
-            final DayHolder destDay = new DayHolder((Date) destFieldValue);
-            if (srcDay.isSameDay(destDay) == false) {
-              field.set(dest, srcDay.getSQLDate());
-              modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
             }
+            Validate.notNull(destEntry);
+            final ModificationStatus st = destEntry.copyValuesFrom((BaseDO< ? >) srcEntry);
+            modificationStatus = getModificationStatus(modificationStatus, st);
           }
-        } else if (srcFieldValue instanceof Date) {
-          if (destFieldValue == null || ((Date) srcFieldValue).getTime() != ((Date) destFieldValue).getTime()) {
+        }
+        return modificationStatus;
+      } else if (srcFieldValue instanceof BaseDO) {
+        final Serializable srcFieldValueId = HibernateUtils.getIdentifier((BaseDO< ? >) srcFieldValue);
+        if (srcFieldValueId != null) {
+          if (destFieldValue == null || ObjectUtils.equals(srcFieldValueId, ((BaseDO< ? >) destFieldValue).getId()) == false) {
             field.set(dest, srcFieldValue);
-            modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
+            return getModificationStatus(ModificationStatus.NONE, src, name);
           }
-        } else if (srcFieldValue instanceof BigDecimal) {
-          if (destFieldValue == null || ((BigDecimal) srcFieldValue).compareTo((BigDecimal) destFieldValue) != 0) {
-            field.set(dest, srcFieldValue);
-            modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
+        } else {
+          log.error("Can't get id though can't copy the BaseDO (see error message above about HHH-3502).");
+        }
+      } else if (srcFieldValue instanceof java.sql.Date) {
+        if (destFieldValue == null) {
+          field.set(dest, srcFieldValue);
+          return getModificationStatus(ModificationStatus.NONE, src, name);
+        } else {
+          final DayHolder srcDay = new DayHolder((Date) srcFieldValue);
+          final DayHolder destDay = new DayHolder((Date) destFieldValue);
+          if (srcDay.isSameDay(destDay) == false) {
+            field.set(dest, srcDay.getSQLDate());
+            return getModificationStatus(ModificationStatus.NONE, src, name);
           }
-        } else if (ObjectUtils.equals(destFieldValue, srcFieldValue) == false) {
+        }
+      } else if (srcFieldValue instanceof Date) {
+        if (destFieldValue == null || ((Date) srcFieldValue).getTime() != ((Date) destFieldValue).getTime()) {
           field.set(dest, srcFieldValue);
-          modificationStatus = getModificationStatus(modificationStatus, src, fieldName);
+          return getModificationStatus(ModificationStatus.NONE, src, name);
         }
-      } catch (final IllegalAccessException ex) {
-        throw new InternalError("Unexpected IllegalAccessException: " + ex.getMessage());
+      } else if (srcFieldValue instanceof BigDecimal) {
+        if (destFieldValue == null || ((BigDecimal) srcFieldValue).compareTo((BigDecimal) destFieldValue) != 0) {
+          field.set(dest, srcFieldValue);
+          return getModificationStatus(ModificationStatus.NONE, src, name);
+        }
+      } else if (ObjectUtils.equals(destFieldValue, srcFieldValue) == false) {
+        field.set(dest, srcFieldValue);
+        return getModificationStatus(ModificationStatus.NONE, src, name);
       }
+      return ModificationStatus.NONE;
     }
-    final Class< ? > superClazz = srcClazz.getSuperclass();
-    if (superClazz != null) {
-      final ModificationStatus st = copyDeclaredFields(superClazz, src, dest, ignoreFields);
-      modificationStatus = getModificationStatus(modificationStatus, st);
-    }
-    return modificationStatus;
   }
 
   protected static ModificationStatus getModificationStatus(final ModificationStatus currentStatus, final BaseDO< ? > src,
@@ -0,0 +1,212 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.projectforge.common.AbstractCache;
+
+/**
+ * Holds {@link AutocompletionIndex} objects by key (e. g. user id, calendar id or property name). An index is loaded on first access by the
+ * given {@link Loader} and updated by the daos after saving, modifying or deleting objects (only new or changed values are counted). The
+ * number of indexes is bounded, the least recently used indexes are removed first. All indexes are dropped after the expire time.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class AutocompletionCache<K> extends AbstractCache
+{
+  public interface Loader<K>
+  {
+    /**
+     * Adds all values of the given key to the given index (usually loaded by one data base query).
+     */
+    public void load(K key, AutocompletionIndex index);
+  }
+
+  private final String name;
+
+  private final Loader<K> loader;
+
+  private final Map<K, AutocompletionIndex> indexes;
+
+  private final AtomicLong loadCounter = new AtomicLong();
+
+  private final AtomicLong queryCounter = new AtomicLong();
+
+  /**
+   * @param name The name of this cache (used by the statistics).
+   * @param maxSize The maximum number of indexes (e. g. users).
+   * @param loader
+   */
+  public AutocompletionCache(final String name, final int maxSize, final Loader<K> loader)
+  {
+    this.name = name;
+    this.loader = loader;
+    this.indexes = new LinkedHashMap<K, AutocompletionIndex>(16, 0.75f, true) {
+      private static final long serialVersionUID = 2207398390722165736L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<K, AutocompletionIndex> eldest)
+      {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @param key
+   * @return The index of the given key (loaded if not yet cached).
+   */
+  public AutocompletionIndex getIndex(final K key)
+  {
+    checkRefresh();
+    queryCounter.incrementAndGet();
+    AutocompletionIndex index;
+    synchronized (indexes) {
+      index = indexes.get(key);
+    }
+    if (index != null) {
+      return index;
+    }
+    index = new AutocompletionIndex();
+    loader.load(key, index);
+    loadCounter.incrementAndGet();
+    synchronized (indexes) {
+      final AutocompletionIndex other = indexes.get(key);
+      if (other != null) {
+        // Loaded concurrently by another thread.
+        return other;
+      }
+      indexes.put(key, index);
+    }
+    return index;
+  }
+
+  /**
+   * @param keys
+   * @return The indexes of the given keys.
+   */
+  public List<AutocompletionIndex> getIndexes(final Collection<K> keys)
+  {
+    final List<AutocompletionIndex> list = new ArrayList<AutocompletionIndex>(keys.size());
+    for (final K key : keys) {
+      list.add(getIndex(key));
+    }
+    return list;
+  }
+
+  /**
+   * Adds the given value to the index of the given key, if this index is already loaded.
+   * @param key
+   * @param value
+   * @param usage
+   */
+  public void add(final K key, final String value, final Date usage)
+  {
+    final AutocompletionIndex index;
+    synchronized (indexes) {
+      index = indexes.get(key);
+    }
+    if (index != null) {
+      index.add(value, usage);
+    }
+  }
+
+  /**
+   * Decrements the frequency of the given value in the index of the given key, if this index is already loaded.
+   * @param key
+   * @param value
+   * @see AutocompletionIndex#remove(String)
+   */
+  public void removeValue(final K key, final String value)
+  {
+    final AutocompletionIndex index;
+    synchronized (indexes) {
+      index = indexes.get(key);
+    }
+    if (index != null) {
+      index.remove(value);
+    }
+  }
+
+  /**
+   * Removes the index of the given key (it will be reloaded on next access).
+   * @param key
+   */
+  public void remove(final K key)
+  {
+    synchronized (indexes) {
+      indexes.remove(key);
+    }
+  }
+
+  /**
+   * Removes all indexes (they will be reloaded on next access).
+   */
+  public void removeAll()
+  {
+    synchronized (indexes) {
+      indexes.clear();
+    }
+  }
+
+  /**
+   * @return The keys of all loaded indexes.
+   */
+  public List<K> getKeys()
+  {
+    synchronized (indexes) {
+      return new ArrayList<K>(indexes.keySet());
+    }
+  }
+
+  /**
+   * @see org.projectforge.common.AbstractCache#getStatistics()
+   */
+  @Override
+  public String getStatistics()
+  {
+    final int size;
+    synchronized (indexes) {
+      size = indexes.size();
+    }
+    return super.getStatistics() + ", autocompletion=" + name + ", indexes=" + size + ", loads=" + loadCounter.get() + ", queries="
+        + queryCounter.get();
+  }
+
+  /**
+   * Drops all indexes.
+   * @see org.projectforge.common.AbstractCache#refresh()
+   */
+  @Override
+  protected void refresh()
+  {
+    removeAll();
+  }
+}
@@ -0,0 +1,207 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The distinct values of one property of a user, calendar etc. with their frequency and time of last usage. Used for autocompletion
+ * without data base queries, see {@link AutocompletionCache}. The values are matched by substring (case insensitive), the matches are
+ * ordered by frequency and time of last usage (most frequent and most recent used first).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class AutocompletionIndex
+{
+  private static class Entry
+  {
+    private final String value;
+
+    private final String lowerCaseValue;
+
+    private int count;
+
+    private long lastUsage;
+
+    private Entry(final String value)
+    {
+      this.value = value;
+      this.lowerCaseValue = value.toLowerCase();
+    }
+  }
+
+  private static final Comparator<Entry> WEIGHT_COMPARATOR = new Comparator<Entry>() {
+    public int compare(final Entry o1, final Entry o2)
+    {
+      if (o1.count != o2.count) {
+        return o1.count > o2.count ? -1 : 1;
+      }
+      if (o1.lastUsage != o2.lastUsage) {
+        return o1.lastUsage > o2.lastUsage ? -1 : 1;
+      }
+      return o1.value.compareTo(o2.value);
+    }
+  };
+
+  private static final Comparator<Entry> RECENCY_COMPARATOR = new Comparator<Entry>() {
+    public int compare(final Entry o1, final Entry o2)
+    {
+      if (o1.lastUsage != o2.lastUsage) {
+        return o1.lastUsage > o2.lastUsage ? -1 : 1;
+      }
+      return o1.value.compareTo(o2.value);
+    }
+  };
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  /**
+   * Adds the given value or increments the frequency of the value if already exist.
+   * @param value Blank values are ignored.
+   * @param usage The time of usage (e. g. last update of the object), may be null.
+   */
+  public synchronized void add(final String value, final Date usage)
+  {
+    if (StringUtils.isBlank(value) == true) {
+      return;
+    }
+    final Entry entry = getOrCreate(value);
+    entry.count++;
+    if (usage != null && usage.getTime() > entry.lastUsage) {
+      entry.lastUsage = usage.getTime();
+    }
+  }
+
+  /**
+   * Decrements the frequency of the given value, the value is removed if not in use anymore.
+   * @param value Blank values and values not contained by this index are ignored.
+   */
+  public synchronized void remove(final String value)
+  {
+    if (StringUtils.isBlank(value) == true) {
+      return;
+    }
+    final Entry entry = entries.get(value);
+    if (entry == null) {
+      return;
+    }
+    if (--entry.count <= 0) {
+      entries.remove(value);
+    }
+  }
+
+  /**
+   * @param searchString
+   * @return All values containing the given search string (case insensitive) ordered by frequency and recency.
+   */
+  public List<String> find(final String searchString)
+  {
+    final String search = StringUtils.lowerCase(searchString);
+    final List<Entry> matches = new ArrayList<Entry>();
+    synchronized (this) {
+      for (final Entry entry : entries.values()) {
+        if (search == null || entry.lowerCaseValue.contains(search) == true) {
+          matches.add(entry);
+        }
+      }
+      Collections.sort(matches, WEIGHT_COMPARATOR);
+    }
+    return getValues(matches, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param maxResults
+   * @return The most recent used values.
+   */
+  public List<String> getRecent(final int maxResults)
+  {
+    final List<Entry> list;
+    synchronized (this) {
+      list = new ArrayList<Entry>(entries.values());
+      Collections.sort(list, RECENCY_COMPARATOR);
+    }
+    return getValues(list, maxResults);
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * @param indexes
+   * @param searchString
+   * @return The distinct values of all given indexes containing the given search string, ordered by frequency and recency over all indexes.
+   */
+  public static List<String> find(final Collection<AutocompletionIndex> indexes, final String searchString)
+  {
+    if (indexes.size() == 1) {
+      return indexes.iterator().next().find(searchString);
+    }
+    final AutocompletionIndex merged = new AutocompletionIndex();
+    final String search = StringUtils.lowerCase(searchString);
+    for (final AutocompletionIndex index : indexes) {
+      synchronized (index) {
+        for (final Entry entry : index.entries.values()) {
+          if (search == null || entry.lowerCaseValue.contains(search) == true) {
+            final Entry mergedEntry = merged.getOrCreate(entry.value);
+            mergedEntry.count += entry.count;
+            mergedEntry.lastUsage = Math.max(mergedEntry.lastUsage, entry.lastUsage);
+          }
+        }
+      }
+    }
+    return merged.find(null);
+  }
+
+  private Entry getOrCreate(final String value)
+  {
+    Entry entry = entries.get(value);
+    if (entry == null) {
+      entry = new Entry(value);
+      entries.put(value, entry);
+    }
+    return entry;
+  }
+
+  private static List<String> getValues(final List<Entry> entries, final int maxResults)
+  {
+    final List<String> result = new ArrayList<String>(Math.min(entries.size(), maxResults));
+    for (final Entry entry : entries) {
+      if (result.size() >= maxResults) {
+        break;
+      }
+      result.add(entry.value);
+    }
+    return result;
+  }
+}
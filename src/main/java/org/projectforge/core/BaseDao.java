@@ -32,6 +32,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -43,6 +44,7 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.PredicateUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.ClassUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
@@ -51,8 +53,9 @@ import org.apache.lucene.util.Version;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
-import org.hibernate.Query;
 import org.hibernate.Session;
+import org.hibernate.criterion.CriteriaSpecification;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.search.FullTextQuery;
@@ -168,6 +171,12 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
    */
   protected boolean supportAfterUpdate = false;
 
+  /**
+   * The values of the properties used by {@link #getAutocompletion(String, String)}, the key is the property name. Created on first
+   * usage.
+   */
+  private AutocompletionCache<String> autocompletionCache;
+
   /**
    * Get all declared hibernate search fields. These fields are defined over annotations in the database object class. The names are the
    * property names or, if defined the name declared in the annotation of a field. <br/>
@@ -330,6 +339,25 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return list;
   }
 
+  /**
+   * Loads the objects with the given id's with one query. Objects without select access of the logged-in user are omitted.
+   * @param idList
+   * @return The found objects (in any order).
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> getListByIds(final Collection< ? extends Serializable> idList)
+  {
+    if (accessChecker.isRestrictedUser() == true) {
+      return null;
+    }
+    checkLoggedInUserSelectAccess();
+    final List<O> list = internalLoad(idList);
+    if (list == null || list.size() == 0) {
+      return list;
+    }
+    return extractEntriesWithSelectAccess(list);
+  }
+
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<O> internalLoad(final Collection< ? extends Serializable> idList)
   {
@@ -543,6 +571,121 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return list;
   }
 
+  /**
+   * Gets the query filter for paged lists: sorting, offset and limit are done by the data base and only the entries of the displayed page
+   * are loaded.
+   * @param filter
+   * @return The query filter or null if paging isn't supported by this dao or for the given filter (e. g. for full text searches).
+   * @see #buildPagedQueryFilter(BaseSearchFilter)
+   * @see #getPagedList(QueryFilter, String, boolean, int, int)
+   */
+  public QueryFilter getPagedQueryFilter(final BaseSearchFilter filter)
+  {
+    if (filter == null
+        || filter.isSearchNotEmpty() == true
+        || filter.isUseModificationFilter() == true
+        || filter.isSearchHistory() == true) {
+      // Full text and history searches can't be done by a single criteria query.
+      return null;
+    }
+    final QueryFilter queryFilter = buildPagedQueryFilter(filter);
+    if (queryFilter == null) {
+      return null;
+    }
+    if (filter.isIgnoreDeleted() == false) {
+      queryFilter.add(Restrictions.eq("deleted", filter.isDeleted()));
+    }
+    if (filter.getModifiedSince() != null) {
+      queryFilter.add(Restrictions.ge("lastUpdate", filter.getModifiedSince()));
+    }
+    return queryFilter;
+  }
+
+  /**
+   * Override this method for supporting paged list pages. The returned query filter must select the same entries as
+   * {@link #getList(BaseSearchFilter)} does without any post processing in memory. This includes the select access: the entries without
+   * select access of the logged-in user must be excluded by the query filter, otherwise the size of the list and any aggregates
+   * wouldn't match the displayed entries.
+   * @param filter
+   * @return null at default (paging isn't supported).
+   */
+  protected QueryFilter buildPagedQueryFilter(final BaseSearchFilter filter)
+  {
+    return null;
+  }
+
+  /**
+   * @param filter The query filter got by {@link #getPagedQueryFilter(BaseSearchFilter)}.
+   * @return The number of entries matching the given filter (the select access restrictions are part of the filter, see
+   *         {@link #buildPagedQueryFilter(BaseSearchFilter)}).
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public int getPagedListSize(final QueryFilter filter)
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    final Criteria criteria = filter.buildCountCriteria(getSession(), clazz);
+    final Number count = (Number) criteria.uniqueResult();
+    return count != null ? count.intValue() : 0;
+  }
+
+  /**
+   * Gets one page of the entries matching the given filter. The select access is checked again for the entries of this page (the filter
+   * should already exclude entries without select access, see {@link #buildPagedQueryFilter(BaseSearchFilter)}).
+   * @param filter The query filter got by {@link #getPagedQueryFilter(BaseSearchFilter)}.
+   * @param sortProperty The property to sort by (nullable), e. g. "startTime" or "task.title". For nested properties left outer joins are
+   *          used.
+   * @param ascending
+   * @param first The index of the first entry.
+   * @param count The maximum number of entries.
+   * @return The entries of the page.
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> getPagedList(final QueryFilter filter, final String sortProperty, final boolean ascending, final int first,
+      final int count)
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return null;
+    }
+    if (StringUtils.isNotBlank(sortProperty) == true) {
+      final String property = createSortAliases(filter, sortProperty);
+      filter.addOrderFirst(ascending == true ? Order.asc(property) : Order.desc(property));
+    }
+    filter.setFirstResult(first);
+    filter.setMaxResults(count);
+    final Criteria criteria = filter.buildCriteria(getSession(), clazz);
+    setCacheRegion(criteria);
+    @SuppressWarnings("unchecked")
+    final List<O> list = criteria.list();
+    if (list == null || list.size() == 0) {
+      return list;
+    }
+    return extractEntriesWithSelectAccess(list);
+  }
+
+  /**
+   * Creates the aliases needed for sorting by nested properties, e. g. "kost2.projekt.name" results in the aliases sort_kost2 and
+   * sort_kost2_projekt and the property sort_kost2_projekt.name is returned.
+   */
+  private String createSortAliases(final QueryFilter filter, final String sortProperty)
+  {
+    final String[] path = StringUtils.split(sortProperty, '.');
+    if (path.length <= 1) {
+      return sortProperty;
+    }
+    String alias = "sort_" + path[0];
+    filter.createAlias(path[0], alias, CriteriaSpecification.LEFT_JOIN);
+    for (int i = 1; i < path.length - 1; i++) {
+      final String association = alias + "." + path[i];
+      alias = alias + "_" + path[i];
+      filter.createAlias(association, alias, CriteriaSpecification.LEFT_JOIN);
+    }
+    return alias + "." + path[path.length - 1];
+  }
+
   /**
    * @see #modifySearchString(String, boolean)
    */
@@ -961,6 +1104,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     Search.getFullTextSession(session).flushToIndexes();
     afterSaveOrModify(obj);
     afterSave(obj);
+    addAutocompletionValues(obj);
     return id;
   }
 
@@ -1070,6 +1214,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
       dbObjBackup = null;
     }
     final boolean wantsReindexAllDependentObjects = wantsReindexAllDependentObjects(obj, dbObj);
+    updateAutocompletionValues(obj, dbObj);
     // Copy all values of modified user to database object, ignore field 'deleted'.
     final ModificationStatus result = copyValues(obj, dbObj, "deleted");
     if (result != ModificationStatus.NONE) {
@@ -1156,6 +1301,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     onDelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     onSaveOrModify(obj);
+    removeAutocompletionValues(dbObj);
     copyValues(obj, dbObj, "deleted"); // If user has made additional changes.
     dbObj.setDeleted(true);
     dbObj.setLastUpdate();
@@ -1190,6 +1336,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     onDelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     checkLoggedInUserDeleteAccess(obj, dbObj);
+    removeAutocompletionValues(dbObj);
     getHibernateTemplate().delete(dbObj);
     log.info("Object deleted: " + obj.toString());
     afterSaveOrModify(obj);
@@ -1230,6 +1377,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     Search.getFullTextSession(session).flushToIndexes();
     afterSaveOrModify(obj);
     afterUndelete(obj);
+    addAutocompletionValues(obj);
   }
 
   /**
@@ -1565,33 +1713,103 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   }
 
   /**
-   * Only generic check access will be done. The matching entries will not be checked!
+   * Only generic check access will be done. The matching entries will not be checked!<br/>
+   * The values of a property are loaded once and held by an {@link AutocompletionIndex} (updated on save, modify and delete).
    * @param property Property of the data base entity.
    * @param searchString String the user has typed in.
-   * @return All matching entries (like search) for the given property modified or updated in the last 2 years.
+   * @return All matching entries (like search) for the given property modified or updated in the last 2 years, the most frequent and recent
+   *         used first.
    */
-  @SuppressWarnings("unchecked")
   public List<String> getAutocompletion(final String property, final String searchString)
   {
     checkLoggedInUserSelectAccess();
     if (StringUtils.isBlank(searchString) == true) {
       return null;
     }
-    final String hql = "select distinct "
-        + property
-        + " from "
-        + clazz.getSimpleName()
-        + " t where deleted=false and lastUpdate > ? and lower(t."
-        + property
-        + ") like ?) order by t."
-        + property;
-    final Query query = getSession().createQuery(hql);
-    final DateHolder dh = new DateHolder();
-    dh.add(Calendar.YEAR, -2); // Search only for entries of the last 2 years.
-    query.setDate(0, dh.getDate());
-    query.setString(1, "%" + StringUtils.lowerCase(searchString) + "%");
-    final List<String> list = query.list();
-    return list;
+    return getAutocompletionCache().getIndex(property).find(searchString);
+  }
+
+  private synchronized AutocompletionCache<String> getAutocompletionCache()
+  {
+    if (autocompletionCache == null) {
+      autocompletionCache = new AutocompletionCache<String>(clazz.getSimpleName(), 100, new AutocompletionCache.Loader<String>() {
+        @SuppressWarnings("unchecked")
+        public void load(final String property, final AutocompletionIndex index)
+        {
+          final DateHolder dh = new DateHolder();
+          dh.add(Calendar.YEAR, -2); // Search only for entries of the last 2 years.
+          final List<Object[]> list = getHibernateTemplate().find(
+              "select t." + property + ", t.lastUpdate from " + clazz.getSimpleName() + " t where deleted=false and lastUpdate > ?",
+              dh.getDate());
+          for (final Object[] entry : list) {
+            if (entry[0] instanceof String) {
+              index.add((String) entry[0], (Date) entry[1]);
+            }
+          }
+        }
+      });
+    }
+    return autocompletionCache;
+  }
+
+  /**
+   * Adds the values of the given object to the autocompletion indexes already loaded.
+   */
+  private void addAutocompletionValues(final O obj)
+  {
+    final AutocompletionCache<String> cache = this.autocompletionCache;
+    if (cache == null || obj.isDeleted() == true) {
+      return;
+    }
+    for (final String property : cache.getKeys()) {
+      final Object value = BeanHelper.getProperty(obj, property);
+      if (value instanceof String) {
+        cache.add(property, (String) value, obj.getLastUpdate());
+      }
+    }
+  }
+
+  /**
+   * Moves the values of the properties modified by the user from the old to the new values in the autocompletion indexes already loaded.
+   * Unmodified values and deleted objects aren't counted.
+   */
+  private void updateAutocompletionValues(final O obj, final O dbObj)
+  {
+    final AutocompletionCache<String> cache = this.autocompletionCache;
+    if (cache == null || dbObj.isDeleted() == true) {
+      return;
+    }
+    for (final String property : cache.getKeys()) {
+      final Object oldValue = BeanHelper.getProperty(dbObj, property);
+      final Object newValue = BeanHelper.getProperty(obj, property);
+      if (ObjectUtils.equals(oldValue, newValue) == true) {
+        continue;
+      }
+      if (oldValue instanceof String) {
+        cache.removeValue(property, (String) oldValue);
+      }
+      if (newValue instanceof String) {
+        cache.add(property, (String) newValue, new Date());
+      }
+    }
+  }
+
+  /**
+   * Removes the values of the given (deleted) object from the autocompletion indexes already loaded.
+   * @param dbObj The data base version of the object, ignored if already marked as deleted.
+   */
+  private void removeAutocompletionValues(final O dbObj)
+  {
+    final AutocompletionCache<String> cache = this.autocompletionCache;
+    if (cache == null || dbObj.isDeleted() == true) {
+      return;
+    }
+    for (final String property : cache.getKeys()) {
+      final Object value = BeanHelper.getProperty(dbObj, property);
+      if (value instanceof String) {
+        cache.removeValue(property, (String) value);
+      }
+    }
   }
 
   /**
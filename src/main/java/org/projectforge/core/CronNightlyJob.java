@@ -24,6 +24,7 @@
 package org.projectforge.core;
 
 import org.projectforge.meb.MebJobExecutor;
+import org.projectforge.task.TaskTree;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
@@ -40,6 +41,8 @@ public class CronNightlyJob extends AbstractCronJob
 
   private MebJobExecutor mebJobExecutor;
 
+  private TaskTree taskTree;
+
   public void execute(final JobExecutionContext context) throws JobExecutionException
   {
     log.info("Nightly job started.");
@@ -58,6 +61,14 @@ public class CronNightlyJob extends AbstractCronJob
         log.error("While executing MEB job: " + ex.getMessage(), ex);
       }
     }
+    if (taskTree != null) {
+      try {
+        // The total durations of the tasks are maintained by delta, correct any drift:
+        taskTree.reconcileTotalDurations();
+      } catch (final Throwable ex) {
+        log.error("While reconciling total durations of task tree: " + ex.getMessage(), ex);
+      }
+    }
     log.info("Nightly job job finished.");
   }
 
@@ -66,5 +77,6 @@ public class CronNightlyJob extends AbstractCronJob
   {
     hibernateSearchReindexer = (HibernateSearchReindexer) wire(context, "hibernateSearchReindexer");
     mebJobExecutor = (MebJobExecutor) wire(context, "mebJobExecutor");
+    taskTree = (TaskTree) wire(context, "taskTree");
   }
 }
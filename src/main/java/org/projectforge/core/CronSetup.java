@@ -31,6 +31,7 @@ import org.projectforge.database.MyDatabaseUpdateDao;
 import org.projectforge.database.MyDatabaseUpdater;
 import org.projectforge.meb.MebJobExecutor;
 import org.projectforge.meb.MebPollingJob;
+import org.projectforge.task.TaskTree;
 import org.quartz.CronTrigger;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
@@ -56,6 +57,8 @@ public class CronSetup
 
   private MebJobExecutor mebJobExecutor;
 
+  private TaskTree taskTree;
+
   /**
    * Should be called at the start-up time of the application.<br/>
    * Initializes and starts the scheduler.
@@ -85,7 +88,7 @@ public class CronSetup
           "hibernateSearchReindexer", hibernateSearchReindexer);
       // run every morning at 2:30 AM (UTC): 0 30 2 * * ?
       createCron("nightlyJob", CronNightlyJob.class, "0 30 2 * * ?", cfg.getCronExpressionNightlyJob(), "hibernateSearchReindexer",
-          hibernateSearchReindexer, "mebJobExecutor", mebJobExecutor);
+          hibernateSearchReindexer, "mebJobExecutor", mebJobExecutor, "taskTree", taskTree);
       if (mebJobExecutor != null) {
         // run every 10 minutes (5, 15, 25, ...): 0 5/10 * * * ?
         createCron("mebPollingJob", MebPollingJob.class, "0 5/10 * * * ?", cfg.getCronExpressionMebPollingJob(), "mebJobExecutor",
@@ -173,4 +176,9 @@ public class CronSetup
   {
     this.mebJobExecutor = mebJobExecutor;
   }
+
+  public void setTaskTree(final TaskTree taskTree)
+  {
+    this.taskTree = taskTree;
+  }
 }
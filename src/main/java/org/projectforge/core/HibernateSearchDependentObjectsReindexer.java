@@ -23,6 +23,7 @@
 
 package org.projectforge.core;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -33,11 +34,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hibernate.CacheMode;
 import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.hibernate.search.FullTextSession;
 import org.hibernate.search.Search;
 import org.hibernate.search.annotations.ContainedIn;
@@ -62,6 +70,43 @@ public class HibernateSearchDependentObjectsReindexer
     return instance;
   }
 
+  /**
+   * Maximum number of objects waiting for re-indexing of their dependents.
+   */
+  static final int MAX_QUEUE_SIZE = 10000;
+
+  /**
+   * Maximum number of queued objects processed in one batch, also used as maximum size of the IN queries.
+   */
+  static final int BATCH_SIZE = 500;
+
+  static final long OFFER_TIMEOUT_MILLIS = 1000;
+
+  private final BlockingQueue<Key> queue = new LinkedBlockingQueue<Key>(MAX_QUEUE_SIZE);
+
+  /**
+   * Pending keys with their enqueue time stamps (for coalescing and lag measurement).
+   */
+  private final ConcurrentMap<Key, Long> pending = new ConcurrentHashMap<Key, Long>();
+
+  private final AtomicLong enqueuedCounter = new AtomicLong();
+
+  private final AtomicLong coalescedCounter = new AtomicLong();
+
+  private final AtomicLong droppedCounter = new AtomicLong();
+
+  private final AtomicLong batchCounter = new AtomicLong();
+
+  private final AtomicLong indexedCounter = new AtomicLong();
+
+  private volatile long maxLag;
+
+  private volatile long lastBatchDuration;
+
+  private volatile SessionFactory sessionFactory;
+
+  private Thread worker;
+
   /**
    * Key is the embedded class (annotated with @IndexEmbedded), value the set of all dependent objects.
    */
@@ -105,6 +150,50 @@ public class HibernateSearchDependentObjectsReindexer
     }
   }
 
+  /**
+   * Identifies a queued object by its class and id.
+   */
+  static class Key
+  {
+    final Class< ? extends BaseDO< ? >> clazz;
+
+    final Serializable id;
+
+    @SuppressWarnings("unchecked")
+    Key(final BaseDO< ? > obj)
+    {
+      this((Class< ? extends BaseDO< ? >>) obj.getClass(), obj.getId());
+    }
+
+    Key(final Class< ? extends BaseDO< ? >> clazz, final Serializable id)
+    {
+      this.clazz = clazz;
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key o = (Key) obj;
+      return clazz.equals(o.clazz) == true && id.equals(o.id) == true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * clazz.hashCode() + id.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+      return clazz.getName() + ":" + id;
+    }
+  }
+
   public HibernateSearchDependentObjectsReindexer()
   {
     final Registry registry = Registry.instance();
@@ -113,105 +202,230 @@ public class HibernateSearchDependentObjectsReindexer
     }
   }
 
+  /**
+   * Enqueues the given object for re-indexing of its dependent objects. Objects already pending in the queue are coalesced (re-indexed
+   * only once). The queue is processed by a single worker thread in batches. If the queue is full, the caller waits up to
+   * {@link #OFFER_TIMEOUT_MILLIS} before the object is dropped (a full re-index repairs the index in this case).
+   * @param hibernateTemplate
+   * @param obj
+   */
   public void reindexDependents(final HibernateTemplate hibernateTemplate, final BaseDO< ? > obj)
   {
-    new Thread() {
-      @Override
-      public void run()
-      {
-        final SessionFactory sessionFactory = hibernateTemplate.getSessionFactory();
-        final HibernateTemplate template = new HibernateTemplate(sessionFactory);
-        final Session session = template.getSessionFactory().openSession();
-        final Set<String> alreadyReindexed = new HashSet<String>();
-        final List<Entry> entryList = map.get(obj.getClass());
-        reindexDependents(template, session, obj, entryList, alreadyReindexed);
-        session.disconnect();
-        final int size = alreadyReindexed.size();
-        if (size >= 10) {
-          log.info("Re-indexing of " + size + " objects done after updating " + obj.getClass().getName() + ":" + obj.getId());
-        }
+    if (obj == null || obj.getId() == null) {
+      return;
+    }
+    if (sessionFactory == null) {
+      sessionFactory = hibernateTemplate.getSessionFactory();
+    }
+    if (enqueue(new Key(obj)) == true) {
+      ensureWorkerStarted();
+    }
+  }
+
+  /**
+   * @return true if the key was added to the queue, false if the key was already pending or the queue is full.
+   */
+  boolean enqueue(final Key key)
+  {
+    if (pending.putIfAbsent(key, System.currentTimeMillis()) != null) {
+      coalescedCounter.incrementAndGet();
+      return false;
+    }
+    try {
+      if (queue.offer(key, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) == true) {
+        enqueuedCounter.incrementAndGet();
+        return true;
       }
-    }.start();
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    pending.remove(key);
+    droppedCounter.incrementAndGet();
+    log.warn("Re-index queue is full (" + MAX_QUEUE_SIZE + " entries), dependent objects of " + key + " won't be re-indexed.");
+    return false;
   }
 
-  private void reindexDependents(final HibernateTemplate hibernateTemplate, final Session session, final BaseDO< ? > obj,
-      final List<Entry> entryList, final Set<String> alreadyReindexed)
+  private synchronized void ensureWorkerStarted()
   {
-    if (CollectionUtils.isEmpty(entryList) == true) {
-      // Nothing to do.
+    if (worker != null && worker.isAlive() == true) {
       return;
     }
-    for (final Entry entry : entryList) {
-      final RegistryEntry registryEntry = Registry.instance().getEntryByDO(entry.clazz);
-      if (registryEntry == null) {
-        // Nothing to do
-        return;
+    worker = new Thread("HibernateSearchDependentObjectsReindexer") {
+      @Override
+      public void run()
+      {
+        processQueue();
       }
-      final List< ? > result = getDependents(hibernateTemplate, registryEntry, entry, obj);
-      if (result != null) {
-        for ( Object dependentObject : result) {
-          if (dependentObject instanceof Object[]) {
-            dependentObject = ((Object[])dependentObject)[0];
-          }
-          if (dependentObject instanceof BaseDO) {
-            reindexDependents(hibernateTemplate, session, (BaseDO< ? >) dependentObject, alreadyReindexed);
+    };
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  private void processQueue()
+  {
+    final List<Key> batch = new ArrayList<Key>(BATCH_SIZE);
+    while (true) {
+      try {
+        batch.add(queue.take());
+        queue.drainTo(batch, BATCH_SIZE - 1);
+        final long now = System.currentTimeMillis();
+        for (final Key key : batch) {
+          // Remove from pending before processing: modifications while processing will be enqueued again.
+          final Long enqueued = pending.remove(key);
+          if (enqueued != null && now - enqueued > maxLag) {
+            maxLag = now - enqueued;
           }
         }
+        processBatch(batch);
+      } catch (final InterruptedException ex) {
+        log.info("Re-index worker interrupted, " + queue.size() + " pending entries left.");
+        return;
+      } catch (final Throwable ex) {
+        // Don't stop the worker if any exception while re-indexing occurs.
+        log.error("Exception encountered while re-indexing dependent objects: " + ex.getMessage(), ex);
+      } finally {
+        batch.clear();
       }
     }
   }
 
-  private void reindexDependents(final HibernateTemplate hibernateTemplate, final Session session, final BaseDO< ? > obj,
-      final Set<String> alreadyReindexed)
+  /**
+   * Re-indexes the given objects and all dependent objects (breadth-first, level by level). The objects of each level are loaded
+   * class-wise with IN queries and the index is flushed after each chunk.
+   * @param keys
+   */
+  private void processBatch(final List<Key> keys)
   {
-    if (alreadyReindexed.contains(getReindexId(obj)) == true) {
-      if (log.isDebugEnabled() == true) {
-        log.debug("Object already re-indexed (skipping): " + getReindexId(obj));
+    final long start = System.currentTimeMillis();
+    final Set<Key> alreadyReindexed = new HashSet<Key>();
+    Map<Class< ? extends BaseDO< ? >>, List<Serializable>> level = new HashMap<Class< ? extends BaseDO< ? >>, List<Serializable>>();
+    for (final Key key : keys) {
+      if (alreadyReindexed.add(key) == true) {
+        addToLevel(level, key);
       }
-      return;
     }
-    session.flush(); // Needed to flush the object changes!
-    final FullTextSession fullTextSession = Search.getFullTextSession(session);
-    fullTextSession.setFlushMode(FlushMode.AUTO);
-    fullTextSession.setCacheMode(CacheMode.IGNORE);
+    final Session session = sessionFactory.openSession();
+    try {
+      final FullTextSession fullTextSession = Search.getFullTextSession(session);
+      fullTextSession.setFlushMode(FlushMode.MANUAL);
+      fullTextSession.setCacheMode(CacheMode.IGNORE);
+      final Transaction tx = fullTextSession.beginTransaction();
+      try {
+        while (level.isEmpty() == false) {
+          final Map<Class< ? extends BaseDO< ? >>, List<Serializable>> nextLevel = //
+              new HashMap<Class< ? extends BaseDO< ? >>, List<Serializable>>();
+          for (final Map.Entry<Class< ? extends BaseDO< ? >>, List<Serializable>> mapEntry : level.entrySet()) {
+            final List<Serializable> ids = mapEntry.getValue();
+            for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+              final List<Serializable> chunk = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+              reindexChunk(fullTextSession, mapEntry.getKey(), chunk, alreadyReindexed, nextLevel);
+            }
+          }
+          level = nextLevel;
+        }
+        tx.commit();
+      } catch (final RuntimeException ex) {
+        tx.rollback();
+        throw ex;
+      }
+    } finally {
+      session.close();
+    }
+    batchCounter.incrementAndGet();
+    lastBatchDuration = System.currentTimeMillis() - start;
+    final int size = alreadyReindexed.size();
+    if (size >= 10) {
+      log.info("Re-indexing of " + size + " objects done after updating " + keys.size() + " objects in " + lastBatchDuration + "ms.");
+    }
+  }
+
+  private void reindexChunk(final FullTextSession fullTextSession, final Class< ? extends BaseDO< ? >> clazz, final List<Serializable> ids,
+      final Set<Key> alreadyReindexed, final Map<Class< ? extends BaseDO< ? >>, List<Serializable>> nextLevel)
+  {
     try {
-      BaseDO< ? > dbObj = (BaseDO< ? >) session.get(obj.getClass(), obj.getId());
-      if (dbObj == null) {
-        dbObj = (BaseDO< ? >) session.load(obj.getClass(), obj.getId());
+      final List< ? > objects = fullTextSession.createQuery("from " + clazz.getName() + " o where o.id in (:ids)")
+          .setParameterList("ids", ids).list();
+      for (final Object obj : objects) {
+        fullTextSession.index(obj);
       }
-      fullTextSession.index(dbObj);
-      alreadyReindexed.add(getReindexId(dbObj));
-      if (log.isDebugEnabled() == true) {
-        log.debug("Object added to index: " + getReindexId(dbObj));
+      indexedCounter.addAndGet(objects.size());
+      final List<Entry> entryList = map.get(clazz);
+      if (CollectionUtils.isEmpty(entryList) == false) {
+        for (final Entry entry : entryList) {
+          if (Registry.instance().getEntryByDO(entry.clazz) == null) {
+            // Nothing to do
+            continue;
+          }
+          for (Object dependentObject : getDependents(fullTextSession, entry, ids)) {
+            if (dependentObject instanceof Object[]) {
+              dependentObject = ((Object[]) dependentObject)[0];
+            }
+            if (dependentObject instanceof BaseDO) {
+              final Key key = new Key((BaseDO< ? >) dependentObject);
+              if (alreadyReindexed.add(key) == true) {
+                addToLevel(nextLevel, key);
+              } else if (log.isDebugEnabled() == true) {
+                log.debug("Object already re-indexed (skipping): " + key);
+              }
+            }
+          }
+        }
       }
+      fullTextSession.flushToIndexes();
+      fullTextSession.clear(); // Avoid loading too many objects in memory.
     } catch (final Exception ex) {
       // Don't fail if any exception while re-indexing occurs.
-      log.info("Fail to re-index " + obj.getClass() + ": " + ex.getMessage());
+      log.info("Fail to re-index " + clazz + ": " + ex.getMessage());
     }
-    // session.flush(); // clear every batchSize since the queue is processed
-    final List<Entry> entryList = map.get(obj.getClass());
-    reindexDependents(hibernateTemplate, session, obj, entryList, alreadyReindexed);
   }
 
-  private List< ? > getDependents(final HibernateTemplate hibernateTemplate, final RegistryEntry registryEntry, final Entry entry,
-      final BaseDO< ? > obj)
-      {
+  private List< ? > getDependents(final Session session, final Entry entry, final List<Serializable> ids)
+  {
     final String queryString;
     if (entry.setOrCollection == true) {
-      queryString = "from " + registryEntry.getDOClass().getName() + " o join o." + entry.fieldName + " r where r.id=?";
+      queryString = "select distinct o from " + entry.clazz.getName() + " o join o." + entry.fieldName + " r where r.id in (:ids)";
     } else {
-      queryString = "from " + registryEntry.getDOClass().getName() + " o where o." + entry.fieldName + ".id=?";
+      queryString = "from " + entry.clazz.getName() + " o where o." + entry.fieldName + ".id in (:ids)";
     }
     if (log.isDebugEnabled() == true) {
-      log.debug(queryString + ", id=" + obj.getId());
+      log.debug(queryString + ", ids=" + ids);
     }
-    final List< ? > result = hibernateTemplate.find(queryString, obj.getId());
-    return result;
-      }
+    return session.createQuery(queryString).setParameterList("ids", ids).list();
+  }
+
+  private void addToLevel(final Map<Class< ? extends BaseDO< ? >>, List<Serializable>> level, final Key key)
+  {
+    List<Serializable> ids = level.get(key.clazz);
+    if (ids == null) {
+      ids = new ArrayList<Serializable>();
+      level.put(key.clazz, ids);
+    }
+    ids.add(key.id);
+  }
+
+  /**
+   * @return The number of objects waiting in the queue.
+   */
+  public int getQueueSize()
+  {
+    return queue.size();
+  }
+
+  /**
+   * @return The age of the oldest pending entry in ms (0 if the queue is empty).
+   */
+  public long getCurrentLag()
+  {
+    final Key head = queue.peek();
+    final Long enqueued = head != null ? pending.get(head) : null;
+    return enqueued != null ? System.currentTimeMillis() - enqueued : 0;
+  }
 
-  private String getReindexId(final BaseDO< ? > obj)
+  public String getStatistics()
   {
-    return obj.getClass() + ":" + obj.getId();
+    return "HibernateSearchDependentObjectsReindexer[queueSize=" + getQueueSize() + ", currentLag=" + getCurrentLag() + "ms, maxLag="
+        + maxLag + "ms, enqueued=" + enqueuedCounter.get() + ", coalesced=" + coalescedCounter.get() + ", dropped=" + droppedCounter.get()
+        + ", batches=" + batchCounter.get() + ", indexed=" + indexedCounter.get() + ", lastBatchDuration=" + lastBatchDuration + "ms]";
   }
 
   void register(final RegistryEntry registryEntry)
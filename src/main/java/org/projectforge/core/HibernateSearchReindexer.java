@@ -23,8 +23,16 @@
 
 package org.projectforge.core;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.HibernateException;
@@ -64,6 +72,10 @@ public class HibernateSearchReindexer
 
   private HibernateTemplate hibernate;
 
+  private int threadsForEntityClasses = 4;
+
+  private volatile ReindexProgress currentProgress;
+
   public void execute()
   {
     log.info("Re-index job started.");
@@ -105,33 +117,99 @@ public class HibernateSearchReindexer
     synchronized (this) {
       try {
         currentReindexRun = new Date();
-        final StringBuffer buf = new StringBuffer();
+        final List<Class< ? >> list = new ArrayList<Class< ? >>();
         if (classes != null && classes.length > 0) {
           for (final Class< ? > cls : classes) {
-            reindex(cls, settings, buf);
+            list.add(cls);
           }
         } else {
           // Re-index: HistoryEntry:
-          reindex(HistoryEntry.class, settings, buf);
+          list.add(HistoryEntry.class);
           // Re-index of all ProjectForge entities:
           for (final RegistryEntry entry : Registry.instance().getOrderedList()) {
             if (entry.getNestedDOClasses() != null) {
               for (final Class< ? > nestedDOClass : entry.getNestedDOClasses()) {
-                reindex(nestedDOClass, settings, buf);
+                list.add(nestedDOClass);
               }
             }
-            reindex(entry.getDOClass(), settings, buf);
+            list.add(entry.getDOClass());
           }
         }
-        return buf.toString();
+        final ReindexProgress progress = new ReindexProgress();
+        this.currentProgress = progress;
+        try {
+          return reindex(list, settings, progress);
+        } finally {
+          progress.finish();
+        }
       } finally {
         currentReindexRun = null;
       }
     }
   }
 
+  /**
+   * The entity classes are independent of each other, so they're re-indexed concurrently (see threadsForEntityClasses). The result is in
+   * the order of the given classes.
+   */
+  private String reindex(final List<Class< ? >> classes, final ReindexSettings settings, final ReindexProgress progress)
+  {
+    final StringBuffer[] results = new StringBuffer[classes.size()];
+    if (classes.size() == 1 || threadsForEntityClasses <= 1) {
+      for (int i = 0; i < classes.size(); i++) {
+        results[i] = new StringBuffer();
+        reindex(classes.get(i), settings, results[i], progress.register(classes.get(i)));
+      }
+    } else {
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadsForEntityClasses, classes.size()),
+          new ThreadFactory() {
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "Reindex-" + threadCounter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      final List<Future< ? >> futures = new ArrayList<Future< ? >>();
+      for (int i = 0; i < classes.size(); i++) {
+        final Class< ? > clazz = classes.get(i);
+        final StringBuffer buf = results[i] = new StringBuffer();
+        final ReindexProgress.ClassProgress classProgress = progress.register(clazz);
+        futures.add(executor.submit(new Runnable() {
+          public void run()
+          {
+            reindex(clazz, settings, buf, classProgress);
+          }
+        }));
+      }
+      executor.shutdown();
+      for (final Future< ? > future : futures) {
+        try {
+          future.get();
+        } catch (final InterruptedException ex) {
+          log.error("Re-indexing interrupted: " + ex.getMessage(), ex);
+          Thread.currentThread().interrupt();
+          executor.shutdownNow();
+          break;
+        } catch (final ExecutionException ex) {
+          log.error("While rebuilding data-base-search-index: " + ex.getCause().getMessage(), ex.getCause());
+        }
+      }
+    }
+    final StringBuffer buf = new StringBuffer();
+    for (final StringBuffer result : results) {
+      if (result != null) {
+        buf.append(result);
+      }
+    }
+    return buf.toString();
+  }
+
   @SuppressWarnings({ "rawtypes", "unchecked"})
-  private void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf)
+  private void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf,
+      final ReindexProgress.ClassProgress progress)
   {
     // PF-378: Performance of run of full re-indexing the data-base is very slow for large data-bases
     // Single transactions needed, otherwise the full run will be very slow for large data-bases.
@@ -144,7 +222,7 @@ public class HibernateSearchReindexer
           hibernate.execute(new HibernateCallback() {
             public Object doInHibernate(final Session session) throws HibernateException
             {
-              databaseDao.reindex(clazz, settings, buf);
+              databaseDao.reindex(clazz, settings, buf, progress);
               status.setRollbackOnly();
               return null;
             }
@@ -158,11 +236,28 @@ public class HibernateSearchReindexer
     });
   }
 
+  /**
+   * @return The progress of the current re-index job or of the last finished one (null if no re-index job was started since start-up).
+   */
+  public ReindexProgress getCurrentProgress()
+  {
+    return currentProgress;
+  }
+
   public String rebuildDatabaseSearchIndices()
   {
     return rebuildDatabaseSearchIndices(new ReindexSettings());
   }
 
+  /**
+   * Number of entity classes re-indexed concurrently. Default is 4.
+   * @param threadsForEntityClasses
+   */
+  public void setThreadsForEntityClasses(final int threadsForEntityClasses)
+  {
+    this.threadsForEntityClasses = threadsForEntityClasses;
+  }
+
   public void setConfiguration(final Configuration configuration)
   {
     this.configuration = configuration;
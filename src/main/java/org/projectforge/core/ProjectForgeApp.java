@@ -28,6 +28,7 @@ import java.util.TimeZone;
 import net.fortuna.ical4j.util.CompatibilityHints;
 
 import org.projectforge.AppVersion;
+import org.projectforge.common.AbstractCache;
 import org.projectforge.common.Logger;
 import org.projectforge.common.LoggerBridgeLog4j;
 import org.projectforge.continuousdb.DatabaseSupport;
@@ -211,8 +212,9 @@ public class ProjectForgeApp
     log.info("Shutdown...");
     upAndRunning = false;
     log.info("Syncing all user preferences to database.");
-    userXmlPreferencesCache.forceReload();
+    userXmlPreferencesCache.shutdown();
     cronSetup.shutdown();
+    AbstractCache.shutdownRefreshExecutor();
     try {
       PFUserContext.setUser(MyDatabaseUpdateDao.__internalGetSystemAdminPseudoUser());
       myDatabaseUpdater.getDatabaseUpdateDao().shutdownDatabase();
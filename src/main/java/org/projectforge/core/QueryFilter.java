@@ -35,6 +35,7 @@ import org.hibernate.Session;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.projectforge.common.DateHelper;
 
 
@@ -49,6 +50,8 @@ public class QueryFilter
 
   private int maxResults = -1;
 
+  private int firstResult = -1;
+
   private String name;
 
   private String alias;
@@ -157,6 +160,19 @@ public class QueryFilter
     return this;
   }
 
+  /**
+   * The given order will be applied before all other orders already added to this filter (e. g. for sorting by a column chosen by the user
+   * whereas the default orders of the dao are used as secondary orders).
+   * @see org.hibernate.Criteria#addOrder(Order)
+   * @param order
+   * @return
+   */
+  public QueryFilter addOrderFirst(Order order)
+  {
+    filterSettings.add(0, order);
+    return this;
+  }
+
   public void setFetchMode(String associationPath, FetchMode mode)
   {
     this.associationPath = associationPath;
@@ -201,16 +217,41 @@ public class QueryFilter
     return criteria;
   }
 
+  /**
+   * Builds a criteria for counting the matching entries: orders, first result and max results are ignored.
+   * @param session
+   * @param clazz
+   * @return The criteria with row count projection.
+   */
+  public Criteria buildCountCriteria(Session session, Class< ? > clazz)
+  {
+    Criteria criteria = session.createCriteria(clazz);
+    buildCriteria(criteria, true);
+    criteria.setProjection(Projections.rowCount());
+    return criteria;
+  }
+
   private void buildCriteria(Criteria criteria)
+  {
+    buildCriteria(criteria, false);
+  }
+
+  private void buildCriteria(Criteria criteria, boolean count)
   {
     for (Object obj : filterSettings) {
       if (obj instanceof Criterion) {
         criteria.add((Criterion) obj);
       } else if (obj instanceof Order) {
-        criteria.addOrder((Order) obj);
+        if (count == false) {
+          criteria.addOrder((Order) obj);
+        }
       } else if (obj instanceof Alias) {
         Alias alias = (Alias) obj;
-        criteria.createAlias(alias.arg0, alias.arg1);
+        if (alias.joinType != null) {
+          criteria.createAlias(alias.arg0, alias.arg1, alias.joinType);
+        } else {
+          criteria.createAlias(alias.arg0, alias.arg1);
+        }
       } else if (obj instanceof QueryFilter) {
         QueryFilter filter = (QueryFilter) obj;
         Criteria subCriteria;
@@ -219,12 +260,18 @@ public class QueryFilter
         } else {
           subCriteria = criteria.createCriteria(filter.getName(), filter.getAlias());
         }
-        filter.buildCriteria(subCriteria);
+        filter.buildCriteria(subCriteria, count);
       }
     }
+    if (count == true) {
+      return;
+    }
     if (associationPath != null) {
       criteria.setFetchMode(associationPath, fetchMode);
     }
+    if (firstResult > 0) {
+      criteria.setFirstResult(firstResult);
+    }
     if (maxResults > 0) {
       criteria.setMaxResults(maxResults);
     }
@@ -239,6 +286,18 @@ public class QueryFilter
     return this;
   }
 
+  /**
+   * @see org.hibernate.Criteria#createAlias(String, String, int)
+   * @param joinType e. g. CriteriaSpecification.LEFT_JOIN
+   */
+  public QueryFilter createAlias(String arg0, String arg1, int joinType)
+  {
+    Alias alias = new Alias(arg0, arg1);
+    alias.joinType = joinType;
+    filterSettings.add(alias);
+    return this;
+  }
+
   public QueryFilter createCriteria(String name)
   {
     QueryFilter filter = new QueryFilter(name);
@@ -270,12 +329,30 @@ public class QueryFilter
     return maxResults;
   }
 
+  /**
+   * @see org.hibernate.Criteria#setFirstResult(int)
+   * @param value
+   * @return
+   */
+  public QueryFilter setFirstResult(int value)
+  {
+    this.firstResult = value;
+    return this;
+  }
+
+  public int getFirstResult()
+  {
+    return firstResult;
+  }
+
   class Alias
   {
     String arg0;
 
     String arg1;
 
+    Integer joinType;
+
     Alias(String arg0, String arg1)
     {
       this.arg0 = arg0;
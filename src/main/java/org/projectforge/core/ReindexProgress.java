@@ -0,0 +1,163 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ClassUtils;
+import org.projectforge.common.DateHelper;
+
+/**
+ * Progress of a re-index job (running or finished): number of indexed entries and the throughput of every entity class. Used by the admin
+ * page for displaying the progress of the current or last re-index job.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class ReindexProgress
+{
+  private final long startTime = System.currentTimeMillis();
+
+  private volatile long stopTime = -1;
+
+  private final List<ClassProgress> classes = new ArrayList<ClassProgress>();
+
+  public ClassProgress register(final Class< ? > clazz)
+  {
+    final ClassProgress progress = new ClassProgress(clazz);
+    synchronized (classes) {
+      classes.add(progress);
+    }
+    return progress;
+  }
+
+  public void finish()
+  {
+    stopTime = System.currentTimeMillis();
+  }
+
+  public boolean isFinished()
+  {
+    return stopTime >= 0;
+  }
+
+  /**
+   * @return The progress of all entity classes as human readable text.
+   */
+  public String getStatistics()
+  {
+    final StringBuffer buf = new StringBuffer();
+    buf.append("Re-index job started at ").append(DateHelper.formatAsUTC(new Date(startTime))).append(" (UTC), ");
+    if (isFinished() == true) {
+      buf.append("finished after ");
+    } else {
+      buf.append("running since ");
+    }
+    final long duration = (isFinished() == true ? stopTime : System.currentTimeMillis()) - startTime;
+    buf.append(duration / 1000).append("s.\n");
+    final List<ClassProgress> list;
+    synchronized (classes) {
+      list = new ArrayList<ClassProgress>(classes);
+    }
+    long total = 0;
+    for (final ClassProgress progress : list) {
+      buf.append(progress.toString()).append("\n");
+      total += progress.getIndexed();
+    }
+    buf.append("Total: ").append(total).append(" entries, ").append(getThroughput(total, duration)).append(" entries/s.");
+    return buf.toString();
+  }
+
+  private static long getThroughput(final long counter, final long millis)
+  {
+    return millis > 0 ? counter * 1000 / millis : counter;
+  }
+
+  /**
+   * Progress of one entity class. Thread safe, the counter may be incremented by multiple loader threads.
+   */
+  public static class ClassProgress
+  {
+    private final String name;
+
+    private final AtomicLong indexed = new AtomicLong();
+
+    private volatile long total = -1;
+
+    private volatile long startTime = -1;
+
+    private volatile long stopTime = -1;
+
+    private ClassProgress(final Class< ? > clazz)
+    {
+      this.name = ClassUtils.getShortClassName(clazz);
+    }
+
+    public void start(final long total)
+    {
+      this.total = total;
+      this.startTime = System.currentTimeMillis();
+    }
+
+    public void addIndexed(final long number)
+    {
+      indexed.addAndGet(number);
+    }
+
+    public void finish()
+    {
+      this.stopTime = System.currentTimeMillis();
+    }
+
+    public long getIndexed()
+    {
+      return indexed.get();
+    }
+
+    @Override
+    public String toString()
+    {
+      final StringBuffer buf = new StringBuffer();
+      buf.append(name).append(": ");
+      if (startTime < 0) {
+        return buf.append("waiting.").toString();
+      }
+      final long counter = indexed.get();
+      buf.append(counter);
+      if (total >= 0) {
+        buf.append("/").append(total);
+      }
+      final long duration = (stopTime >= 0 ? stopTime : System.currentTimeMillis()) - startTime;
+      buf.append(" entries in ").append(duration / 1000).append("s (").append(getThroughput(counter, duration)).append(" entries/s)");
+      if (stopTime >= 0) {
+        buf.append(", done.");
+      } else {
+        buf.append(", running.");
+      }
+      return buf.toString();
+    }
+  }
+}
@@ -23,14 +23,39 @@
 
 package org.projectforge.core;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
+ * The search of several areas (e. g. of the search page) may be done in parallel: {@link #submit(String, BaseSearchFilter, Class, BaseDao)}
+ * starts the search of an area in a bounded thread pool (with the user of the caller) and {@link #getResult(String, BaseDao)} waits for the
+ * result until the deadline of the area. The deadline begins with the execution of the search, the time waiting in the queue of the thread
+ * pool is limited by the same time. The data base queries of a search are limited by a transaction timeout, so a timed out search doesn't
+ * block a thread of the pool for the following searches.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -39,6 +64,46 @@ public class SearchDao extends HibernateDaoSupport
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(SearchDao.class);
 
+  /**
+   * Maximum time of a submitted search of one area (beginning with the execution). A search not started within this time after its
+   * submission is timed out, too.
+   */
+  public static final long AREA_TIMEOUT_MILLIS = 20 * 1000;
+
+  /**
+   * Submitted searches not fetched within this time are removed.
+   */
+  private static final long PENDING_SEARCH_EXPIRE_MILLIS = 5 * 60 * 1000;
+
+  private static final int SEARCH_THREADS = 4;
+
+  private final ConcurrentMap<String, PendingSearch> pendingSearches = new ConcurrentHashMap<String, PendingSearch>();
+
+  private final ConcurrentMap<String, AreaStatistics> areaStatistics = new ConcurrentHashMap<String, AreaStatistics>();
+
+  private ExecutorService executor;
+
+  private long areaTimeoutMillis = AREA_TIMEOUT_MILLIS;
+
+  private TransactionTemplate txTemplate;
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    // Read-only transactions for the searches of the thread pool:
+    this.txTemplate = new TransactionTemplate(txTemplate.getTransactionManager());
+    this.txTemplate.setReadOnly(true);
+    // Query timeout of all statements of a search:
+    this.txTemplate.setTimeout((int) (AREA_TIMEOUT_MILLIS / 1000));
+  }
+
+  /**
+   * Only for tests.
+   */
+  void setAreaTimeoutMillis(final long areaTimeoutMillis)
+  {
+    this.areaTimeoutMillis = areaTimeoutMillis;
+  }
+
   public List<SearchResultData> getEntries(final BaseSearchFilter filter, final Class clazz, final BaseDao baseDao)
   {
     if (filter == null) {
@@ -86,4 +151,275 @@ public class SearchDao extends HibernateDaoSupport
     }
     return result;
   }
+
+  /**
+   * Starts the search of the given area in the thread pool. The search is done in a read-only transaction with the context user of the
+   * caller.
+   * @param searchKey Unique key of the search of this area for getting the result (e. g. id of the search and area).
+   * @see #getEntries(BaseSearchFilter, Class, BaseDao)
+   * @see #getResult(String, BaseDao)
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked"})
+  public void submit(final String searchKey, final BaseSearchFilter filter, final Class clazz, final BaseDao baseDao)
+  {
+    removeExpiredSearches();
+    final PFUserDO user = PFUserContext.getUser();
+    final PendingSearch pendingSearch = new PendingSearch();
+    pendingSearch.future = getExecutor().submit(new Callable<List<SearchResultData>>() {
+      @Override
+      public List<SearchResultData> call() throws Exception
+      {
+        final long begin = System.currentTimeMillis();
+        pendingSearch.started = begin;
+        PFUserContext.setUser(user);
+        try {
+          final List<SearchResultData> result = (List<SearchResultData>) txTemplate.execute(new TransactionCallback() {
+            public Object doInTransaction(final TransactionStatus status)
+            {
+              return search(filter, clazz, baseDao);
+            }
+          });
+          getAreaStatistics(clazz).add(System.currentTimeMillis() - begin);
+          return result;
+        } finally {
+          PFUserContext.setUser(null);
+        }
+      }
+    });
+    final PendingSearch old = pendingSearches.put(searchKey, pendingSearch);
+    if (old != null) {
+      old.future.cancel(true);
+    }
+  }
+
+  /**
+   * Executed by the thread pool, calls {@link #getEntries(BaseSearchFilter, Class, BaseDao)}.
+   */
+  @SuppressWarnings("rawtypes")
+  List<SearchResultData> search(final BaseSearchFilter filter, final Class clazz, final BaseDao baseDao)
+  {
+    return getEntries(filter, clazz, baseDao);
+  }
+
+  /**
+   * Waits for the result of the given search until its deadline. The found objects are reloaded by the session of the caller (the objects
+   * of the search are detached).
+   * @param searchKey The key given by {@link #submit(String, BaseSearchFilter, Class, BaseDao)}.
+   * @param baseDao
+   * @return The result or null, if no search with the given key was submitted (or the result was already fetched).
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked"})
+  public AreaResult getResult(final String searchKey, final BaseDao baseDao)
+  {
+    final PendingSearch pendingSearch = pendingSearches.remove(searchKey);
+    if (pendingSearch == null) {
+      return null;
+    }
+    try {
+      while (true) {
+        final long started = pendingSearch.started;
+        final long deadline = (started > 0 ? started : pendingSearch.submitted) + areaTimeoutMillis;
+        try {
+          final List<SearchResultData> list = pendingSearch.future.get(Math.max(deadline - System.currentTimeMillis(), 0),
+              TimeUnit.MILLISECONDS);
+          return new AreaResult(attach(list, baseDao), System.currentTimeMillis() - pendingSearch.submitted, false);
+        } catch (final TimeoutException ex) {
+          if (started == 0 && pendingSearch.started > 0) {
+            // The search was started while waiting, so wait for the deadline of its execution.
+            continue;
+          }
+          pendingSearch.future.cancel(true);
+          getAreaStatistics(baseDao.clazz).addTimeout();
+          log.warn("Search of area '"
+              + baseDao.clazz.getSimpleName()
+              + "' timed out after "
+              + areaTimeoutMillis
+              + "ms"
+              + (started > 0 ? "." : " (not started, all search threads were busy)."));
+          return new AreaResult(null, System.currentTimeMillis() - pendingSearch.submitted, true);
+        }
+      }
+    } catch (final ExecutionException ex) {
+      log.error("Error while searching in area '" + baseDao.clazz.getSimpleName() + "': " + ex.getCause().getMessage(), ex.getCause());
+      return new AreaResult(null, System.currentTimeMillis() - pendingSearch.submitted, false);
+    } catch (final InterruptedException ex) {
+      pendingSearch.future.cancel(true);
+      Thread.currentThread().interrupt();
+      return new AreaResult(null, System.currentTimeMillis() - pendingSearch.submitted, false);
+    }
+  }
+
+  /**
+   * Replaces the detached objects of the result by the objects of the current session (loaded by one query). Objects without id (e. g.
+   * recurring events) are kept.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked"})
+  private List<SearchResultData> attach(final List<SearchResultData> list, final BaseDao baseDao)
+  {
+    if (list == null || list.isEmpty() == true) {
+      return list;
+    }
+    final List<Serializable> ids = new ArrayList<Serializable>();
+    for (final SearchResultData data : list) {
+      if (data.dataObject != null && data.dataObject.getId() != null) {
+        ids.add(data.dataObject.getId());
+      }
+    }
+    if (ids.isEmpty() == true) {
+      return list;
+    }
+    final Map<Serializable, ExtendedBaseDO<Integer>> map = new HashMap<Serializable, ExtendedBaseDO<Integer>>();
+    for (final Object obj : baseDao.internalLoad(ids)) {
+      final ExtendedBaseDO<Integer> entry = (ExtendedBaseDO<Integer>) obj;
+      map.put(entry.getId(), entry);
+    }
+    for (final SearchResultData data : list) {
+      if (data.dataObject != null && data.dataObject.getId() != null) {
+        final ExtendedBaseDO<Integer> entry = map.get(data.dataObject.getId());
+        if (entry != null && entry.getClass().equals(data.dataObject.getClass()) == true) {
+          data.dataObject = entry;
+        }
+      }
+    }
+    return list;
+  }
+
+  private void removeExpiredSearches()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<PendingSearch> it = pendingSearches.values().iterator();
+    while (it.hasNext() == true) {
+      final PendingSearch pendingSearch = it.next();
+      if (now - pendingSearch.submitted > PENDING_SEARCH_EXPIRE_MILLIS) {
+        pendingSearch.future.cancel(true);
+        it.remove();
+      }
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  private AreaStatistics getAreaStatistics(final Class clazz)
+  {
+    final String name = clazz.getSimpleName();
+    AreaStatistics statistics = areaStatistics.get(name);
+    if (statistics == null) {
+      areaStatistics.putIfAbsent(name, new AreaStatistics());
+      statistics = areaStatistics.get(name);
+    }
+    return statistics;
+  }
+
+  /**
+   * @return The number of searches, the average duration and the number of time-outs of every area.
+   */
+  public String getStatistics()
+  {
+    final StringBuffer buf = new StringBuffer();
+    boolean first = true;
+    for (final Map.Entry<String, AreaStatistics> entry : areaStatistics.entrySet()) {
+      if (first == true) {
+        first = false;
+      } else {
+        buf.append(", ");
+      }
+      final AreaStatistics statistics = entry.getValue();
+      final long count = statistics.counter.get();
+      buf.append(entry.getKey()).append("=[searches=").append(count).append(", averageDuration=")
+      .append(count > 0 ? statistics.duration.get() / count : -1).append("ms, timeouts=").append(statistics.timeouts.get()).append("]");
+    }
+    return buf.toString();
+  }
+
+  private synchronized ExecutorService getExecutor()
+  {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(SEARCH_THREADS, new ThreadFactory() {
+        private int counter = 0;
+
+        @Override
+        public synchronized Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "Search-" + (++counter));
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * The result of a submitted search of an area.
+   */
+  public static class AreaResult
+  {
+    private final List<SearchResultData> list;
+
+    private final long duration;
+
+    private final boolean timedOut;
+
+    private AreaResult(final List<SearchResultData> list, final long duration, final boolean timedOut)
+    {
+      this.list = list;
+      this.duration = duration;
+      this.timedOut = timedOut;
+    }
+
+    /**
+     * @return The found entries or null, if an error occured or the search timed out.
+     */
+    public List<SearchResultData> getList()
+    {
+      return list;
+    }
+
+    /**
+     * @return Time in millis since submission of the search.
+     */
+    public long getDuration()
+    {
+      return duration;
+    }
+
+    /**
+     * @return true, if the deadline of the area was exceeded (the result list is null).
+     */
+    public boolean isTimedOut()
+    {
+      return timedOut;
+    }
+  }
+
+  private static class PendingSearch
+  {
+    private volatile Future<List<SearchResultData>> future;
+
+    private final long submitted = System.currentTimeMillis();
+
+    /**
+     * Time of the begin of the execution or 0, if not yet started.
+     */
+    private volatile long started;
+  }
+
+  private static class AreaStatistics
+  {
+    private final AtomicLong counter = new AtomicLong();
+
+    private final AtomicLong duration = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private void add(final long millis)
+    {
+      counter.incrementAndGet();
+      duration.addAndGet(millis);
+    }
+
+    private void addTimeout()
+    {
+      timeouts.incrementAndGet();
+    }
+  }
 }
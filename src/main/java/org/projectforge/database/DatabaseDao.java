@@ -24,10 +24,21 @@
 package org.projectforge.database;
 
 import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.ClassUtils;
 import org.hibernate.CacheMode;
@@ -36,6 +47,7 @@ import org.hibernate.FlushMode;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
@@ -47,8 +59,8 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.core.AbstractBaseDO;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.ExtendedBaseDO;
+import org.projectforge.core.ReindexProgress;
 import org.projectforge.core.ReindexSettings;
-import org.projectforge.timesheet.TimesheetDO;
 import org.projectforge.web.calendar.DateTimeFormatter;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
 import org.springframework.transaction.annotation.Isolation;
@@ -67,9 +79,21 @@ public class DatabaseDao extends HibernateDaoSupport
 {
   private static final int MIN_REINDEX_ENTRIES_4_USE_SCROLL_MODE = 2000;
 
+  /**
+   * Full re-indexing of entity classes with more entries is done by multiple threads, each thread re-indexes an id range.
+   */
+  private static final int MIN_REINDEX_ENTRIES_4_USE_PARTITIONS = 50000;
+
+  private static final int BATCH_SIZE = 1000;
+
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(DatabaseDao.class);
 
-  private Date currentReindexRun = null;
+  /**
+   * Entity classes currently re-indexed (different entity classes may be re-indexed concurrently).
+   */
+  private final ConcurrentMap<Class< ? >, Date> currentReindexRuns = new ConcurrentHashMap<Class< ? >, Date>();
+
+  private int threadsToLoadObjects = 4;
 
   /**
    * Since yesterday and 1,000 newest entries at maximimum.
@@ -86,9 +110,19 @@ public class DatabaseDao extends HibernateDaoSupport
     }
   }
 
+  /**
+   * Number of threads used for re-indexing large entity classes (id ranges are re-indexed in parallel). Default is 4.
+   * @param threadsToLoadObjects
+   */
+  public void setThreadsToLoadObjects(final int threadsToLoadObjects)
+  {
+    this.threadsToLoadObjects = threadsToLoadObjects;
+  }
+
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public String rebuildDatabaseSearchIndices(final Class< ? > clazz, final ReindexSettings settings)
   {
+    final Date currentReindexRun = currentReindexRuns.get(clazz);
     if (currentReindexRun != null) {
       return "Another re-index job is already running. The job was started at: "
           + DateTimeFormatter.instance().getFormattedDateTime(currentReindexRun, Locale.ENGLISH, DateHelper.UTC) + " (UTC)";
@@ -101,34 +135,47 @@ public class DatabaseDao extends HibernateDaoSupport
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
   public void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf)
   {
-    if (currentReindexRun != null) {
-      buf.append(" (cancelled due to another running index-job)");
+    reindex(clazz, settings, buf, null);
+  }
+
+  /**
+   * @param clazz
+   * @param settings
+   * @param buf The result message is appended.
+   * @param progress For reporting the progress, may be null.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
+  public void reindex(final Class< ? > clazz, final ReindexSettings settings, final StringBuffer buf,
+      final ReindexProgress.ClassProgress progress)
+  {
+    if (currentReindexRuns.putIfAbsent(clazz, new Date()) != null) {
+      buf.append(ClassUtils.getShortClassName(clazz)).append(" (cancelled due to another running index-job), ");
       return;
     }
-    synchronized (this) {
-      try {
-        currentReindexRun = new Date();
-        buf.append(ClassUtils.getShortClassName(clazz));
-        final File file = new File(ConfigXml.getInstance().getApplicationHomeDir() + "/hibernate-search/" + clazz.getName() + "/write.lock");
-        if (file.exists() == true) {
-          final Date lastModified = new Date(file.lastModified());
-          final String message;
-          if (System.currentTimeMillis() - file.lastModified() > 60000) { // Last modified date is older than 60 seconds.
-            message = "(*** write.lock with last modification '"
-                + DateTimeFormatter.instance().getFormattedDateTime(lastModified)
-                + "' exists (skip re-index). May-be your admin should delete this file (see log). ***)";
-            log.error(file.getAbsoluteFile() + " " + message);
-          } else {
-            message = "(*** write.lock temporarily exists (skip re-index). ***)";
-            log.info(file.getAbsolutePath() + " " + message);
-          }
-          buf.append(" ").append(message);
+    try {
+      buf.append(ClassUtils.getShortClassName(clazz));
+      final File file = new File(ConfigXml.getInstance().getApplicationHomeDir() + "/hibernate-search/" + clazz.getName() + "/write.lock");
+      if (file.exists() == true) {
+        final Date lastModified = new Date(file.lastModified());
+        final String message;
+        if (System.currentTimeMillis() - file.lastModified() > 60000) { // Last modified date is older than 60 seconds.
+          message = "(*** write.lock with last modification '"
+              + DateTimeFormatter.instance().getFormattedDateTime(lastModified)
+              + "' exists (skip re-index). May-be your admin should delete this file (see log). ***)";
+          log.error(file.getAbsoluteFile() + " " + message);
         } else {
-          reindex(clazz, settings);
+          message = "(*** write.lock temporarily exists (skip re-index). ***)";
+          log.info(file.getAbsolutePath() + " " + message);
         }
-        buf.append(", ");
-      } finally {
-        currentReindexRun = null;
+        buf.append(" ").append(message);
+      } else {
+        reindex(clazz, settings, progress);
+      }
+      buf.append(", ");
+    } finally {
+      currentReindexRuns.remove(clazz);
+      if (progress != null) {
+        progress.finish();
       }
     }
   }
@@ -137,35 +184,41 @@ public class DatabaseDao extends HibernateDaoSupport
    * 
    * @param clazz
    */
-  private long reindex(final Class< ? > clazz, final ReindexSettings settings)
+  private long reindex(final Class< ? > clazz, final ReindexSettings settings, final ReindexProgress.ClassProgress progress)
   {
     if (settings.getLastNEntries() != null || settings.getFromDate() != null) {
       // OK, only partly re-index required:
-      return reindexObjects(clazz, settings);
+      return reindexObjects(clazz, settings, progress);
     }
     // OK, full re-index required:
-    if (isIn(clazz, HistoryEntry.class, TimesheetDO.class) == true) {
-      // MassIndexer throws LazyInitializationException for some classes, so use it only for the important classes (with most entries):
-      return reindexMassIndexer(clazz);
-    }
-    return reindexObjects(clazz, null);
-  }
-
-  private boolean isIn(final Class< ? > clazz, final Class< ? >... classes)
-  {
-    for (final Class< ? > cls : classes) {
-      if (clazz.equals(cls) == true) {
-        return true;
-      }
-    }
-    return false;
+    return reindexObjects(clazz, null, progress);
   }
 
-  private long reindexObjects(final Class< ? > clazz, final ReindexSettings settings)
+  private long reindexObjects(final Class< ? > clazz, final ReindexSettings settings, final ReindexProgress.ClassProgress progress)
   {
     final Session session = getSession();
     Criteria criteria = createCriteria(session, clazz, settings, true);
     final Long number = (Long) criteria.uniqueResult(); // Get number of objects to re-index (select count(*) from).
+    if (progress != null) {
+      progress.start(number);
+    }
+    if (settings == null) {
+      // Full re-index: remove the documents of deleted entries (formerly done by the MassIndexer). The purge is flushed immediately,
+      // otherwise it's executed at the end of the transaction and would remove the documents indexed by the partition threads:
+      final FullTextSession fullTextSession = Search.getFullTextSession(session);
+      fullTextSession.purgeAll(clazz);
+      fullTextSession.flushToIndexes();
+    }
+    if (settings == null && number > MIN_REINDEX_ENTRIES_4_USE_PARTITIONS && threadsToLoadObjects > 1) {
+      final Object[] minMax = (Object[]) session.createCriteria(clazz)
+          .setProjection(Projections.projectionList().add(Projections.min("id")).add(Projections.max("id"))).uniqueResult();
+      if (minMax != null && minMax[0] instanceof Number && minMax[1] instanceof Number) {
+        final long index = reindexPartitions(clazz, (Number) minMax[0], (Number) minMax[1], progress);
+        Search.getFullTextSession(session).getSearchFactory().optimize(clazz);
+        log.info("Re-indexing of " + index + " objects of type " + clazz.getName() + " done.");
+        return index;
+      }
+    }
     final boolean scrollMode = number > MIN_REINDEX_ENTRIES_4_USE_SCROLL_MODE ? true : false;
     log.info("Starting re-indexing of "
         + number
@@ -174,7 +227,6 @@ public class DatabaseDao extends HibernateDaoSupport
         + " with scrollMode="
         + scrollMode
         + "...");
-    final int batchSize = 1000;// NumberUtils.createInteger(System.getProperty("hibernate.search.worker.batch_size")
     final FullTextSession fullTextSession = Search.getFullTextSession(session);
     fullTextSession.setFlushMode(FlushMode.MANUAL);
     fullTextSession.setCacheMode(CacheMode.IGNORE);
@@ -184,26 +236,26 @@ public class DatabaseDao extends HibernateDaoSupport
       criteria = createCriteria(fullTextSession, clazz, settings, false);
       final ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
       while (results.next() == true) {
-        final Object obj = results.get(0);
-        if (obj instanceof ExtendedBaseDO< ? >) {
-          ((ExtendedBaseDO< ? >) obj).recalculate();
+        index(fullTextSession, results.get(0));
+        if (++index % BATCH_SIZE == 0) {
+          fullTextSession.flushToIndexes();
+          fullTextSession.clear(); // clear every batchSize since the queue is processed
+          addIndexed(progress, BATCH_SIZE);
         }
-        fullTextSession.index(obj); // index each element
-        if (index++ % batchSize == 0)
-          session.flush(); // clear every batchSize since the queue is processed
       }
+      results.close();
     } else {
       criteria = createCriteria(session, clazz, settings, false);
       final List< ? > list = criteria.list();
       for (final Object obj : list) {
-        if (obj instanceof ExtendedBaseDO< ? >) {
-          ((ExtendedBaseDO< ? >) obj).recalculate();
-        }
-        fullTextSession.index(obj);
-        if (index++ % batchSize == 0)
+        index(fullTextSession, obj);
+        if (++index % BATCH_SIZE == 0) {
           session.flush(); // clear every batchSize since the queue is processed
+          addIndexed(progress, BATCH_SIZE);
+        }
       }
     }
+    addIndexed(progress, index % BATCH_SIZE);
     final SearchFactory searchFactory = fullTextSession.getSearchFactory();
     searchFactory.optimize(clazz);
     log.info("Re-indexing of " + index + " objects of type " + clazz.getName() + " done.");
@@ -211,31 +263,122 @@ public class DatabaseDao extends HibernateDaoSupport
   }
 
   /**
-   * 
-   * @param clazz
+   * The id range is split into partitions which are re-indexed in parallel. Every partition is loaded and indexed inside its own session,
+   * so lazy associations needed by the index (embedded objects, bridges) are loaded in the session of the partition thread.
    */
-  private long reindexMassIndexer(final Class< ? > clazz)
+  private long reindexPartitions(final Class< ? > clazz, final Number minId, final Number maxId,
+      final ReindexProgress.ClassProgress progress)
   {
-    final Session session = getSession();
-    final Criteria criteria = createCriteria(session, clazz, null, true);
-    final Long number = (Long) criteria.uniqueResult(); // Get number of objects to re-index (select count(*) from).
-    log.info("Starting (mass) re-indexing of " + number + " entries of type " + clazz.getName() + "...");
-    final FullTextSession fullTextSession = Search.getFullTextSession(session);
+    final long min = minId.longValue();
+    final long max = maxId.longValue();
+    final long rangeSize = (max - min) / threadsToLoadObjects + 1;
+    log.info("Starting re-indexing of entries of type "
+        + clazz.getName()
+        + " with "
+        + threadsToLoadObjects
+        + " threads (id's "
+        + min
+        + "-"
+        + max
+        + ")...");
+    final String threadNamePrefix = "Reindex-" + ClassUtils.getShortClassName(clazz) + "-";
+    final ExecutorService executor = Executors.newFixedThreadPool(threadsToLoadObjects, new ThreadFactory() {
+      private final AtomicInteger threadCounter = new AtomicInteger();
+
+      public Thread newThread(final Runnable runnable)
+      {
+        final Thread thread = new Thread(runnable, threadNamePrefix + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+    for (long from = min; from <= max; from += rangeSize) {
+      final Serializable fromId = toIdType(from, minId);
+      final Serializable toId = toIdType(Math.min(from + rangeSize - 1, max), minId);
+      futures.add(executor.submit(new Callable<Long>() {
+        public Long call() throws Exception
+        {
+          return reindexIdRange(clazz, fromId, toId, progress);
+        }
+      }));
+    }
+    executor.shutdown();
+    long index = 0;
+    for (final Future<Long> future : futures) {
+      try {
+        index += future.get();
+      } catch (final InterruptedException ex) {
+        log.error("Re-indexing of " + clazz.getName() + " interrupted: " + ex.getMessage(), ex);
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+        break;
+      } catch (final ExecutionException ex) {
+        log.error("Exception encountered while re-indexing " + clazz.getName() + ": " + ex.getCause().getMessage(), ex.getCause());
+      }
+    }
+    return index;
+  }
+
+  private long reindexIdRange(final Class< ? > clazz, final Serializable fromId, final Serializable toId,
+      final ReindexProgress.ClassProgress progress)
+  {
+    final Session session = getSessionFactory().openSession();
     try {
-      fullTextSession.createIndexer(clazz)//
-      .batchSizeToLoadObjects(25) //
-      //.cacheMode(CacheMode.NORMAL) //
-      .threadsToLoadObjects(5) //
-      //.threadsForIndexWriter(1) //
-      .threadsForSubsequentFetching(20) //
-      .startAndWait();
-    } catch (final InterruptedException ex) {
-      log.error("Exception encountered while reindexing: " + ex.getMessage(), ex);
+      final FullTextSession fullTextSession = Search.getFullTextSession(session);
+      fullTextSession.setFlushMode(FlushMode.MANUAL);
+      fullTextSession.setCacheMode(CacheMode.IGNORE);
+      final Transaction tx = fullTextSession.beginTransaction();
+      long index = 0;
+      try {
+        final ScrollableResults results = fullTextSession.createCriteria(clazz).add(Restrictions.between("id", fromId, toId))
+            .setFetchSize(BATCH_SIZE).scroll(ScrollMode.FORWARD_ONLY);
+        while (results.next() == true) {
+          index(fullTextSession, results.get(0));
+          if (++index % BATCH_SIZE == 0) {
+            fullTextSession.flushToIndexes();
+            fullTextSession.clear(); // Avoid loading too many objects in memory.
+            addIndexed(progress, BATCH_SIZE);
+          }
+        }
+        results.close();
+        fullTextSession.flushToIndexes();
+        addIndexed(progress, index % BATCH_SIZE);
+        tx.commit();
+      } catch (final RuntimeException ex) {
+        tx.rollback();
+        throw ex;
+      }
+      if (log.isDebugEnabled() == true) {
+        log.debug("Re-indexing of " + index + " objects of type " + clazz.getName() + " (id's " + fromId + "-" + toId + ") done.");
+      }
+      return index;
+    } finally {
+      session.close();
     }
-    final SearchFactory searchFactory = fullTextSession.getSearchFactory();
-    searchFactory.optimize(clazz);
-    log.info("Re-indexing of " + number + " objects of type " + clazz.getName() + " done.");
-    return number;
+  }
+
+  private void index(final FullTextSession fullTextSession, final Object obj)
+  {
+    if (obj instanceof ExtendedBaseDO< ? >) {
+      ((ExtendedBaseDO< ? >) obj).recalculate();
+    }
+    fullTextSession.index(obj); // index each element
+  }
+
+  private void addIndexed(final ReindexProgress.ClassProgress progress, final long number)
+  {
+    if (progress != null && number > 0) {
+      progress.addIndexed(number);
+    }
+  }
+
+  private Serializable toIdType(final long value, final Number sample)
+  {
+    if (sample instanceof Integer) {
+      return (int) value;
+    }
+    return value;
   }
 
   private Criteria createCriteria(final Session session, final Class< ? > clazz, final ReindexSettings settings, final boolean rowCount)
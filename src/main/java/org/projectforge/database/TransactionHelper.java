@@ -0,0 +1,62 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Helper for updating caches after the commit of the current transaction. Caches updated before the commit keep modifications which are
+ * rolled back afterwards (e. g. by a validation error or an optimistic locking failure), and concurrent readers may cache the old data
+ * base state as current.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class TransactionHelper
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TransactionHelper.class);
+
+  /**
+   * Runs the given runnable after the commit of the current transaction. It isn't run, if the transaction is rolled back. Without an active
+   * transaction (synchronization) the runnable is run immediately.
+   * @param runnable Exceptions are logged, the transaction is already committed.
+   */
+  public static void runAfterCommit(final Runnable runnable)
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+      runnable.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit()
+      {
+        try {
+          runnable.run();
+        } catch (final RuntimeException ex) {
+          log.error("Exception encountered while running after commit: " + ex.getMessage(), ex);
+        }
+      }
+    });
+  }
+}
@@ -40,7 +40,10 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -55,12 +58,14 @@ import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
 import org.hibernate.EmptyInterceptor;
 import org.hibernate.FlushMode;
 import org.hibernate.Hibernate;
-import org.hibernate.LockOptions;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.AccessEntryDO;
 import org.projectforge.access.GroupTaskAccessDO;
 import org.projectforge.common.BeanHelper;
@@ -95,7 +100,8 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.orm.hibernate3.HibernateTemplate;
 
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.XppDriver;
 
 import de.micromata.hibernate.history.HistoryEntry;
 
@@ -108,6 +114,11 @@ public class XmlDump
 {
   private static final Logger log = Logger.getLogger(XmlDump.class);
 
+  /**
+   * Number of objects loaded with one query by {@link #verifyDump(XStreamSavingConverter)}.
+   */
+  static final int VERIFY_BATCH_SIZE = 100;
+
   private static final String XML_DUMP_FILENAME = System.getProperty("user.home") + "/tmp/database-dump.xml.gz";
 
   private HibernateTemplate hibernate;
@@ -229,6 +240,17 @@ public class XmlDump
         return super.onBeforeSave(session, obj);
       }
 
+      /**
+       * Verifies the batch directly after saving, the objects of dumps with entity references aren't kept for
+       * {@link XmlDump#verifyDump(XStreamSavingConverter)}.
+       * @see org.projectforge.database.xstream.XStreamSavingConverter#onBatchSaved(java.util.List)
+       */
+      @Override
+      protected boolean onBatchSaved(final List<Object> objects)
+      {
+        return verifyBatch(this, objects);
+      }
+
       /**
        * @see org.projectforge.database.xstream.XStreamSavingConverter#onAfterSave(java.lang.Object, java.io.Serializable)
        */
@@ -244,31 +266,26 @@ public class XmlDump
     };
     // UserRightDO is inserted on cascade while inserting PFUserDO.
     xstreamSavingConverter.appendIgnoredObjects(embeddedClasses);
-    xstreamSavingConverter.appendOrderedType(PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class, ProjektDO.class, Kost1DO.class,
-        Kost2ArtDO.class, Kost2DO.class, AuftragDO.class, //
-        RechnungDO.class, EingangsrechnungDO.class, EmployeeSalaryDO.class, KostZuweisungDO.class,//
-        UserPrefEntryDO.class, UserPrefDO.class, //
-        AccessEntryDO.class, GroupTaskAccessDO.class, ConfigurationDO.class);
-    if (plugins != null) {
-      for (final AbstractPlugin plugin : plugins) {
-        xstreamSavingConverter.appendOrderedType(plugin.getPersistentEntities());
-      }
+    for (final Class< ? > type : getOrderOfSaving(plugins)) {
+      xstreamSavingConverter.appendOrderedType(type);
     }
     Session session = null;
     try {
       final SessionFactory sessionFactory = hibernate.getSessionFactory();
       session = sessionFactory.openSession(EmptyInterceptor.INSTANCE);
       session.setFlushMode(FlushMode.AUTO);
-      final XStream xstream = new XStream(new DomDriver());
-      xstream.setMode(XStream.ID_REFERENCES);
+      final XStream xstream = createRestoreXStream(xstreamSavingConverter);
       xstreamSavingConverter.setSession(session);
-      xstream.registerConverter(xstreamSavingConverter, 10);
-      xstream.registerConverter(new UserRightIdSingleValueConverter(), 20);
-      xstream.registerConverter(new UserPrefAreaSingleValueConverter(), 19);
-      // alle Objekte Laden und speichern
-      xstream.fromXML(reader);
+      final HierarchicalStreamReader xmlReader = new XppDriver().createReader(reader);
+      if (XStreamSavingConverter.isEntityReferenceFormat(xmlReader) == true) {
+        // Objects are saved while reading, only the mapping of the ids is kept:
+        xstreamSavingConverter.restoreObjects(xstream, xmlReader);
+      } else {
+        // alle Objekte Laden und speichern
+        xstream.unmarshal(xmlReader);
 
-      xstreamSavingConverter.saveObjects();
+        xstreamSavingConverter.saveObjects();
+      }
     } catch (final Exception ex) {
       log.error(ex.getMessage(), ex);
       throw new RuntimeException(ex);
@@ -281,6 +298,42 @@ public class XmlDump
     return xstreamSavingConverter;
   }
 
+  /**
+   * The objects of these types are saved first in the given order and are written first by the dump.
+   */
+  private List<Class< ? >> getOrderOfSaving(final List<AbstractPlugin> plugins)
+  {
+    final List<Class< ? >> list = new ArrayList<Class< ? >>();
+    Collections.addAll(list, PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class, ProjektDO.class, Kost1DO.class,
+        Kost2ArtDO.class, Kost2DO.class, AuftragDO.class, //
+        RechnungDO.class, EingangsrechnungDO.class, EmployeeSalaryDO.class, KostZuweisungDO.class,//
+        UserPrefEntryDO.class, UserPrefDO.class, //
+        AccessEntryDO.class, GroupTaskAccessDO.class, ConfigurationDO.class);
+    if (plugins != null) {
+      for (final AbstractPlugin plugin : plugins) {
+        if (plugin.getPersistentEntities() != null) {
+          Collections.addAll(list, plugin.getPersistentEntities());
+        }
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @param xstreamSavingConverter Registers all read objects.
+   * @return XStream for reading a dump.
+   */
+  static XStream createRestoreXStream(final XStreamSavingConverter xstreamSavingConverter)
+  {
+    // Pull parser: the dump is read element by element instead of building the dom of the whole document first.
+    final XStream xstream = new XStream(new XppDriver());
+    xstream.setMode(XStream.ID_REFERENCES);
+    xstream.registerConverter(xstreamSavingConverter, 10);
+    xstream.registerConverter(new UserRightIdSingleValueConverter(), 20);
+    xstream.registerConverter(new UserPrefAreaSingleValueConverter(), 19);
+    return xstream;
+  }
+
   /**
    * @return Only for test cases.
    */
@@ -327,6 +380,9 @@ public class XmlDump
     };
     converter.setHibernate(hibernate);
     converter.appendIgnoredTopLevelObjects(embeddedClasses);
+    for (final Class< ? > type : getOrderOfSaving(PluginsRegistry.instance().getPlugins())) {
+      converter.appendOrderedTopLevelObjects(type);
+    }
     Writer writer = null;
     GZIPOutputStream gzipOut = null;
     try {
@@ -336,7 +392,7 @@ public class XmlDump
       } else {
         writer = new OutputStreamWriter(out, "utf-8");
       }
-      converter.dumpDatabaseToXml(writer, true); // history=false, preserveIds=true
+      converter.dumpDatabaseToXml(writer, true);
     } catch (final IOException ex) {
       log.error(ex.getMessage(), ex);
     } finally {
@@ -359,11 +415,24 @@ public class XmlDump
   }
 
   /**
-   * Verify the imported dump.
+   * Verify the imported dump. The objects are loaded from the data-base in batches of {@link #VERIFY_BATCH_SIZE} (one query per batch
+   * instead of one per object) and the session is cleared after each batch.
    * @return Number of checked objects. This number is negative if any error occurs (at least one object wasn't imported successfully).
    */
   public int verifyDump(final XStreamSavingConverter xstreamSavingConverter)
   {
+    if (xstreamSavingConverter.isEntityReferenceFormat() == true) {
+      // The objects of dumps with entity references aren't kept, they were verified batch by batch while restoring.
+      final int counter = xstreamSavingConverter.getVerifiedObjectsCounter();
+      if (counter < 0) {
+        log.fatal("*********** A inconsistency in the import was found! This may result in a data loss or corrupted data! Please retry the import. "
+            + -counter
+            + " entries checked.");
+      } else {
+        log.info("Data-base import successfully verified: " + counter + " entries checked.");
+      }
+      return counter;
+    }
     final SessionFactory sessionFactory = hibernate.getSessionFactory();
     Session session = null;
     boolean hasError = false;
@@ -377,39 +446,51 @@ public class XmlDump
         if (objects == null) {
           continue;
         }
+        final List<Object> batch = new ArrayList<Object>(VERIFY_BATCH_SIZE);
         for (final Object obj : objects) {
           if (HibernateUtils.isEntity(obj.getClass()) == false) {
             continue;
           }
-          final Serializable id = HibernateUtils.getIdentifier(obj);
-          if (id == null) {
+          if (HibernateUtils.getIdentifier(obj) == null) {
             // Can't compare this object without identifier.
             continue;
           }
-          // log.info("Testing object: " + obj);
-          final Object databaseObject = session.get(entityClass, id, LockOptions.READ);
-          Hibernate.initialize(databaseObject);
-          final boolean equals = equals(obj, databaseObject, true);
-          if (equals == false) {
-            log.error("Object not sucessfully imported! xml object=[" + obj + "], data base=[" + databaseObject + "]");
-            hasError = true;
+          batch.add(obj);
+          if (batch.size() >= VERIFY_BATCH_SIZE) {
+            hasError |= verifyBatch(session, entityClass, batch) == false;
+            counter += batch.size();
+            batch.clear();
           }
-          ++counter;
+        }
+        if (batch.isEmpty() == false) {
+          hasError |= verifyBatch(session, entityClass, batch) == false;
+          counter += batch.size();
         }
       }
+      final Map<Class< ? >, List<HistoryEntry>> historyEntries = new HashMap<Class< ? >, List<HistoryEntry>>();
       for (final HistoryEntry historyEntry : xstreamSavingConverter.getHistoryEntries()) {
+        ++counter;
         final Class< ? > type = xstreamSavingConverter.getClassFromHistoryName(historyEntry.getClassName());
-        final Object o = session.get(type, historyEntry.getEntityId());
-        if (o == null) {
-          log.error("A corrupted history entry found (entity of class '"
-              + historyEntry.getClassName()
-              + "' with id + "
-              + historyEntry.getEntityId()
-              + " not found: "
-              + historyEntry);
+        if (type == null) {
+          log.error("A corrupted history entry found (unknown entity class '" + historyEntry.getClassName() + "'): " + historyEntry);
           hasError = true;
+          continue;
+        }
+        List<HistoryEntry> batch = historyEntries.get(type);
+        if (batch == null) {
+          batch = new ArrayList<HistoryEntry>(VERIFY_BATCH_SIZE);
+          historyEntries.put(type, batch);
+        }
+        batch.add(historyEntry);
+        if (batch.size() >= VERIFY_BATCH_SIZE) {
+          hasError |= verifyHistoryBatch(session, type, batch) == false;
+          batch.clear();
+        }
+      }
+      for (final Map.Entry<Class< ? >, List<HistoryEntry>> entry : historyEntries.entrySet()) {
+        if (entry.getValue().isEmpty() == false) {
+          hasError |= verifyHistoryBatch(session, entry.getKey(), entry.getValue()) == false;
         }
-        ++counter;
       }
       if (hasError == true) {
         log.fatal("*********** A inconsistency in the import was found! This may result in a data loss or corrupted data! Please retry the import. "
@@ -426,6 +507,134 @@ public class XmlDump
     }
   }
 
+  /**
+   * Verifies a batch of restored objects (see {@link XStreamSavingConverter#onBatchSaved(List)}) in an own session.
+   * @return true if all objects were imported successfully.
+   */
+  private boolean verifyBatch(final XStreamSavingConverter xstreamSavingConverter, final List<Object> objects)
+  {
+    final Map<Class< ? >, List<Object>> entities = new HashMap<Class< ? >, List<Object>>();
+    final Map<Class< ? >, List<HistoryEntry>> historyEntries = new HashMap<Class< ? >, List<HistoryEntry>>();
+    boolean success = true;
+    for (final Object obj : objects) {
+      if (obj instanceof HistoryEntry) {
+        final HistoryEntry historyEntry = (HistoryEntry) obj;
+        final Class< ? > type = xstreamSavingConverter.getClassFromHistoryName(historyEntry.getClassName());
+        if (type == null) {
+          log.error("A corrupted history entry found (unknown entity class '" + historyEntry.getClassName() + "'): " + historyEntry);
+          success = false;
+          continue;
+        }
+        List<HistoryEntry> list = historyEntries.get(type);
+        if (list == null) {
+          list = new ArrayList<HistoryEntry>();
+          historyEntries.put(type, list);
+        }
+        list.add(historyEntry);
+      } else if (HibernateUtils.isEntity(obj.getClass()) == true && HibernateUtils.getIdentifier(obj) != null) {
+        List<Object> list = entities.get(obj.getClass());
+        if (list == null) {
+          list = new ArrayList<Object>();
+          entities.put(obj.getClass(), list);
+        }
+        list.add(obj);
+      }
+    }
+    Session session = null;
+    try {
+      session = hibernate.getSessionFactory().openSession(EmptyInterceptor.INSTANCE);
+      session.setDefaultReadOnly(true);
+      for (final Map.Entry<Class< ? >, List<Object>> entry : entities.entrySet()) {
+        success &= verifyBatch(session, entry.getKey(), entry.getValue());
+      }
+      for (final Map.Entry<Class< ? >, List<HistoryEntry>> entry : historyEntries.entrySet()) {
+        success &= verifyHistoryBatch(session, entry.getKey(), entry.getValue());
+      }
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+    return success;
+  }
+
+  /**
+   * Compares the given xml objects with their data-base objects, loaded with one query.
+   * @return true if all objects were imported successfully.
+   */
+  private boolean verifyBatch(final Session session, final Class< ? > entityClass, final List<Object> batch)
+  {
+    final Map<Serializable, Object> databaseObjects = loadBatch(session, entityClass, getIdentifiers(batch), false);
+    boolean success = true;
+    for (final Object obj : batch) {
+      final Object databaseObject = databaseObjects.get(HibernateUtils.getIdentifier(obj));
+      Hibernate.initialize(databaseObject);
+      final boolean equals = equals(obj, databaseObject, true);
+      if (equals == false) {
+        log.error("Object not sucessfully imported! xml object=[" + obj + "], data base=[" + databaseObject + "]");
+        success = false;
+      }
+    }
+    // Detach the compared objects, otherwise the session holds the whole data-base at the end.
+    session.clear();
+    return success;
+  }
+
+  /**
+   * Checks the existence of the entities of the given history entries with one query.
+   * @return true if all entities of the history entries were found.
+   */
+  private boolean verifyHistoryBatch(final Session session, final Class< ? > type, final List<HistoryEntry> batch)
+  {
+    final List<Serializable> ids = new ArrayList<Serializable>(batch.size());
+    for (final HistoryEntry historyEntry : batch) {
+      ids.add(historyEntry.getEntityId());
+    }
+    final Map<Serializable, Object> existingIds = loadBatch(session, type, ids, true);
+    boolean success = true;
+    for (final HistoryEntry historyEntry : batch) {
+      if (existingIds.containsKey(historyEntry.getEntityId()) == false) {
+        log.error("A corrupted history entry found (entity of class '"
+            + historyEntry.getClassName()
+            + "' with id + "
+            + historyEntry.getEntityId()
+            + " not found: "
+            + historyEntry);
+        success = false;
+      }
+    }
+    return success;
+  }
+
+  private List<Serializable> getIdentifiers(final List<Object> objects)
+  {
+    final List<Serializable> ids = new ArrayList<Serializable>(objects.size());
+    for (final Object obj : objects) {
+      ids.add(HibernateUtils.getIdentifier(obj));
+    }
+    return ids;
+  }
+
+  /**
+   * @param idsOnly If true, only the ids are selected (the values of the returned map are the ids themselves).
+   * @return The found data-base objects by id.
+   */
+  @SuppressWarnings("unchecked")
+  private Map<Serializable, Object> loadBatch(final Session session, final Class< ? > entityClass, final List<Serializable> ids,
+      final boolean idsOnly)
+  {
+    final String idProperty = session.getSessionFactory().getClassMetadata(entityClass).getIdentifierPropertyName();
+    final Criteria criteria = session.createCriteria(entityClass).add(Restrictions.in(idProperty, ids));
+    if (idsOnly == true) {
+      criteria.setProjection(Projections.id());
+    }
+    final Map<Serializable, Object> result = new HashMap<Serializable, Object>();
+    for (final Object obj : (List<Object>) criteria.list()) {
+      result.put(idsOnly == true ? (Serializable) obj : HibernateUtils.getIdentifier(obj), obj);
+    }
+    return result;
+  }
+
   /**
    * @param o1
    * @param o2
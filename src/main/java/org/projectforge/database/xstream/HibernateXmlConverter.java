@@ -26,19 +26,32 @@ package org.projectforge.database.xstream;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.PredicateUtils;
 import org.hibernate.EntityMode;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.CascadeStyle;
+import org.hibernate.engine.CascadingAction;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
 import org.springframework.dao.DataAccessException;
 import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.orm.hibernate3.HibernateTemplate;
@@ -49,8 +62,13 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import com.thoughtworks.xstream.MarshallingStrategy;
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.converters.reflection.PureJavaReflectionProvider;
-import com.thoughtworks.xstream.io.xml.CompactWriter;
+import com.thoughtworks.xstream.converters.reflection.ReflectionConverter;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
 import com.thoughtworks.xstream.mapper.MapperWrapper;
 
@@ -59,7 +77,6 @@ import de.micromata.hibernate.history.delta.AssociationPropertyDelta;
 import de.micromata.hibernate.history.delta.CollectionPropertyDelta;
 import de.micromata.hibernate.history.delta.PropertyDelta;
 import de.micromata.hibernate.history.delta.SimplePropertyDelta;
-import de.micromata.hibernate.spring.NullWriter;
 import de.micromata.hibernate.spring.ProxyIdRefMarshallingStrategy;
 
 /**
@@ -74,12 +91,38 @@ public class HibernateXmlConverter
   /** The logger */
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(HibernateXmlConverter.class);
 
+  /**
+   * Attribute of the root element of dumps written by this converter, value is {@link #FORMAT_ENTITY_REFERENCES}.
+   */
+  public static final String FORMAT_ATTRIBUTE = "format";
+
+  /**
+   * Format of the dumps written by this converter: every top level object is written on its own, references to other top level objects
+   * are written as entity ids (attribute {@link #ENTITY_ID_ATTRIBUTE}) instead of XStream references.
+   */
+  public static final String FORMAT_ENTITY_REFERENCES = "entity-references";
+
+  /**
+   * Attribute of references to other entities containing the entity's id.
+   */
+  public static final String ENTITY_ID_ATTRIBUTE = "entity-id";
+
+  /**
+   * Number of top level objects written between two clears of the session.
+   */
+  static final int CLEAR_BATCH_SIZE = 100;
+
+  private static final int SCROLL_FETCH_SIZE = 100;
+
   /** the wrapper to hibernate */
   private HibernateTemplate hibernate;
 
   // Ignore these objects listing in the top level list saving because the are saved implicit by their parent objects.
   private final Set<Class< ? >> ignoreFromTopLevelListing = new HashSet<Class< ? >>();
 
+  // Write the objects of these types first (in the given order).
+  private final List<Class< ? >> orderOfWriting = new ArrayList<Class< ? >>();
+
   public HibernateXmlConverter()
   {
     this.ignoreFromTopLevelListing.add(PropertyDelta.class);
@@ -105,18 +148,6 @@ public class HibernateXmlConverter
    * @param includeHistory bei false werden die History Einträge nicht geschrieben
    */
   public void dumpDatabaseToXml(final Writer writer, final boolean includeHistory)
-  {
-    dumpDatabaseToXml(writer, includeHistory, true);
-  }
-
-  /**
-   * Schreibt alle Objekte der Datenbank in den angegebenen Writer.<br/>
-   * <b>Warnung!</b> Bei der Serialisierung von Collections wird derzeit nur {@link java.util.Set} sauber unterstützt.
-   * @param writer Ziel für die XML-Datei.
-   * @param includeHistory bei false werden die History Einträge nicht geschrieben
-   * @param preserveIds If true, the object ids will be preserved, otherwise new ids will be assigned through xstream.
-   */
-  public void dumpDatabaseToXml(final Writer writer, final boolean includeHistory, final boolean preserveIds)
   {
     final TransactionTemplate tx = new TransactionTemplate(new HibernateTransactionManager(hibernate.getSessionFactory()));
     tx.execute(new TransactionCallback() {
@@ -125,7 +156,7 @@ public class HibernateXmlConverter
         hibernate.execute(new HibernateCallback() {
           public Object doInHibernate(final Session session) throws HibernateException
           {
-            writeObjects(writer, includeHistory, session, preserveIds);
+            writeObjects(writer, includeHistory, session);
             status.setRollbackOnly();
             return null;
           }
@@ -146,66 +177,331 @@ public class HibernateXmlConverter
   }
 
   /**
+   * The objects are written in the given order of their types (as far as the references between the types allow). Objects of types not
+   * given here are written afterwards.
+   * @param types
+   */
+  public HibernateXmlConverter appendOrderedTopLevelObjects(final Class< ? >... types)
+  {
+    if (types != null) {
+      for (final Class< ? > type : types) {
+        this.orderOfWriting.add(type);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Writes the objects entity by entity directly to the given writer. The objects of each entity are scrolled (no list of all objects of
+   * the data-base is built) and every top level object is marshaled on its own: the top level objects reference each other by their
+   * entity ids (attribute {@link #ENTITY_ID_ATTRIBUTE}) instead of the id references of XStream (which are based on the object identity),
+   * so the session is cleared after every {@link #CLEAR_BATCH_SIZE} objects.
    * @param writer
    * @param includeHistory
    * @param session
    * @throws DataAccessException
    * @throws HibernateException
    */
-  private void writeObjects(final Writer writer, final boolean includeHistory, final Session session, final boolean preserveIds)
-      throws DataAccessException, HibernateException
-      {
-    // Container für die Objekte
-    final List<Object> all = new ArrayList<Object>();
+  private void writeObjects(final Writer writer, final boolean includeHistory, final Session session) throws DataAccessException,
+  HibernateException
+  {
     final XStream stream = initXStream(session, true);
-    final XStream defaultXStream = initXStream(session, false);
 
     session.flush();
-    // Alles laden
-    List< ? > list = session.createQuery("select o from java.lang.Object o").setReadOnly(true).list();
-    list = (List< ? >) CollectionUtils.select(list, PredicateUtils.uniquePredicate());
-    final int size = list.size();
-    log.info("Writing " + size + " objects");
-    for (final Iterator< ? > it = list.iterator(); it.hasNext();) {
-      final Object obj = it.next();
-      if (log.isDebugEnabled()) {
-        log.debug("loaded object " + obj);
-      }
-      if ((obj instanceof HistoryEntry || obj instanceof PropertyDelta) && includeHistory == false) {
+    final List<Class< ? >> entities = getEntitiesInOrderOfWriting(session, includeHistory);
+    // und schreiben
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+    } catch (final IOException ex) {
+      // ignore, will fail on stream.marshal()
+    }
+    final EntityReferenceConverter entityConverter = new EntityReferenceConverter(session, new ReflectionConverter(stream.getMapper(),
+        stream.getReflectionProvider()));
+    final MarshallingStrategy marshallingStrategy = new ProxyIdRefMarshallingStrategy();
+    stream.setMarshallingStrategy(marshallingStrategy);
+    stream.registerConverter(entityConverter, XStream.PRIORITY_VERY_HIGH + 1);
+    final HierarchicalStreamWriter xmlWriter = new PrettyPrintWriter(writer);
+    xmlWriter.startNode("list");
+    xmlWriter.addAttribute(FORMAT_ATTRIBUTE, FORMAT_ENTITY_REFERENCES);
+    int counter = 0;
+    for (final Class< ? > entityClass : entities) {
+      log.info("Writing objects of type " + entityClass.getName());
+      final ScrollableResults results = session.createQuery("from " + entityClass.getName()).setReadOnly(true)
+          .setFetchSize(SCROLL_FETCH_SIZE).scroll(ScrollMode.FORWARD_ONLY);
+      try {
+        while (results.next() == true) {
+          final Object obj = results.get(0);
+          // The query of a super class returns the objects of the sub classes, too. These are written with their own entity.
+          if (obj == null || HibernateProxyHelper.getClassWithoutInitializingProxy(obj).equals(entityClass) == false) {
+            continue;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("loaded object " + obj);
+          }
+          Hibernate.initialize(obj);
+          entityConverter.setTopLevelObject(obj);
+          stream.marshal(obj, xmlWriter);
+          if (++counter % CLEAR_BATCH_SIZE == 0) {
+            // The written objects aren't referenced by the following objects (only their ids are), so detach them:
+            session.clear();
+          }
+        }
+      } finally {
+        results.close();
+      }
+    }
+    xmlWriter.endNode();
+    xmlWriter.flush();
+    log.info("Wrote " + counter + " objects");
+  }
+
+  /**
+   * Gets the entities to write in the order of writing: the entities are sorted topologically by their references, so referenced
+   * objects are written (and restored) before the objects referencing them. The objects owned by others (elements of cascading
+   * collections) are written completely inside their owners and additionally as top level objects after all other entities (the restore
+   * saves only the ones not already saved by their owners). The history entries are written last.
+   */
+  private List<Class< ? >> getEntitiesInOrderOfWriting(final Session session, final boolean includeHistory)
+  {
+    final SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) session.getSessionFactory();
+    final List<Class< ? >> entities = new ArrayList<Class< ? >>();
+    final List<Class< ? >> historyEntities = new ArrayList<Class< ? >>();
+    for (final Object obj : sessionFactory.getAllClassMetadata().values()) {
+      final ClassMetadata classMetadata = (ClassMetadata) obj;
+      final Class< ? > entityClass = classMetadata.getMappedClass(EntityMode.POJO);
+      if (entityClass == null || ignoreFromTopLevelListing.contains(entityClass) == true) {
         continue;
       }
-      Hibernate.initialize(obj);
-      final Class< ? > targetClass = HibernateProxyHelper.getClassWithoutInitializingProxy(obj);
-      final ClassMetadata classMetadata = session.getSessionFactory().getClassMetadata(targetClass);
-      if (classMetadata == null) {
-        log.fatal("Can't init " + obj + " of type " + targetClass);
+      if (HistoryEntry.class.isAssignableFrom(entityClass) == true || PropertyDelta.class.isAssignableFrom(entityClass) == true) {
+        if (includeHistory == true) {
+          historyEntities.add(entityClass);
+        }
         continue;
       }
-      // initalisierung des Objekts...
-      defaultXStream.marshal(obj, new CompactWriter(new NullWriter()));
+      entities.add(entityClass);
+    }
+    // Owned types (elements of cascading collections) with their owners and the referenced types of each entity:
+    final Map<Class< ? >, Set<Class< ? >>> owners = new HashMap<Class< ? >, Set<Class< ? >>>();
+    final Map<Class< ? >, Set<Class< ? >>> references = new HashMap<Class< ? >, Set<Class< ? >>>();
+    for (final Class< ? > entityClass : entities) {
+      final ClassMetadata classMetadata = sessionFactory.getClassMetadata(entityClass);
+      final Type[] types = classMetadata.getPropertyTypes();
+      final CascadeStyle[] cascadeStyles = getCascadeStyles(classMetadata);
+      final Set<Class< ? >> referencedTypes = new HashSet<Class< ? >>();
+      for (int i = 0; i < types.length; i++) {
+        if (types[i].isEntityType() == true) {
+          addEntityClass(sessionFactory, referencedTypes, ((EntityType) types[i]).getAssociatedEntityName());
+        } else if (types[i].isCollectionType() == true) {
+          final Type elementType = ((CollectionType) types[i]).getElementType(sessionFactory);
+          if (elementType.isEntityType() == false) {
+            continue;
+          }
+          final Class< ? > elementClass = getEntityClass(sessionFactory, ((EntityType) elementType).getAssociatedEntityName());
+          if (elementClass == null) {
+            continue;
+          }
+          if (isCascading(cascadeStyles, i) == true) {
+            Set<Class< ? >> set = owners.get(elementClass);
+            if (set == null) {
+              set = new HashSet<Class< ? >>();
+              owners.put(elementClass, set);
+            }
+            set.add(entityClass);
+          } else {
+            referencedTypes.add(elementClass);
+          }
+        }
+      }
+      references.put(entityClass, referencedTypes);
+    }
+    // The owners are restored together with their owned objects, so they depend on the references of the owned objects and the
+    // references to owned objects are references to their owners:
+    final Map<Class< ? >, Set<Class< ? >>> dependencies = new HashMap<Class< ? >, Set<Class< ? >>>();
+    for (final Class< ? > entityClass : entities) {
+      final Set<Class< ? >> set = new HashSet<Class< ? >>();
+      addDependencies(set, references.get(entityClass), owners);
+      for (final Map.Entry<Class< ? >, Set<Class< ? >>> entry : owners.entrySet()) {
+        if (entry.getValue().contains(entityClass) == true) {
+          addDependencies(set, references.get(entry.getKey()), owners);
+        }
+      }
+      set.remove(entityClass);
+      dependencies.put(entityClass, set);
+    }
+    final List<Class< ? >> preferredOrder = new ArrayList<Class< ? >>();
+    for (final Class< ? > type : orderOfWriting) {
+      if (entities.contains(type) == true) {
+        preferredOrder.add(type);
+      }
+    }
+    for (final Class< ? > type : entities) {
+      if (preferredOrder.contains(type) == false) {
+        preferredOrder.add(type);
+      }
+    }
+    final List<Class< ? >> result = new ArrayList<Class< ? >>();
+    final Set<Class< ? >> visited = new HashSet<Class< ? >>();
+    for (final Class< ? > type : preferredOrder) {
+      if (owners.containsKey(type) == false) {
+        visit(type, dependencies, owners, visited, result);
+      }
+    }
+    for (final Class< ? > type : preferredOrder) {
+      if (owners.containsKey(type) == true) {
+        result.add(type);
+      }
+    }
+    result.addAll(historyEntities);
+    return result;
+  }
 
-      if (preserveIds == false) {
-        // Nun kann die ID gelöscht werden
-        classMetadata.setIdentifier(obj, null, EntityMode.POJO);
+  private void visit(final Class< ? > type, final Map<Class< ? >, Set<Class< ? >>> dependencies,
+      final Map<Class< ? >, Set<Class< ? >>> owners, final Set<Class< ? >> visited, final List<Class< ? >> result)
+  {
+    if (visited.add(type) == false) {
+      // Already written or a cycle (the references of a cycle are restored after all objects are saved).
+      return;
+    }
+    final Set<Class< ? >> set = dependencies.get(type);
+    if (set != null) {
+      for (final Class< ? > dependency : set) {
+        if (dependencies.containsKey(dependency) == true && owners.containsKey(dependency) == false) {
+          visit(dependency, dependencies, owners, visited, result);
+        }
       }
-      if (log.isDebugEnabled()) {
-        log.debug("loading evicted object " + obj);
+    }
+    result.add(type);
+  }
+
+  private void addDependencies(final Set<Class< ? >> dependencies, final Set<Class< ? >> referencedTypes,
+      final Map<Class< ? >, Set<Class< ? >>> owners)
+  {
+    if (referencedTypes == null) {
+      return;
+    }
+    for (final Class< ? > type : referencedTypes) {
+      final Set<Class< ? >> ownersOfType = owners.get(type);
+      if (ownersOfType != null) {
+        dependencies.addAll(ownersOfType);
+      } else {
+        dependencies.add(type);
       }
-      if (this.ignoreFromTopLevelListing.contains(targetClass) == false) {
-        all.add(obj);
+    }
+  }
+
+  private static void addEntityClass(final SessionFactoryImplementor sessionFactory, final Set<Class< ? >> set, final String entityName)
+  {
+    final Class< ? > entityClass = getEntityClass(sessionFactory, entityName);
+    if (entityClass != null) {
+      set.add(entityClass);
+    }
+  }
+
+  private static Class< ? > getEntityClass(final SessionFactory sessionFactory, final String entityName)
+  {
+    final ClassMetadata classMetadata = sessionFactory.getClassMetadata(entityName);
+    return classMetadata != null ? classMetadata.getMappedClass(EntityMode.POJO) : null;
+  }
+
+  private static CascadeStyle[] getCascadeStyles(final ClassMetadata classMetadata)
+  {
+    return classMetadata instanceof EntityPersister ? ((EntityPersister) classMetadata).getPropertyCascadeStyles() : null;
+  }
+
+  /**
+   * @return true if the saving of the owner is cascaded to the objects of the given property (the objects are owned by the owner).
+   */
+  private static boolean isCascading(final CascadeStyle[] cascadeStyles, final int propertyIndex)
+  {
+    return cascadeStyles != null && cascadeStyles[propertyIndex].doCascade(CascadingAction.SAVE_UPDATE) == true;
+  }
+
+  /**
+   * Writes the top level object and the objects owned by it (the elements of its cascading collections and the elements of collections of
+   * types ignored from the top level listing, e. g. the property deltas of history entries) completely. All other entities are written by
+   * their ids only, so no object of a previous top level object is needed for writing the current one.
+   */
+  private class EntityReferenceConverter implements Converter
+  {
+    private final Session session;
+
+    private final Converter reflectionConverter;
+
+    private final Set<Object> completelyWrittenObjects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    EntityReferenceConverter(final Session session, final Converter reflectionConverter)
+    {
+      this.session = session;
+      this.reflectionConverter = reflectionConverter;
+    }
+
+    void setTopLevelObject(final Object obj)
+    {
+      completelyWrittenObjects.clear();
+      completelyWrittenObjects.add(getImplementation(obj));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean canConvert(final Class type)
+    {
+      return HibernateProxy.class.isAssignableFrom(type) == true || session.getSessionFactory().getClassMetadata(type) != null;
+    }
+
+    @Override
+    public void marshal(final Object source, final HierarchicalStreamWriter writer, final MarshallingContext context)
+    {
+      if (source instanceof HibernateProxy && ((HibernateProxy) source).getHibernateLazyInitializer().isUninitialized() == true) {
+        // An uninitialized proxy is never a completely written object, don't initialize it.
+        writer.addAttribute(ENTITY_ID_ATTRIBUTE, String.valueOf(((HibernateProxy) source).getHibernateLazyInitializer().getIdentifier()));
+        return;
       }
+      final Object obj = getImplementation(source);
+      final ClassMetadata classMetadata = session.getSessionFactory().getClassMetadata(obj.getClass());
+      if (completelyWrittenObjects.contains(obj) == false) {
+        writer.addAttribute(ENTITY_ID_ATTRIBUTE, String.valueOf(classMetadata.getIdentifier(obj, EntityMode.POJO)));
+        return;
+      }
+      // The owned objects must be known before the collections of this object are written:
+      final String[] propertyNames = classMetadata.getPropertyNames();
+      final Type[] types = classMetadata.getPropertyTypes();
+      final CascadeStyle[] cascadeStyles = getCascadeStyles(classMetadata);
+      for (int i = 0; i < types.length; i++) {
+        if (types[i].isCollectionType() == false) {
+          continue;
+        }
+        final Object value = classMetadata.getPropertyValue(obj, propertyNames[i], EntityMode.POJO);
+        if (value instanceof Collection< ? > == false) {
+          continue;
+        }
+        final boolean cascading = isCascading(cascadeStyles, i);
+        for (final Object element : (Collection< ? >) value) {
+          if (element == null) {
+            continue;
+          }
+          final Object child = getImplementation(element);
+          if (cascading == true || ignoreFromTopLevelListing.contains(child.getClass()) == true) {
+            completelyWrittenObjects.add(child);
+          }
+        }
+      }
+      reflectionConverter.marshal(obj, writer, context);
     }
-    // und schreiben
-    try {
-      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
-    } catch (final IOException ex) {
-      // ignore, will fail on stream.marshal()
+
+    @Override
+    public Object unmarshal(final HierarchicalStreamReader reader, final UnmarshallingContext context)
+    {
+      throw new UnsupportedOperationException("Use XStreamSavingConverter for reading dumps.");
     }
-    log.info("Wrote " + all.size() + " objects");
-    final MarshallingStrategy marshallingStrategy = new ProxyIdRefMarshallingStrategy();
-    stream.setMarshallingStrategy(marshallingStrategy);
-    stream.marshal(all, new PrettyPrintWriter(writer));
+
+    private Object getImplementation(final Object obj)
+    {
+      if (obj instanceof HibernateProxy) {
+        return ((HibernateProxy) obj).getHibernateLazyInitializer().getImplementation();
       }
+      return obj;
+    }
+  }
 
   /**
    * Overload this method if you need further initializations before reading xml stream. Does nothing at default.
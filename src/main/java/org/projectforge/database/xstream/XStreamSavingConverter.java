@@ -28,16 +28,20 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.ClassUtils;
+import org.hibernate.EntityMode;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.engine.SessionImplementor;
 import org.projectforge.core.BaseDO;
 import org.projectforge.core.IManualIndex;
 import org.projectforge.database.HibernateUtils;
@@ -67,14 +71,21 @@ public class XStreamSavingConverter implements Converter
   /** The logger */
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(XStreamSavingConverter.class);
 
+  /**
+   * Number of top level objects saved between two flushes of the session. After every flush the session is cleared, so the dirty check
+   * of the flush and the first level cache are limited to the current batch instead of growing with the size of the dump.
+   */
+  static final int FLUSH_BATCH_SIZE = 100;
+
   private final ConverterLookup defaultConv;
 
   private final Map<Class< ? >, List<Object>> allObjects = new HashMap<Class< ? >, List<Object>>();
 
   private final Set<Class< ? >> writtenObjectTypes = new HashSet<Class< ? >>();
 
-  // Objekte dürfen nur einmal geschrieben werden, daher merken, was bereits gespeichert wurde
-  private final Set<Object> writtenObjects = new HashSet<Object>();
+  // Objekte dürfen nur einmal geschrieben werden, daher merken, was bereits gespeichert wurde (Identität, denn equals und hashCode
+  // mancher Objekte ändern sich mit der beim Speichern neu vergebenen id).
+  private final Set<Object> writtenObjects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
 
   // Store the objects in the given order and all the other object types which are not listed here afterwards.
   private final List<Class< ? >> orderOfSaving = new ArrayList<Class< ? >>();
@@ -92,6 +103,30 @@ public class XStreamSavingConverter implements Converter
 
   private Session session;
 
+  private int savedSinceLastFlush;
+
+  // True while reading a dump with entity references (see restoreObjects): the read objects aren't kept, only the entity mapping.
+  private boolean entityReferenceFormat;
+
+  // Depth of the currently read object (1 for the top level objects).
+  private int depth;
+
+  // Entities read completely inside the current top level object (owned by it) with their original ids.
+  private final List<ReadEntity> readChildren = new ArrayList<ReadEntity>();
+
+  // References of the current top level object to entities not yet saved.
+  private final List<EntityReference> forwardReferences = new ArrayList<EntityReference>();
+
+  // References of saved objects to entities not saved at the time, they're set after all objects are saved.
+  private final List<EntityReference> unresolvedReferences = new ArrayList<EntityReference>();
+
+  // The top level objects saved since the last flush.
+  private final List<Object> batchObjects = new ArrayList<Object>();
+
+  private int verifiedObjectsCounter;
+
+  private boolean verificationFailed;
+
   public XStreamSavingConverter() throws HibernateException
   {
     final XStream xstream = new XStream();
@@ -144,6 +179,128 @@ public class XStreamSavingConverter implements Converter
     return this;
   }
 
+  /**
+   * @return true if the given reader is positioned on the root element of a dump with entity references (written by
+   *         {@link HibernateXmlConverter}), otherwise it's a dump with XStream references, which has to be read completely before saving.
+   */
+  public static boolean isEntityReferenceFormat(final HierarchicalStreamReader reader)
+  {
+    return HibernateXmlConverter.FORMAT_ENTITY_REFERENCES.equals(reader.getAttribute(HibernateXmlConverter.FORMAT_ATTRIBUTE));
+  }
+
+  /**
+   * @return true if the objects were restored from a dump with entity references (see {@link #restoreObjects(XStream,
+   *         HierarchicalStreamReader)}).
+   */
+  public boolean isEntityReferenceFormat()
+  {
+    return entityReferenceFormat;
+  }
+
+  /**
+   * Reads and saves the top level objects of a dump with entity references one by one. The objects are saved in the order of the dump
+   * (the referenced objects are written first) and are detached after every batch of {@link #FLUSH_BATCH_SIZE} objects, so only the
+   * mapping of the original ids to the new ids is kept. References to objects not yet saved (e. g. of the tasks to their parent tasks) are
+   * set after all objects are saved.
+   * @param xstream The XStream with this converter registered (see XmlDump).
+   * @param reader Positioned on the root element of the dump.
+   */
+  public void restoreObjects(final XStream xstream, final HierarchicalStreamReader reader)
+  {
+    entityReferenceFormat = true;
+    for (final Class< ? > type : ignoreFromSaving) {
+      this.historyClassMapping.put(getClassname4History(type), type);
+    }
+    while (reader.hasMoreChildren() == true) {
+      reader.moveDown();
+      final Object obj = xstream.unmarshal(reader);
+      reader.moveUp();
+      try {
+        saveTopLevelObject(obj);
+      } finally {
+        readChildren.clear();
+        forwardReferences.clear();
+      }
+    }
+    flushBatch();
+    for (final EntityReference reference : unresolvedReferences) {
+      final Serializable newId = getNewId(reference.type, reference.originalId);
+      if (newId == null) {
+        log.error("Can't find '" + reference.type + "' id '" + reference.originalId + "' referenced by '" + reference.property
+            + "' of '" + reference.ownerType + "' with id '" + reference.ownerId + "', reference ignored.");
+        continue;
+      }
+      try {
+        final Object owner = session.get(reference.ownerType, reference.ownerId);
+        session.getSessionFactory().getClassMetadata(reference.ownerType)
+            .setPropertyValue(owner, reference.property, session.load(reference.type, newId), EntityMode.POJO);
+        if (++savedSinceLastFlush >= FLUSH_BATCH_SIZE) {
+          flushBatch();
+        }
+      } catch (final HibernateException ex) {
+        log.fatal("Failed to set '" + reference.property + "' of '" + reference.ownerType + "' with id '" + reference.ownerId + "' ex="
+            + ex, ex);
+      }
+    }
+    unresolvedReferences.clear();
+    flushBatch();
+  }
+
+  private void saveTopLevelObject(final Object obj)
+  {
+    if (obj == null) {
+      return;
+    }
+    final Class< ? > type = obj.getClass();
+    this.historyClassMapping.put(getClassname4History(type), type);
+    if (ignoreFromSaving.contains(type) == true || HibernateUtils.isEntity(type) == false) {
+      return;
+    }
+    final Serializable oldId = getOriginalIdentifierValue(obj);
+    if (oldId != null && getNewId(type, oldId) != null) {
+      // Already saved on cascade by its owner.
+      return;
+    }
+    final Serializable id = saveObject(obj);
+    if (id == null) {
+      return;
+    }
+    // Register the children saved on cascade, they're referenced by their original ids:
+    for (final ReadEntity child : readChildren) {
+      if (child.originalId != null && session.contains(child.obj) == true && getNewId(child.obj.getClass(), child.originalId) == null) {
+        registerEntityMapping(child.obj.getClass(), child.originalId, session.getIdentifier(child.obj));
+      }
+    }
+    for (final EntityReference reference : forwardReferences) {
+      reference.ownerType = type;
+      reference.ownerId = id;
+      unresolvedReferences.add(reference);
+    }
+    batchObjects.add(obj);
+    if (++savedSinceLastFlush >= FLUSH_BATCH_SIZE) {
+      flushBatch();
+    }
+  }
+
+  /**
+   * Will be called for every batch of top level objects restored by {@link #restoreObjects(XStream, HierarchicalStreamReader)} after
+   * flushing and before the objects are detached. Does nothing at default.
+   * @param objects The saved top level objects.
+   * @return false if the saved objects couldn't be verified.
+   */
+  protected boolean onBatchSaved(final List<Object> objects)
+  {
+    return true;
+  }
+
+  /**
+   * @return Number of objects passed to {@link #onBatchSaved(List)}. This number is negative if the verification of any batch failed.
+   */
+  public int getVerifiedObjectsCounter()
+  {
+    return verificationFailed == true ? -verifiedObjectsCounter : verifiedObjectsCounter;
+  }
+
   public void saveObjects()
   {
     for (final Class< ? > type : orderOfSaving) {
@@ -192,7 +349,9 @@ public class XStreamSavingConverter implements Converter
         list.add(deltaEntry);
         save(deltaEntry);
       }
-      this.historyEntries.add(entry);
+      if (entityReferenceFormat == false) {
+        this.historyEntries.add(entry);
+      }
       return id;
     }
     return null;
@@ -307,24 +466,69 @@ public class XStreamSavingConverter implements Converter
       if (session.contains(obj) == true) {
         continue;
       }
-      try {
-        if (log.isDebugEnabled()) {
-          log.debug("Try to write object " + obj);
-        }
-        Serializable id = onBeforeSave(session, obj);
-        if (id == null) {
-          id = save(obj);
+      if (saveObject(obj) != null && ++savedSinceLastFlush >= FLUSH_BATCH_SIZE) {
+        flushBatch();
+      }
+    }
+    flushBatch();
+  }
+
+  /**
+   * @return The id of the saved object or null, if the object couldn't be saved.
+   */
+  private Serializable saveObject(final Object obj)
+  {
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Try to write object " + obj);
+      }
+      Serializable id = onBeforeSave(session, obj);
+      if (id == null) {
+        if (entityReferenceFormat == true) {
+          // The owned children are saved on cascade, they're new objects:
+          for (final ReadEntity child : readChildren) {
+            if (child.obj instanceof BaseDO && child.obj instanceof IManualIndex == false && session.contains(child.obj) == false) {
+              ((BaseDO< ? >) child.obj).setId(null);
+            }
+          }
         }
-        onAfterSave(obj, id);
-        if (log.isDebugEnabled() == true) {
-          log.debug("wrote object " + obj + " under id " + id);
+        id = save(obj);
+      }
+      onAfterSave(obj, id);
+      if (log.isDebugEnabled() == true) {
+        log.debug("wrote object " + obj + " under id " + id);
+      }
+      return id;
+    } catch (final HibernateException ex) {
+      log.fatal("Failed to write " + obj + " ex=" + ex, ex);
+    } catch (final NullPointerException ex) {
+      log.fatal("Failed to write " + obj + " ex=" + ex, ex);
+    }
+    return null;
+  }
+
+  /**
+   * Writes the pending inserts of the current batch and detaches all saved objects from the session. The detached objects may still be
+   * referenced by objects saved later (only their ids are needed for the foreign keys).
+   */
+  private void flushBatch()
+  {
+    session.flush();
+    if (entityReferenceFormat == true) {
+      if (batchObjects.isEmpty() == false) {
+        verifiedObjectsCounter += batchObjects.size();
+        if (onBatchSaved(batchObjects) == false) {
+          verificationFailed = true;
         }
-      } catch (final HibernateException ex) {
-        log.fatal("Failed to write " + obj + " ex=" + ex, ex);
-      } catch (final NullPointerException ex) {
-        log.fatal("Failed to write " + obj + " ex=" + ex, ex);
+        batchObjects.clear();
       }
+    } else {
+      // Children saved on cascade by their parents (e. g. the attendees of team events or the entries of hr plannings) aren't registered
+      // by save(Object). Register them before clearing the session, otherwise they would be saved twice when their own type is written:
+      writtenObjects.addAll(((SessionImplementor) session).getPersistenceContext().getEntitiesByKey().values());
     }
+    session.clear();
+    savedSinceLastFlush = 0;
   }
 
   /**
@@ -350,7 +554,9 @@ public class XStreamSavingConverter implements Converter
         if (oldId != null) {
           registerEntityMapping(obj.getClass(), oldId, id);
         }
-        writtenObjects.add(obj);
+        if (entityReferenceFormat == false) {
+          writtenObjects.add(obj);
+        }
       } else if (obj instanceof HistoryEntry) {
         // HistoryEntry
         ((HistoryEntry) obj).setId(null);
@@ -370,7 +576,6 @@ public class XStreamSavingConverter implements Converter
       session.saveOrUpdate(obj);
       id = ((BaseDO< ? >) obj).getId();
     }
-    session.flush();
     return id;
   }
 
@@ -430,18 +635,38 @@ public class XStreamSavingConverter implements Converter
   }
 
   public Object unmarshal(final HierarchicalStreamReader arg0, final UnmarshallingContext arg1)
+  {
+    ++depth;
+    try {
+      return unmarshal(arg0, arg1, depth);
+    } finally {
+      --depth;
+    }
+  }
+
+  private Object unmarshal(final HierarchicalStreamReader arg0, final UnmarshallingContext arg1, final int level)
   {
     Object result;
     Class< ? > targetType = null;
     try {
       targetType = arg1.getRequiredType();
+      final String entityId = arg0.getAttribute(HibernateXmlConverter.ENTITY_ID_ATTRIBUTE);
+      if (entityId != null) {
+        return resolveEntityReference(targetType, entityId, arg0.getNodeName(), level);
+      }
       result = defaultConv.lookupConverterForType(targetType).unmarshal(arg0, arg1);
     } catch (final Exception ex) {
       log.warn("Ignore unknown class or property " + targetType + " " + ex.getMessage());
       return null;
     }
     try {
-      if (result != null) {
+      if (result == null) {
+        // Nothing to register.
+      } else if (entityReferenceFormat == true) {
+        if (level > 1 && HibernateUtils.isEntity(result.getClass()) == true) {
+          readChildren.add(new ReadEntity(result, getOriginalIdentifierValue(result)));
+        }
+      } else {
         registerObject(result);
       }
     } catch (final HibernateException ex) {
@@ -452,6 +677,25 @@ public class XStreamSavingConverter implements Converter
     return result;
   }
 
+  /**
+   * @param level The depth of the reference, 2 for properties of the top level object.
+   * @return The saved object (proxy) or null, if the referenced object isn't yet saved.
+   */
+  private Object resolveEntityReference(final Class< ? > type, final String originalId, final String property, final int level)
+  {
+    final Serializable newId = getNewId(type, originalId);
+    if (newId != null) {
+      return session.load(type, newId);
+    }
+    if (level == 2) {
+      // Set after all objects are saved:
+      forwardReferences.add(new EntityReference(type, originalId, property));
+    } else {
+      log.error("Can't find '" + type + "' id '" + originalId + "' referenced by '" + property + "', reference ignored.");
+    }
+    return null;
+  }
+
   private void registerObject(final Object obj)
   {
     if (obj == null) {
@@ -471,4 +715,37 @@ public class XStreamSavingConverter implements Converter
     }
     list.add(obj);
   }
+
+  private static class ReadEntity
+  {
+    private final Object obj;
+
+    private final Serializable originalId;
+
+    ReadEntity(final Object obj, final Serializable originalId)
+    {
+      this.obj = obj;
+      this.originalId = originalId;
+    }
+  }
+
+  private static class EntityReference
+  {
+    private final Class< ? > type;
+
+    private final String originalId;
+
+    private final String property;
+
+    private Class< ? > ownerType;
+
+    private Serializable ownerId;
+
+    EntityReference(final Class< ? > type, final String originalId, final String property)
+    {
+      this.type = type;
+      this.originalId = originalId;
+      this.property = property;
+    }
+  }
 }
@@ -44,7 +44,7 @@ public class KontoCache extends AbstractCache
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the order id. */
-  private Map<Integer, KontoDO> accountMapById;
+  private volatile Map<Integer, KontoDO> accountMapById;
 
   public boolean isEmpty()
   {
@@ -213,7 +213,8 @@ public class ProjektDao extends BaseDao<ProjektDO>
   protected void afterSaveOrModify(final ProjektDO projekt)
   {
     if (projekt.getTaskId() != null) {
-      taskDao.getTaskTree().internalSetProject(projekt.getTaskId(), projekt);
+      // Reread it from the database to get the current version (the last update time stamp is only set on the data base object):
+      taskDao.getTaskTree().internalSetProject(projekt.getTaskId(), internalGetById(projekt.getId()));
     }
     super.afterSaveOrModify(projekt);
   }
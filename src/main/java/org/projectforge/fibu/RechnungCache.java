@@ -45,10 +45,10 @@ public class RechnungCache extends AbstractCache
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the order id. */
-  private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragId;
+  private volatile Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragId;
 
   /** The key is the order position id. */
-  private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragsPositionId;
+  private volatile Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragsPositionId;
 
   public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragId(final Integer auftragId)
   {
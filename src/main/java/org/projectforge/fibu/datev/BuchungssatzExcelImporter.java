@@ -42,13 +42,10 @@ import org.projectforge.core.ActionLog;
 import org.projectforge.core.UserException;
 import org.projectforge.excel.ExcelImport;
 import org.projectforge.fibu.KontoDO;
-import org.projectforge.fibu.KontoDao;
 import org.projectforge.fibu.KostFormatter;
 import org.projectforge.fibu.kost.BuchungssatzDO;
 import org.projectforge.fibu.kost.Kost1DO;
-import org.projectforge.fibu.kost.Kost1Dao;
 import org.projectforge.fibu.kost.Kost2DO;
-import org.projectforge.fibu.kost.Kost2Dao;
 import org.projectforge.user.PFUserContext;
 
 public class BuchungssatzExcelImporter
@@ -64,23 +61,16 @@ public class BuchungssatzExcelImporter
    */
   public static final short MAX_COLUMNS = 20;
 
-  private final KontoDao kontoDao;
-
-  private final Kost1Dao kost1Dao;
-
-  private final Kost2Dao kost2Dao;
+  private final DatevImportLookup lookup;
 
   private final ImportStorage<BuchungssatzDO> storage;
 
   private final ActionLog actionLog;
 
-  public BuchungssatzExcelImporter(final ImportStorage<BuchungssatzDO> storage, final KontoDao kontoDao, final Kost1Dao kost1Dao,
-      final Kost2Dao kost2Dao, final ActionLog actionLog)
+  BuchungssatzExcelImporter(final ImportStorage<BuchungssatzDO> storage, final DatevImportLookup lookup, final ActionLog actionLog)
   {
     this.storage = storage;
-    this.kontoDao = kontoDao;
-    this.kost1Dao = kost1Dao;
-    this.kost2Dao = kost2Dao;
+    this.lookup = lookup;
     this.actionLog = actionLog;
   }
 
@@ -247,27 +237,27 @@ public class BuchungssatzExcelImporter
     satz.setText(StringUtils.replace(row.text, "^", ""));
     satz.setMenge(row.menge);
     satz.setComment(row.comment);
-    KontoDO konto = kontoDao.getKonto(row.konto);
+    KontoDO konto = lookup.getKonto(row.konto);
     if (konto != null) {
       satz.setKonto(konto);
     } else {
       element.putErrorProperty("konto", row.konto);
     }
-    konto = kontoDao.getKonto(row.gegenkonto);
+    konto = lookup.getKonto(row.gegenkonto);
     if (konto != null) {
       satz.setGegenKonto(konto);
     } else {
       element.putErrorProperty("gegenkonto", row.gegenkonto);
     }
     int[] values = KostFormatter.splitKost(row.getKost1());
-    final Kost1DO kost1 = kost1Dao.getKost1(values[0], values[1], values[2], values[3]);
+    final Kost1DO kost1 = lookup.getKost1(values);
     if (kost1 != null) {
       satz.setKost1(kost1);
     } else {
       element.putErrorProperty("kost1", KostFormatter.formatKost(row.kost1));
     }
     values = KostFormatter.splitKost(row.getKost2());
-    final Kost2DO kost2 = kost2Dao.getKost2(values[0], values[1], values[2], values[3]);
+    final Kost2DO kost2 = lookup.getKost2(values);
     if (kost2 != null) {
       satz.setKost2(kost2);
     } else {
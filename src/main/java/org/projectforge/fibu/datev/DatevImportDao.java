@@ -26,9 +26,13 @@ package org.projectforge.fibu.datev;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.Validate;
-import org.hibernate.LockMode;
 import org.projectforge.access.AccessChecker;
 import org.projectforge.access.AccessException;
 import org.projectforge.common.ImportStatus;
@@ -36,6 +40,8 @@ import org.projectforge.common.ImportStorage;
 import org.projectforge.common.ImportedElement;
 import org.projectforge.common.ImportedSheet;
 import org.projectforge.core.ActionLog;
+import org.projectforge.core.BaseDao;
+import org.projectforge.core.ExtendedBaseDO;
 import org.projectforge.core.UserException;
 import org.projectforge.excel.ExcelImportException;
 import org.projectforge.fibu.KontoDO;
@@ -63,6 +69,11 @@ public class DatevImportDao extends HibernateDaoSupport
    */
   private static final int BUCHUNGSSATZ_INSERT_BLOCK_SIZE = 50;
 
+  /**
+   * Maximale Anzahl Ids einer IN-Liste beim Laden der referenzierten Konten und Kostenträger.
+   */
+  private static final int MAX_IN_LIST_SIZE = 500;
+
   /**
    * Size of bulk inserts. If this value is too large, exceptions are expected and as more small the value is so as more slowly is the
    * insert process.
@@ -155,7 +166,8 @@ public class DatevImportDao extends HibernateDaoSupport
     log.info("importBuchungsdaten called");
     final ImportStorage<BuchungssatzDO> storage = new ImportStorage<BuchungssatzDO>(Type.BUCHUNGSSAETZE);
     storage.setFilename(filename);
-    final BuchungssatzExcelImporter imp = new BuchungssatzExcelImporter(storage, kontoDao, kost1Dao, kost2Dao, actionLog);
+    final BuchungssatzExcelImporter imp = new BuchungssatzExcelImporter(storage, new DatevImportLookup(kontoDao, kost1Dao, kost2Dao,
+        buchungssatzDao), actionLog);
     try {
       imp.doImport(is);
     } catch (final ExcelImportException ex) {
@@ -210,9 +222,10 @@ public class DatevImportDao extends HibernateDaoSupport
   private void reconcileKontenplan(final ImportedSheet<KontoDO> sheet)
   {
     log.info("Reconcile Kontenplan called");
+    final DatevImportLookup lookup = new DatevImportLookup(kontoDao, kost1Dao, kost2Dao, buchungssatzDao);
     for (final ImportedElement<KontoDO> el : sheet.getElements()) {
       final KontoDO konto = el.getValue();
-      final KontoDO dbKonto = kontoDao.getKonto(konto.getNummer());
+      final KontoDO dbKonto = lookup.getKonto(konto.getNummer());
       if (dbKonto != null) {
         el.setOldValue(dbKonto);
       }
@@ -224,13 +237,15 @@ public class DatevImportDao extends HibernateDaoSupport
   private void reconcileBuchungsdaten(final ImportedSheet<BuchungssatzDO> sheet)
   {
     log.info("Reconcile Buchungsdaten called");
+    // Alle Konten, Kostenträger und Buchungssätze des Monats werden mit je einer Abfrage geladen (statt Abfragen pro Zeile):
+    final DatevImportLookup lookup = new DatevImportLookup(kontoDao, kost1Dao, kost2Dao, buchungssatzDao);
     for (final ImportedElement<BuchungssatzDO> el : sheet.getElements()) {
       final BuchungssatzDO satz = el.getValue();
       if (el.isFaulty() == true) {
         String kost = (String) el.getErrorProperty("kost1");
         if (kost != null) {
           final int[] vals = KostFormatter.splitKost(kost);
-          final Kost1DO kost1 = kost1Dao.getKost1(vals[0], vals[1], vals[2], vals[3]);
+          final Kost1DO kost1 = lookup.getKost1(vals);
           if (kost1 != null) {
             satz.setKost1(kost1);
             el.removeErrorProperty("kost1");
@@ -239,14 +254,14 @@ public class DatevImportDao extends HibernateDaoSupport
         kost = (String) el.getErrorProperty("kost2");
         if (kost != null) {
           final int[] vals = KostFormatter.splitKost(kost);
-          final Kost2DO kost2 = kost2Dao.getKost2(vals[0], vals[1], vals[2], vals[3]);
+          final Kost2DO kost2 = lookup.getKost2(vals);
           if (kost2 != null) {
             satz.setKost2(kost2);
             el.removeErrorProperty("kost2");
           }
         }
       }
-      final BuchungssatzDO dbSatz = buchungssatzDao.getBuchungssatz(satz.getYear(), satz.getMonth(), satz.getSatznr());
+      final BuchungssatzDO dbSatz = lookup.getBuchungssatz(satz.getYear(), satz.getMonth(), satz.getSatznr());
       if (dbSatz != null) {
         el.setOldValue(dbSatz);
       }
@@ -258,10 +273,11 @@ public class DatevImportDao extends HibernateDaoSupport
   private int commitKontenplan(final ImportedSheet<KontoDO> sheet)
   {
     log.info("Commit Kontenplan called");
+    final DatevImportLookup lookup = new DatevImportLookup(kontoDao, kost1Dao, kost2Dao, buchungssatzDao);
     final Collection<KontoDO> col = new ArrayList<KontoDO>();
     for (final ImportedElement<KontoDO> el : sheet.getElements()) {
       final KontoDO konto = el.getValue();
-      final KontoDO dbKonto = kontoDao.getKonto(konto.getNummer());
+      final KontoDO dbKonto = lookup.getKonto(konto.getNummer());
       if (dbKonto != null) {
         konto.setId(dbKonto.getId());
         if (el.isSelected() == true) {
@@ -275,42 +291,76 @@ public class DatevImportDao extends HibernateDaoSupport
     return col.size();
   }
 
-  private Object get(final Class< ? > clazz, final Integer id)
+  /**
+   * Lädt die Objekte mit den gegebenen Ids mit einer Abfrage je {@link #MAX_IN_LIST_SIZE} Ids (die Länge von IN-Listen ist je nach
+   * Datenbank begrenzt).
+   * @return Map mit den Ids als Schlüssel.
+   */
+  private <O extends ExtendedBaseDO<Integer>> Map<Integer, O> load(final BaseDao<O> dao, final Set<Integer> ids)
   {
-    if (id == null) {
-      return null;
+    final Map<Integer, O> map = new HashMap<Integer, O>();
+    final List<Integer> idList = new ArrayList<Integer>(ids);
+    for (int i = 0; i < idList.size(); i += MAX_IN_LIST_SIZE) {
+      for (final O obj : dao.internalLoad(idList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, idList.size())))) {
+        map.put(obj.getId(), obj);
+      }
+    }
+    return map;
+  }
+
+  private void addId(final Set<Integer> ids, final Integer id)
+  {
+    if (id != null) {
+      ids.add(id);
     }
-    return getHibernateTemplate().get(clazz, id, LockMode.READ);
   }
 
   private int commitBuchungsdaten(final ImportedSheet<BuchungssatzDO> sheet)
   {
     log.info("Commit Buchungsdaten called");
+    final DatevImportLookup lookup = new DatevImportLookup(kontoDao, kost1Dao, kost2Dao, buchungssatzDao);
     final Collection<BuchungssatzDO> col = new ArrayList<BuchungssatzDO>();
+    final Set<Integer> kontoIds = new HashSet<Integer>();
+    final Set<Integer> kost1Ids = new HashSet<Integer>();
+    final Set<Integer> kost2Ids = new HashSet<Integer>();
     for (final ImportedElement<BuchungssatzDO> el : sheet.getElements()) {
       final BuchungssatzDO satz = el.getValue();
-      final BuchungssatzDO dbSatz = buchungssatzDao.getBuchungssatz(satz.getYear(), satz.getMonth(), satz.getSatznr());
-      boolean addSatz = false;
+      final BuchungssatzDO dbSatz = lookup.getBuchungssatz(satz.getYear(), satz.getMonth(), satz.getSatznr());
       if (dbSatz != null) {
         satz.setId(dbSatz.getId());
-        if (el.isSelected() == true) {
-          addSatz = true;
-        }
-      } else if (el.isSelected() == true) {
-        addSatz = true;
       }
-      if (addSatz == true) {
-        final BuchungssatzDO newSatz = new BuchungssatzDO();
-        newSatz.copyValuesFrom(satz, "konto", "gegenKonto", "kost1", "kost2");
-        newSatz.setKonto((KontoDO) get(KontoDO.class, satz.getKontoId()));
-        newSatz.setGegenKonto((KontoDO) get(KontoDO.class, satz.getGegenKontoId()));
-        newSatz.setKost1((Kost1DO) get(Kost1DO.class, satz.getKost1Id()));
-        newSatz.setKost2((Kost2DO) get(Kost2DO.class, satz.getKost2Id()));
-        col.add(newSatz);
+      if (el.isSelected() == true) {
+        col.add(satz);
+        addId(kontoIds, satz.getKontoId());
+        addId(kontoIds, satz.getGegenKontoId());
+        addId(kost1Ids, satz.getKost1Id());
+        addId(kost2Ids, satz.getKost2Id());
       }
     }
-    buchungssatzDao.internalSaveOrUpdate(buchungssatzDao, col, BUCHUNGSSATZ_INSERT_BLOCK_SIZE);
-    return col.size();
+    // Alle referenzierten Konten und Kostenträger werden mit je einer Abfrage in der aktuellen Session geladen:
+    final Map<Integer, KontoDO> kontoMap = load(kontoDao, kontoIds);
+    final Map<Integer, Kost1DO> kost1Map = load(kost1Dao, kost1Ids);
+    final Map<Integer, Kost2DO> kost2Map = load(kost2Dao, kost2Ids);
+    final Collection<BuchungssatzDO> newSaetze = new ArrayList<BuchungssatzDO>(col.size());
+    for (final BuchungssatzDO satz : col) {
+      final BuchungssatzDO newSatz = new BuchungssatzDO();
+      newSatz.copyValuesFrom(satz, "konto", "gegenKonto", "kost1", "kost2");
+      newSatz.setKonto(get(kontoMap, satz.getKontoId()));
+      newSatz.setGegenKonto(get(kontoMap, satz.getGegenKontoId()));
+      newSatz.setKost1(get(kost1Map, satz.getKost1Id()));
+      newSatz.setKost2(get(kost2Map, satz.getKost2Id()));
+      newSaetze.add(newSatz);
+    }
+    buchungssatzDao.internalSaveOrUpdate(buchungssatzDao, newSaetze, BUCHUNGSSATZ_INSERT_BLOCK_SIZE);
+    return newSaetze.size();
+  }
+
+  private <O> O get(final Map<Integer, O> map, final Integer id)
+  {
+    if (id == null) {
+      return null;
+    }
+    return map.get(id);
   }
 
   public void setAccessChecker(final AccessChecker accessChecker)
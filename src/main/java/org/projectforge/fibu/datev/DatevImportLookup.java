@@ -0,0 +1,148 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.datev;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.projectforge.fibu.KontoDO;
+import org.projectforge.fibu.KontoDao;
+import org.projectforge.fibu.kost.BuchungssatzDO;
+import org.projectforge.fibu.kost.BuchungssatzDao;
+import org.projectforge.fibu.kost.Kost1DO;
+import org.projectforge.fibu.kost.Kost1Dao;
+import org.projectforge.fibu.kost.Kost2DO;
+import org.projectforge.fibu.kost.Kost2Dao;
+
+/**
+ * Für den Import und Abgleich von DATEV-Daten werden die Konten, Kostenträger und Buchungssätze (eines Monats) nicht pro Zeile, sondern
+ * jeweils mit einer Abfrage geladen und hier nachgeschlagen. Die Instanz ist nur für einen Import bzw. Abgleich gedacht.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+class DatevImportLookup
+{
+  private final KontoDao kontoDao;
+
+  private final Kost1Dao kost1Dao;
+
+  private final Kost2Dao kost2Dao;
+
+  private final BuchungssatzDao buchungssatzDao;
+
+  /** Key is the konto number. */
+  private Map<Integer, KontoDO> kontoMap;
+
+  /** Key is the formatted number of the kost1 (#.###.##.##). */
+  private Map<String, Kost1DO> kost1Map;
+
+  /** Key is the formatted number of the kost2 (#.###.##.##). */
+  private Map<String, Kost2DO> kost2Map;
+
+  /** Key is year and month ("yyyy-mm") and the value is a map of all Buchungssätze of the month with the satznr as key. */
+  private final Map<String, Map<Integer, BuchungssatzDO>> buchungssatzMaps = new HashMap<String, Map<Integer, BuchungssatzDO>>();
+
+  DatevImportLookup(final KontoDao kontoDao, final Kost1Dao kost1Dao, final Kost2Dao kost2Dao, final BuchungssatzDao buchungssatzDao)
+  {
+    this.kontoDao = kontoDao;
+    this.kost1Dao = kost1Dao;
+    this.kost2Dao = kost2Dao;
+    this.buchungssatzDao = buchungssatzDao;
+  }
+
+  KontoDO getKonto(final Integer kontonummer)
+  {
+    if (kontonummer == null) {
+      return null;
+    }
+    if (kontoMap == null) {
+      kontoMap = new HashMap<Integer, KontoDO>();
+      for (final KontoDO konto : kontoDao.internalLoadAll()) {
+        if (konto.getNummer() != null && kontoMap.containsKey(konto.getNummer()) == false) {
+          kontoMap.put(konto.getNummer(), konto);
+        }
+      }
+    }
+    return kontoMap.get(kontonummer);
+  }
+
+  Kost1DO getKost1(final int[] values)
+  {
+    if (kost1Map == null) {
+      kost1Map = new HashMap<String, Kost1DO>();
+      for (final Kost1DO kost1 : kost1Dao.internalLoadAll()) {
+        final String key = getKey(kost1.getNummernkreis(), kost1.getBereich(), kost1.getTeilbereich(), kost1.getEndziffer());
+        if (kost1Map.containsKey(key) == false) {
+          kost1Map.put(key, kost1);
+        }
+      }
+    }
+    return kost1Map.get(getKey(values[0], values[1], values[2], values[3]));
+  }
+
+  Kost2DO getKost2(final int[] values)
+  {
+    if (kost2Map == null) {
+      kost2Map = new HashMap<String, Kost2DO>();
+      for (final Kost2DO kost2 : kost2Dao.internalLoadAll()) {
+        if (kost2.getKost2ArtId() == null) {
+          continue;
+        }
+        final String key = getKey(kost2.getNummernkreis(), kost2.getBereich(), kost2.getTeilbereich(), kost2.getKost2ArtId());
+        if (kost2Map.containsKey(key) == false) {
+          kost2Map.put(key, kost2);
+        }
+      }
+    }
+    return kost2Map.get(getKey(values[0], values[1], values[2], values[3]));
+  }
+
+  /**
+   * Beim ersten Aufruf für einen Monat werden alle Buchungssätze dieses Monats mit einer Abfrage geladen.
+   * @param year
+   * @param month
+   * @param satznr
+   * @return Der bereits existierende Buchungssatz oder null.
+   */
+  BuchungssatzDO getBuchungssatz(final int year, final int month, final Integer satznr)
+  {
+    final String key = year + "-" + month;
+    Map<Integer, BuchungssatzDO> map = buchungssatzMaps.get(key);
+    if (map == null) {
+      map = new HashMap<Integer, BuchungssatzDO>();
+      for (final BuchungssatzDO satz : buchungssatzDao.getBuchungssaetze(year, month)) {
+        if (map.containsKey(satz.getSatznr()) == false) {
+          map.put(satz.getSatznr(), satz);
+        }
+      }
+      buchungssatzMaps.put(key, map);
+    }
+    return map.get(satznr);
+  }
+
+  private String getKey(final int nummernkreis, final int bereich, final int teilbereich, final int endziffer)
+  {
+    return nummernkreis + "." + bereich + "." + teilbereich + "." + endziffer;
+  }
+}
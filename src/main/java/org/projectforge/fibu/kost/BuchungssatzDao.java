@@ -88,6 +88,17 @@ public class BuchungssatzDao extends BaseDao<BuchungssatzDO>
     return list.get(0);
   }
 
+  /**
+   * @param year
+   * @param month
+   * @return All Buchungssätze (including deleted ones) of the given month (e. g. for reconciling imports without a query per row).
+   */
+  @SuppressWarnings("unchecked")
+  public List<BuchungssatzDO> getBuchungssaetze(final int year, final int month)
+  {
+    return getHibernateTemplate().find("from BuchungssatzDO satz where satz.year = ? and satz.month = ?", new Object[] { year, month});
+  }
+
   public boolean validateTimeperiod(BuchungssatzFilter myFilter)
   {
     int toMonth = myFilter.getToMonth();
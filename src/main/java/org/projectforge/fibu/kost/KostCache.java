@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.ObjectUtils;
@@ -51,14 +52,25 @@ public class KostCache extends AbstractCache
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the kost2-id. */
-  private Map<Integer, Kost2DO> kost2Map;
+  private volatile Map<Integer, Kost2DO> kost2Map;
 
   /** The key is the kost2-id. */
-  private Map<Integer, Kost1DO> kost1Map;
+  private volatile Map<Integer, Kost1DO> kost1Map;
 
-  private List<Kost2Art> allKost2Arts;
+  /**
+   * Index of all kost2 entries: nummernkreis -> bereich -> teilbereich -> kost2 entries. Rebuilt on every modification (copy on write).
+   */
+  private volatile Map<Integer, Map<Integer, Map<Integer, List<Kost2DO>>>> kost2Index;
+
+  /** The key is the projekt-id, the values are all kost2 entries of the project. Rebuilt with {@link #kost2Index}. */
+  private volatile Map<Integer, List<Kost2DO>> kost2ByProjekt;
+
+  /** Will be incremented on every modification of the kost2 entries. */
+  private final AtomicLong kost2Version = new AtomicLong();
+
+  private volatile List<Kost2Art> allKost2Arts;
   
-  private boolean kost2EntriesExists = false;
+  private volatile boolean kost2EntriesExists = false;
 
   public Kost2DO getKost2(final Integer kost2Id)
   {
@@ -83,11 +95,12 @@ public class KostCache extends AbstractCache
 
   public Kost2DO getKost2(final int nummernkreis, final int bereich, final int teilbereich, final int kost2art)
   {
-    for (final Kost2DO kost : getKost2Map().values()) {
-      if (kost.getNummernkreis() == nummernkreis
-          && kost.getBereich() == bereich
-          && kost.getTeilbereich() == teilbereich
-          && kost.getKost2ArtId() == kost2art) {
+    final List<Kost2DO> list = getKost2List(nummernkreis, bereich, teilbereich);
+    if (list == null) {
+      return null;
+    }
+    for (final Kost2DO kost : list) {
+      if (kost.getKost2ArtId() == kost2art) {
         return kost;
       }
     }
@@ -96,12 +109,13 @@ public class KostCache extends AbstractCache
 
   public List<Kost2DO> getActiveKost2(int nummernkreis, int bereich, int teilbereich)
   {
+    final List<Kost2DO> all = getKost2List(nummernkreis, bereich, teilbereich);
+    if (all == null) {
+      return null;
+    }
     final List<Kost2DO> list = new ArrayList<Kost2DO>();
-    for (final Kost2DO kost : getKost2Map().values()) {
-      if (kost.getNummernkreis() == nummernkreis
-          && kost.getBereich() == bereich
-          && kost.getTeilbereich() == teilbereich
-          && (kost.getKostentraegerStatus() == KostentraegerStatus.ACTIVE || kost.getKostentraegerStatus() == null)) {
+    for (final Kost2DO kost : all) {
+      if (kost.getKostentraegerStatus() == KostentraegerStatus.ACTIVE || kost.getKostentraegerStatus() == null) {
         list.add(kost);
       }
     }
@@ -111,6 +125,16 @@ public class KostCache extends AbstractCache
     return list;
   }
 
+  /**
+   * @return The version of the kost2 entries, will be incremented on every modification (e. g. for invalidating of caches depending on
+   *         the kost2 entries).
+   */
+  public long getKost2Version()
+  {
+    checkRefresh();
+    return kost2Version.get();
+  }
+
   public Kost1DO getKost1(final Integer kost1Id)
   {
     if (NumberHelper.greaterZero(kost1Id) == false) {
@@ -130,15 +154,17 @@ public class KostCache extends AbstractCache
     if (projektId == null) {
       return set;
     }
-    for (Kost2DO kost : getKost2Map().values()) {
+    final List<Kost2DO> list = getKost2ByProjekt().get(projektId);
+    if (list == null) {
+      return set;
+    }
+    for (Kost2DO kost : list) {
       if (kost.isDeleted() == true) {
         continue;
       }
-      if (ObjectUtils.equals(projektId, kost.getProjektId()) == true) {
-        Kost2ArtDO kost2Art = kost.getKost2Art();
-        if (kost2Art != null) {
-          set.add(kost2Art);
-        }
+      Kost2ArtDO kost2Art = kost.getKost2Art();
+      if (kost2Art != null) {
+        set.add(kost2Art);
       }
     }
     return set;
@@ -193,9 +219,12 @@ public class KostCache extends AbstractCache
    * Should be called after user modifications.
    * @param user
    */
-  void updateKost2(final Kost2DO kost2)
+  synchronized void updateKost2(final Kost2DO kost2)
   {
-    getKost2Map().put(kost2.getId(), kost2);
+    // Copy on write, because the indexes of the kost2 entries have to be rebuilt:
+    final Map<Integer, Kost2DO> map = new HashMap<Integer, Kost2DO>(getKost2Map());
+    map.put(kost2.getId(), kost2);
+    setKost2Map(map);
   }
 
   /**
@@ -226,6 +255,66 @@ public class KostCache extends AbstractCache
     return kost2Map;
   }
 
+  private List<Kost2DO> getKost2List(final int nummernkreis, final int bereich, final int teilbereich)
+  {
+    checkRefresh();
+    final Map<Integer, Map<Integer, List<Kost2DO>>> bereichMap = kost2Index.get(nummernkreis);
+    if (bereichMap == null) {
+      return null;
+    }
+    final Map<Integer, List<Kost2DO>> teilbereichMap = bereichMap.get(bereich);
+    if (teilbereichMap == null) {
+      return null;
+    }
+    return teilbereichMap.get(teilbereich);
+  }
+
+  private Map<Integer, List<Kost2DO>> getKost2ByProjekt()
+  {
+    checkRefresh();
+    return kost2ByProjekt;
+  }
+
+  /**
+   * Sets the given map and builds the indexes of the kost2 entries.
+   */
+  private void setKost2Map(final Map<Integer, Kost2DO> map)
+  {
+    final Map<Integer, Map<Integer, Map<Integer, List<Kost2DO>>>> index = new HashMap<Integer, Map<Integer, Map<Integer, List<Kost2DO>>>>();
+    final Map<Integer, List<Kost2DO>> byProjekt = new HashMap<Integer, List<Kost2DO>>();
+    for (final Kost2DO kost2 : map.values()) {
+      Map<Integer, Map<Integer, List<Kost2DO>>> bereichMap = index.get(kost2.getNummernkreis());
+      if (bereichMap == null) {
+        bereichMap = new HashMap<Integer, Map<Integer, List<Kost2DO>>>();
+        index.put(kost2.getNummernkreis(), bereichMap);
+      }
+      Map<Integer, List<Kost2DO>> teilbereichMap = bereichMap.get(kost2.getBereich());
+      if (teilbereichMap == null) {
+        teilbereichMap = new HashMap<Integer, List<Kost2DO>>();
+        bereichMap.put(kost2.getBereich(), teilbereichMap);
+      }
+      List<Kost2DO> list = teilbereichMap.get(kost2.getTeilbereich());
+      if (list == null) {
+        list = new ArrayList<Kost2DO>();
+        teilbereichMap.put(kost2.getTeilbereich(), list);
+      }
+      list.add(kost2);
+      final Integer projektId = kost2.getProjektId();
+      if (projektId != null) {
+        List<Kost2DO> projektList = byProjekt.get(projektId);
+        if (projektList == null) {
+          projektList = new ArrayList<Kost2DO>();
+          byProjekt.put(projektId, projektList);
+        }
+        projektList.add(kost2);
+      }
+    }
+    this.kost2Index = index;
+    this.kost2ByProjekt = byProjekt;
+    this.kost2Map = map;
+    kost2Version.incrementAndGet();
+  }
+
   private Map<Integer, Kost1DO> getKost1Map()
   {
     checkRefresh();
@@ -255,7 +344,7 @@ public class KostCache extends AbstractCache
       }
       map2.put(kost2.getId(), kost2);
     }
-    this.kost2Map = map2;
+    setKost2Map(map2);
     updateKost2Arts();
     log.info("Initializing of KostCache done.");
   }
@@ -26,12 +26,12 @@ package org.projectforge.fibu.kost.reporting;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang.ObjectUtils;
 import org.projectforge.fibu.KostFormatter;
 import org.projectforge.fibu.kost.AccountingConfig;
@@ -77,6 +77,12 @@ public class Report implements Serializable
 
   private transient Report parent;
 
+  /**
+   * The selected Buchungssätze of all objectives of the objective tree of this report (classified in one pass by {@link #select(List)}).
+   * Shared by all child reports.
+   */
+  private transient Map<ReportObjective, List<BuchungssatzDO>> selection;
+
   public Report(final ReportObjective reportObjective)
   {
     this.reportObjective = reportObjective;
@@ -272,7 +278,13 @@ public class Report implements Serializable
       childReports = new ArrayList<Report>();
       for (final ReportObjective child : reportObjective.getChildReportObjectives()) {
         final Report report = new Report(child, this);
-        report.select(this.buchungssaetze);
+        if (this.selection != null) {
+          // Already classified by the selection of this report.
+          final List<BuchungssatzDO> list = this.selection.get(child);
+          report.setSelection(list != null ? list : new ArrayList<BuchungssatzDO>(), this.selection);
+        } else {
+          report.select(this.buchungssaetze);
+        }
         childReports.add(report);
       }
       if (this.buchungssaetze != null && (reportObjective.isSuppressOther() == false || reportObjective.isSuppressDuplicates() == false)) {
@@ -359,42 +371,59 @@ public class Report implements Serializable
   }
 
   /**
-   * Diese initiale Liste der Buchungsliste wird sofort bezüglich Exclude- und Include-Filter selektiert und das Ergebnis gesetzt.
+   * Diese initiale Liste der Buchungsliste wird sofort bezüglich Exclude- und Include-Filter selektiert und das Ergebnis gesetzt.<br/>
+   * Die Buchungssätze werden dabei in einem Durchlauf für den gesamten Baum der ReportObjectives klassifiziert: Kost1 und Kost2 werden je
+   * Buchungssatz nur einmal formatiert und die regulären Ausdrücke jedes ReportObjectives nur einmal kompiliert. Die Child-Reports
+   * übernehmen ihre Selektion aus dieser Klassifizierung.
    * @param buchungssaetze vor Selektion.
    */
   public void select(final List<BuchungssatzDO> list)
   {
-    final Predicate regExpPredicate = new Predicate() {
-      public boolean evaluate(final Object obj)
-      {
-        final BuchungssatzDO satz = (BuchungssatzDO) obj;
+    final Map<ReportObjective, List<BuchungssatzDO>> map = new IdentityHashMap<ReportObjective, List<BuchungssatzDO>>();
+    if (list != null) {
+      for (final BuchungssatzDO satz : list) {
         final String kost1 = KostFormatter.format(satz.getKost1());
         final String kost2 = KostFormatter.format(satz.getKost2());
+        classify(map, reportObjective, satz, kost1, kost2);
+      }
+    }
+    final List<BuchungssatzDO> selected = map.get(reportObjective);
+    setSelection(selected != null ? selected : new ArrayList<BuchungssatzDO>(), map);
+  }
 
-        // 1st of all the Blacklists
-        if (match(reportObjective.getKost1ExcludeRegExpList(), kost1, false) == true) {
-          return false;
-        }
-        if (match(reportObjective.getKost2ExcludeRegExpList(), kost2, false) == true) {
-          return false;
-        }
-        // 2nd the whitelists
-        final boolean kost1Match = match(reportObjective.getKost1IncludeRegExpList(), kost1, true);
-        final boolean kost2Match = match(reportObjective.getKost2IncludeRegExpList(), kost2, true);
-        return kost1Match == true && kost2Match == true;
+  /**
+   * Adds the given satz to the selection of the given objective if matching and, if so, classifies it for the child objectives (a child
+   * objective sub-selects the Buchungssätze of its parent).
+   */
+  private void classify(final Map<ReportObjective, List<BuchungssatzDO>> map, final ReportObjective objective,
+      final BuchungssatzDO satz, final String kost1, final String kost2)
+  {
+    if (objective.getMatcher().matches(kost1, kost2) == false) {
+      return;
+    }
+    List<BuchungssatzDO> list = map.get(objective);
+    if (list == null) {
+      list = new ArrayList<BuchungssatzDO>();
+      map.put(objective, list);
+    }
+    list.add(satz);
+    if (objective.getHasChilds() == true) {
+      for (final ReportObjective child : objective.getChildReportObjectives()) {
+        classify(map, child, satz, kost1, kost2);
       }
-    };
-    this.buchungssaetze = new ArrayList<BuchungssatzDO>();
-    this.buchungssatzSet = new HashSet<BuchungssatzDO>();
+    }
+  }
+
+  private void setSelection(final List<BuchungssatzDO> list, final Map<ReportObjective, List<BuchungssatzDO>> selection)
+  {
+    this.buchungssaetze = list;
+    this.buchungssatzSet = new HashSet<BuchungssatzDO>(list);
+    this.selection = selection;
     this.businessAssessment = null;
     this.businessAssessmentTable = null;
     this.childReports = null;
     this.duplicates = null;
     this.other = null;
-    CollectionUtils.select(list, regExpPredicate, this.buchungssaetze);
-    for (final BuchungssatzDO satz : this.buchungssaetze) {
-      this.buchungssatzSet.add(satz);
-    }
   }
 
   public boolean contains(final BuchungssatzDO satz)
@@ -417,23 +446,12 @@ public class Report implements Serializable
    * @param kost
    * @param emptyListMatches
    * @return
-   * @see String#matches(String)()
+   * @see ReportObjectiveMatcher
    * @see #modifyRegExp(String)
    */
   public static boolean match(final List<String> regExpList, final String kost, final boolean emptyListMatches)
   {
-    if (CollectionUtils.isNotEmpty(regExpList) == true) {
-      for (final String str : regExpList) {
-        final String regExp = modifyRegExp(str);
-        if (kost.matches(regExp) == true) {
-          return true;
-        }
-      }
-      return false;
-    } else {
-      // List is empty:
-      return emptyListMatches;
-    }
+    return ReportObjectiveMatcher.matches(ReportObjectiveMatcher.compile(regExpList), kost, emptyListMatches);
   }
 
   /**
@@ -73,6 +73,8 @@ public class ReportObjective
   
   private transient ReportObjective parent;
 
+  private transient ReportObjectiveMatcher matcher;
+
   public ReportObjective()
   {
   }
@@ -232,7 +234,18 @@ public class ReportObjective
   {
     this.kost2ExcludeRegExpList = addRegExp(this.kost2ExcludeRegExpList, regExp);
   }
-  
+
+  /**
+   * @return The compiled regular expressions of this objective (created on first call).
+   */
+  public ReportObjectiveMatcher getMatcher()
+  {
+    if (matcher == null) {
+      matcher = new ReportObjectiveMatcher(this);
+    }
+    return matcher;
+  }
+
   public ReportObjective getParent()
   {
     return parent;
@@ -244,6 +257,7 @@ public class ReportObjective
       regExpList = new ArrayList<String>();
     }
     regExpList.add(regExp);
+    matcher = null;
     return regExpList;
   }
 }
@@ -0,0 +1,106 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.fibu.kost.reporting;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Die regulären Ausdrücke (Include- und Exclude-Listen) eines ReportObjectives werden einmalig kompiliert (siehe
+ * {@link Report#modifyRegExp(String)}), anstatt sie für jeden Buchungssatz erneut zu kompilieren.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see ReportObjective#getMatcher()
+ */
+public class ReportObjectiveMatcher
+{
+  private final Pattern[] kost1Include;
+
+  private final Pattern[] kost1Exclude;
+
+  private final Pattern[] kost2Include;
+
+  private final Pattern[] kost2Exclude;
+
+  public ReportObjectiveMatcher(final ReportObjective reportObjective)
+  {
+    this.kost1Include = compile(reportObjective.getKost1IncludeRegExpList());
+    this.kost1Exclude = compile(reportObjective.getKost1ExcludeRegExpList());
+    this.kost2Include = compile(reportObjective.getKost2IncludeRegExpList());
+    this.kost2Exclude = compile(reportObjective.getKost2ExcludeRegExpList());
+  }
+
+  /**
+   * @param kost1 Formatted kost1 (see KostFormatter#format(org.projectforge.fibu.kost.Kost1DO)).
+   * @param kost2 Formatted kost2 (see KostFormatter#format(org.projectforge.fibu.kost.Kost2DO)).
+   * @return true, wenn keiner der Exclude-Ausdrücke und alle Include-Listen matchen (leere Include-Listen matchen immer).
+   */
+  public boolean matches(final String kost1, final String kost2)
+  {
+    // 1st of all the Blacklists
+    if (matches(kost1Exclude, kost1, false) == true) {
+      return false;
+    }
+    if (matches(kost2Exclude, kost2, false) == true) {
+      return false;
+    }
+    // 2nd the whitelists
+    return matches(kost1Include, kost1, true) == true && matches(kost2Include, kost2, true) == true;
+  }
+
+  /**
+   * @param regExpList
+   * @return The compiled (modified) regular expressions or null, if the given list is empty.
+   * @see Report#modifyRegExp(String)
+   */
+  static Pattern[] compile(final List<String> regExpList)
+  {
+    if (regExpList == null || regExpList.isEmpty() == true) {
+      return null;
+    }
+    final Pattern[] patterns = new Pattern[regExpList.size()];
+    for (int i = 0; i < patterns.length; i++) {
+      patterns[i] = Pattern.compile(Report.modifyRegExp(regExpList.get(i)));
+    }
+    return patterns;
+  }
+
+  /**
+   * @param patterns
+   * @param kost
+   * @param emptyListMatches Result if no patterns are given.
+   * @return true, if any of the patterns matches the whole kost string.
+   */
+  static boolean matches(final Pattern[] patterns, final String kost, final boolean emptyListMatches)
+  {
+    if (patterns == null) {
+      return emptyListMatches;
+    }
+    for (final Pattern pattern : patterns) {
+      if (pattern.matcher(kost).matches() == true) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -23,8 +23,8 @@
 
 package org.projectforge.meb;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
@@ -37,31 +37,37 @@ public class MebCache extends AbstractCache
 {
   private static Logger log = Logger.getLogger(MebCache.class);
 
-  /** The key is the user id and the value is the number of recent MEB entries. */
-  private Map<Integer, Integer> recentEntriesMap;
+  /** Concurrent map, the key is the user id and the value is the number of recent MEB entries. */
+  private volatile Map<Integer, Integer> recentEntriesMap;
 
   private MebDao mebDao;
 
   /**
-   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed.
+   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed. Expired entries are refreshed in the
+   * background.
    */
   public MebCache(final MebDao mebDao)
   {
     super(30 * TICKS_PER_MINUTE);
+    setAsyncRefresh(true);
     this.mebDao = mebDao;
   }
 
   int getRecentMEBEntries(final Integer userId)
   {
+    if (userId == null) {
+      // The concurrent map doesn't support null keys (no user logged in), so don't cache:
+      return mebDao.internalGetRecentMEBEntries(userId);
+    }
     checkRefresh();
-    final Integer result = recentEntriesMap.get(userId);
+    // The map is replaced by refresh, a counter read before is put into the replaced map:
+    final Map<Integer, Integer> map = recentEntriesMap;
+    final Integer result = map.get(userId);
     if (result != null) {
       return result;
     }
     final int counter = mebDao.internalGetRecentMEBEntries(userId);
-    synchronized (recentEntriesMap) {
-      recentEntriesMap.put(userId, counter);
-    }
+    map.put(userId, counter);
     return counter;
   }
 
@@ -71,6 +77,6 @@ public class MebCache extends AbstractCache
   protected void refresh()
   {
     log.info("Clearing MebCache.");
-    recentEntriesMap = new HashMap<Integer, Integer>();
+    recentEntriesMap = new ConcurrentHashMap<Integer, Integer>();
   }
 }
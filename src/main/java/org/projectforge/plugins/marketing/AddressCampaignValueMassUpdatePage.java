@@ -23,8 +23,6 @@
 
 package org.projectforge.plugins.marketing;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -75,8 +73,7 @@ public class AddressCampaignValueMassUpdatePage extends AbstractMassEditPage
         if (addresses == null) {
           return null;
         }
-        final Comparator<AddressDO> comp = new MyBeanComparator<AddressDO>(sp.getProperty().toString(), sp.isAscending());
-        Collections.sort(addresses, comp);
+        new MyBeanComparator<AddressDO>(sp.getProperty().toString(), sp.isAscending()).sort(addresses);
         return addresses.subList((int)first, (int)(first + count)).iterator();
       }
 
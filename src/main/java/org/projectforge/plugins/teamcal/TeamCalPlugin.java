@@ -258,7 +258,7 @@ public class TeamCalPlugin extends AbstractPlugin
   @Override
   public void registerCronJob(final CronSetup cronSetup)
   {
-    cronSetup.registerCronJob("teamCalAboJob", TeamCalSubscriptionJob.class, "0 */5 * * * ?");
+    cronSetup.registerCronJob("teamCalAboJob", TeamCalSubscriptionJob.class, "0 * * * * ?");
     // do initial cache installation in a separated thread
     final Thread t = new Thread() {
 
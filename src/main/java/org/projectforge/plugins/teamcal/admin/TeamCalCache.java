@@ -51,7 +51,12 @@ public class TeamCalCache extends AbstractCache
 
   private transient TeamCalRight teamCalRight;
 
-  private Map<Integer, TeamCalDO> calendarMap;
+  private volatile Map<Integer, TeamCalDO> calendarMap;
+
+  private TeamCalCache()
+  {
+    setAsyncRefresh(true);
+  }
 
   public static TeamCalCache getInstance()
   {
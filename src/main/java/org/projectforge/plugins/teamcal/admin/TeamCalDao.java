@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.criterion.Order;
 import org.projectforge.common.StringHelper;
@@ -41,6 +42,7 @@ import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
 import org.projectforge.user.UserRightId;
+import org.projectforge.web.calendar.CalendarFeedCache;
 import org.projectforge.web.user.GroupsProvider;
 import org.projectforge.web.user.UsersProvider;
 import org.springframework.transaction.annotation.Propagation;
@@ -291,6 +293,47 @@ public class TeamCalDao extends BaseDao<TeamCalDO>
     TeamCalCache.getInstance().setExpired();
   }
 
+  /**
+   * Expires the cached calendar feeds containing this calendar if the owner or any access right was changed.
+   * @see org.projectforge.core.BaseDao#onChange(org.projectforge.core.ExtendedBaseDO, org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onChange(final TeamCalDO obj, final TeamCalDO dbObj)
+  {
+    super.onChange(obj, dbObj);
+    if (ObjectUtils.equals(obj.getOwnerId(), dbObj.getOwnerId()) == false
+        || StringUtils.equals(obj.getFullAccessGroupIds(), dbObj.getFullAccessGroupIds()) == false
+        || StringUtils.equals(obj.getFullAccessUserIds(), dbObj.getFullAccessUserIds()) == false
+        || StringUtils.equals(obj.getReadonlyAccessGroupIds(), dbObj.getReadonlyAccessGroupIds()) == false
+        || StringUtils.equals(obj.getReadonlyAccessUserIds(), dbObj.getReadonlyAccessUserIds()) == false
+        || StringUtils.equals(obj.getMinimalAccessGroupIds(), dbObj.getMinimalAccessGroupIds()) == false
+        || StringUtils.equals(obj.getMinimalAccessUserIds(), dbObj.getMinimalAccessUserIds()) == false) {
+      CalendarFeedCache.getInstance().setCalendarExpiredAfterCommit(dbObj.getId());
+    }
+  }
+
+  /**
+   * Expires the cached calendar feeds containing this calendar.
+   * @see org.projectforge.core.BaseDao#afterDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterDelete(final TeamCalDO obj)
+  {
+    super.afterDelete(obj);
+    CalendarFeedCache.getInstance().setCalendarExpiredAfterCommit(obj.getId());
+  }
+
+  /**
+   * Expires the cached calendar feeds containing this calendar.
+   * @see org.projectforge.core.BaseDao#afterUndelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterUndelete(final TeamCalDO obj)
+  {
+    super.afterUndelete(obj);
+    CalendarFeedCache.getInstance().setCalendarExpiredAfterCommit(obj.getId());
+  }
+
   /**
    * @see org.projectforge.core.BaseDao#useOwnCriteriaCacheRegion()
    */
@@ -0,0 +1,168 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.projectforge.common.AbstractCache;
+import org.projectforge.registry.Registry;
+
+/**
+ * Caches the non-recurrence events (not deleted) of the local calendars in an {@link TeamEventIntervalIndex} per calendar. The index of a
+ * calendar is loaded on first access and dropped on any modification of an event of this calendar (see
+ * {@link TeamEventDao#afterSaveOrModify(TeamEventDO)}). The durations of the time period queries of this cache and of the external
+ * subscriptions are part of the statistics.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class TeamEventCache extends AbstractCache
+{
+  private static Logger log = Logger.getLogger(TeamEventCache.class);
+
+  private static TeamEventCache instance = new TeamEventCache();
+
+  private transient TeamEventDao teamEventDao;
+
+  private final ConcurrentMap<Integer, TeamEventIntervalIndex> indexMap = new ConcurrentHashMap<Integer, TeamEventIntervalIndex>();
+
+  /**
+   * Incremented on every invalidation. An index loaded during any invalidation isn't put into the cache (it may be outdated).
+   */
+  private final AtomicLong modificationCounter = new AtomicLong();
+
+  private final AtomicLong queryCounter = new AtomicLong();
+
+  private final AtomicLong queryDuration = new AtomicLong();
+
+  private final AtomicLong subscriptionQueryCounter = new AtomicLong();
+
+  private final AtomicLong subscriptionQueryDuration = new AtomicLong();
+
+  private TeamEventCache()
+  {
+  }
+
+  public static TeamEventCache getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * @param calendarId
+   * @param startTime
+   * @param endTime
+   * @return All non-recurrence events of the given calendar overlapping the given time period. Please note: the result list contains
+   *         detached objects which must not be modified.
+   */
+  public List<TeamEventDO> getEvents(final Integer calendarId, final long startTime, final long endTime)
+  {
+    checkRefresh();
+    final long begin = System.nanoTime();
+    TeamEventIntervalIndex index = indexMap.get(calendarId);
+    if (index == null) {
+      final long counter = modificationCounter.get();
+      index = new TeamEventIntervalIndex(getTeamEventDao().internalGetNonRecurrenceEvents(calendarId));
+      if (modificationCounter.get() == counter) {
+        indexMap.put(calendarId, index);
+      }
+      if (log.isDebugEnabled() == true) {
+        log.debug("Index of calendar #" + calendarId + " with " + index.size() + " events loaded.");
+      }
+    }
+    final List<TeamEventDO> result = index.getEvents(startTime, endTime);
+    queryCounter.incrementAndGet();
+    queryDuration.addAndGet(System.nanoTime() - begin);
+    return result;
+  }
+
+  /**
+   * The index of the given calendar will be reloaded on next access.
+   * @param calendarId
+   */
+  public void setExpired(final Integer calendarId)
+  {
+    modificationCounter.incrementAndGet();
+    if (calendarId != null) {
+      indexMap.remove(calendarId);
+    }
+  }
+
+  /**
+   * Adds a time period query of an external subscription to the statistics.
+   * @param durationInNanos
+   */
+  public void recordSubscriptionQuery(final long durationInNanos)
+  {
+    subscriptionQueryCounter.incrementAndGet();
+    subscriptionQueryDuration.addAndGet(durationInNanos);
+  }
+
+  /**
+   * @see org.projectforge.common.AbstractCache#getStatistics()
+   */
+  @Override
+  public String getStatistics()
+  {
+    return super.getStatistics()
+        + ", calendars="
+        + indexMap.size()
+        + ", queries="
+        + queryCounter.get()
+        + ", averageQueryDuration="
+        + getAverageInMicros(queryDuration, queryCounter)
+        + "us, subscriptionQueries="
+        + subscriptionQueryCounter.get()
+        + ", averageSubscriptionQueryDuration="
+        + getAverageInMicros(subscriptionQueryDuration, subscriptionQueryCounter)
+        + "us";
+  }
+
+  private long getAverageInMicros(final AtomicLong durationInNanos, final AtomicLong counter)
+  {
+    final long count = counter.get();
+    return count > 0 ? durationInNanos.get() / count / 1000 : -1;
+  }
+
+  private TeamEventDao getTeamEventDao()
+  {
+    if (teamEventDao == null) {
+      teamEventDao = Registry.instance().getDao(TeamEventDao.class);
+    }
+    return teamEventDao;
+  }
+
+  /**
+   * Drops all indexes, they will be reloaded on demand.
+   * @see org.projectforge.common.AbstractCache#refresh()
+   */
+  @Override
+  protected void refresh()
+  {
+    modificationCounter.incrementAndGet();
+    indexMap.clear();
+  }
+}
@@ -34,21 +34,24 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
-import org.hibernate.Query;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.calendar.CalendarUtils;
 import org.projectforge.calendar.ICal4JUtils;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
+import org.projectforge.core.AutocompletionCache;
+import org.projectforge.core.AutocompletionIndex;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.DisplayHistoryEntry;
 import org.projectforge.core.QueryFilter;
+import org.projectforge.database.TransactionHelper;
 import org.projectforge.plugins.teamcal.TeamCalConfig;
 import org.projectforge.plugins.teamcal.admin.TeamCalCache;
 import org.projectforge.plugins.teamcal.admin.TeamCalDO;
@@ -57,6 +60,7 @@ import org.projectforge.plugins.teamcal.admin.TeamCalsProvider;
 import org.projectforge.plugins.teamcal.externalsubscription.TeamEventExternalSubscriptionCache;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.UserRightId;
+import org.projectforge.web.calendar.CalendarFeedCache;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -86,6 +90,27 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
 
   private TeamCalDao teamCalDao;
 
+  /**
+   * The locations of the events (not deleted ones) of the calendars with modification date within last year. The key is the calendar id.
+   */
+  private final AutocompletionCache<Integer> locationCache = new AutocompletionCache<Integer>("teamEvent.location", 1000,
+      new AutocompletionCache.Loader<Integer>() {
+    @SuppressWarnings("unchecked")
+    public void load(final Integer calendarId, final AutocompletionIndex index)
+    {
+      final DateHolder dh = new DateHolder();
+      dh.add(Calendar.YEAR, -1);
+      final List<Object[]> list = getHibernateTemplate().find(
+          "select t.location, t.lastUpdate from "
+              + clazz.getSimpleName()
+              + " t where deleted=false and t.calendar.id = ? and lastUpdate > ? and t.location != null and t.location != ''",
+              new Object[] { calendarId, dh.getDate()});
+      for (final Object[] entry : list) {
+        index.add((String) entry[0], (Date) entry[1]);
+      }
+    }
+  });
+
   public TeamEventDao()
   {
     super(TeamEventDO.class);
@@ -183,7 +208,7 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
   public List<TeamEvent> getEventList(final TeamEventFilter filter, final boolean calculateRecurrenceEvents)
   {
     final List<TeamEvent> result = new ArrayList<TeamEvent>();
-    List<TeamEventDO> list = getList(filter);
+    List<TeamEventDO> list = isCacheable(filter) == true ? getListFromCache(filter) : getList(filter);
     if (CollectionUtils.isNotEmpty(list) == true) {
       for (final TeamEventDO eventDO : list) {
         if (eventDO.hasRecurrence() == true) {
@@ -215,7 +240,7 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
           result.add(eventDO);
           continue;
         }
-        final Collection<TeamEvent> events = TeamEventUtils.getRecurrenceEvents(teamEventFilter.getStartDate(),
+        final Collection<TeamEvent> events = TeamEventOccurrenceCache.getInstance().getRecurrenceEvents(teamEventFilter.getStartDate(),
             teamEventFilter.getEndDate(), eventDO, timeZone);
         if (events == null) {
           continue;
@@ -231,6 +256,187 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
     return result;
   }
 
+  /**
+   * The non-recurrence events of the local calendars may be served by the {@link TeamEventCache} if the filter defines a time period and
+   * no other criteria (search string, deleted, modified since etc.).
+   */
+  private boolean isCacheable(final TeamEventFilter filter)
+  {
+    return filter.getStartDate() != null
+        && filter.getEndDate() != null
+        && filter.isSearchNotEmpty() == false
+        && filter.isDeleted() == false
+        && filter.isIgnoreDeleted() == false
+        && filter.getModifiedSince() == null
+        && filter.isUseModificationFilter() == false;
+  }
+
+  /**
+   * Same as {@link #getList(BaseSearchFilter)} but the local events are got from the {@link TeamEventCache} instead of the data base. The
+   * result contains no recurrence events of the local calendars. The local events are ordered by start date (descending) as the result of
+   * the data base query.
+   */
+  private List<TeamEventDO> getListFromCache(final TeamEventFilter filter)
+  {
+    checkLoggedInUserSelectAccess();
+    final List<TeamEventDO> result = new ArrayList<TeamEventDO>();
+    if (accessChecker.isRestrictedUser() == true) {
+      return result;
+    }
+    final Collection<Integer> teamCals = filter.getTeamCals();
+    final Collection<Integer> calendarIds;
+    if (CollectionUtils.isNotEmpty(teamCals) == true) {
+      calendarIds = teamCals;
+    } else if (filter.getTeamCalId() != null) {
+      calendarIds = Collections.singletonList(filter.getTeamCalId());
+    } else {
+      return result;
+    }
+    final TeamEventExternalSubscriptionCache aboCache = TeamEventExternalSubscriptionCache.instance();
+    // Extension of the time period due to all day events, see buildQueryFilter.
+    final long startTime = filter.getStartDate().getTime() - ONE_DAY;
+    final long endTime = filter.getEndDate().getTime() + ONE_DAY;
+    for (final Integer calendarId : calendarIds) {
+      if (aboCache.isExternalSubscribedCalendar(calendarId) == true) {
+        continue;
+      }
+      for (final TeamEventDO event : TeamEventCache.getInstance().getEvents(calendarId, startTime, endTime)) {
+        if (matches(event.getStartDate(), event.getEndDate(), event.isAllDay(), filter) == true) {
+          result.add(event);
+        }
+      }
+    }
+    Collections.sort(result, new Comparator<TeamEventDO>() {
+      public int compare(final TeamEventDO o1, final TeamEventDO o2)
+      {
+        final Date d1 = o1.getStartDate(), d2 = o2.getStartDate();
+        if (d1 == null || d2 == null) {
+          return d1 == null ? (d2 == null ? 0 : 1) : -1;
+        }
+        return d2.compareTo(d1);
+      }
+    });
+    final List<TeamEventDO> list = extractEntriesWithSelectAccess(result);
+    // subscriptions
+    final Integer teamCalId = filter.getTeamCalId();
+    if (teamCals != null) {
+      for (final Integer calendarId : teamCals) {
+        if (aboCache.isExternalSubscribedCalendar(calendarId) == true) {
+          addEventsToList(filter, list, aboCache, calendarId);
+        }
+      }
+    }
+    if (teamCalId != null && (teamCals == null || teamCals.contains(teamCalId) == false)) {
+      if (aboCache.isExternalSubscribedCalendar(teamCalId) == true) {
+        addEventsToList(filter, list, aboCache, teamCalId);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Loads all non-recurrence events of the given calendar (not deleted) with their calendar and attendees for the {@link TeamEventCache}.
+   * @param calendarId
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<TeamEventDO> internalGetNonRecurrenceEvents(final Integer calendarId)
+  {
+    final List<TeamEventDO> list = getHibernateTemplate().find(
+        "select distinct e from TeamEventDO e join fetch e.calendar left join fetch e.attendees where e.calendar.id=? and e.deleted=false",
+        calendarId);
+    final List<TeamEventDO> result = new ArrayList<TeamEventDO>(list.size());
+    for (final TeamEventDO event : list) {
+      if (event.hasRecurrence() == false) {
+        result.add(event);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Drops the cached index of the event's calendar (after the commit, otherwise a concurrent reload would cache the old data base state)
+   * and the cached occurrences of the event.
+   * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSaveOrModify(final TeamEventDO obj)
+  {
+    super.afterSaveOrModify(obj);
+    setEventCacheExpiredAfterCommit(obj.getCalendarId());
+    TeamEventOccurrenceCache.getInstance().setExpired(obj.getId());
+    CalendarFeedCache.getInstance().setCalendarExpiredAfterCommit(obj.getCalendarId());
+  }
+
+  /**
+   * Adds the location of the new event to the location index of its calendar.
+   * @see org.projectforge.core.BaseDao#afterSave(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSave(final TeamEventDO obj)
+  {
+    super.afterSave(obj);
+    if (obj.isDeleted() == false) {
+      locationCache.add(obj.getCalendarId(), obj.getLocation(), obj.getLastUpdate());
+    }
+  }
+
+  /**
+   * Removes the location of the event (as stored in the data base) from the location index of its calendar.
+   * @see org.projectforge.core.BaseDao#onDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onDelete(final TeamEventDO obj)
+  {
+    super.onDelete(obj);
+    final TeamEventDO dbObj = internalGetById(obj.getId());
+    if (dbObj != null && dbObj.isDeleted() == false) {
+      locationCache.removeValue(dbObj.getCalendarId(), dbObj.getLocation());
+    }
+  }
+
+  /**
+   * Adds the location of the restored event to the location index of its calendar.
+   * @see org.projectforge.core.BaseDao#afterUndelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterUndelete(final TeamEventDO obj)
+  {
+    super.afterUndelete(obj);
+    locationCache.add(obj.getCalendarId(), obj.getLocation(), obj.getLastUpdate());
+  }
+
+  /**
+   * Drops the cached index of the previous calendar (the calendar of an event may be changed) and moves the location to the location index
+   * of the new calendar, if the location or calendar is changed.
+   * @see org.projectforge.core.BaseDao#onChange(org.projectforge.core.ExtendedBaseDO, org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onChange(final TeamEventDO obj, final TeamEventDO dbObj)
+  {
+    super.onChange(obj, dbObj);
+    setEventCacheExpiredAfterCommit(dbObj.getCalendarId());
+    CalendarFeedCache.getInstance().setCalendarExpiredAfterCommit(dbObj.getCalendarId());
+    if (dbObj.isDeleted() == false
+        && (ObjectUtils.equals(dbObj.getLocation(), obj.getLocation()) == false
+        || ObjectUtils.equals(dbObj.getCalendarId(), obj.getCalendarId()) == false)) {
+      // Only a changed location is counted (deleted events aren't counted at all):
+      locationCache.removeValue(dbObj.getCalendarId(), dbObj.getLocation());
+      locationCache.add(obj.getCalendarId(), obj.getLocation(), new Date());
+    }
+  }
+
+  private void setEventCacheExpiredAfterCommit(final Integer calendarId)
+  {
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        TeamEventCache.getInstance().setExpired(calendarId);
+      }
+    });
+  }
+
   /**
    * @see org.projectforge.core.BaseDao#getListForSearchDao(org.projectforge.core.BaseSearchFilter)
    */
@@ -296,10 +502,11 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
   }
 
   /**
-   * Get all locations of the user's calendar events (not deleted ones) with modification date within last year.
+   * Get all locations of the user's calendar events (not deleted ones) with modification date within last year. The locations are served
+   * by the autocompletion indexes of the calendars (no data base query per keystroke).
    * @param searchString
+   * @return The matching locations, the most frequent and recent used first.
    */
-  @SuppressWarnings("unchecked")
   public List<String> getLocationAutocompletion(final String searchString, final TeamCalDO[] calendars)
   {
     if (calendars == null || calendars.length == 0) {
@@ -309,17 +516,11 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
       return null;
     }
     checkLoggedInUserSelectAccess();
-    final String s = "select distinct location from "
-        + clazz.getSimpleName()
-        + " t where deleted=false and t.calendar in :cals and lastUpdate > :lastUpdate and lower(t.location) like :location) order by t.location";
-    final Query query = getSession().createQuery(s);
-    query.setParameterList("cals", calendars);
-    final DateHolder dh = new DateHolder();
-    dh.add(Calendar.YEAR, -1);
-    query.setDate("lastUpdate", dh.getDate());
-    query.setString("location", "%" + StringUtils.lowerCase(searchString) + "%");
-    final List<String> list = query.list();
-    return list;
+    final List<Integer> calendarIds = new ArrayList<Integer>(calendars.length);
+    for (final TeamCalDO calendar : calendars) {
+      calendarIds.add(calendar.getId());
+    }
+    return AutocompletionIndex.find(locationCache.getIndexes(calendarIds), searchString);
   }
 
   private void addEventsToList(final TeamEventFilter teamEventFilter, final List<TeamEventDO> result,
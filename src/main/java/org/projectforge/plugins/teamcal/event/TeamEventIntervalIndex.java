@@ -0,0 +1,154 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable interval index of team events for range queries in O(log n + k). The events are sorted by their start date and a segment tree
+ * holds the maximum end date of each sub range, so sub ranges ending before the requested time period are skipped. Instances are built once
+ * and may be read concurrently without any locking. Events without start date are handled as starting 1800, events without end date as
+ * ending 3000.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class TeamEventIntervalIndex implements Serializable
+{
+  private static final long serialVersionUID = -3547452766934315489L;
+
+  private final TeamEventDO[] events;
+
+  private final long[] startTimes;
+
+  private final long[] endTimes;
+
+  /**
+   * Segment tree (root node 1, children 2*i and 2*i+1) of the maximum end times.
+   */
+  private final long[] maxEndTimes;
+
+  public TeamEventIntervalIndex(final Collection<TeamEventDO> collection)
+  {
+    events = collection.toArray(new TeamEventDO[collection.size()]);
+    Arrays.sort(events, new Comparator<TeamEventDO>() {
+      @Override
+      public int compare(final TeamEventDO o1, final TeamEventDO o2)
+      {
+        final long s1 = getStartTime(o1);
+        final long s2 = getStartTime(o2);
+        return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+      }
+    });
+    final int size = events.length;
+    startTimes = new long[size];
+    endTimes = new long[size];
+    for (int i = 0; i < size; i++) {
+      startTimes[i] = getStartTime(events[i]);
+      endTimes[i] = getEndTime(events[i]);
+    }
+    maxEndTimes = new long[size > 0 ? 4 * size : 0];
+    if (size > 0) {
+      build(1, 0, size);
+    }
+  }
+
+  /**
+   * @param startTime
+   * @param endTime
+   * @return All events overlapping the given time period (event start &lt;= endTime and event end &gt;= startTime) ordered by start date.
+   */
+  public List<TeamEventDO> getEvents(final long startTime, final long endTime)
+  {
+    final List<TeamEventDO> result = new ArrayList<TeamEventDO>();
+    // All events starting after endTime are out of scope:
+    final int upper = upperBound(endTime);
+    if (upper > 0) {
+      collect(1, 0, events.length, upper, startTime, result);
+    }
+    return result;
+  }
+
+  public int size()
+  {
+    return events.length;
+  }
+
+  private long build(final int node, final int from, final int to)
+  {
+    if (to - from == 1) {
+      maxEndTimes[node] = endTimes[from];
+    } else {
+      final int middle = (from + to) >>> 1;
+      maxEndTimes[node] = Math.max(build(2 * node, from, middle), build(2 * node + 1, middle, to));
+    }
+    return maxEndTimes[node];
+  }
+
+  private void collect(final int node, final int from, final int to, final int upper, final long startTime, final List<TeamEventDO> result)
+  {
+    if (from >= upper || maxEndTimes[node] < startTime) {
+      // Sub range starts after the time period or all events of the sub range end before the time period.
+      return;
+    }
+    if (to - from == 1) {
+      result.add(events[from]);
+      return;
+    }
+    final int middle = (from + to) >>> 1;
+    collect(2 * node, from, middle, upper, startTime, result);
+    collect(2 * node + 1, middle, to, upper, startTime, result);
+  }
+
+  /**
+   * @return Index of the first event starting after the given time (or size if no such event exists).
+   */
+  private int upperBound(final long time)
+  {
+    int low = 0;
+    int high = startTimes.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (startTimes[middle] <= time) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static long getStartTime(final TeamEventDO event)
+  {
+    return event.getStartDate() != null ? event.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
+  }
+
+  private static long getEndTime(final TeamEventDO event)
+  {
+    return event.getEndDate() != null ? event.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
+  }
+}
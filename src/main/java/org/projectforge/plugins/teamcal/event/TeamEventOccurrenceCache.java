@@ -0,0 +1,188 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.projectforge.common.AbstractCache;
+
+/**
+ * Caches the expanded occurrences of recurrence events (see {@link TeamEventUtils#getRecurrenceEvents(Date, Date, TeamEventDO, TimeZone)})
+ * per event id, last update and time zone. The occurrences are calculated for time periods aligned to {@link #CHUNK_SIZE}. A requested time
+ * period outside the cached one extends it, so adjacent time periods (e. g. the next week of a calendar view) are served by slicing the
+ * cached occurrences. The entries of an event are removed by the save and update hooks of {@link TeamEventDao}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class TeamEventOccurrenceCache extends AbstractCache
+{
+  private static Logger log = Logger.getLogger(TeamEventOccurrenceCache.class);
+
+  private static final long CHUNK_SIZE = 28L * 24 * 60 * 60 * 1000; // 4 weeks
+
+  /**
+   * A cached time period won't be extended beyond this size (it's replaced by the requested one instead).
+   */
+  private static final long MAX_PERIOD = 26 * CHUNK_SIZE; // Two years.
+
+  /**
+   * The cache is cleared if more events are cached.
+   */
+  private static final int MAX_SIZE = 10000;
+
+  private static TeamEventOccurrenceCache instance = new TeamEventOccurrenceCache();
+
+  private final ConcurrentMap<Integer, Entry> map = new ConcurrentHashMap<Integer, Entry>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong expansions = new AtomicLong();
+
+  private final AtomicLong uncacheable = new AtomicLong();
+
+  /**
+   * The occurrences of one event (one version given by last update) for each used time zone.
+   */
+  private static class Entry
+  {
+    final long lastUpdate;
+
+    final ConcurrentMap<String, TeamEventOccurrences> occurrencesByTimeZone = new ConcurrentHashMap<String, TeamEventOccurrences>();
+
+    Entry(final long lastUpdate)
+    {
+      this.lastUpdate = lastUpdate;
+    }
+  }
+
+  private TeamEventOccurrenceCache()
+  {
+  }
+
+  public static TeamEventOccurrenceCache getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Same as {@link TeamEventUtils#getRecurrenceEvents(Date, Date, TeamEventDO, TimeZone)}, but served by the cache if the event is a saved
+   * one (events of subscribed calendars have no persistent id and aren't cached).
+   */
+  public Collection<TeamEvent> getRecurrenceEvents(final Date startDate, final Date endDate, final TeamEventDO event,
+      final TimeZone timeZone)
+  {
+    checkRefresh();
+    final Integer id = event.getId();
+    if (id == null || id < 0 || event.getLastUpdate() == null || startDate == null || endDate == null || event.hasRecurrence() == false) {
+      uncacheable.incrementAndGet();
+      return TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    }
+    final long startTime = startDate.getTime();
+    final long endTime = endDate.getTime();
+    final long lastUpdate = event.getLastUpdate().getTime();
+    Entry entry = map.get(id);
+    if (entry == null || entry.lastUpdate != lastUpdate) {
+      if (map.size() >= MAX_SIZE) {
+        log.info("Maximum size of " + MAX_SIZE + " recurrence events reached, clearing cache.");
+        map.clear();
+      }
+      entry = new Entry(lastUpdate);
+      map.put(id, entry);
+    }
+    final String timeZoneId = timeZone.getID();
+    TeamEventOccurrences occurrences = entry.occurrencesByTimeZone.get(timeZoneId);
+    if (occurrences != null && occurrences.covers(startTime, endTime) == true) {
+      hits.incrementAndGet();
+    } else {
+      long from = floor(startTime);
+      long until = ceil(endTime);
+      if (occurrences != null && Math.max(until, occurrences.getUntil()) - Math.min(from, occurrences.getFrom()) <= MAX_PERIOD) {
+        // Extend the cached time period:
+        from = Math.min(from, occurrences.getFrom());
+        until = Math.max(until, occurrences.getUntil());
+      }
+      occurrences = TeamEventOccurrences.calculate(new Date(from), new Date(until), event, timeZone);
+      expansions.incrementAndGet();
+      if (occurrences == null) {
+        return null;
+      }
+      entry.occurrencesByTimeZone.put(timeZoneId, occurrences);
+    }
+    return occurrences.getEvents(event, startTime, endTime);
+  }
+
+  /**
+   * Removes the cached occurrences of the given event.
+   * @param eventId
+   */
+  public void setExpired(final Integer eventId)
+  {
+    if (eventId != null) {
+      map.remove(eventId);
+    }
+  }
+
+  private static long floor(final long time)
+  {
+    return time - ((time % CHUNK_SIZE) + CHUNK_SIZE) % CHUNK_SIZE;
+  }
+
+  private static long ceil(final long time)
+  {
+    final long floor = floor(time);
+    return floor == time ? time : floor + CHUNK_SIZE;
+  }
+
+  /**
+   * @see org.projectforge.common.AbstractCache#getStatistics()
+   */
+  @Override
+  public String getStatistics()
+  {
+    return super.getStatistics()
+        + ", events="
+        + map.size()
+        + ", occurrenceHits="
+        + hits.get()
+        + ", expansions="
+        + expansions.get()
+        + ", uncacheable="
+        + uncacheable.get();
+  }
+
+  /**
+   * Drops all cached occurrences.
+   * @see org.projectforge.common.AbstractCache#refresh()
+   */
+  @Override
+  protected void refresh()
+  {
+    map.clear();
+  }
+}
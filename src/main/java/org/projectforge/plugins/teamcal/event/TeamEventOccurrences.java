@@ -0,0 +1,245 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import net.fortuna.ical4j.model.DateList;
+import net.fortuna.ical4j.model.Recur;
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.parameter.Value;
+
+import org.projectforge.calendar.ICal4JUtils;
+import org.projectforge.common.DateHelper;
+
+/**
+ * The expanded occurrences of a recurrence event within a time period [from, until) for one time zone. Only the start and end times are
+ * stored (as primitive arrays), the {@link TeamEvent} objects are created on demand for any sub period.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class TeamEventOccurrences
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TeamEventOccurrences.class);
+
+  private final long from;
+
+  private final long until;
+
+  /**
+   * Start times of the occurrences in ascending order.
+   */
+  private final long[] startTimes;
+
+  private final long[] endTimes;
+
+  /**
+   * Index of the occurrence represented by the origin event itself or -1.
+   */
+  private final int masterIndex;
+
+  private TeamEventOccurrences(final long from, final long until, final long[] startTimes, final long[] endTimes, final int masterIndex)
+  {
+    this.from = from;
+    this.until = until;
+    this.startTimes = startTimes;
+    this.endTimes = endTimes;
+    this.masterIndex = masterIndex;
+  }
+
+  /**
+   * Calculates all occurrences (not excluded by ex-dates) of the given recurrence event starting within the given time period.
+   * @param startDate
+   * @param endDate Exclusive (such as {@link Recur#getDates(net.fortuna.ical4j.model.Date, net.fortuna.ical4j.model.Date,
+   *          net.fortuna.ical4j.model.Date, Value)}).
+   * @param event
+   * @param timeZone
+   * @return The occurrences or null if the event has no (valid) recurrence.
+   */
+  public static TeamEventOccurrences calculate(final Date startDate, final Date endDate, final TeamEventDO event,
+      final java.util.TimeZone timeZone)
+  {
+    if (event.hasRecurrence() == false) {
+      return null;
+    }
+    final Recur recur = event.getRecurrenceObject();
+    if (recur == null) {
+      // Shouldn't happen:
+      return null;
+    }
+    final java.util.TimeZone timeZone4Calc = timeZone;
+    final String eventStartDateString = event.isAllDay() == true ? DateHelper.formatIsoDate(event.getStartDate(), timeZone) : DateHelper
+        .formatIsoTimestamp(event.getStartDate(), DateHelper.UTC);
+    Date eventStartDate = event.getStartDate();
+    if (event.isAllDay() == true) {
+      // eventStartDate should be midnight in user's time zone.
+      eventStartDate = DateHelper.parseIsoDate(eventStartDateString, timeZone);
+    }
+    if (log.isDebugEnabled() == true) {
+      log.debug("---------- startDate=" + DateHelper.formatIsoTimestamp(eventStartDate, timeZone) + ", timeZone=" + timeZone.getID());
+    }
+    final TimeZone ical4jTimeZone = ICal4JUtils.getTimeZone(timeZone4Calc);
+    final net.fortuna.ical4j.model.DateTime ical4jStartDate = new net.fortuna.ical4j.model.DateTime(startDate);
+    ical4jStartDate.setTimeZone(ical4jTimeZone);
+    final net.fortuna.ical4j.model.DateTime ical4jEndDate = new net.fortuna.ical4j.model.DateTime(endDate);
+    ical4jEndDate.setTimeZone(ICal4JUtils.getTimeZone(timeZone4Calc));
+    final net.fortuna.ical4j.model.DateTime seedDate = new net.fortuna.ical4j.model.DateTime(eventStartDate);
+    seedDate.setTimeZone(ICal4JUtils.getTimeZone(timeZone4Calc));
+    if (ical4jStartDate == null || ical4jEndDate == null || seedDate == null) {
+      log.error("Can't get recurrence events of event "
+          + event.getId()
+          + ". Not all three dates are given: startDate="
+          + ical4jStartDate
+          + ", endDate="
+          + ical4jEndDate
+          + ", seed="
+          + seedDate);
+      return null;
+    }
+    final List<net.fortuna.ical4j.model.Date> exDates = ICal4JUtils.parseISODateStringsAsICal4jDates(event.getRecurrenceExDate(),
+        ical4jTimeZone);
+    final DateList dateList = recur.getDates(seedDate, ical4jStartDate, ical4jEndDate, Value.DATE_TIME);
+    final List<net.fortuna.ical4j.model.DateTime> dateTimes = new ArrayList<net.fortuna.ical4j.model.DateTime>();
+    net.fortuna.ical4j.model.DateTime masterDateTime = null;
+    if (dateList != null) {
+      OuterLoop: for (final Object obj : dateList) {
+        final net.fortuna.ical4j.model.DateTime dateTime = (net.fortuna.ical4j.model.DateTime) obj;
+        final String isoDateString = event.isAllDay() == true ? DateHelper.formatIsoDate(dateTime, timeZone) : DateHelper
+            .formatIsoTimestamp(dateTime, DateHelper.UTC);
+        if (exDates != null && exDates.size() > 0) {
+          for (final net.fortuna.ical4j.model.Date exDate : exDates) {
+            if (event.isAllDay() == false) {
+              if (exDate.getTime() == dateTime.getTime()) {
+                if (log.isDebugEnabled() == true) {
+                  log.debug("= ex-dates equals: " + isoDateString + " == " + exDate);
+                }
+                // this date is part of ex dates, so don't use it.
+                continue OuterLoop;
+              }
+            } else {
+              // Allday event.
+              final String isoExDateString = DateHelper.formatIsoDate(exDate, DateHelper.UTC);
+              if (isoDateString.equals(isoExDateString) == true) {
+                if (log.isDebugEnabled() == true) {
+                  log.debug("= ex-dates equals: " + isoDateString + " == " + isoExDateString);
+                }
+                // this date is part of ex dates, so don't use it.
+                continue OuterLoop;
+              }
+            }
+            if (log.isDebugEnabled() == true) {
+              log.debug("ex-dates not equals: " + isoDateString + " != " + exDate);
+            }
+          }
+        }
+        if (isoDateString.equals(eventStartDateString) == true) {
+          // The event itself.
+          masterDateTime = dateTime;
+        }
+        dateTimes.add(dateTime);
+      }
+    }
+    Collections.sort(dateTimes);
+    final int masterIndex = masterDateTime != null ? dateTimes.indexOf(masterDateTime) : -1;
+    final int size = dateTimes.size();
+    final long[] startTimes = new long[size];
+    final long[] endTimes = new long[size];
+    // The duration of the occurrences in minutes (see TeamRecurrenceEvent).
+    final long duration = 60000L * (int) ((event.getEndDate().getTime() - event.getStartDate().getTime()) / 60000);
+    for (int i = 0; i < size; i++) {
+      startTimes[i] = dateTimes.get(i).getTime();
+      endTimes[i] = i == masterIndex ? event.getEndDate().getTime() : startTimes[i] + duration;
+    }
+    return new TeamEventOccurrences(startDate.getTime(), endDate.getTime(), startTimes, endTimes, masterIndex);
+  }
+
+  /**
+   * @param event The origin event.
+   * @param startTime
+   * @param endTime Exclusive.
+   * @return The occurrences starting within the given time period (must be inside the time period of this object). The origin event
+   *         itself is returned as occurrence for its own date, all other occurrences as {@link TeamRecurrenceEvent}.
+   */
+  public List<TeamEvent> getEvents(final TeamEventDO event, final long startTime, final long endTime)
+  {
+    final List<TeamEvent> result = new ArrayList<TeamEvent>();
+    for (int i = lowerBound(startTime); i < startTimes.length && startTimes[i] < endTime; i++) {
+      if (i == masterIndex) {
+        // Put event itself to the list.
+        result.add(event);
+      } else {
+        result.add(new TeamRecurrenceEvent(event, new Date(startTimes[i]), new Date(endTimes[i])));
+      }
+    }
+    if (log.isDebugEnabled() == true) {
+      for (final TeamEvent ev : result) {
+        log.debug("startDate=" + DateHelper.formatAsUTC(ev.getStartDate()) + ", endDate=" + DateHelper.formatAsUTC(ev.getEndDate()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the given time period is inside the time period of this object.
+   */
+  public boolean covers(final long startTime, final long endTime)
+  {
+    return from <= startTime && endTime <= until;
+  }
+
+  public long getFrom()
+  {
+    return from;
+  }
+
+  public long getUntil()
+  {
+    return until;
+  }
+
+  public int size()
+  {
+    return startTimes.length;
+  }
+
+  /**
+   * @return Index of the first occurrence starting at or after the given time.
+   */
+  private int lowerBound(final long time)
+  {
+    int low = 0;
+    int high = startTimes.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (startTimes[middle] < time) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
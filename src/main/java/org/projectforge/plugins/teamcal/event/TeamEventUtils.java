@@ -25,7 +25,6 @@ package org.projectforge.plugins.teamcal.event;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -33,21 +32,18 @@ import java.util.Date;
 import java.util.List;
 
 import net.fortuna.ical4j.model.Component;
-import net.fortuna.ical4j.model.DateList;
 import net.fortuna.ical4j.model.Dur;
 import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.Recur;
 import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.component.VAlarm;
 import net.fortuna.ical4j.model.component.VEvent;
-import net.fortuna.ical4j.model.parameter.Value;
 import net.fortuna.ical4j.model.property.DtStart;
 import net.fortuna.ical4j.model.property.ExDate;
 import net.fortuna.ical4j.model.property.RRule;
 
 import org.apache.commons.lang.StringUtils;
 import org.projectforge.calendar.ICal4JUtils;
-import org.projectforge.common.DateHelper;
 import org.projectforge.common.RecurrenceFrequency;
 import org.projectforge.web.calendar.CalendarFeed;
 
@@ -56,8 +52,6 @@ import org.projectforge.web.calendar.CalendarFeed;
  */
 public class TeamEventUtils
 {
-  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TeamEventUtils.class);
-
   private static final RecurrenceFrequency[] SUPPORTED_INTERVALS = new RecurrenceFrequency[] { RecurrenceFrequency.NONE,
     RecurrenceFrequency.DAILY, RecurrenceFrequency.WEEKLY, RecurrenceFrequency.MONTHLY, RecurrenceFrequency.YEARLY};
 
@@ -93,105 +87,13 @@ public class TeamEventUtils
 
   public static Collection<TeamEvent> getRecurrenceEvents(final Date startDate, final Date endDate, final TeamEventDO event,
       final java.util.TimeZone timeZone)
-      {
-    if (event.hasRecurrence() == false) {
-      return null;
-    }
-    final Recur recur = event.getRecurrenceObject();
-    if (recur == null) {
-      // Shouldn't happen:
-      return null;
-    }
-    final java.util.TimeZone timeZone4Calc = timeZone;
-    final String eventStartDateString = event.isAllDay() == true ? DateHelper.formatIsoDate(event.getStartDate(), timeZone) : DateHelper
-        .formatIsoTimestamp(event.getStartDate(), DateHelper.UTC);
-    Date eventStartDate = event.getStartDate();
-    if (event.isAllDay() == true) {
-      // eventStartDate should be midnight in user's time zone.
-      eventStartDate = DateHelper.parseIsoDate(eventStartDateString, timeZone);
-    }
-    if (log.isDebugEnabled() == true) {
-      log.debug("---------- startDate=" + DateHelper.formatIsoTimestamp(eventStartDate, timeZone) + ", timeZone=" + timeZone.getID());
-    }
-    final TimeZone ical4jTimeZone = ICal4JUtils.getTimeZone(timeZone4Calc);
-    final net.fortuna.ical4j.model.DateTime ical4jStartDate = new net.fortuna.ical4j.model.DateTime(startDate);
-    ical4jStartDate.setTimeZone(ical4jTimeZone);
-    final net.fortuna.ical4j.model.DateTime ical4jEndDate = new net.fortuna.ical4j.model.DateTime(endDate);
-    ical4jEndDate.setTimeZone(ICal4JUtils.getTimeZone(timeZone4Calc));
-    final net.fortuna.ical4j.model.DateTime seedDate = new net.fortuna.ical4j.model.DateTime(eventStartDate);
-    seedDate.setTimeZone(ICal4JUtils.getTimeZone(timeZone4Calc));
-    if (ical4jStartDate == null || ical4jEndDate == null || seedDate == null) {
-      log.error("Can't get recurrence events of event "
-          + event.getId()
-          + ". Not all three dates are given: startDate="
-          + ical4jStartDate
-          + ", endDate="
-          + ical4jEndDate
-          + ", seed="
-          + seedDate);
+  {
+    final TeamEventOccurrences occurrences = TeamEventOccurrences.calculate(startDate, endDate, event, timeZone);
+    if (occurrences == null) {
       return null;
     }
-    final List<net.fortuna.ical4j.model.Date> exDates = ICal4JUtils.parseISODateStringsAsICal4jDates(event.getRecurrenceExDate(),
-        ical4jTimeZone);
-    final DateList dateList = recur.getDates(seedDate, ical4jStartDate, ical4jEndDate, Value.DATE_TIME);
-    final Collection<TeamEvent> col = new ArrayList<TeamEvent>();
-    if (dateList != null) {
-      OuterLoop: for (final Object obj : dateList) {
-        final net.fortuna.ical4j.model.DateTime dateTime = (net.fortuna.ical4j.model.DateTime) obj;
-        final String isoDateString = event.isAllDay() == true ? DateHelper.formatIsoDate(dateTime, timeZone) : DateHelper
-            .formatIsoTimestamp(dateTime, DateHelper.UTC);
-        if (exDates != null && exDates.size() > 0) {
-          for (final net.fortuna.ical4j.model.Date exDate : exDates) {
-            if (event.isAllDay() == false) {
-              if (exDate.getTime() == dateTime.getTime()) {
-                if (log.isDebugEnabled() == true) {
-                  log.debug("= ex-dates equals: " + isoDateString + " == " + exDate);
-                }
-                // this date is part of ex dates, so don't use it.
-                continue OuterLoop;
-              }
-            } else {
-              // Allday event.
-              final String isoExDateString = DateHelper.formatIsoDate(exDate, DateHelper.UTC);
-              if (isoDateString.equals(isoExDateString) == true) {
-                if (log.isDebugEnabled() == true) {
-                  log.debug("= ex-dates equals: " + isoDateString + " == " + isoExDateString);
-                }
-                // this date is part of ex dates, so don't use it.
-                continue OuterLoop;
-              }
-            }
-            if (log.isDebugEnabled() == true) {
-              log.debug("ex-dates not equals: " + isoDateString + " != " + exDate);
-            }
-          }
-        }
-        if (isoDateString.equals(eventStartDateString) == true) {
-          // Put event itself to the list.
-          col.add(event);
-        } else {
-          // Now we need this event as date with the user's time-zone.
-          final Calendar userCal = Calendar.getInstance(timeZone);
-          userCal.setTime(dateTime);
-          final TeamRecurrenceEvent recurEvent = new TeamRecurrenceEvent(event, userCal);
-          col.add(recurEvent);
-        }
-      }
-    }
-    if (log.isDebugEnabled() == true) {
-      for (final TeamEvent ev : col) {
-        log.debug("startDate="
-            + DateHelper.formatIsoTimestamp(ev.getStartDate(), timeZone)
-            + "; "
-            + DateHelper.formatAsUTC(ev.getStartDate())
-            + ", endDate="
-            + DateHelper.formatIsoTimestamp(ev.getStartDate(), timeZone)
-            + "; "
-            + DateHelper.formatAsUTC(ev.getEndDate()));
-      }
-    }
-    return col;
-      }
+    return occurrences.getEvents(event, startDate.getTime(), endDate.getTime());
+  }
 
   public static TeamEventDO createTeamEventDO(final VEvent event)
   {
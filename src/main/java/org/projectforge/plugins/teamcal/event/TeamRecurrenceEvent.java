@@ -56,6 +56,18 @@ public class TeamRecurrenceEvent implements TeamEvent, Serializable
     this.endDate = cal.getTime();
   }
 
+  /**
+   * @param master
+   * @param startDate
+   * @param endDate
+   */
+  TeamRecurrenceEvent(final TeamEventDO master, final Date startDate, final Date endDate)
+  {
+    this.master = master;
+    this.startDate = startDate;
+    this.endDate = endDate;
+  }
+
   /**
    * @return the master
    */
@@ -0,0 +1,233 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.externalsubscription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.data.ParserException;
+import net.fortuna.ical4j.model.Calendar;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.io.input.TeeInputStream;
+
+/**
+ * Fetches subscribed calendars via http(s). One instance (with one connection pool) is shared by all subscriptions. Conditional GET is
+ * supported (ETag and Last-Modified of the previous response are sent as If-None-Match and If-Modified-Since). The response body is parsed
+ * while reading it from the connection and the MD5 hash is calculated on the fly.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class SubscriptionFetcher
+{
+  private static final int CONNECTION_TIMEOUT_MILLIS = 10 * 1000;
+
+  private static final int SO_TIMEOUT_MILLIS = 60 * 1000;
+
+  private final HttpClient client;
+
+  public static class Result
+  {
+    private final int statusCode;
+
+    private String eTag;
+
+    private String lastModified;
+
+    private Calendar calendar;
+
+    private byte[] bytes;
+
+    private String md5;
+
+    Result(final int statusCode)
+    {
+      this.statusCode = statusCode;
+    }
+
+    public int getStatusCode()
+    {
+      return statusCode;
+    }
+
+    /**
+     * @return true if the server responded with 304 (the calendar is unmodified since the last fetch).
+     */
+    public boolean isNotModified()
+    {
+      return statusCode == HttpStatus.SC_NOT_MODIFIED;
+    }
+
+    /**
+     * @return The value of the ETag header of the response (if any).
+     */
+    public String getETag()
+    {
+      return eTag;
+    }
+
+    /**
+     * @return The value of the Last-Modified header of the response (if any).
+     */
+    public String getLastModified()
+    {
+      return lastModified;
+    }
+
+    /**
+     * @return The parsed calendar (only given for status code 200).
+     */
+    public Calendar getCalendar()
+    {
+      return calendar;
+    }
+
+    /**
+     * @return The received body (only given for status code 200).
+     */
+    public byte[] getBytes()
+    {
+      return bytes;
+    }
+
+    /**
+     * @return The hexadecimal MD5 hash of the received body (only given for status code 200).
+     */
+    public String getMd5()
+    {
+      return md5;
+    }
+  }
+
+  /**
+   * @param maxConnections Maximum number of parallel connections (total and per host).
+   */
+  public SubscriptionFetcher(final int maxConnections)
+  {
+    final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    final HttpConnectionManagerParams params = connectionManager.getParams();
+    params.setMaxTotalConnections(maxConnections);
+    params.setDefaultMaxConnectionsPerHost(maxConnections);
+    params.setConnectionTimeout(CONNECTION_TIMEOUT_MILLIS);
+    params.setSoTimeout(SO_TIMEOUT_MILLIS);
+    client = new HttpClient(connectionManager);
+  }
+
+  /**
+   * @param url
+   * @param eTag ETag of the previous response or null.
+   * @param lastModified Last-Modified of the previous response or null.
+   * @return The result, the calendar is only parsed for status code 200.
+   * @throws IOException
+   * @throws ParserException
+   */
+  public Result fetch(final String url, final String eTag, final String lastModified) throws IOException, ParserException
+  {
+    final GetMethod method = new GetMethod(url);
+    try {
+      if (eTag != null) {
+        method.setRequestHeader("If-None-Match", eTag);
+      }
+      if (lastModified != null) {
+        method.setRequestHeader("If-Modified-Since", lastModified);
+      }
+      final int statusCode = client.executeMethod(method);
+      final Result result = new Result(statusCode);
+      if (statusCode != HttpStatus.SC_OK) {
+        return result;
+      }
+      result.eTag = getHeaderValue(method, "ETag");
+      result.lastModified = getHeaderValue(method, "Last-Modified");
+      final InputStream stream = method.getResponseBodyAsStream();
+      if (stream == null) {
+        return result;
+      }
+      // The received bytes are needed as fall back (stored in the data base), the copy is made while parsing.
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      final MessageDigest md = createMD5();
+      final InputStream in = new DigestInputStream(new TeeInputStream(stream, bos), md);
+      result.calendar = new CalendarBuilder().build(in);
+      // Read any trailing bytes ignored by the parser for the correct hash value:
+      final byte[] buffer = new byte[4096];
+      while (in.read(buffer) >= 0) {
+        // Nothing to do.
+      }
+      result.bytes = bos.toByteArray();
+      result.md5 = calcHexHash(md.digest());
+      return result;
+    } finally {
+      method.releaseConnection();
+    }
+  }
+
+  /**
+   * Parses the calendar stored in the data base (fall back if the subscribed calendar isn't available).
+   * @param in
+   * @throws IOException
+   * @throws ParserException
+   */
+  public Calendar parse(final InputStream in) throws IOException, ParserException
+  {
+    return new CalendarBuilder().build(in);
+  }
+
+  private String getHeaderValue(final GetMethod method, final String name)
+  {
+    final Header header = method.getResponseHeader(name);
+    return header != null ? header.getValue() : null;
+  }
+
+  private static MessageDigest createMD5()
+  {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (final NoSuchAlgorithmException ex) {
+      throw new UnsupportedOperationException(ex);
+    }
+  }
+
+  /**
+   * calculates hexadecimal representation of
+   * @param md5
+   * @return
+   */
+  static String calcHexHash(final byte[] md5)
+  {
+    String result = null;
+    if (md5 != null) {
+      result = new BigInteger(1, md5).toString(16);
+    }
+    return result;
+  }
+}
@@ -25,15 +25,14 @@ package org.projectforge.plugins.teamcal.externalsubscription;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import org.projectforge.plugins.teamcal.event.TeamEventDO;
-import org.projectforge.plugins.teamcal.event.TeamEventDao;
+import org.projectforge.plugins.teamcal.event.TeamEventIntervalIndex;
 
 /**
- * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date.
+ * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date. The events are held by an
+ * {@link TeamEventIntervalIndex} which is built after adding all events (or lazy on first access), so concurrent reads don't lock.
  * 
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
@@ -44,109 +43,53 @@ public class SubscriptionHolder implements Serializable
   // one day in milliseconds
   private static final int ONE_DAY = 86400000; // 60*60*24*1000
 
-  // private static final long MIN_DATE_1800 = lendar
-
   private final List<TeamEventDO> eventList;
 
-  private boolean sorted;
+  private volatile TeamEventIntervalIndex index;
 
   public SubscriptionHolder()
   {
     eventList = new ArrayList<TeamEventDO>();
-    sorted = false;
   }
 
-  public void clear()
+  public synchronized void clear()
   {
     eventList.clear();
-    sorted = false;
+    index = null;
   }
 
-  public void add(final TeamEventDO value)
+  public synchronized void add(final TeamEventDO value)
   {
     eventList.add(value);
-    sorted = false;
+    index = null;
   }
 
-  public void sort()
+  /**
+   * Builds the interval index of all added events.
+   */
+  public synchronized void sort()
   {
-    // the following comparator compares by startDate
-    final Comparator<TeamEventDO> comparator = new Comparator<TeamEventDO>() {
-      @Override
-      public int compare(final TeamEventDO o1, final TeamEventDO o2)
-      {
-        if ((o1 == null || o1.getStartDate() == null) && (o2 == null || o2.getStartDate() == null)) {
-          return 0;
-        }
-        if (o1 == null || o1.getStartDate() == null) {
-          return -1;
-        }
-        if (o2 == null || o2.getStartDate() == null) {
-          return 1;
-        }
-        // at this point, no NPE could occur
-        return o1.getStartDate().compareTo(o2.getStartDate());
-      }
-    };
-    Collections.sort(eventList, comparator);
-    sorted = true;
+    index = new TeamEventIntervalIndex(eventList);
   }
 
   public List<TeamEventDO> getResultList(final Long startTime, final Long endTime)
   {
-    // sorting should by synchronized
-    synchronized (this) {
-      if (sorted == false) {
-        sort();
-      }
-    }
-    final List<TeamEventDO> result = new ArrayList<TeamEventDO>();
-    for (final TeamEventDO teamEventDo : eventList) {
-      // all our events are sorted, if we find a event which starts
-      // after the end date, we can break this iteration
-      if (teamEventDo.getStartDate().getTime() > endTime) {
-        break;
-      }
-      if (matches(teamEventDo, startTime, endTime) == true) {
-        result.add(teamEventDo);
+    TeamEventIntervalIndex current = index;
+    if (current == null) {
+      synchronized (this) {
+        if (index == null) {
+          sort();
+        }
+        current = index;
       }
     }
-    // and return
-    return result;
-  }
-
-  public int size()
-  {
-    return eventList.size();
-  }
-
-  private boolean matches(final TeamEventDO teamEventDo, Long startTime, Long endTime)
-  {
     // Following period extension is needed due to all day events which are stored in UTC. The additional events in the result list not
     // matching the time period have to be removed by caller!
-    startTime = startTime - ONE_DAY;
-    endTime = endTime + ONE_DAY;
-
-    // the following implementation is inspired by TeamEventDao with the following lines:
-
-    // queryFilter.add(Restrictions.or(
-    // (Restrictions.or(Restrictions.between("startDate", startDate, endDate), Restrictions.between("endDate", startDate, endDate))),
-    // // get events whose duration overlap with chosen duration.
-    // (Restrictions.and(Restrictions.le("startDate", startDate), Restrictions.ge("endDate", endDate)))));
-
-    final Long eventStartTime = teamEventDo.getStartDate() != null ? teamEventDo.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
-    final Long eventEndTime = teamEventDo.getEndDate() != null ? teamEventDo.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
-    if (between(eventStartTime, startTime, endTime) || between(eventEndTime, startTime, endTime)) {
-      return true;
-    }
-    if (eventStartTime <= startTime && eventEndTime >= endTime) {
-      return true;
-    }
-    return false;
+    return current.getEvents(startTime - ONE_DAY, endTime + ONE_DAY);
   }
 
-  private boolean between(final Long searchTime, final Long startTime, final Long endTime)
+  public synchronized int size()
   {
-    return searchTime >= startTime && searchTime <= endTime;
+    return eventList.size();
   }
 }
@@ -25,10 +25,17 @@ package org.projectforge.plugins.teamcal.externalsubscription;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.core.QueryFilter;
@@ -36,15 +43,37 @@ import org.projectforge.plugins.teamcal.admin.TeamCalDO;
 import org.projectforge.plugins.teamcal.admin.TeamCalDao;
 import org.projectforge.plugins.teamcal.event.TeamEventDO;
 import org.projectforge.plugins.teamcal.event.TeamEventFilter;
+import org.projectforge.web.calendar.CalendarFeedCache;
 
 /**
+ * Holds all subscribed calendars. The subscriptions are updated in parallel by a bounded thread pool, the map of subscriptions is replaced
+ * atomically (copy on write), so readers never lock.
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
 public class TeamEventExternalSubscriptionCache
 {
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TeamEventExternalSubscriptionCache.class);
+
   private static final TeamEventExternalSubscriptionCache instance = new TeamEventExternalSubscriptionCache();
 
-  private final Map<Integer, TeamEventSubscription> subscriptions;
+  private static final int UPDATE_THREADS = 4;
+
+  private volatile Map<Integer, TeamEventSubscription> subscriptions;
+
+  /**
+   * Id's of the subscribed calendars (data base state of the last update of all calendars and calendars updated since). A new subscription
+   * isn't added, if its calendar was unsubscribed while fetching. Null until the first update of all calendars.
+   */
+  private Set<Integer> subscribedCalendarIds;
+
+  /**
+   * Id's of the calendars currently updated (avoids concurrent updates of the same calendar).
+   */
+  private final Set<Integer> updatesInProgress = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+  private final SubscriptionFetcher fetcher = new SubscriptionFetcher(UPDATE_THREADS);
+
+  private ExecutorService executor;
 
   private static final Long SUBSCRIPTION_UPDATE_TIME = 5L * 60 * 1000; // 5 min
 
@@ -58,42 +87,77 @@ public class TeamEventExternalSubscriptionCache
     return instance;
   }
 
+  /**
+   * Updates all subscribed calendars due to their update interval. The updates are done asynchronously by the thread pool, this method
+   * returns immediately.
+   * @param dao
+   */
   public void updateCache(final TeamCalDao dao)
   {
     final QueryFilter filter = new QueryFilter();
     filter.add(Restrictions.eq("externalSubscription", true));
     // internalGetList is valid at this point, because we are calling this method in an asyn thread
     final List<TeamCalDO> subscribedCalendars = dao.internalGetList(filter);
+    final Set<Integer> calendarIds = new HashSet<Integer>();
+    for (final TeamCalDO calendar : subscribedCalendars) {
+      calendarIds.add(calendar.getId());
+    }
+    setSubscribedCalendarIds(calendarIds);
 
     for (final TeamCalDO calendar : subscribedCalendars) {
-      updateCache(dao, calendar);
+      if (isUpdateNeeded(calendar, false) == false) {
+        continue;
+      }
+      getExecutor().execute(new Runnable() {
+        @Override
+        public void run()
+        {
+          update(dao, calendar);
+        }
+      });
     }
 
-    final List<Integer> idsToRemove = new ArrayList<Integer>();
+  }
+
+  /**
+   * Sets the id's of the subscribed calendars and removes the subscriptions of all other calendars (not subscribed anymore).
+   */
+  private synchronized void setSubscribedCalendarIds(final Set<Integer> calendarIds)
+  {
+    subscribedCalendarIds = calendarIds;
+    Map<Integer, TeamEventSubscription> map = null;
     for (final Integer calendarId : subscriptions.keySet()) {
-      // if calendar is not subscribed anymore, remove them
-      if (calendarListContainsId(subscribedCalendars, calendarId) == false) {
-        idsToRemove.add(calendarId);
+      if (calendarIds.contains(calendarId) == false) {
+        if (map == null) {
+          map = new HashMap<Integer, TeamEventSubscription>(subscriptions);
+        }
+        map.remove(calendarId);
       }
     }
-    removeCalendarsFromCache(idsToRemove);
+    if (map != null) {
+      subscriptions = map;
+    }
   }
 
-  private void removeCalendarsFromCache(final List<Integer> idsToRemove)
+  private synchronized void addSubscribedCalendarId(final Integer calendarId)
   {
-    for (final Integer calendarId : idsToRemove) {
-      subscriptions.remove(calendarId);
+    if (subscribedCalendarIds != null && subscribedCalendarIds.contains(calendarId) == false) {
+      final Set<Integer> calendarIds = new HashSet<Integer>(subscribedCalendarIds);
+      calendarIds.add(calendarId);
+      subscribedCalendarIds = calendarIds;
     }
   }
 
-  private boolean calendarListContainsId(final List<TeamCalDO> subscribedCalendars, final Integer calendarId)
+  private synchronized void putSubscription(final TeamEventSubscription subscription)
   {
-    for (final TeamCalDO teamCal : subscribedCalendars) {
-      if (teamCal.getId().equals(calendarId)) {
-        return true;
-      }
+    final Integer calendarId = subscription.getTeamCalId();
+    if (subscribedCalendarIds != null && subscribedCalendarIds.contains(calendarId) == false) {
+      log.info("Calendar #" + calendarId + " was unsubscribed while fetching, subscription isn't added.");
+      return;
     }
-    return false;
+    final Map<Integer, TeamEventSubscription> map = new HashMap<Integer, TeamEventSubscription>(subscriptions);
+    map.put(calendarId, subscription);
+    subscriptions = map;
   }
 
   public void updateCache(final TeamCalDao dao, final TeamCalDO calendar)
@@ -102,27 +166,78 @@ public class TeamEventExternalSubscriptionCache
   }
 
   /**
+   * Updates the given calendar synchronously (in the caller's thread). Nothing is done if the calendar is currently updated by any other
+   * thread.
    * @param dao
    * @param calendar
    * @param force If true then update is forced (independent of last update time and refresh interval).
    */
   public void updateCache(final TeamCalDao dao, final TeamCalDO calendar, final boolean force)
+  {
+    if (calendar.isExternalSubscription() == true) {
+      addSubscribedCalendarId(calendar.getId());
+    }
+    if (isUpdateNeeded(calendar, force) == true) {
+      update(dao, calendar);
+    }
+  }
+
+  private boolean isUpdateNeeded(final TeamCalDO calendar, final boolean force)
   {
     final TeamEventSubscription compareSubscription = subscriptions.get(calendar.getId());
     final Long now = System.currentTimeMillis();
     final Long addedTime = calendar.getExternalSubscriptionUpdateInterval() == null ? SUBSCRIPTION_UPDATE_TIME : 1000L * calendar
         .getExternalSubscriptionUpdateInterval();
-    if (compareSubscription == null) {
-      // create the calendar
-      final TeamEventSubscription teamEventSubscription = new TeamEventSubscription(dao, calendar);
-      subscriptions.put(calendar.getId(), teamEventSubscription);
-    } else if (force == true || compareSubscription.getLastUpdated() == null || compareSubscription.getLastUpdated() + addedTime <= now) {
-      // update the calendar
-      // we update the cache softly, therefore we create a new instance and replace the old instance in the cached map then
-      // creation and update is therefore the same two lines of code, but semantically different things
-      final TeamEventSubscription teamEventSubscription = new TeamEventSubscription(dao, calendar);
-      subscriptions.put(calendar.getId(), teamEventSubscription);
+    return compareSubscription == null
+        || force == true
+        || compareSubscription.isUpdateNeeded(addedTime, now);
+  }
+
+  private void update(final TeamCalDao dao, final TeamCalDO calendar)
+  {
+    if (updatesInProgress.add(calendar.getId()) == false) {
+      log.info("Update of subscribed calendar #" + calendar.getId() + " is already in progress.");
+      return;
+    }
+    try {
+      TeamEventSubscription subscription = subscriptions.get(calendar.getId());
+      final boolean newSubscription = subscription == null;
+      if (newSubscription == true) {
+        // create the calendar
+        subscription = new TeamEventSubscription(dao, calendar);
+      }
+      // The subscription replaces its events atomically, so the events of an existing subscription are available while updating.
+      final boolean modified = subscription.update(calendar, fetcher);
+      if (newSubscription == true) {
+        putSubscription(subscription);
+      }
+      if (modified == true) {
+        // Cached feeds of unmodified subscriptions are still valid.
+        CalendarFeedCache.getInstance().setCalendarExpired(calendar.getId());
+      }
+    } catch (final Throwable ex) {
+      log.error("Exception encountered while updating subscribed calendar #" + calendar.getId() + ": " + ex.getMessage(), ex);
+    } finally {
+      updatesInProgress.remove(calendar.getId());
+    }
+  }
+
+  private synchronized ExecutorService getExecutor()
+  {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(UPDATE_THREADS, new ThreadFactory() {
+        private int counter = 0;
+
+        @Override
+        public synchronized Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "TeamCalSubscriptionUpdate-" + (++counter));
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
     }
+    return executor;
   }
 
   public boolean isExternalSubscribedCalendar(final Integer calendarId)
@@ -24,32 +24,28 @@
 package org.projectforge.plugins.teamcal.externalsubscription;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.io.Serializable;
-import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import net.fortuna.ical4j.data.CalendarBuilder;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.Component;
 import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.component.VEvent;
 
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.projectforge.plugins.teamcal.admin.TeamCalDO;
 import org.projectforge.plugins.teamcal.admin.TeamCalDao;
+import org.projectforge.plugins.teamcal.event.TeamEventCache;
 import org.projectforge.plugins.teamcal.event.TeamEventDO;
 import org.projectforge.plugins.teamcal.event.TeamEventUtils;
 import org.projectforge.web.calendar.CalendarFeed;
 
 /**
+ * Holds the events of one subscribed calendar. The events are replaced atomically by {@link #update(TeamCalDO, SubscriptionFetcher)}, so
+ * readers aren't affected by any running update.
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
 public class TeamEventSubscription implements Serializable
@@ -60,20 +56,31 @@ public class TeamEventSubscription implements Serializable
 
   private final Integer teamCalId;
 
-  private final SubscriptionHolder eventDurationAccess;
+  private volatile SubscriptionHolder eventDurationAccess;
 
-  private final List<TeamEventDO> recurrenceEvents;
+  private volatile List<TeamEventDO> recurrenceEvents;
 
   private final TeamCalDao teamCalDao;
 
   private String currentInitializedHash;
 
-  private Long lastUpdated;
+  private String eTag;
 
-  private final HttpClient client;
+  private String lastModified;
+
+  private volatile Long lastUpdated;
+
+  /** Time of the last fetch (successful or not). */
+  private volatile Long lastAttempt;
+
+  /** Number of failed fetches since the last successful one. */
+  private volatile int failedAttempts;
 
   private static final Long TIME_IN_THE_PAST = 60L * 24 * 60 * 60 * 1000; // 60 days in millis in the past to subscribe
 
+  /** Maximum delay of the next fetch after failed fetches (the delay is doubled with every failure). */
+  private static final long MAX_RETRY_DELAY = 6L * 60 * 60 * 1000; // 6 hours
+
   public TeamEventSubscription(final TeamCalDao teamCalDao, final TeamCalDO teamCalDo)
   {
     this.teamCalDao = teamCalDao;
@@ -82,71 +89,63 @@ public class TeamEventSubscription implements Serializable
     recurrenceEvents = new ArrayList<TeamEventDO>();
     currentInitializedHash = null;
     lastUpdated = null;
-    client = new HttpClient();
-    init(teamCalDo);
   }
 
-  private void init(final TeamCalDO teamCalDo)
+  /**
+   * Fetches the subscribed calendar (conditional GET) and replaces the events if the calendar was modified. If the calendar isn't
+   * available and this subscription isn't yet initialized, the calendar stored in the data base is used. Must not be called concurrently
+   * for the same subscription (see {@link TeamEventExternalSubscriptionCache}).
+   * @param teamCalDo
+   * @param fetcher
+   * @return true, if the events were replaced (the subscribed calendar was modified), otherwise false.
+   */
+  boolean update(final TeamCalDO teamCalDo, final SubscriptionFetcher fetcher)
   {
     String url = teamCalDo.getExternalSubscriptionUrl();
     if (teamCalDo.isExternalSubscription() == false || StringUtils.isEmpty(url) == true) {
       // No external subscription.
-      return;
+      return false;
     }
     url = StringUtils.replace(url, "webcal", "http");
-    // Shorten the url or avoiding logging of user credentials as part of the url
-    final StringBuffer buf = new StringBuffer();
-    boolean dotRead = false;
-    for (int i = 0; i < url.length(); i++) {
-      final char ch = url.charAt(i);
-      if (dotRead == true && ch == '/') { // Slash after domain found
-        // Shorten http://www.projectforge.org/cal/... -> http://www.projectforge.org
-        buf.append("/...");
-        break;
-      } else if (ch == '?') {
-        buf.append("?...");
-        break;
-      } else if (ch == '.') {
-        dotRead = true;
-      }
-      buf.append(ch);
-    }
-    final String displayUrl = buf.toString();
+    final String displayUrl = getDisplayUrl(url);
     log.info("Getting subscribed calendar #" + teamCalDo.getId() + " from: " + displayUrl);
-    final CalendarBuilder builder = new CalendarBuilder();
-    byte[] bytes = null;
+    lastAttempt = System.currentTimeMillis();
+    Calendar calendar = null;
+    String hash = null;
     try {
-
-      // Create a method instance.
-      final GetMethod method = new GetMethod(url);
-
-      final int statusCode = client.executeMethod(method);
-
-      if (statusCode != HttpStatus.SC_OK) {
+      // Send the validators only if the events of the previous response are available:
+      final boolean initialized = currentInitializedHash != null;
+      final SubscriptionFetcher.Result result = fetcher.fetch(url, initialized == true ? eTag : null, initialized == true ? lastModified
+          : null);
+      if (result.isNotModified() == true) {
+        failedAttempts = 0;
+        lastUpdated = System.currentTimeMillis();
+        log.info("No modification of subscribed calendar #" + teamCalDo.getId() + " found from: " + displayUrl + " (HTTP 304).");
+        return false;
+      }
+      if (result.getStatusCode() != HttpStatus.SC_OK) {
+        failedAttempts++;
         log.error("Unable to gather subscription calendar #"
             + teamCalDo.getId()
             + " information, using database from url '"
             + displayUrl
             + "'. Received statusCode: "
-            + statusCode);
-        return;
-      }
-
-      final MessageDigest md = MessageDigest.getInstance("MD5");
-
-      // Read the response body.
-      final InputStream stream = method.getResponseBodyAsStream();
-      bytes = IOUtils.toByteArray(stream);
-
-      final String md5 = calcHexHash(md.digest(bytes));
-      if (StringUtils.equals(md5, teamCalDo.getExternalSubscriptionHash()) == false) {
-        teamCalDo.setExternalSubscriptionHash(md5);
-        teamCalDo.setExternalSubscriptionCalendarBinary(bytes);
-        // internalUpdate is valid at this point, because we are calling this method in an async thread
-        teamCalDao.internalUpdate(teamCalDo);
+            + result.getStatusCode());
+      } else {
+        failedAttempts = 0;
+        eTag = result.getETag();
+        lastModified = result.getLastModified();
+        hash = result.getMd5();
+        calendar = result.getCalendar();
+        if (StringUtils.equals(hash, teamCalDo.getExternalSubscriptionHash()) == false) {
+          teamCalDo.setExternalSubscriptionHash(hash);
+          teamCalDo.setExternalSubscriptionCalendarBinary(result.getBytes());
+          // internalUpdate is valid at this point, because we are calling this method in an async thread
+          teamCalDao.internalUpdate(teamCalDo);
+        }
       }
     } catch (final Exception e) {
-      bytes = teamCalDo.getExternalSubscriptionCalendarBinary();
+      failedAttempts++;
       log.error("Unable to gather subscription calendar #"
           + teamCalDo.getId()
           + " information, using database from url '"
@@ -154,18 +153,33 @@ public class TeamEventSubscription implements Serializable
           + "': "
           + e.getMessage(), e);
     }
-    if (bytes == null) {
-      log.error("Unable to use database subscription calendar #" + teamCalDo.getId() + " information, quit from url '" + displayUrl + "'.");
-      return;
+    if (calendar == null) {
+      hash = teamCalDo.getExternalSubscriptionHash();
     }
-    if (currentInitializedHash != null && StringUtils.equals(currentInitializedHash, teamCalDo.getExternalSubscriptionHash()) == true) {
+    if (currentInitializedHash != null && StringUtils.equals(currentInitializedHash, hash) == true) {
       // nothing to do here if the hashes are equal
-      log.info("No modification of subscribed calendar #" + teamCalDo.getId() + " found from: " + displayUrl + " (OK, nothing to be done).");
-      return;
+      lastUpdated = System.currentTimeMillis();
+      log.info("No modification of subscribed calendar #"
+          + teamCalDo.getId()
+          + " found from: "
+          + displayUrl
+          + " (OK, nothing to be done).");
+      return false;
     }
     try {
+      if (calendar == null) {
+        final byte[] bytes = teamCalDo.getExternalSubscriptionCalendarBinary();
+        if (bytes == null) {
+          log.error("Unable to use database subscription calendar #"
+              + teamCalDo.getId()
+              + " information, quit from url '"
+              + displayUrl
+              + "'.");
+          return false;
+        }
+        calendar = fetcher.parse(new ByteArrayInputStream(bytes));
+      }
       final Date timeInPast = new Date(System.currentTimeMillis() - TIME_IN_THE_PAST);
-      final Calendar calendar = builder.build(new ByteArrayInputStream(bytes));
       @SuppressWarnings("unchecked")
       final List<Component> list = calendar.getComponents(Component.VEVENT);
       final List<VEvent> vEvents = new ArrayList<VEvent>();
@@ -181,9 +195,9 @@ public class TeamEventSubscription implements Serializable
         }
         vEvents.add(event);
       }
-      // clear
-      eventDurationAccess.clear();
-      recurrenceEvents.clear();
+      // Build new instances and replace the current ones after all events are added (concurrent readers aren't affected).
+      final SubscriptionHolder newEventDurationAccess = new SubscriptionHolder();
+      final List<TeamEventDO> newRecurrenceEvents = new ArrayList<TeamEventDO>();
 
       // the event id must (!) be negative and decrementing (different on each event)
       Integer startId = -1;
@@ -194,16 +208,20 @@ public class TeamEventSubscription implements Serializable
 
         if (teamEvent.hasRecurrence() == true) {
           // special treatment for recurrence events ..
-          recurrenceEvents.add(teamEvent);
+          newRecurrenceEvents.add(teamEvent);
         } else {
-          eventDurationAccess.add(teamEvent);
+          newEventDurationAccess.add(teamEvent);
         }
 
         startId--;
       }
+      newEventDurationAccess.sort();
+      eventDurationAccess = newEventDurationAccess;
+      recurrenceEvents = newRecurrenceEvents;
       lastUpdated = System.currentTimeMillis();
-      currentInitializedHash = teamCalDo.getExternalSubscriptionHash();
+      currentInitializedHash = hash;
       log.info("Subscribed calendar #" + teamCalDo.getId() + " successfully received from: " + displayUrl);
+      return true;
     } catch (final Exception e) {
       log.error("Unable to instantiate team event list for calendar #"
           + teamCalDo.getId()
@@ -212,27 +230,38 @@ public class TeamEventSubscription implements Serializable
           + "': "
           + e.getMessage(), e);
     }
+    return false;
   }
 
   /**
-   * calculates hexadecimal representation of
-   * @param md5
-   * @return
+   * Shorten the url for avoiding logging of user credentials as part of the url.
    */
-  private String calcHexHash(byte[] md5) {
-    String result = null;
-    if (md5 != null) {
-      result = new BigInteger(1, md5).toString(16);
+  private String getDisplayUrl(final String url)
+  {
+    final StringBuffer buf = new StringBuffer();
+    boolean dotRead = false;
+    for (int i = 0; i < url.length(); i++) {
+      final char ch = url.charAt(i);
+      if (dotRead == true && ch == '/') { // Slash after domain found
+        // Shorten http://www.projectforge.org/cal/... -> http://www.projectforge.org
+        buf.append("/...");
+        break;
+      } else if (ch == '?') {
+        buf.append("?...");
+        break;
+      } else if (ch == '.') {
+        dotRead = true;
+      }
+      buf.append(ch);
     }
-    return result;
+    return buf.toString();
   }
 
   public List<TeamEventDO> getEvents(final Long startTime, final Long endTime)
   {
-    Long perfStart = System.currentTimeMillis();
-    List<TeamEventDO> result = eventDurationAccess.getResultList(startTime, endTime);
-    Long perfDuration = System.currentTimeMillis() - perfStart;
-    log.info("calculation of team events took " + perfDuration + " ms for " + result.size() + " events of " +eventDurationAccess.size() + " in total from calendar #"+teamCalId+".");
+    final long begin = System.nanoTime();
+    final List<TeamEventDO> result = eventDurationAccess.getResultList(startTime, endTime);
+    TeamEventCache.getInstance().recordSubscriptionQuery(System.nanoTime() - begin);
     return result;
   }
 
@@ -246,6 +275,26 @@ public class TeamEventSubscription implements Serializable
     return lastUpdated;
   }
 
+  /**
+   * @param updateInterval The update interval of the subscribed calendar in millis.
+   * @param now
+   * @return true, if the update interval is elapsed since the last fetch. After failed fetches the interval is doubled with every further
+   *         failure (up to 6 hours), so unavailable calendars aren't requested again and again.
+   */
+  boolean isUpdateNeeded(final long updateInterval, final long now)
+  {
+    final Long lastAttempt = this.lastAttempt;
+    if (lastAttempt == null) {
+      return true;
+    }
+    long delay = updateInterval;
+    final int failures = failedAttempts;
+    if (failures > 1) {
+      delay = Math.max(updateInterval, Math.min(updateInterval << Math.min(failures - 1, 20), MAX_RETRY_DELAY));
+    }
+    return lastAttempt + delay <= now;
+  }
+
   public List<TeamEventDO> getRecurrenceEvents()
   {
     return recurrenceEvents;
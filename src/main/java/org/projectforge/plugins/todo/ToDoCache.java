@@ -23,8 +23,8 @@
 
 package org.projectforge.plugins.todo;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
@@ -37,31 +37,37 @@ public class ToDoCache extends AbstractCache
 {
   private static Logger log = Logger.getLogger(ToDoCache.class);
 
-  /** The key is the user id and the value is the number of open to-do entries. */
-  private Map<Integer, Integer> openEntriesMap;
+  /** Concurrent map, the key is the user id and the value is the number of open to-do entries. */
+  private volatile Map<Integer, Integer> openEntriesMap;
 
   private ToDoDao toDoDao;
 
   /**
-   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed.
+   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed. Expired entries are refreshed in the
+   * background.
    */
   public ToDoCache(final ToDoDao toDoDao)
   {
     super(30 * TICKS_PER_MINUTE);
+    setAsyncRefresh(true);
     this.toDoDao = toDoDao;
   }
 
   int getOpenToDoEntries(final Integer userId)
   {
+    if (userId == null) {
+      // The concurrent map doesn't support null keys (no user logged in), so don't cache:
+      return toDoDao.internalGetOpenEntries(userId);
+    }
     checkRefresh();
-    final Integer result = openEntriesMap.get(userId);
+    // The map is replaced by refresh, a counter read before is put into the replaced map:
+    final Map<Integer, Integer> map = openEntriesMap;
+    final Integer result = map.get(userId);
     if (result != null) {
       return result;
     }
     final int counter = toDoDao.internalGetOpenEntries(userId);
-    synchronized (openEntriesMap) {
-      openEntriesMap.put(userId, counter);
-    }
+    map.put(userId, counter);
     return counter;
   }
 
@@ -71,6 +77,6 @@ public class ToDoCache extends AbstractCache
   protected void refresh()
   {
     log.info("Clearing cache with open to-do entries.");
-    openEntriesMap = new HashMap<Integer, Integer>();
+    openEntriesMap = new ConcurrentHashMap<Integer, Integer>();
   }
 }
@@ -236,6 +236,29 @@ public class TaskDao extends BaseDao<TaskDO>
     return totalDuration / 1000;
   }
 
+  /**
+   * Used by the TaskTree for detecting modifications of the data base which weren't propagated to the task tree (e. g. modifications done
+   * directly in the data base).
+   * @param entityClass TaskDO, GroupTaskAccessDO or ProjektDO.
+   * @param whereClause Optional where clause (without "where", the alias of the entity is "o"), may be null.
+   * @return Object[] with the number of entries (Number) and the maximum last update (Date, may be null).
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public Object[] readModificationStatus(final Class< ? > entityClass, final String whereClause)
+  {
+    final StringBuffer buf = new StringBuffer();
+    buf.append("select count(o.id), max(o.lastUpdate) from ").append(entityClass.getSimpleName()).append(" o");
+    if (whereClause != null) {
+      buf.append(" where ").append(whereClause);
+    }
+    @SuppressWarnings("unchecked")
+    final List<Object[]> list = getHibernateTemplate().find(buf.toString());
+    if (CollectionUtils.isEmpty(list) == true) {
+      return new Object[] { 0, null};
+    }
+    return list.get(0);
+  }
+
   @Override
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<TaskDO> getList(final BaseSearchFilter filter) throws AccessException
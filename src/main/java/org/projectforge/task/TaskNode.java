@@ -28,6 +28,8 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
@@ -42,6 +44,10 @@ import org.projectforge.access.OperationType;
 import org.projectforge.core.IdObject;
 import org.projectforge.core.UserException;
 import org.projectforge.fibu.ProjektDO;
+import org.projectforge.fibu.kost.Kost2DO;
+import org.projectforge.registry.Registry;
+import org.projectforge.timesheet.TimesheetDO;
+import org.projectforge.timesheet.TimesheetDao;
 
 /**
  * Represents a single task as part of the TaskTree. The data of a task node is stored in the database.
@@ -54,13 +60,21 @@ public class TaskNode implements IdObject<Integer>, Serializable
   /** For log messages. */
   private static final Logger log = Logger.getLogger(TaskNode.class);
 
+  private static final int NUMBER_OF_OPERATION_TYPES = OperationType.values().length;
+
+  /** Compiling and resetting of the permission masks of all nodes is synchronized by this lock (reading isn't synchronized). */
+  private static final Object PERMISSION_LOCK = new Object();
+
   /** Reference to the parent task node with the parentTaskID. */
   TaskNode parent = null;
 
   ProjektDO projekt;
 
-  /** Total duration of all time sheets of this task (excluding the child tasks) in seconds. */
-  long totalDuration = 0;
+  /** Total duration of all time sheets of this task (excluding the child tasks) in seconds. Maintained by the task tree. */
+  volatile long totalDuration = 0;
+
+  /** Total duration of all time sheets of this task including the descendant tasks in seconds. Maintained by the task tree. */
+  volatile long recursiveTotalDuration = 0;
 
   /**
    * Sum of all ordered person days excluding descendant nodes. Ordered person days are defined by the sum of all assigned order position's
@@ -76,13 +90,29 @@ public class TaskNode implements IdObject<Integer>, Serializable
   /** The data of this TaskNode. */
   TaskDO task = null;
 
-  boolean bookableForTimesheets;
+  /**
+   * Cached result of {@link TimesheetDao#checkTaskBookable(TimesheetDO, TimesheetDO, OperationType, boolean)}. Null means not yet
+   * evaluated or reset by the TaskTree after a modification of this node, an ancestor or a descendant node.
+   */
+  Boolean bookableForTimesheets;
+
+  /**
+   * Cached result of {@link TaskTree#getKost2List(Integer)}, valid only for the kost2 version of the TaskTree stored with the list.
+   */
+  transient volatile Kost2ListEntry kost2ListEntry;
 
   /**
    * For every group with access to this node the permissions will be stored here.
    */
   private final List<GroupTaskAccessDO> groupTaskAccessList = new ArrayList<GroupTaskAccessDO>();
 
+  /**
+   * Compiled permissions of the groups for this task including the permissions inherited from the ancestor tasks. The key is the group id
+   * and the value is the bit mask of all permitted access and operation types.
+   * @see #getPermissionBit(AccessType, OperationType)
+   */
+  private final Map<Integer, Integer> permissionMasks = new ConcurrentHashMap<Integer, Integer>();
+
   public TaskNode()
   {
   }
@@ -203,11 +233,19 @@ public class TaskNode implements IdObject<Integer>, Serializable
   }
 
   /**
+   * The bookable status will be evaluated lazily on first access and cached until the TaskTree resets it.
    * @return the bookableForTimesheets
    */
   public boolean isBookableForTimesheets()
   {
-    return bookableForTimesheets;
+    Boolean bookable = this.bookableForTimesheets;
+    if (bookable == null) {
+      final TimesheetDao timesheetDao = Registry.instance().getDao(TimesheetDao.class);
+      final TimesheetDO timesheet = new TimesheetDO().setTask(task);
+      bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
+      this.bookableForTimesheets = bookable;
+    }
+    return bookable;
   }
 
   public List<Integer> getDescendantIds()
@@ -361,15 +399,91 @@ public class TaskNode implements IdObject<Integer>, Serializable
    */
   public boolean hasPermission(final Integer groupId, final AccessType accessType, final OperationType opType)
   {
+    return (getPermissionMask(groupId) & getPermissionBit(accessType, opType)) != 0;
+  }
+
+  /**
+   * @param accessType
+   * @param opType
+   * @return The bit representing the given access and operation type in the permission masks.
+   * @see #getPermissionMask(Integer)
+   */
+  public static int getPermissionBit(final AccessType accessType, final OperationType opType)
+  {
+    return 1 << (accessType.ordinal() * NUMBER_OF_OPERATION_TYPES + opType.ordinal());
+  }
+
+  /**
+   * Gets the permissions of the given group for this task as bit mask. If no GroupTaskAccess is defined for this task for the given group,
+   * the permissions of the parent task are inherited (if recursive). The masks are compiled once and cached until the group task access
+   * entries or the hierarchy of this node or any ancestor node are modified.
+   * @param groupId The id of the group to check.
+   * @return The bit mask of the permissions.
+   * @see #getPermissionBit(AccessType, OperationType)
+   */
+  public int getPermissionMask(final Integer groupId)
+  {
+    final Integer mask = permissionMasks.get(groupId);
+    if (mask != null) {
+      return mask;
+    }
+    synchronized (PERMISSION_LOCK) {
+      return compilePermissionMask(groupId);
+    }
+  }
+
+  private int compilePermissionMask(final Integer groupId)
+  {
+    Integer mask = permissionMasks.get(groupId);
+    if (mask != null) {
+      return mask;
+    }
     final GroupTaskAccessDO groupAccess = getGroupTaskAccess(groupId);
     if (groupAccess == null) {
-      if (parent != null) {
-        return parent.isPermissionRecursive(groupId) && parent.hasPermission(groupId, accessType, opType);
+      if (parent != null && parent.isPermissionRecursive(groupId) == true) {
+        mask = parent.compilePermissionMask(groupId);
+      } else {
+        // This is the root node or the parent's access isn't recursive.
+        mask = 0;
+      }
+    } else {
+      int value = 0;
+      for (final AccessType accessType : AccessType.values()) {
+        for (final OperationType opType : OperationType.values()) {
+          if (groupAccess.hasPermission(accessType, opType) == true) {
+            value |= getPermissionBit(accessType, opType);
+          }
+        }
+      }
+      mask = value;
+    }
+    permissionMasks.put(groupId, mask);
+    return mask;
+  }
+
+  /**
+   * Resets the compiled permission masks of this node and all descendant nodes.
+   * @param groupId If null, the permission masks of all groups will be reset.
+   */
+  void resetPermissionMasks(final Integer groupId)
+  {
+    synchronized (PERMISSION_LOCK) {
+      resetPermissionMasksRecursive(groupId);
+    }
+  }
+
+  private void resetPermissionMasksRecursive(final Integer groupId)
+  {
+    if (groupId == null) {
+      permissionMasks.clear();
+    } else {
+      permissionMasks.remove(groupId);
+    }
+    if (this.childs != null) {
+      for (final TaskNode child : this.childs) {
+        child.resetPermissionMasksRecursive(groupId);
       }
-      // This is the root node.
-      return false;
     }
-    return groupAccess.hasPermission(accessType, opType);
   }
 
   public boolean isPermissionRecursive(final Integer groupId)
@@ -378,6 +492,14 @@ public class TaskNode implements IdObject<Integer>, Serializable
     return groupAccess == null || groupAccess.isRecursive() == true;
   }
 
+  /**
+   * @return The number of explicit group task access entries of this node (used by the TaskTree for consistency checks).
+   */
+  int getGroupTaskAccessCount()
+  {
+    return groupTaskAccessList.size();
+  }
+
   /**
    * Gets the GroupTaskAccessDO for the given group.
    * @param groupId
@@ -410,6 +532,7 @@ public class TaskNode implements IdObject<Integer>, Serializable
       removeGroupTaskAccess(groupTaskAccess.getGroupId());
       groupTaskAccessList.add(groupTaskAccess);
     }
+    resetPermissionMasks(groupTaskAccess.getGroupId());
   }
 
   /**
@@ -432,27 +555,21 @@ public class TaskNode implements IdObject<Integer>, Serializable
         }
       }
     }
+    if (result == true) {
+      resetPermissionMasks(groupId);
+    }
     return result;
   }
 
   /**
-   * Gets the total duration of all time sheets in seconds.
+   * Gets the total duration of all time sheets in seconds. The durations are maintained by the task tree on every modification of time
+   * sheets, therefore no data base access is needed.
    * @param recursive If true, then the durations of all time sheets of the sub tasks will be added.
    * @return
    */
   public long getDuration(final TaskTree taskTree, final boolean recursive)
   {
-    if (totalDuration < 0) {
-      taskTree.readTotalDuration(this.getId());
-    }
-    if (recursive == false || childs == null) {
-      return totalDuration;
-    }
-    long duration = totalDuration;
-    for (final TaskNode child : childs) {
-      duration += child.getDuration(taskTree, true);
-    }
-    return duration;
+    return recursive == true ? recursiveTotalDuration : totalDuration;
   }
 
   @Override
@@ -501,4 +618,20 @@ public class TaskNode implements IdObject<Integer>, Serializable
     }
     return el;
   }
+
+  /**
+   * The resolved kost2 list of a task (may be null) together with the version of the TaskTree and KostCache at the time of resolving.
+   */
+  static class Kost2ListEntry
+  {
+    final long version;
+
+    final List<Kost2DO> kost2List;
+
+    Kost2ListEntry(final long version, final List<Kost2DO> kost2List)
+    {
+      this.version = version;
+      this.kost2List = kost2List;
+    }
+  }
 }
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
@@ -49,7 +50,6 @@ import org.dom4j.io.XMLWriter;
 import org.hibernate.Hibernate;
 import org.projectforge.access.AccessDao;
 import org.projectforge.access.GroupTaskAccessDO;
-import org.projectforge.access.OperationType;
 import org.projectforge.common.AbstractCache;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.NumberHelper;
@@ -61,9 +61,6 @@ import org.projectforge.fibu.ProjektDO;
 import org.projectforge.fibu.ProjektDao;
 import org.projectforge.fibu.kost.Kost2DO;
 import org.projectforge.fibu.kost.KostCache;
-import org.projectforge.registry.Registry;
-import org.projectforge.timesheet.TimesheetDO;
-import org.projectforge.timesheet.TimesheetDao;
 
 /**
  * Holds the complete task list in a tree. It will be initialized by the values read from the database. Any changes will be written to this
@@ -107,6 +104,36 @@ public class TaskTree extends AbstractCache implements Serializable
 
   private boolean orderPositionReferencesDirty = true;
 
+  /**
+   * If true (default) the tree is kept up-to-date by the modification events of TaskDao, AccessDao and ProjektDao. After expiring, only a
+   * consistency check against the data base is done and the tree is rebuilt only if any inconsistency is detected.
+   */
+  private boolean incrementalRefresh = true;
+
+  /** Forces a full rebuild on next refresh also in incremental mode, see {@link #setExpired()}. */
+  private transient boolean rebuildRequested = true;
+
+  /** Will be incremented on every modification of any group task access or of the task hierarchy. */
+  private final AtomicLong permissionVersion = new AtomicLong();
+
+  /**
+   * Will be incremented on every modification of the task hierarchy, the black/white lists of the tasks or the projects of the tasks. The
+   * kost2 lists cached by the task nodes are valid for a given version of this tree and of the KostCache.
+   */
+  private final AtomicLong kost2ListVersion = new AtomicLong();
+
+  /** Modifications of the total durations of the task nodes are synchronized by this lock (reading isn't synchronized). */
+  private final Object durationLock = new Object();
+
+  /** Maximum last update (in milliseconds) of all tasks known by this tree, used for consistency checks. */
+  private long lastTaskUpdate;
+
+  /** Maximum last update (in milliseconds) of all group task access entries known by this tree, used for consistency checks. */
+  private long lastAccessUpdate;
+
+  /** Maximum last update (in milliseconds) of all projects (with task reference) known by this tree, used for consistency checks. */
+  private long lastProjectUpdate;
+
   public TaskNode getRootTaskNode()
   {
     checkRefresh();
@@ -145,10 +172,11 @@ public class TaskTree extends AbstractCache implements Serializable
       node.setParent(root);
     }
     taskMap.put(node.getId(), node);
-    final TimesheetDao timesheetDao = Registry.instance().getDao(TimesheetDao.class);
-    final TimesheetDO timesheet = new TimesheetDO().setTask(task);
-    final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
-    node.bookableForTimesheets = bookable;
+    lastTaskUpdate = getLastUpdate(task.getLastUpdate(), lastTaskUpdate);
+    // The bookable status of the new node is evaluated lazily, the parent isn't a leaf node anymore:
+    resetBookableForTimesheets(parent);
+    // Permissions derived from the tree (e. g. the tasks of a user with time sheet access) don't contain the new task:
+    permissionVersion.incrementAndGet();
     return addTaskNode(node, parent);
   }
 
@@ -222,9 +250,14 @@ public class TaskTree extends AbstractCache implements Serializable
   {
     final TaskNode node = getTaskNodeById(taskId);
     if (node == null) {
+      setExpired();
       throw new InternalErrorException("Could not found task with id " + taskId + " in internalSetProject");
     }
     node.projekt = projekt;
+    if (projekt != null) {
+      lastProjectUpdate = getLastUpdate(projekt.getLastUpdate(), lastProjectUpdate);
+    }
+    kost2ListVersion.incrementAndGet();
   }
 
   /**
@@ -236,7 +269,21 @@ public class TaskTree extends AbstractCache implements Serializable
   public List<Kost2DO> getKost2List(final Integer taskId)
   {
     final TaskNode node = getTaskNodeById(taskId);
-    return getKost2List(node, true);
+    if (node == null) {
+      return null;
+    }
+    // Both versions are incremented only, so the sum changes on every modification:
+    final long version = kost2ListVersion.get() + kostCache.getKost2Version();
+    final TaskNode.Kost2ListEntry entry = node.kost2ListEntry;
+    if (entry != null && entry.version == version) {
+      return entry.kost2List;
+    }
+    List<Kost2DO> list = getKost2List(node, true);
+    if (list != null) {
+      list = Collections.unmodifiableList(list);
+    }
+    node.kost2ListEntry = new TaskNode.Kost2ListEntry(version, list);
+    return list;
   }
 
   /**
@@ -342,17 +389,60 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * Should be called after modification of a time sheet assigned to the given task id.
+   * Adds the given duration to the total duration of the given task and to the recursive total durations of the task and all of its
+   * ancestor tasks. Should be called after modification of a time sheet assigned to the given task id.
    * @param taskId
+   * @param durationInSeconds The duration to add (negative for subtracting, e. g. on deletion of a time sheet).
    */
-  public void resetTotalDuration(final Integer taskId)
+  public void addTotalDuration(final Integer taskId, final long durationInSeconds)
   {
+    if (taskId == null || durationInSeconds == 0) {
+      return;
+    }
     final TaskNode node = getTaskNodeById(taskId);
     if (node == null) {
       log.error("Task id '" + taskId + "' not found.");
       return;
     }
-    node.totalDuration = -1;
+    synchronized (durationLock) {
+      node.totalDuration += durationInSeconds;
+      addRecursiveTotalDuration(node, durationInSeconds);
+    }
+  }
+
+  /**
+   * Reads the total durations of all tasks from the data base and corrects the durations of the task nodes if they differ (the durations
+   * are maintained by delta, so any modification of time sheets outside of the TimesheetDao will result in a drift). Should be called
+   * periodically (e. g. by the nightly cron job).
+   * @return The number of corrected task nodes.
+   */
+  public int reconcileTotalDurations()
+  {
+    checkRefresh();
+    final long begin = System.currentTimeMillis();
+    final Map<Integer, Long> durations = new HashMap<Integer, Long>();
+    for (final Object[] res : taskDao.readTotalDurations()) {
+      durations.put((Integer) res[1], res[0] != null ? ((Number) res[0]).longValue() : 0L);
+    }
+    int counter = 0;
+    synchronized (durationLock) {
+      for (final TaskNode node : new ArrayList<TaskNode>(taskMap.values())) {
+        final Long duration = durations.get(node.getId());
+        final long totalDuration = duration != null ? duration : 0L;
+        if (node.totalDuration != totalDuration) {
+          log.warn("Total duration of task '" + node.getId() + "' differs from data base: " + node.totalDuration + "s != "
+              + totalDuration + "s.");
+          node.totalDuration = totalDuration;
+          ++counter;
+        }
+      }
+      if (root != null) {
+        calculateRecursiveTotalDurations(root);
+      }
+    }
+    log.info("Reconciliation of total durations of tasks done in " + (System.currentTimeMillis() - begin) + "ms (" + counter
+        + " task(s) corrected).");
+    return counter;
   }
 
   /**
@@ -368,18 +458,39 @@ public class TaskTree extends AbstractCache implements Serializable
     if (node == null) {
       return addTaskNode(task);
     }
+    final boolean protectionOfPrivacyChanged = node.getTask().isProtectionOfPrivacy() != task.isProtectionOfPrivacy();
     node.setTask(task);
-    if (task.getParentTaskId() != null && task.getParentTaskId().equals(node.getParent().getId()) == false) {
+    lastTaskUpdate = getLastUpdate(task.getLastUpdate(), lastTaskUpdate);
+    if (protectionOfPrivacyChanged == true) {
+      // The time sheet access of project managers depends on the protection of privacy:
+      permissionVersion.incrementAndGet();
+    }
+    // The black/white list of the task or the hierarchy may have changed:
+    kost2ListVersion.incrementAndGet();
+    if (task.getParentTaskId() != null && task.getParentTaskId().equals(node.getParentId()) == false) {
       if (log.isDebugEnabled() == true) {
         log.debug("Task hierarchy was changed for task: " + task);
       }
       final TaskNode oldParent = node.getParent();
-      Validate.notNull(oldParent);
-      oldParent.removeChild(node);
       final TaskNode newParent = getTaskNodeById(task.getParentTaskId());
-      node.setParent(newParent);
-      newParent.addChild(node);
+      if (oldParent == null || newParent == null) {
+        log.error("Task tree is inconsistent (old or new parent task not found), rebuilding task tree on next access: " + task);
+        setExpired();
+        return node;
+      }
+      synchronized (durationLock) {
+        addRecursiveTotalDuration(oldParent, -node.recursiveTotalDuration);
+        oldParent.removeChild(node);
+        resetBookableForTimesheets(oldParent);
+        node.setParent(newParent);
+        newParent.addChild(node);
+        addRecursiveTotalDuration(newParent, node.recursiveTotalDuration);
+      }
+      // Inherited permissions may have changed:
+      node.resetPermissionMasks(null);
+      permissionVersion.incrementAndGet();
     }
+    resetBookableForTimesheets(node);
     updateTimeOfLastModification();
     return node;
   }
@@ -394,7 +505,14 @@ public class TaskTree extends AbstractCache implements Serializable
     checkRefresh();
     final Integer taskId = groupTaskAccess.getTaskId();
     final TaskNode node = taskMap.get(taskId);
+    if (node == null) {
+      log.error("Task tree is inconsistent (task not found), rebuilding task tree on next access: " + groupTaskAccess);
+      setExpired();
+      return;
+    }
     node.setGroupTaskAccess(groupTaskAccess);
+    permissionVersion.incrementAndGet();
+    lastAccessUpdate = getLastUpdate(groupTaskAccess.getLastUpdate(), lastAccessUpdate);
   }
 
   /**
@@ -407,7 +525,23 @@ public class TaskTree extends AbstractCache implements Serializable
     checkRefresh();
     final Integer taskId = groupTaskAccess.getTaskId();
     final TaskNode node = taskMap.get(taskId);
+    if (node == null) {
+      log.error("Task tree is inconsistent (task not found), rebuilding task tree on next access: " + groupTaskAccess);
+      setExpired();
+      return;
+    }
     node.removeGroupTaskAccess(groupTaskAccess.getGroupId());
+    permissionVersion.incrementAndGet();
+  }
+
+  /**
+   * The version is incremented on every modification of group task access entries, of the task hierarchy (including new tasks) or of the
+   * protection of privacy of a task. It may be used for invalidating permissions derived from this tree.
+   * @see org.projectforge.access.AccessChecker
+   */
+  public long getPermissionVersion()
+  {
+    return permissionVersion.get();
   }
 
   public long getTimeOfLastModification()
@@ -478,6 +612,31 @@ public class TaskTree extends AbstractCache implements Serializable
     auftragDao.registerTaskTree(this);
   }
 
+  /**
+   * @param incrementalRefresh If false, the complete tree will be rebuilt from the data base after every expiring (default is true).
+   * @see #refresh()
+   */
+  public void setIncrementalRefresh(final boolean incrementalRefresh)
+  {
+    this.incrementalRefresh = incrementalRefresh;
+  }
+
+  public boolean isIncrementalRefresh()
+  {
+    return incrementalRefresh;
+  }
+
+  /**
+   * Forces a full rebuild of the tree before next use (also in incremental mode).
+   * @see org.projectforge.common.AbstractCache#setExpired()
+   */
+  @Override
+  public void setExpired()
+  {
+    this.rebuildRequested = true;
+    super.setExpired();
+  }
+
   /**
    * Has the current logged in user select access to the given task?
    * @param node
@@ -524,6 +683,10 @@ public class TaskTree extends AbstractCache implements Serializable
   {
     synchronized (this) {
       this.orderPositionReferencesDirty = true;
+      if (this.root != null) {
+        // Descendant order positions have influence on the bookable status:
+        resetBookableForTimesheetsOfDescendants(this.root);
+      }
     }
   }
 
@@ -736,37 +899,125 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes.
+   * The bookable status of a task depends on the ancestor tasks (status and booking status) and on the descendant tasks (leaf nodes and
+   * order positions). Therefore the cached status of the path to the root and of the whole sub tree is reset and evaluated lazily.
+   * @param node
+   * @see TaskNode#isBookableForTimesheets()
+   */
+  private void resetBookableForTimesheets(final TaskNode node)
+  {
+    if (node == null) {
+      return;
+    }
+    TaskNode ancestor = node.getParent();
+    while (ancestor != null) {
+      ancestor.bookableForTimesheets = null;
+      ancestor = ancestor.getParent();
+    }
+    resetBookableForTimesheetsOfDescendants(node);
+  }
+
+  private void resetBookableForTimesheetsOfDescendants(final TaskNode node)
+  {
+    node.bookableForTimesheets = null;
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        resetBookableForTimesheetsOfDescendants(child);
+      }
+    }
+  }
+
+  private long getLastUpdate(final Date lastUpdate, final long currentValue)
+  {
+    if (lastUpdate == null || lastUpdate.getTime() < currentValue) {
+      return currentValue;
+    }
+    return lastUpdate.getTime();
+  }
+
+  /**
+   * Compares the number of entries and the last update time stamps of tasks, group task access entries and projects in the data base with
+   * the values of this tree.
+   * @return true, if no modification of the data base was found which wasn't propagated to this tree.
+   */
+  private boolean isConsistent()
+  {
+    final Object[] taskStatus = taskDao.readModificationStatus(TaskDO.class, null);
+    if (((Number) taskStatus[0]).intValue() != taskMap.size()) {
+      log.info("Number of tasks in data base differs from task tree: " + taskStatus[0] + " != " + taskMap.size());
+      return false;
+    }
+    if (getLastUpdate((Date) taskStatus[1], 0) > lastTaskUpdate) {
+      log.info("Tasks in data base were modified outside of the task tree.");
+      return false;
+    }
+    // Deleted group task access entries are removed from the tree:
+    final Object[] accessStatus = taskDao.readModificationStatus(GroupTaskAccessDO.class, "o.deleted = false");
+    int accessCount = 0;
+    for (final TaskNode node : taskMap.values()) {
+      accessCount += node.getGroupTaskAccessCount();
+    }
+    if (((Number) accessStatus[0]).intValue() != accessCount) {
+      log.info("Number of group task access entries in data base differs from task tree: " + accessStatus[0] + " != " + accessCount);
+      return false;
+    }
+    if (getLastUpdate((Date) accessStatus[1], 0) > lastAccessUpdate) {
+      log.info("Group task access entries in data base were modified outside of the task tree.");
+      return false;
+    }
+    final Object[] projectStatus = taskDao.readModificationStatus(ProjektDO.class, "o.task.id is not null");
+    if (getLastUpdate((Date) projectStatus[1], 0) > lastProjectUpdate) {
+      log.info("Projects in data base were modified outside of the task tree.");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes. The recursive total
+   * durations are calculated afterwards.
    */
   private void readTotalDurations()
   {
     final List<Object[]> list = taskDao.readTotalDurations();
-    for (final Object[] res : list) {
-      final Integer taskId = (Integer) res[1];
-      final TaskNode node = getTaskNodeById(taskId);
-      if (node == null) {
-        log.warn("Task not found: " + taskId);
-      } else {
-        if (res[0] instanceof Integer) {
-          node.totalDuration = (Integer) res[0];
-        } else {
-          node.totalDuration = (Long) res[0];
+    synchronized (durationLock) {
+      for (final Object[] res : list) {
+        final Integer taskId = (Integer) res[1];
+        final TaskNode node = taskMap.get(taskId);
+        if (node == null) {
+          log.warn("Task not found: " + taskId);
+        } else if (res[0] != null) {
+          node.totalDuration = ((Number) res[0]).longValue();
         }
       }
+      if (root != null) {
+        calculateRecursiveTotalDurations(root);
+      }
     }
   }
 
+  private long calculateRecursiveTotalDurations(final TaskNode node)
+  {
+    long duration = node.totalDuration;
+    if (node.childs != null) {
+      for (final TaskNode child : node.childs) {
+        duration += calculateRecursiveTotalDurations(child);
+      }
+    }
+    node.recursiveTotalDuration = duration;
+    return duration;
+  }
+
   /**
-   * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes.
+   * Adds the given duration to the recursive total durations of the given node and all of its ancestors. Should only be called inside the
+   * duration lock.
    */
-  public void readTotalDuration(final Integer taskId)
+  private void addRecursiveTotalDuration(final TaskNode node, final long durationInSeconds)
   {
-    final long duration = taskDao.readTotalDuration(taskId);
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      log.warn("Task not found: " + taskId);
-    } else {
-      node.totalDuration = duration;
+    TaskNode current = node;
+    while (current != null) {
+      current.recursiveTotalDuration += durationInSeconds;
+      current = current.parent;
     }
   }
 
@@ -783,14 +1034,15 @@ public class TaskTree extends AbstractCache implements Serializable
    * All tasks from database will be read and cached into this TaskTree. Also all explicit group task access' will be read from database and
    * will be cached in this tree (implicit access' will be created too).<br/>
    * The generation of the task tree will be done manually, not by hibernate because the task hierarchy is very sensible. Manipulations of
-   * the task tree should be done carefully for single task nodes.
+   * the task tree should be done carefully for single task nodes.<br/>
+   * In incremental mode (default) the tree is only rebuilt if a rebuild is requested by {@link #setExpired()} or if any inconsistency
+   * between data base and this tree is detected. Otherwise the tree is kept up-to-date by the modification events of the daos.
    * 
    * @see org.projectforge.common.AbstractCache#refresh()
    */
   @Override
   protected void refresh()
   {
-    log.info("Initializing task tree ...");
     if (taskDao == null) {
       log.info("Can't initialize task tree, taskDao isn't set yet (shouldn't occur):");
       // Stack trace for debugging refresh() call without TaskDao (does only occur in productive mode):
@@ -798,8 +1050,27 @@ public class TaskTree extends AbstractCache implements Serializable
       log.info(sth);
       return;
     }
+    if (incrementalRefresh == true && rebuildRequested == false && root != null && taskMap != null) {
+      final long begin = System.currentTimeMillis();
+      final boolean consistent = isConsistent();
+      if (log.isDebugEnabled() == true) {
+        log.debug("Consistency check of task tree done in " + (System.currentTimeMillis() - begin) + "ms: " + consistent);
+      }
+      if (consistent == true) {
+        return;
+      }
+    }
+    rebuild();
+  }
+
+  private void rebuild()
+  {
+    log.info("Initializing task tree ...");
+    final long begin = System.currentTimeMillis();
+    this.rebuildRequested = false;
     TaskNode newRoot = null;
     taskMap = new HashMap<Integer, TaskNode>();
+    lastTaskUpdate = lastAccessUpdate = lastProjectUpdate = 0;
     final List<TaskDO> taskList = taskDao.internalLoadAll();
     TaskNode node;
     log.debug("Loading list of tasks ...");
@@ -807,6 +1078,7 @@ public class TaskTree extends AbstractCache implements Serializable
       node = new TaskNode();
       node.setTask(task);
       taskMap.put(node.getTaskId(), node);
+      lastTaskUpdate = getLastUpdate(task.getLastUpdate(), lastTaskUpdate);
       if (node.isRootNode() == true) {
         if (newRoot != null) {
           log.error("Duplicate root node found: " + newRoot.getId() + " and " + node.getId());
@@ -858,7 +1130,16 @@ public class TaskTree extends AbstractCache implements Serializable
     // Now read all explicit group task access' from the database:
     final List<GroupTaskAccessDO> accessList = accessDao.internalLoadAll();
     for (final GroupTaskAccessDO access : accessList) {
+      if (access.isDeleted() == true) {
+        // Deleted entries are also removed from the tree by AccessDao.
+        continue;
+      }
       node = taskMap.get(access.getTaskId());
+      lastAccessUpdate = getLastUpdate(access.getLastUpdate(), lastAccessUpdate);
+      if (node == null) {
+        log.error("Oups, should not occur: group task access references a non existing task: " + access);
+        continue;
+      }
       node.setGroupTaskAccess(access);
       if (log.isDebugEnabled() == true) {
         log.debug(access.toString());
@@ -868,6 +1149,9 @@ public class TaskTree extends AbstractCache implements Serializable
     final List<ProjektDO> projects = projektDao.internalLoadAll();
     if (projects != null) {
       for (final ProjektDO project : projects) {
+        if (project.getTaskId() != null) {
+          lastProjectUpdate = getLastUpdate(project.getLastUpdate(), lastProjectUpdate);
+        }
         if (project.isDeleted() == true || project.getTaskId() == null) {
           continue;
         }
@@ -884,16 +1168,10 @@ public class TaskTree extends AbstractCache implements Serializable
     }
     readTotalDurations();
     refreshOrderPositionReferences();
-    // Now update the status: bookable for time sheets:
-    final TimesheetDao timesheetDao = Registry.instance().getDao(TimesheetDao.class);
-    final TimesheetDO timesheet = new TimesheetDO();
-    for (final TaskDO task : taskList) {
-      node = taskMap.get(task.getId());
-      timesheet.setTask(task);
-      final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
-      node.bookableForTimesheets = bookable;
-    }
-    log.info("Initializing task tree done.");
+    permissionVersion.incrementAndGet();
+    kost2ListVersion.incrementAndGet();
+    // The status bookable for time sheets is evaluated lazily (see TaskNode.isBookableForTimesheets()).
+    log.info("Initializing task tree done in " + (System.currentTimeMillis() - begin) + "ms.");
   }
 
   private void updateTimeOfLastModification()
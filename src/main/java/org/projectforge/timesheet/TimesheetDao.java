@@ -29,7 +29,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,16 +40,22 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
-import org.hibernate.Query;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.NumberHelper;
+import org.projectforge.continuousdb.DatabaseSupport;
+import org.projectforge.core.AutocompletionCache;
+import org.projectforge.core.AutocompletionIndex;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.MessageParam;
@@ -57,6 +63,7 @@ import org.projectforge.core.OrderDirection;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
 import org.projectforge.database.SQLHelper;
+import org.projectforge.database.TransactionHelper;
 import org.projectforge.fibu.kost.Kost2DO;
 import org.projectforge.fibu.kost.Kost2Dao;
 import org.projectforge.task.TaskDO;
@@ -68,6 +75,7 @@ import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.ProjectForgeGroup;
 import org.projectforge.user.UserDao;
+import org.projectforge.web.calendar.CalendarFeedCache;
 import org.projectforge.web.timesheet.TimesheetListFilter;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -97,6 +105,11 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
 
   public static final String HIDDEN_FIELD_MARKER = "[...]";
 
+  /**
+   * Maximum number of users of the select access cache, see {@link #getSelectAccessRestriction(PFUserDO)}.
+   */
+  private static final int MAX_SELECT_ACCESS_CACHE_SIZE = 100;
+
   private static final Logger log = Logger.getLogger(TimesheetDao.class);
 
   private TaskTree taskTree;
@@ -105,7 +118,43 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
 
   private Kost2Dao kost2Dao;
 
-  private final Map<Integer, Set<Integer>> timesheetsWithOverlapByUser = new HashMap<Integer, Set<Integer>>();
+  private final TimesheetOverlapCache timesheetOverlapCache = new TimesheetOverlapCache(this);
+
+  /**
+   * The task restrictions of the time sheet select access by user id. The least recently used users are removed first (bounded by
+   * MAX_SELECT_ACCESS_CACHE_SIZE), an entry is recalculated after modifications of the task tree permissions or of the user groups.
+   */
+  private final Map<Integer, SelectAccessRestriction> selectAccessCache = Collections
+      .synchronizedMap(new LinkedHashMap<Integer, SelectAccessRestriction>(16, 0.75f, true) {
+        private static final long serialVersionUID = -3853011307893432468L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, SelectAccessRestriction> eldest)
+        {
+          return size() > MAX_SELECT_ACCESS_CACHE_SIZE;
+        }
+      });
+
+  /**
+   * The locations of the time sheets (not deleted ones) of the users with modification date within last year. The key is the user id.
+   */
+  private final AutocompletionCache<Integer> locationCache = new AutocompletionCache<Integer>("timesheet.location", 1000,
+      new AutocompletionCache.Loader<Integer>() {
+    @SuppressWarnings("unchecked")
+    public void load(final Integer userId, final AutocompletionIndex index)
+    {
+      final DateHolder dh = new DateHolder();
+      dh.add(Calendar.YEAR, -1);
+      final List<Object[]> list = getHibernateTemplate().find(
+          "select t.location, t.lastUpdate from "
+              + clazz.getSimpleName()
+              + " t where deleted=false and t.user.id = ? and lastUpdate > ? and t.location != null and t.location != ''",
+              new Object[] { userId, dh.getDate()});
+      for (final Object[] entry : list) {
+        index.add((String) entry[0], (Date) entry[1]);
+      }
+    }
+  });
 
   public void setTaskTree(final TaskTree taskTree)
   {
@@ -268,18 +317,7 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     if (result == null) {
       return null;
     }
-    // Check time period overlaps:
-    for (final TimesheetDO entry : result) {
-      Validate.notNull(entry.getUserId());
-      if (entry.isMarked() == true) {
-        continue; // Is already marked.
-      }
-      final Set<Integer> overlapSet = getTimesheetsWithTimeoverlap(entry.getUserId());
-      if (overlapSet.contains(entry.getId()) == true) {
-        log.info("Overlap of time sheet decteced: " + entry);
-        entry.setMarked(true);
-      }
-    }
+    markTimesheetsWithTimeoverlap(result);
     if (myFilter.isMarked() == true) {
       // Show only time sheets with time period violation (overlap):
       final List<TimesheetDO> list = result;
@@ -293,6 +331,202 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     return result;
   }
 
+  /**
+   * Supports paging unless only time sheets with time period overlaps should be shown (this filter is done in memory).
+   * @see org.projectforge.core.BaseDao#buildPagedQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  protected QueryFilter buildPagedQueryFilter(final BaseSearchFilter filter)
+  {
+    final TimesheetFilter myFilter;
+    if (filter instanceof TimesheetFilter) {
+      myFilter = (TimesheetFilter) filter;
+    } else {
+      myFilter = new TimesheetFilter(filter);
+    }
+    if (myFilter.isMarked() == true) {
+      return null;
+    }
+    if (myFilter.getStopTime() != null) {
+      final DateHolder date = new DateHolder(myFilter.getStopTime());
+      date.setEndOfDay();
+      myFilter.setStopTime(date.getDate());
+    }
+    final QueryFilter queryFilter = buildQueryFilter(myFilter);
+    addSelectAccessRestrictions(queryFilter, PFUserContext.getUser());
+    return queryFilter;
+  }
+
+  /**
+   * Restricts the query filter to the time sheets the given user may select (see {@link #hasSelectAccess(PFUserDO, TimesheetDO, boolean)}):
+   * his own time sheets and the foreign time sheets of tasks with time sheet select access (for project managers of all tasks without
+   * protection of privacy).
+   */
+  private void addSelectAccessRestrictions(final QueryFilter queryFilter, final PFUserDO user)
+  {
+    final String taskRestriction = getSelectAccessRestriction(user).sqlRestriction;
+    if (taskRestriction == null) {
+      // Access to the time sheets of all tasks.
+      return;
+    }
+    queryFilter.add(Restrictions.or(Restrictions.eq("user.id", user.getId()), Restrictions.sqlRestriction(taskRestriction)));
+  }
+
+  /**
+   * The restriction is calculated once per user and held until the permissions of the task tree or the user groups are modified.
+   */
+  private SelectAccessRestriction getSelectAccessRestriction(final PFUserDO user)
+  {
+    final long taskTreeVersion = taskTree.getPermissionVersion();
+    final long userGroupCacheVersion = userGroupCache.getRefreshCounter();
+    SelectAccessRestriction restriction = selectAccessCache.get(user.getId());
+    if (restriction != null
+        && restriction.taskTreeVersion == taskTreeVersion
+        && restriction.userGroupCacheVersion == userGroupCacheVersion) {
+      return restriction;
+    }
+    String sqlRestriction = null;
+    if (accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == false) {
+      final List<Integer> taskIds = new ArrayList<Integer>();
+      final List<Integer> otherTaskIds = new ArrayList<Integer>();
+      final boolean projectManager = accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.PROJECT_MANAGER);
+      addTaskIdsWithSelectAccess(taskIds, otherTaskIds, user, taskTree.getRootTaskNode(), projectManager, false);
+      if (otherTaskIds.isEmpty() == false) {
+        // The smaller list of the accessible tasks or of the other tasks (complement) is used:
+        if (taskIds.size() <= otherTaskIds.size()) {
+          sqlRestriction = taskIds.isEmpty() == true ? "1=0" : getTaskIdsSqlRestriction(taskIds);
+        } else {
+          sqlRestriction = "not " + getTaskIdsSqlRestriction(otherTaskIds);
+        }
+      }
+    }
+    restriction = new SelectAccessRestriction(taskTreeVersion, userGroupCacheVersion, sqlRestriction);
+    selectAccessCache.put(user.getId(), restriction);
+    return restriction;
+  }
+
+  private void addTaskIdsWithSelectAccess(final List<Integer> taskIds, final List<Integer> otherTaskIds, final PFUserDO user,
+      final TaskNode node, final boolean projectManager, final boolean protectionOfPrivacy)
+  {
+    final boolean nodeProtectionOfPrivacy = protectionOfPrivacy == true || node.getTask().isProtectionOfPrivacy() == true;
+    if (accessChecker.hasPermission(user, node.getId(), AccessType.TIMESHEETS, OperationType.SELECT, false) == true
+        || (projectManager == true && nodeProtectionOfPrivacy == false)) {
+      taskIds.add(node.getId());
+    } else {
+      otherTaskIds.add(node.getId());
+    }
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        addTaskIdsWithSelectAccess(taskIds, otherTaskIds, user, child, projectManager, nodeProtectionOfPrivacy);
+      }
+    }
+  }
+
+  /**
+   * The task id's are written as literals (no bind parameters, data bases limit their number) and consecutive id's as ranges, because the
+   * tasks of a sub tree have mostly consecutive id's. The time sheet table has no task path, therefore the sub trees can't be expressed by
+   * their root tasks.
+   * @param taskIds Must not be empty.
+   * @return The sql restriction, e. g. "({alias}.task_id in (1,3) or {alias}.task_id between 5 and 12)".
+   */
+  static String getTaskIdsSqlRestriction(final List<Integer> taskIds)
+  {
+    final List<Integer> ids = new ArrayList<Integer>(taskIds);
+    Collections.sort(ids);
+    final StringBuffer inList = new StringBuffer();
+    final StringBuffer ranges = new StringBuffer();
+    int i = 0;
+    while (i < ids.size()) {
+      int j = i;
+      while (j + 1 < ids.size() && ids.get(j + 1) == ids.get(j) + 1) {
+        ++j;
+      }
+      if (j - i >= 2) {
+        ranges.append(" or {alias}.task_id between ").append(ids.get(i)).append(" and ").append(ids.get(j));
+      } else {
+        for (int k = i; k <= j; k++) {
+          inList.append(inList.length() > 0 ? "," : "").append(ids.get(k));
+        }
+      }
+      i = j + 1;
+    }
+    final StringBuffer buf = new StringBuffer();
+    buf.append("(");
+    if (inList.length() > 0) {
+      buf.append("{alias}.task_id in (").append(inList).append(")").append(ranges);
+    } else {
+      // Skip the leading " or ":
+      buf.append(ranges.substring(4));
+    }
+    return buf.append(")").toString();
+  }
+
+  /**
+   * Calculates the total duration of all time sheets matching the given filter by the data base (if supported by the data base dialect,
+   * otherwise only the start and stop times are read).
+   * @param filter The query filter got by {@link #getPagedQueryFilter(BaseSearchFilter)}.
+   * @return The total duration in millis.
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public long getTotalDuration(final QueryFilter filter)
+  {
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    final Criteria criteria = filter.buildCountCriteria(getSession(), clazz);
+    final String intervalInSeconds = DatabaseSupport.getInstance().getIntervalInSeconds("{alias}.start_time", "{alias}.stop_time");
+    if (intervalInSeconds != null) {
+      criteria.setProjection(Projections.sqlProjection(intervalInSeconds + " as duration", new String[] { "duration"},
+          new Type[] { StandardBasicTypes.DOUBLE}));
+      final Number seconds = (Number) criteria.uniqueResult();
+      return seconds != null ? Math.round(seconds.doubleValue() * 1000) : 0;
+    }
+    criteria.setProjection(Projections.projectionList().add(Projections.property("startTime")).add(Projections.property("stopTime")));
+    @SuppressWarnings("unchecked")
+    final List<Object[]> result = criteria.list();
+    long duration = 0;
+    for (final Object[] oa : result) {
+      duration += ((Date) oa[1]).getTime() - ((Date) oa[0]).getTime();
+    }
+    return duration;
+  }
+
+  /**
+   * Marks the time sheets of the page with time period overlaps.
+   * @see org.projectforge.core.BaseDao#getPagedList(org.projectforge.core.QueryFilter, java.lang.String, boolean, int, int)
+   */
+  @Override
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<TimesheetDO> getPagedList(final QueryFilter filter, final String sortProperty, final boolean ascending, final int first,
+      final int count)
+  {
+    final List<TimesheetDO> result = super.getPagedList(filter, sortProperty, ascending, first, count);
+    if (result != null) {
+      markTimesheetsWithTimeoverlap(result);
+    }
+    return result;
+  }
+
+  private void markTimesheetsWithTimeoverlap(final List<TimesheetDO> list)
+  {
+    final Map<Integer, Set<Integer>> overlapSetsByUser = new HashMap<Integer, Set<Integer>>();
+    for (final TimesheetDO entry : list) {
+      Validate.notNull(entry.getUserId());
+      if (entry.isMarked() == true) {
+        continue; // Is already marked.
+      }
+      Set<Integer> overlapSet = overlapSetsByUser.get(entry.getUserId());
+      if (overlapSet == null) {
+        overlapSet = getTimesheetsWithTimeoverlap(entry.getUserId());
+        overlapSetsByUser.put(entry.getUserId(), overlapSet);
+      }
+      if (overlapSet.contains(entry.getId()) == true) {
+        log.info("Overlap of time sheet decteced: " + entry);
+        entry.setMarked(true);
+      }
+    }
+  }
+
   public List<TimesheetDO> getTimeperiodOverlapList(final TimesheetListFilter actionFilter)
   {
     if (actionFilter.getUserId() != null) {
@@ -314,7 +548,7 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Rechecks the time sheet overlaps.
+   * Updates the time sheet overlaps after the commit (rolled back modifications must not reach the cache).
    * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
@@ -322,10 +556,104 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   {
     super.afterSaveOrModify(obj);
     if (obj.getUser() != null) {
-      // Force re-analysis of time sheet overlaps after any modification of time sheets.
-      recheckTimesheetOverlap(obj.getUserId());
+      // Update the time periods of the user (only the neighbours of the modified time sheet are checked for overlaps).
+      TransactionHelper.runAfterCommit(new Runnable() {
+        @Override
+        public void run()
+        {
+          timesheetOverlapCache.update(obj);
+        }
+      });
+      CalendarFeedCache.getInstance().setTimesheetsExpiredAfterCommit(obj.getUserId());
+    }
+  }
+
+  /**
+   * Adds the duration of the new time sheet to the total durations of the task tree and its location to the location index of the user.
+   * @see org.projectforge.core.BaseDao#afterSave(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSave(final TimesheetDO obj)
+  {
+    super.afterSave(obj);
+    if (obj.isDeleted() == false) {
+      addTotalDurationAfterCommit(obj.getTaskId(), getDurationInSeconds(obj));
+      locationCache.add(obj.getUserId(), obj.getLocation(), obj.getLastUpdate());
+    }
+  }
+
+  /**
+   * Subtracts the duration of the time sheet (as stored in the data base) from the total durations of the task tree and its location from
+   * the location index of the user.
+   * @see org.projectforge.core.BaseDao#onDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onDelete(final TimesheetDO obj)
+  {
+    super.onDelete(obj);
+    final TimesheetDO dbObj = internalGetById(obj.getId());
+    if (dbObj != null && dbObj.isDeleted() == false) {
+      addTotalDurationAfterCommit(dbObj.getTaskId(), -getDurationInSeconds(dbObj));
+      locationCache.removeValue(dbObj.getUserId(), dbObj.getLocation());
+    }
+  }
+
+  /**
+   * Adds the duration of the restored time sheet to the total durations of the task tree and its location to the location index of the
+   * user.
+   * @see org.projectforge.core.BaseDao#afterUndelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterUndelete(final TimesheetDO obj)
+  {
+    super.afterUndelete(obj);
+    addTotalDurationAfterCommit(obj.getTaskId(), getDurationInSeconds(obj));
+    locationCache.add(obj.getUserId(), obj.getLocation(), obj.getLastUpdate());
+  }
+
+  private long getDurationInSeconds(final TimesheetDO obj)
+  {
+    return obj.getDuration() / 1000;
+  }
+
+  /**
+   * Adds the duration to the total durations of the task tree after the commit (rolled back modifications must not be counted). The task id
+   * and duration are given as values, because the time sheet objects may be modified until the commit (e. g. the data base object by
+   * onChange).
+   */
+  private void addTotalDurationAfterCommit(final Integer taskId, final long durationInSeconds)
+  {
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        taskTree.addTotalDuration(taskId, durationInSeconds);
+      }
+    });
+  }
+
+  /**
+   * Removes the time sheet from the time periods used for overlap detection (after the commit).
+   * @see org.projectforge.core.BaseDao#afterDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterDelete(final TimesheetDO obj)
+  {
+    super.afterDelete(obj);
+    if (obj.getUser() != null) {
+      removeTimeperiodAfterCommit(obj.getUserId(), obj.getId());
     }
-    taskTree.resetTotalDuration(obj.getTaskId());
+  }
+
+  private void removeTimeperiodAfterCommit(final Integer userId, final Integer timesheetId)
+  {
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        timesheetOverlapCache.remove(userId, timesheetId);
+      }
+    });
   }
 
   /**
@@ -360,8 +688,22 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   @Override
   protected void onChange(final TimesheetDO obj, final TimesheetDO dbObj)
   {
-    if (obj.getTaskId().compareTo(dbObj.getTaskId()) != 0) {
-      taskTree.resetTotalDuration(dbObj.getTaskId());
+    if (dbObj.isDeleted() == false) {
+      // Move the duration of the time sheet (task and/or time period may have changed):
+      addTotalDurationAfterCommit(dbObj.getTaskId(), -getDurationInSeconds(dbObj));
+      addTotalDurationAfterCommit(obj.getTaskId(), getDurationInSeconds(obj));
+    }
+    if (dbObj.getUserId() != null && dbObj.getUserId().equals(obj.getUserId()) == false) {
+      // Time sheet was moved to another user:
+      removeTimeperiodAfterCommit(dbObj.getUserId(), dbObj.getId());
+      CalendarFeedCache.getInstance().setTimesheetsExpiredAfterCommit(dbObj.getUserId());
+    }
+    if (dbObj.isDeleted() == false
+        && (ObjectUtils.equals(dbObj.getLocation(), obj.getLocation()) == false
+        || ObjectUtils.equals(dbObj.getUserId(), obj.getUserId()) == false)) {
+      // Only a changed location is counted (deleted time sheets aren't counted at all):
+      locationCache.removeValue(dbObj.getUserId(), dbObj.getLocation());
+      locationCache.add(obj.getUserId(), obj.getLocation(), new Date());
     }
   }
 
@@ -395,83 +737,60 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Analyses all time sheets of the user and detects any collision (overlap) of the user's time sheets. The result will be cached and the
-   * duration of a new analysis is only a few milliseconds!
+   * Analyses all time sheets of the user and detects any collision (overlap) of the user's time sheets. The time periods of the user's
+   * time sheets are held in memory and updated after any modification, so only the first call for a user queries the data base.
    * @param user
    * @return
    */
   public Set<Integer> getTimesheetsWithTimeoverlap(final Integer userId)
   {
     Validate.notNull(userId);
-    final PFUserDO user = userGroupCache.getUser(userId);
-    Validate.notNull(user);
-    synchronized (timesheetsWithOverlapByUser) {
-      if (timesheetsWithOverlapByUser.get(userId) != null) {
-        return timesheetsWithOverlapByUser.get((userId));
-      }
-      // log.info("Getting time sheet overlaps for user: " + user.getUsername());
-      final Set<Integer> result = new HashSet<Integer>();
-      final QueryFilter queryFilter = new QueryFilter();
-      queryFilter.add(Restrictions.eq("user", user));
-      queryFilter.addOrder(Order.asc("startTime"));
-      final List<TimesheetDO> list = getList(queryFilter);
-      long endTime = 0;
-      TimesheetDO lastEntry = null;
-      for (final TimesheetDO entry : list) {
-        if (entry.getStartTime().getTime() < endTime) {
-          // Time collision!
-          result.add(entry.getId());
-          if (lastEntry != null) { // Only for first iteration
-            result.add(lastEntry.getId()); // Also collision for last entry.
-          }
-        }
-        endTime = entry.getStopTime().getTime();
-        lastEntry = entry;
-      }
-      timesheetsWithOverlapByUser.put(user.getId(), result);
-      if (CollectionUtils.isNotEmpty(result) == true) {
-        log.info("Time sheet overlaps for user '" + user.getUsername() + "': " + result);
-      }
-      return result;
-    }
+    return timesheetOverlapCache.getTimesheetsWithTimeoverlap(userId);
+  }
+
+  /**
+   * Reads the time periods of all not deleted time sheets of the given user (without any access checking).
+   * @param userId
+   * @return Object[] with id, start time and stop time ordered by start time.
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<Object[]> internalGetTimeperiods(final Integer userId)
+  {
+    return getHibernateTemplate().find(
+        "select id, startTime, stopTime from TimesheetDO where user.id = ? and deleted = false order by startTime", userId);
   }
 
   /**
    * Deletes any existing time sheet overlap analysis and forces therefore a new analysis before next time sheet list selection. (The
-   * analysis will not be started inside this method!)
+   * analysis will not be started inside this method!)<br/>
+   * Should only be called after modifications of the user's time sheets not done by this dao (e. g. by direct data base access).
    * @param userId
    */
   public void recheckTimesheetOverlap(final Integer userId)
   {
     Validate.notNull(userId);
-    timesheetsWithOverlapByUser.remove(userId);
+    timesheetOverlapCache.clear(userId);
   }
 
   /**
    * Checks if the time sheet overlaps with another time sheet of the same user. Should be checked on every insert or update (also
-   * undelete). For time collision detection deleted time sheets are ignored.
+   * undelete). For time collision detection deleted time sheets are ignored. The check is done in memory without data base access (after
+   * the time periods of the user are read once).
    * @return The existing time sheet with the time period collision.
    */
   public boolean hasTimeOverlap(final TimesheetDO timesheet, final boolean throwException)
   {
     Validate.notNull(timesheet);
     Validate.notNull(timesheet.getUser());
-    final QueryFilter queryFilter = new QueryFilter();
-    queryFilter.add(Restrictions.eq("user", timesheet.getUser()));
-    queryFilter.add(Restrictions.lt("startTime", timesheet.getStopTime()));
-    queryFilter.add(Restrictions.gt("stopTime", timesheet.getStartTime()));
-    if (timesheet.getId() != null) {
-      // Update time sheet, do not compare with itself.
-      queryFilter.add(Restrictions.ne("id", timesheet.getId()));
-    }
-    final List<TimesheetDO> list = getList(queryFilter);
-    if (list != null && list.size() > 0) {
-      final TimesheetDO ts = list.get(0);
+    final TimesheetOverlapCache.Timeperiod timeperiod = timesheetOverlapCache.getOverlappingTimeperiod(timesheet.getUserId(),
+        timesheet.getId(), timesheet.getStartTime().getTime(), timesheet.getStopTime().getTime());
+    if (timeperiod != null) {
       if (throwException == true) {
-        log.info("Time sheet collision detected of time sheet " + timesheet + " with existing time sheet " + ts);
-        final String startTime = DateHelper.formatIsoTimestamp(ts.getStartTime());
-        final String stopTime = DateHelper.formatIsoTimestamp(ts.getStopTime());
-        throw new UserException("timesheet.error.timeperiodOverlapDetection", new MessageParam(ts.getId()), new MessageParam(startTime),
+        log.info("Time sheet collision detected of time sheet " + timesheet + " with existing time sheet #" + timeperiod.id);
+        final String startTime = DateHelper.formatIsoTimestamp(new Date(timeperiod.startTime));
+        final String stopTime = DateHelper.formatIsoTimestamp(new Date(timeperiod.stopTime));
+        throw new UserException("timesheet.error.timeperiodOverlapDetection", new MessageParam(timeperiod.id), new MessageParam(startTime),
             new MessageParam(stopTime));
       }
       return true;
@@ -759,27 +1078,18 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Get all locations of the user's time sheet (not deleted ones) with modification date within last year.
+   * Get all locations of the user's time sheet (not deleted ones) with modification date within last year. The locations are served by the
+   * autocompletion index of the user (no data base query per keystroke).
    * @param searchString
+   * @return The matching locations, the most frequent and recent used first.
    */
-  @SuppressWarnings("unchecked")
   public List<String> getLocationAutocompletion(final String searchString)
   {
     checkLoggedInUserSelectAccess();
     if (StringUtils.isBlank(searchString) == true) {
       return null;
     }
-    final String s = "select distinct location from "
-        + clazz.getSimpleName()
-        + " t where deleted=false and t.user.id = ? and lastUpdate > ? and lower(t.location) like ?) order by t.location";
-    final Query query = getSession().createQuery(s);
-    query.setInteger(0, PFUserContext.getUser().getId());
-    final DateHolder dh = new DateHolder();
-    dh.add(Calendar.YEAR, -1);
-    query.setDate(1, dh.getDate());
-    query.setString(2, "%" + StringUtils.lowerCase(searchString) + "%");
-    final List<String> list = query.list();
-    return list;
+    return locationCache.getIndex(PFUserContext.getUserId()).find(searchString);
   }
 
   /**
@@ -787,31 +1097,10 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
    * @param maxResults Limit the result to the recent locations.
    * @return result as Json object.
    */
-  @SuppressWarnings("unchecked")
   public Collection<String> getRecentLocation(final int maxResults)
   {
     checkLoggedInUserSelectAccess();
-    log.info("Get recent locations from the database.");
-    final String s = "select location from "
-        + (clazz.getSimpleName() + " t where deleted=false and t.user.id = ? and lastUpdate > ? and t.location != null and t.location != '' order by t.lastUpdate desc");
-    final Query query = getSession().createQuery(s);
-    query.setInteger(0, PFUserContext.getUser().getId());
-    final DateHolder dh = new DateHolder();
-    dh.add(Calendar.YEAR, -1);
-    query.setDate(1, dh.getDate());
-    final List<Object> list = query.list();
-    int counter = 0;
-    final List<String> res = new ArrayList<String>();
-    for (final Object loc : list) {
-      if (res.contains(loc) == true) {
-        continue;
-      }
-      res.add((String) loc);
-      if (++counter >= maxResults) {
-        break;
-      }
-    }
-    return res;
+    return locationCache.getIndex(PFUserContext.getUserId()).getRecent(maxResults);
   }
 
   @Override
@@ -893,4 +1182,23 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   {
     return true;
   }
+
+  private static class SelectAccessRestriction
+  {
+    private final long taskTreeVersion;
+
+    private final long userGroupCacheVersion;
+
+    /**
+     * The sql restriction of the tasks or null, if the time sheets of all tasks are accessible.
+     */
+    private final String sqlRestriction;
+
+    private SelectAccessRestriction(final long taskTreeVersion, final long userGroupCacheVersion, final String sqlRestriction)
+    {
+      this.taskTreeVersion = taskTreeVersion;
+      this.userGroupCacheVersion = userGroupCacheVersion;
+      this.sqlRestriction = sqlRestriction;
+    }
+  }
 }
@@ -0,0 +1,279 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.timesheet;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the time periods of all (not deleted) time sheets per user in memory for detecting time overlaps without querying the data base.
+ * The time periods of a user are read lazily from the data base and updated in place by the TimesheetDao after the commit of any
+ * modification (rolled back modifications never reach this cache). Only the neighbours of a modified time sheet are checked. All
+ * operations are synchronized per user.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+class TimesheetOverlapCache
+{
+  private static final Logger log = Logger.getLogger(TimesheetOverlapCache.class);
+
+  private final ConcurrentMap<Integer, UserTimeperiods> userMap = new ConcurrentHashMap<Integer, UserTimeperiods>();
+
+  private final TimesheetDao timesheetDao;
+
+  TimesheetOverlapCache(final TimesheetDao timesheetDao)
+  {
+    this.timesheetDao = timesheetDao;
+  }
+
+  /**
+   * @param userId
+   * @return The ids of all time sheets of the given user overlapping any other time sheet of this user.
+   */
+  Set<Integer> getTimesheetsWithTimeoverlap(final Integer userId)
+  {
+    return getUserTimeperiods(userId).getOverlaps();
+  }
+
+  /**
+   * @param userId
+   * @param timesheetId The time sheet to exclude (time sheet to update), may be null.
+   * @param startTime
+   * @param stopTime
+   * @return The first found time period of the user's time sheets overlapping the given time period or null, if no overlap exists.
+   */
+  Timeperiod getOverlappingTimeperiod(final Integer userId, final Integer timesheetId, final long startTime, final long stopTime)
+  {
+    return getUserTimeperiods(userId).getOverlappingTimeperiod(timesheetId, startTime, stopTime);
+  }
+
+  /**
+   * Adds or updates the given time sheet. A deleted time sheet will be removed.
+   */
+  void update(final TimesheetDO timesheet)
+  {
+    final UserTimeperiods timeperiods = userMap.get(timesheet.getUserId());
+    if (timeperiods == null) {
+      // Not yet loaded, nothing to do.
+      return;
+    }
+    if (timesheet.isDeleted() == true) {
+      timeperiods.remove(timesheet.getId());
+    } else {
+      timeperiods.update(new Timeperiod(timesheet.getId(), timesheet.getStartTime().getTime(), timesheet.getStopTime().getTime()));
+    }
+  }
+
+  void remove(final Integer userId, final Integer timesheetId)
+  {
+    final UserTimeperiods timeperiods = userMap.get(userId);
+    if (timeperiods != null) {
+      timeperiods.remove(timesheetId);
+    }
+  }
+
+  /**
+   * The time periods of the given user will be reread from the data base on next access.
+   */
+  void clear(final Integer userId)
+  {
+    userMap.remove(userId);
+  }
+
+  private UserTimeperiods getUserTimeperiods(final Integer userId)
+  {
+    UserTimeperiods timeperiods = userMap.get(userId);
+    if (timeperiods == null) {
+      timeperiods = new UserTimeperiods(userId);
+      final UserTimeperiods existing = userMap.putIfAbsent(userId, timeperiods);
+      if (existing != null) {
+        timeperiods = existing;
+      }
+    }
+    return timeperiods;
+  }
+
+  static class Timeperiod implements Comparable<Timeperiod>
+  {
+    final int id;
+
+    final long startTime;
+
+    final long stopTime;
+
+    Timeperiod(final int id, final long startTime, final long stopTime)
+    {
+      this.id = id;
+      this.startTime = startTime;
+      this.stopTime = stopTime;
+    }
+
+    @Override
+    public int compareTo(final Timeperiod o)
+    {
+      if (startTime != o.startTime) {
+        return startTime < o.startTime ? -1 : 1;
+      }
+      return id < o.id ? -1 : (id == o.id ? 0 : 1);
+    }
+  }
+
+  private class UserTimeperiods
+  {
+    private final Integer userId;
+
+    private boolean loaded;
+
+    /** Sorted by start time. */
+    private final TreeSet<Timeperiod> timeperiods = new TreeSet<Timeperiod>();
+
+    private final Map<Integer, Timeperiod> timeperiodsById = new HashMap<Integer, Timeperiod>();
+
+    private final Set<Integer> overlaps = new HashSet<Integer>();
+
+    /** The maximum duration of all time periods, time periods starting before start time minus this duration can't overlap. */
+    private long maxDuration = TimesheetDao.MAXIMUM_DURATION;
+
+    private UserTimeperiods(final Integer userId)
+    {
+      this.userId = userId;
+    }
+
+    synchronized Set<Integer> getOverlaps()
+    {
+      ensureLoaded();
+      return new HashSet<Integer>(overlaps);
+    }
+
+    synchronized Timeperiod getOverlappingTimeperiod(final Integer excludeId, final long startTime, final long stopTime)
+    {
+      ensureLoaded();
+      final List<Timeperiod> list = getOverlappingTimeperiods(excludeId, startTime, stopTime, true);
+      return list.isEmpty() == true ? null : list.get(0);
+    }
+
+    synchronized void update(final Timeperiod timeperiod)
+    {
+      if (loaded == false) {
+        return;
+      }
+      remove(timeperiod.id);
+      timeperiods.add(timeperiod);
+      timeperiodsById.put(timeperiod.id, timeperiod);
+      if (timeperiod.stopTime - timeperiod.startTime > maxDuration) {
+        maxDuration = timeperiod.stopTime - timeperiod.startTime;
+      }
+      final List<Timeperiod> list = getOverlappingTimeperiods(timeperiod.id, timeperiod.startTime, timeperiod.stopTime, false);
+      if (list.isEmpty() == false) {
+        overlaps.add(timeperiod.id);
+        for (final Timeperiod other : list) {
+          overlaps.add(other.id);
+        }
+      }
+    }
+
+    synchronized void remove(final Integer id)
+    {
+      if (loaded == false) {
+        return;
+      }
+      final Timeperiod timeperiod = timeperiodsById.remove(id);
+      if (timeperiod == null) {
+        return;
+      }
+      timeperiods.remove(timeperiod);
+      if (overlaps.remove(id) == false) {
+        return;
+      }
+      // Check the former overlapping neighbours:
+      for (final Timeperiod other : getOverlappingTimeperiods(id, timeperiod.startTime, timeperiod.stopTime, false)) {
+        if (overlaps.contains(other.id) == true && getOverlappingTimeperiods(other.id, other.startTime, other.stopTime, true).isEmpty()) {
+          overlaps.remove(other.id);
+        }
+      }
+    }
+
+    /**
+     * Only time periods starting between (startTime - maxDuration) and stopTime are checked.
+     */
+    private List<Timeperiod> getOverlappingTimeperiods(final Integer excludeId, final long startTime, final long stopTime,
+        final boolean firstOnly)
+    {
+      final List<Timeperiod> result = new ArrayList<Timeperiod>();
+      final Timeperiod from = new Timeperiod(Integer.MIN_VALUE, startTime - maxDuration, 0);
+      final Timeperiod to = new Timeperiod(Integer.MIN_VALUE, stopTime, 0);
+      for (final Timeperiod other : timeperiods.subSet(from, true, to, false)) {
+        if (other.stopTime <= startTime || (excludeId != null && excludeId.intValue() == other.id)) {
+          continue;
+        }
+        result.add(other);
+        if (firstOnly == true) {
+          break;
+        }
+      }
+      return result;
+    }
+
+    private void ensureLoaded()
+    {
+      if (loaded == true) {
+        return;
+      }
+      final List<Object[]> list = timesheetDao.internalGetTimeperiods(userId);
+      for (final Object[] oa : list) {
+        final Timeperiod timeperiod = new Timeperiod((Integer) oa[0], ((Timestamp) oa[1]).getTime(), ((Timestamp) oa[2]).getTime());
+        timeperiods.add(timeperiod);
+        timeperiodsById.put(timeperiod.id, timeperiod);
+        if (timeperiod.stopTime - timeperiod.startTime > maxDuration) {
+          maxDuration = timeperiod.stopTime - timeperiod.startTime;
+        }
+      }
+      for (final Timeperiod timeperiod : timeperiods) {
+        if (overlaps.contains(timeperiod.id) == true) {
+          continue;
+        }
+        final List<Timeperiod> others = getOverlappingTimeperiods(timeperiod.id, timeperiod.startTime, timeperiod.stopTime, false);
+        if (others.isEmpty() == false) {
+          overlaps.add(timeperiod.id);
+          for (final Timeperiod other : others) {
+            overlaps.add(other.id);
+          }
+        }
+      }
+      loaded = true;
+      if (overlaps.isEmpty() == false) {
+        log.info("Time sheet overlaps for user #" + userId + ": " + overlaps);
+      }
+    }
+  }
+}
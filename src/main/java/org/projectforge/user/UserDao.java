@@ -29,11 +29,14 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.hibernate.LockMode;
+import org.hibernate.Query;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.AccessChecker;
@@ -68,11 +71,23 @@ public class UserDao extends BaseDao<PFUserDO>
 
   public static final String MESSAGE_KEY_PASSWORD_QUALITY_CHECK = "user.changePassword.error.passwordQualityCheck";
 
+  private final List<PasswordChangeListener> passwordChangeListeners = new CopyOnWriteArrayList<PasswordChangeListener>();
+
   public UserDao()
   {
     super(PFUserDO.class);
   }
 
+  public void register(final PasswordChangeListener listener)
+  {
+    passwordChangeListeners.add(listener);
+  }
+
+  public void unregister(final PasswordChangeListener listener)
+  {
+    passwordChangeListeners.remove(listener);
+  }
+
   public UserGroupCache getUserGroupCache()
   {
     return userGroupCache;
@@ -240,6 +255,25 @@ public class UserDao extends BaseDao<PFUserDO>
     obj.checkAndFixPassword();
   }
 
+  /**
+   * Notifies the password change listeners, if the password is changed (e. g. by an administrator).
+   * @see org.projectforge.core.BaseDao#onChange(org.projectforge.core.ExtendedBaseDO, org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onChange(final PFUserDO obj, final PFUserDO dbObj)
+  {
+    if (obj.getPassword() != null && StringUtils.equals(obj.getPassword(), dbObj.getPassword()) == false) {
+      firePasswordChanged(dbObj);
+    }
+  }
+
+  private void firePasswordChanged(final PFUserDO user)
+  {
+    for (final PasswordChangeListener listener : passwordChangeListeners) {
+      listener.passwordChanged(user);
+    }
+  }
+
   /**
    * Ohne Zugangsbegrenzung. Wird bei Anmeldung benötigt.
    * @param username
@@ -281,6 +315,24 @@ public class UserDao extends BaseDao<PFUserDO>
     return null;
   }
 
+  /**
+   * Writes the time stamps of the last logins of the given users (e. g. collected by the sessions of rest clients) and resets their login
+   * failures. Only the two columns are updated (no history entries and no re-indexing of dependent objects).
+   * @param lastLogins The key is the user id.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  public void updateLastLogins(final Map<Integer, Timestamp> lastLogins)
+  {
+    if (lastLogins == null || lastLogins.isEmpty() == true) {
+      return;
+    }
+    final Query query = getSession().createQuery("update PFUserDO u set u.lastLogin = :lastLogin, u.loginFailures = 0"
+        + " where u.id = :id and (u.lastLogin is null or u.lastLogin < :lastLogin)");
+    for (final Map.Entry<Integer, Timestamp> entry : lastLogins.entrySet()) {
+      query.setTimestamp("lastLogin", entry.getValue()).setInteger("id", entry.getKey()).executeUpdate();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private PFUserDO getUser(final String username, final String encryptedPassword)
   {
@@ -370,6 +422,7 @@ public class UserDao extends BaseDao<PFUserDO>
     }
     user.setPassword(encryptedNewPassword);
     user.setStayLoggedInKey(createStayLoggedInKey());
+    firePasswordChanged(user);
     Login.getInstance().passwordChanged(user, newPassword);
     log.info("Password changed and stay-logged-key renewed for user: " + user.getId() + " - " + user.getUsername());
     return null;
@@ -25,11 +25,13 @@ package org.projectforge.user;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
@@ -49,33 +51,14 @@ public class UserGroupCache extends AbstractCache
 {
   private static Logger log = Logger.getLogger(UserGroupCache.class);
 
-  /** The key is the user id and the value is a list of assigned groups. */
-  private Map<Integer, Set<Integer>> userGroupIdMap;
-
-  private Map<Integer, GroupDO> groupMap;
-
   /**
-   * List of all rights (value) defined for the user ids (key).
+   * All cached data of one refresh. It's replaced as a whole by refresh, so readers never see maps of different refreshes. Null in
+   * maintenance mode (e. g. if user table isn't readable).
    */
-  private Map<Integer, List<UserRightDO>> rightMap;
-
-  private Map<Integer, PFUserDO> userMap;
-
-  private Map<Integer, EmployeeDO> employeeMap;
-
-  private Set<Integer> adminUsers;
-
-  private Set<Integer> financeUsers;
-
-  private Set<Integer> controllingUsers;
+  private volatile Data data;
 
-  private Set<Integer> projectManagers;
-
-  private Set<Integer> projectAssistants;
-
-  private Set<Integer> marketingUsers;
-
-  private Set<Integer> orgaUsers;
+  /** The data in construction, only set for the refreshing thread (the user rights are checked against the new group memberships). */
+  private final ThreadLocal<Data> refreshingData = new ThreadLocal<Data>();
 
   private HibernateTemplate hibernateTemplate;
 
@@ -86,14 +69,12 @@ public class UserGroupCache extends AbstractCache
 
   public GroupDO getGroup(final Integer groupId)
   {
-    checkRefresh();
     return getGroupMap().get(groupId);
   }
 
   public GroupDO getGroup(final ProjectForgeGroup group)
   {
-    checkRefresh();
-    for (final GroupDO g : groupMap.values()) {
+    for (final GroupDO g : getGroupMap().values()) {
       if (group.equals(g.getName()) == true) {
         return g;
       }
@@ -113,8 +94,8 @@ public class UserGroupCache extends AbstractCache
     if (userId == null) {
       return null;
     }
-    // checkRefresh(); Done by getUserMap().
-    return getUserMap() != null ? userMap.get(userId) : null; // Only null in maintenance mode (if t_user isn't readable).
+    final Data data = getData();
+    return data != null ? data.userMap.get(userId) : null; // Only null in maintenance mode (if t_user isn't readable).
   }
 
   public PFUserDO getUser(final String username)
@@ -166,7 +147,7 @@ public class UserGroupCache extends AbstractCache
    */
   public int internalGetNumberOfUsers()
   {
-    if (userMap == null) {
+    if (data == null) {
       return 0;
     } else {
       // checkRefresh(); Done by getUserMap().
@@ -176,8 +157,7 @@ public class UserGroupCache extends AbstractCache
 
   public String getUsername(final Integer userId)
   {
-    // checkRefresh(); Done by getUserMap().
-    final PFUserDO user = getUserMap().get(userId);
+    final PFUserDO user = getUser(userId);
     if (user == null) {
       return String.valueOf(userId);
     }
@@ -244,9 +224,9 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfAdminGroup(final Integer userId)
   {
-    checkRefresh();
-    // adminUsers should only be null in maintenance mode (e. g. if user table isn't readable).
-    return adminUsers != null ? adminUsers.contains(userId) : false;
+    final Data data = getData();
+    // data should only be null in maintenance mode (e. g. if user table isn't readable).
+    return data != null ? data.adminUsers.contains(userId) : false;
   }
 
   public boolean isUserMemberOfFinanceGroup()
@@ -256,9 +236,9 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfFinanceGroup(final Integer userId)
   {
-    checkRefresh();
-    // financeUsers should only be null in maintenance mode (e. g. if user table isn't readable).
-    return financeUsers != null ? financeUsers.contains(userId) : false;
+    final Data data = getData();
+    // data should only be null in maintenance mode (e. g. if user table isn't readable).
+    return data != null ? data.financeUsers.contains(userId) : false;
   }
 
   public boolean isUserMemberOfProjectManagers()
@@ -268,9 +248,9 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfProjectManagers(final Integer userId)
   {
-    checkRefresh();
-    // projectManagers should only be null in maintenance mode (e. g. if user table isn't readable).
-    return projectManagers != null ? projectManagers.contains(userId) : false;
+    final Data data = getData();
+    // data should only be null in maintenance mode (e. g. if user table isn't readable).
+    return data != null ? data.projectManagers.contains(userId) : false;
   }
 
   public boolean isUserMemberOfProjectAssistant()
@@ -280,9 +260,9 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfProjectAssistant(final Integer userId)
   {
-    checkRefresh();
-    // projectAssistants should only be null in maintenance mode (e. g. if user table isn't readable).
-    return projectAssistants != null ? projectAssistants.contains(userId) : false;
+    final Data data = getData();
+    // data should only be null in maintenance mode (e. g. if user table isn't readable).
+    return data != null ? data.projectAssistants.contains(userId) : false;
   }
 
   public boolean isUserProjectManagerOrAssistantForProject(final ProjektDO projekt)
@@ -304,9 +284,9 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfControllingGroup(final Integer userId)
   {
-    checkRefresh();
-    // controllingUsers should only be null in maintenance mode (e. g. if user table isn't readable).
-    return controllingUsers != null ? controllingUsers.contains(userId) : false;
+    final Data data = getData();
+    // data should only be null in maintenance mode (e. g. if user table isn't readable).
+    return data != null ? data.controllingUsers.contains(userId) : false;
   }
 
   public boolean isUserMemberOfMarketingGroup()
@@ -316,8 +296,7 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfMarketingGroup(final Integer userId)
   {
-    checkRefresh();
-    return marketingUsers.contains(userId);
+    return getData().marketingUsers.contains(userId);
   }
 
   public boolean isUserMemberOfOrgaGroup()
@@ -327,9 +306,9 @@ public class UserGroupCache extends AbstractCache
 
   public boolean isUserMemberOfOrgaGroup(final Integer userId)
   {
-    checkRefresh();
-    // orgaUsers should only be null in maintenance mode (e. g. if user table isn't readable).
-    return orgaUsers != null ? orgaUsers.contains(userId) : false;
+    final Data data = getData();
+    // data should only be null in maintenance mode (e. g. if user table isn't readable).
+    return data != null ? data.orgaUsers.contains(userId) : false;
   }
 
   /**
@@ -393,8 +372,7 @@ public class UserGroupCache extends AbstractCache
 
   private Map<Integer, List<UserRightDO>> getUserRightMap()
   {
-    checkRefresh();
-    return rightMap;
+    return getData().rightMap;
   }
 
   /**
@@ -410,14 +388,17 @@ public class UserGroupCache extends AbstractCache
 
   public EmployeeDO getEmployee(final Integer userId)
   {
-    checkRefresh();
-    EmployeeDO employee = this.employeeMap.get(userId);
+    if (userId == null) {
+      return null;
+    }
+    final Map<Integer, EmployeeDO> employeeMap = getData().employeeMap;
+    EmployeeDO employee = employeeMap.get(userId);
     if (employee == null) {
       @SuppressWarnings("unchecked")
       final List<EmployeeDO> list = this.hibernateTemplate.find("from EmployeeDO e where e.user.id = ?", userId);
       if (list != null && list.size() > 0) {
         employee = list.get(0);
-        this.employeeMap.put(userId, employee);
+        employeeMap.put(userId, employee);
       }
     }
     return employee;
@@ -429,21 +410,20 @@ public class UserGroupCache extends AbstractCache
    */
   public void refreshEmployee(final Integer userId)
   {
-    if (this.employeeMap != null) {
-      this.employeeMap.remove(userId);
+    final Data data = this.data;
+    if (data != null && userId != null) {
+      data.employeeMap.remove(userId);
     }
   }
 
   private Map<Integer, GroupDO> getGroupMap()
   {
-    checkRefresh();
-    return groupMap;
+    return getData().groupMap;
   }
 
   private Map<Integer, Set<Integer>> getUserGroupIdMap()
   {
-    checkRefresh();
-    return userGroupIdMap;
+    return getData().userGroupIdMap;
   }
 
   /**
@@ -457,8 +437,17 @@ public class UserGroupCache extends AbstractCache
 
   private Map<Integer, PFUserDO> getUserMap()
   {
+    return getData().userMap;
+  }
+
+  private Data getData()
+  {
+    final Data nData = refreshingData.get();
+    if (nData != null) {
+      return nData;
+    }
     checkRefresh();
-    return userMap;
+    return data;
   }
 
   /**
@@ -470,7 +459,7 @@ public class UserGroupCache extends AbstractCache
   {
     log.info("Initializing UserGroupCache ...");
     // This method must not be synchronized because it works with a new copy of maps.
-    final Map<Integer, PFUserDO> uMap = new HashMap<Integer, PFUserDO>();
+    final Map<Integer, PFUserDO> uMap = new ConcurrentHashMap<Integer, PFUserDO>();
     // Could not autowire UserDao because of cyclic reference with AccessChecker.
     final List<PFUserDO> users = Login.getInstance().getAllUsers();
     for (final PFUserDO user : users) {
@@ -519,18 +508,20 @@ public class UserGroupCache extends AbstractCache
         }
       }
     }
-    this.userMap = uMap;
-    this.groupMap = gMap;
-    this.adminUsers = nAdminUsers;
-    this.financeUsers = nFinanceUser;
-    this.controllingUsers = nControllingUsers;
-    this.projectManagers = nProjectManagers;
-    this.projectAssistants = nProjectAssistants;
-    this.marketingUsers = nMarketingUsers;
-    this.orgaUsers = nOrgaUsers;
-    this.userGroupIdMap = ugIdMap;
-    this.employeeMap = new HashMap<Integer, EmployeeDO>();
     final Map<Integer, List<UserRightDO>> rMap = new HashMap<Integer, List<UserRightDO>>();
+    final Data nData = new Data();
+    nData.userMap = uMap;
+    nData.groupMap = gMap;
+    nData.adminUsers = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>()); // Modified by internalSetAdminUser.
+    nData.adminUsers.addAll(nAdminUsers);
+    nData.financeUsers = nFinanceUser;
+    nData.controllingUsers = nControllingUsers;
+    nData.projectManagers = nProjectManagers;
+    nData.projectAssistants = nProjectAssistants;
+    nData.marketingUsers = nMarketingUsers;
+    nData.orgaUsers = nOrgaUsers;
+    nData.userGroupIdMap = ugIdMap;
+    nData.rightMap = rMap;
     List<UserRightDO> rights;
     try {
       rights = hibernateTemplate.find("from UserRightDO t order by user.id, right_id");
@@ -541,23 +532,28 @@ public class UserGroupCache extends AbstractCache
     }
     List<UserRightDO> list = null;
     Integer userId = null;
-    for (final UserRightDO right : rights) {
-      if (right.getUserId() == null) {
-        log.warn("Oups, userId = null: " + right);
-        continue;
-      }
-      if (right.getUserId().equals(userId) == false) {
-        list = new ArrayList<UserRightDO>();
-        userId = right.getUserId();
-        if (userId != null) {
-          rMap.put(userId, list);
+    refreshingData.set(nData);
+    try {
+      for (final UserRightDO right : rights) {
+        if (right.getUserId() == null) {
+          log.warn("Oups, userId = null: " + right);
+          continue;
+        }
+        if (right.getUserId().equals(userId) == false) {
+          list = new ArrayList<UserRightDO>();
+          userId = right.getUserId();
+          if (userId != null) {
+            rMap.put(userId, list);
+          }
+        }
+        if (UserRights.instance().getRight(right.getRightId()).isAvailable(this, right.getUser()) == true) {
+          list.add(right);
         }
       }
-      if (UserRights.instance().getRight(right.getRightId()).isAvailable(this, right.getUser()) == true) {
-        list.add(right);
-      }
+    } finally {
+      refreshingData.remove();
     }
-    this.rightMap = rMap;
+    this.data = nData;
     log.info("Initializing of UserGroupCache done.");
     Login.getInstance().afterUserGroupCacheRefresh(users, groups);
   }
@@ -578,7 +574,42 @@ public class UserGroupCache extends AbstractCache
       throw new IllegalStateException(
           "Can't set admin user internally! This method is only available if system is under maintenance (update required first is true)!");
     }
-    checkRefresh();
-    this.adminUsers.add(adminUser.getId());
+    getData().adminUsers.add(adminUser.getId());
+  }
+
+  /**
+   * The data of one refresh. Only the users (see {@link UserGroupCache#updateUser(PFUserDO)}), the employees (loaded on demand) and the
+   * admin users (see {@link UserGroupCache#internalSetAdminUser(PFUserDO)}) are modified after publishing, so these are concurrent. All
+   * other maps and sets aren't modified after publishing.
+   */
+  private static class Data
+  {
+    /** The key is the user id and the value is a list of assigned groups. */
+    private Map<Integer, Set<Integer>> userGroupIdMap;
+
+    private Map<Integer, GroupDO> groupMap;
+
+    /**
+     * List of all rights (value) defined for the user ids (key).
+     */
+    private Map<Integer, List<UserRightDO>> rightMap;
+
+    private Map<Integer, PFUserDO> userMap;
+
+    private final Map<Integer, EmployeeDO> employeeMap = new ConcurrentHashMap<Integer, EmployeeDO>();
+
+    private Set<Integer> adminUsers;
+
+    private Set<Integer> financeUsers;
+
+    private Set<Integer> controllingUsers;
+
+    private Set<Integer> projectManagers;
+
+    private Set<Integer> projectAssistants;
+
+    private Set<Integer> marketingUsers;
+
+    private Set<Integer> orgaUsers;
   }
 }
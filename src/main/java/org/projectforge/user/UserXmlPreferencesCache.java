@@ -23,15 +23,29 @@
 
 package org.projectforge.user;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.projectforge.access.AccessChecker;
 import org.projectforge.common.AbstractCache;
 
 /**
- * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.
+ * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.<br/>
+ * The preferences of the users are held in a concurrent map, so the login of one user (loading of his preferences) doesn't block the other
+ * users. The persistent entries are deserialized on first access. Modified entries are written to the data base by a background thread
+ * (write-behind): the users flushed by {@link #flushToDB(Integer)} within {@link #FLUSH_DELAY_MILLIS} are written together, each user in
+ * an own transaction.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
@@ -40,7 +54,21 @@ public class UserXmlPreferencesCache extends AbstractCache
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(UserXmlPreferencesCache.class);
 
-  private final Map<Integer, UserXmlPreferencesMap> allPreferences = new HashMap<Integer, UserXmlPreferencesMap>();
+  /**
+   * Delay of the write-behind for collecting the users to flush in one batch.
+   */
+  public static final long FLUSH_DELAY_MILLIS = 2000;
+
+  private final ConcurrentMap<Integer, UserXmlPreferencesMap> allPreferences = new ConcurrentHashMap<Integer, UserXmlPreferencesMap>();
+
+  /**
+   * The users to flush by the write-behind thread.
+   */
+  private final Set<Integer> usersToFlush = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  private ScheduledExecutorService flushExecutor;
 
   private UserXmlPreferencesDao userXmlPreferencesDao;
 
@@ -101,7 +129,7 @@ public class UserXmlPreferencesCache extends AbstractCache
       // Should only occur for the pseudo-first-login-user setting up the system.
       return null;
     }
-    if (data.getPersistentData().containsKey(key) == true) {
+    if (data.isPersistent(key) == true) {
       userXmlPreferencesDao.remove(userId, key);
     } else if (data.getVolatileData().containsKey(key) == false) {
       log.warn("Oups, user preferences object with key '" + key + "' is wether persistent nor volatile!");
@@ -111,24 +139,27 @@ public class UserXmlPreferencesCache extends AbstractCache
   }
 
   /**
-   * Please use UserPreferenceHelper instead for correct handling of demo user's preferences!
+   * Please use UserPreferenceHelper instead for correct handling of demo user's preferences!<br/>
+   * Doesn't lock other users: if the preferences of a user are loaded concurrently by two threads, the first one wins.
    * @param userId
    * @return
    */
-  public synchronized UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
+  public UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
   {
-    UserXmlPreferencesMap data = getUserPreferencesData(userId);
-    if (data == null) {
-      data = new UserXmlPreferencesMap();
-      data.setUserId(userId);
-      final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
-      for (final UserXmlPreferencesDO userPref : userPrefs) {
-        final Object value = userXmlPreferencesDao.deserialize(userPref, true);
-        data.putEntry(userPref.getKey(), value, true);
-      }
-      this.allPreferences.put(userId, data);
+    final UserXmlPreferencesMap data = getUserPreferencesData(userId);
+    if (data != null) {
+      return data;
+    }
+    final UserXmlPreferencesMap newData = new UserXmlPreferencesMap();
+    newData.setUserId(userId);
+    newData.setUserXmlPreferencesDao(userXmlPreferencesDao);
+    final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
+    for (final UserXmlPreferencesDO userPref : userPrefs) {
+      // Deserialized on first access:
+      newData.putSerializedEntry(userPref);
     }
-    return data;
+    final UserXmlPreferencesMap other = this.allPreferences.putIfAbsent(userId, newData);
+    return other != null ? other : newData;
   }
 
   UserXmlPreferencesMap getUserPreferencesData(final Integer userId)
@@ -143,21 +174,15 @@ public class UserXmlPreferencesCache extends AbstractCache
 
   /**
    * Flushes the user settings to the database (independent from the expire mechanism). Should be used after the user's logout. If the user
-   * data isn't modified, then nothing will be done.
+   * data isn't modified, then nothing will be done.<br/>
+   * The data is written asynchronously by the write-behind thread.
    */
   public void flushToDB(final Integer userId)
   {
-    flushToDB(userId, true);
-  }
-
-  private synchronized void flushToDB(final Integer userId, final boolean checkAccess)
-  {
-    if (checkAccess == true) {
-      if (userId.equals(PFUserContext.getUserId()) == false) {
-        log.error("User '" + PFUserContext.getUserId() + "' has no access to write user preferences of other user '" + userId + "'.");
-        // No access.
-        return;
-      }
+    if (userId.equals(PFUserContext.getUserId()) == false) {
+      log.error("User '" + PFUserContext.getUserId() + "' has no access to write user preferences of other user '" + userId + "'.");
+      // No access.
+      return;
     }
     if (accessChecker.isDemoUser(userId) == true) {
       // Do nothing for demo user.
@@ -167,20 +192,98 @@ public class UserXmlPreferencesCache extends AbstractCache
     if (data == null || data.isModified() == false) {
       return;
     }
-    userXmlPreferencesDao.saveOrUpdateUserEntries(userId, data, checkAccess);
+    usersToFlush.add(userId);
+    scheduleFlush();
+  }
+
+  private void scheduleFlush()
+  {
+    if (flushScheduled.compareAndSet(false, true) == false) {
+      // Flush is already scheduled, the user will be flushed in the same batch.
+      return;
+    }
+    try {
+      getFlushExecutor().schedule(new Runnable() {
+        @Override
+        public void run()
+        {
+          flushScheduled.set(false);
+          final List<Integer> userIds = new ArrayList<Integer>(usersToFlush);
+          usersToFlush.removeAll(userIds);
+          flush(userIds);
+        }
+      }, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (final RejectedExecutionException ex) {
+      flushScheduled.set(false);
+      log.error("Can't schedule flushing of user preferences, flushing synchronously: " + ex.getMessage());
+      final List<Integer> userIds = new ArrayList<Integer>(usersToFlush);
+      usersToFlush.removeAll(userIds);
+      flush(userIds);
+    }
+  }
+
+  /**
+   * Writes the modified entries of the given users, one transaction per user. No access checking is done. If writing the entries of a user
+   * fails, his keys are marked as modified again and are written by the next flush.
+   */
+  private void flush(final Collection<Integer> userIds)
+  {
+    for (final Integer userId : userIds) {
+      final UserXmlPreferencesMap data = allPreferences.get(userId);
+      if (data == null || data.isModified() == false || accessChecker.isDemoUser(userId) == true) {
+        continue;
+      }
+      final List<String> keys = data.getAndResetModifiedKeys();
+      try {
+        userXmlPreferencesDao.saveOrUpdateUserEntries(data, keys);
+      } catch (final Throwable ex) {
+        data.setModified(keys);
+        log.error("Error while flushing user preferences of user '" + userId + "' to data-base: " + ex.getMessage(), ex);
+      }
+    }
+  }
+
+  private synchronized ScheduledExecutorService getFlushExecutor()
+  {
+    if (flushExecutor == null) {
+      flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "UserXmlPreferencesFlush");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return flushExecutor;
   }
 
   /**
-   * Stores the PersistentUserObjects in the database or on start up restores the persistent user objects from the database.
+   * Stops the write-behind thread and flushes all user preferences synchronously (called on shutdown).
+   */
+  public void shutdown()
+  {
+    synchronized (this) {
+      if (flushExecutor != null) {
+        flushExecutor.shutdown();
+        flushExecutor = null;
+      }
+    }
+    forceReload();
+  }
+
+  /**
+   * Stores the PersistentUserObjects in the database or on start up restores the persistent user objects from the database. Each user is
+   * written in an own transaction (in the background if async refresh is enabled).
    * @see org.projectforge.common.AbstractCache#refresh()
    */
   @Override
   protected void refresh()
   {
     log.info("Flushing all user preferences to data-base....");
-    for (final Integer userId : allPreferences.keySet()) {
-      flushToDB(userId, false);
-    }
+    usersToFlush.clear();
+    flush(allPreferences.keySet());
     log.info("Flushing of user preferences to data-base done.");
   }
 
@@ -23,9 +23,18 @@
 
 package org.projectforge.user;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.Validate;
@@ -47,6 +56,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
 
 /**
  * Stores all user persistent objects such as filter settings, personal settings and persists them to the database as xml (compressed (gzip
@@ -64,8 +75,14 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
 
   private UserDao userDao;
 
+  private static final String COMPRESSED_PREFIX = "!";
+
+  private static final String BINARY_PREFIX = "#";
+
   private final XStream xstream;
 
+  private boolean binarySerialization;
+
   public UserXmlPreferencesDao()
   {
     xstream = new XStream();
@@ -105,6 +122,17 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
     this.accessChecker = accessChecker;
   }
 
+  /**
+   * If true, the user preferences are stored in the compressed binary format of XStream (prefix '#') instead of xml. This format is faster
+   * to read and to write. Existing xml entries are still readable and are stored in the binary format after their next modification.
+   * Default is false.
+   * @param binarySerialization
+   */
+  public void setBinarySerialization(final boolean binarySerialization)
+  {
+    this.binarySerialization = binarySerialization;
+  }
+
   /**
    * @param userDao the userDao to set
    */
@@ -160,7 +188,8 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
   }
 
   /**
-   * Here you can update user preferences formats by manipulation the stored xml string.
+   * Here you can update user preferences formats by manipulation the stored xml string. All formats are supported independent of the
+   * {@link #setBinarySerialization(boolean)} setting: plain xml, compressed xml (prefix '!') and compressed binary (prefix '#').
    * @param userPrefs
    * @param logError
    */
@@ -173,7 +202,10 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
       if (xml == null || xml.length() == 0) {
         return null;
       }
-      if (xml.startsWith("!") == true) {
+      if (xml.startsWith(BINARY_PREFIX) == true) {
+        return deserializeBinary(xml.substring(1));
+      }
+      if (xml.startsWith(COMPRESSED_PREFIX) == true) {
         // Uncompress value:
         final String uncompressed = GZIPHelper.uncompress(xml.substring(1));
         xml = uncompressed;
@@ -195,33 +227,107 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
     }
   }
 
+  /**
+   * Serializes the value as xml (compressed for larger xml content) or, if {@link #setBinarySerialization(boolean)} is set, in the
+   * compressed binary format of XStream. If the binary format exceeds the maximum length of the data base column, xml is used.
+   * @return The serialized settings (for logging).
+   */
   public String serialize(final UserXmlPreferencesDO userPrefs, final Object value)
   {
+    if (binarySerialization == true) {
+      try {
+        final String binary = BINARY_PREFIX + serializeBinary(value);
+        if (binary.length() <= UserXmlPreferencesDO.MAX_SERIALIZED_LENGTH) {
+          userPrefs.setSerializedSettings(binary);
+          return binary;
+        }
+      } catch (final IOException ex) {
+        log.warn("Can't serialize user preferences in binary format, using xml: " + ex.getMessage(), ex);
+      }
+    }
     final String xml = xstream.toXML(value);
     if (xml.length() > 1000) {
       // Compress value:
       final String compressed = GZIPHelper.compress(xml);
-      userPrefs.setSerializedSettings("!" + compressed);
+      userPrefs.setSerializedSettings(COMPRESSED_PREFIX + compressed);
     } else {
       userPrefs.setSerializedSettings(xml);
     }
     return xml;
   }
 
+  private String serializeBinary(final Object value) throws IOException
+  {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final GZIPOutputStream gzip = new GZIPOutputStream(out);
+    final BinaryStreamWriter writer = new BinaryStreamWriter(gzip);
+    xstream.marshal(value, writer);
+    writer.close();
+    gzip.close();
+    return new String(Base64.encodeBase64(out.toByteArray()));
+  }
+
+  private Object deserializeBinary(final String base64) throws IOException
+  {
+    final GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(Base64.decodeBase64(base64.getBytes())));
+    final BinaryStreamReader reader = new BinaryStreamReader(gzip);
+    try {
+      return xstream.unmarshal(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
   // REQUIRES_NEW needed for avoiding a lot of new data base connections from HibernateFilter.
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
   public void saveOrUpdateUserEntries(final Integer userId, final UserXmlPreferencesMap data, final boolean checkAccess)
   {
-    for (final Map.Entry<String, Object> prefEntry : data.getPersistentData().entrySet()) {
-      final String key = prefEntry.getKey();
-      if (data.isModified(key) == true) {
-        try {
-          saveOrUpdate(userId, key, prefEntry.getValue(), checkAccess);
-        } catch (final Throwable ex) {
-          log.warn(ex.getMessage(), ex);
-        }
-        data.setModified(key, false);
-      }
+    if (checkAccess == true) {
+      checkAccess(userId);
+    }
+    if (accessChecker.isDemoUser(userId) == true) {
+      return;
+    }
+    final List<String> keys = data.getAndResetModifiedKeys();
+    try {
+      saveOrUpdateModifiedEntries(data, keys);
+    } catch (final RuntimeException ex) {
+      data.setModified(keys);
+      throw ex;
+    }
+  }
+
+  /**
+   * Saves the given modified entries of one user in an own transaction (used by the write-behind of {@link UserXmlPreferencesCache}). No
+   * access checking is done, the existing entries of the user are loaded by one query. Any failure rolls back all entries of the user, the
+   * caller is responsible for marking the keys as modified again.
+   * @param data
+   * @param keys The keys of the modified entries (see {@link UserXmlPreferencesMap#getAndResetModifiedKeys()}).
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  public void saveOrUpdateUserEntries(final UserXmlPreferencesMap data, final Collection<String> keys)
+  {
+    if (accessChecker.isDemoUser(data.getUserId()) == true) {
+      return;
+    }
+    saveOrUpdateModifiedEntries(data, keys);
+  }
+
+  private void saveOrUpdateModifiedEntries(final UserXmlPreferencesMap data, final Collection<String> keys)
+  {
+    if (keys.isEmpty() == true) {
+      return;
+    }
+    final Integer userId = data.getUserId();
+    @SuppressWarnings("unchecked")
+    final List<UserXmlPreferencesDO> existingEntries = getHibernateTemplate().find("from UserXmlPreferencesDO u where u.user.id = ?",
+        userId);
+    final Map<String, UserXmlPreferencesDO> existingMap = new HashMap<String, UserXmlPreferencesDO>();
+    for (final UserXmlPreferencesDO userPrefs : existingEntries) {
+      existingMap.put(userPrefs.getKey(), userPrefs);
+    }
+    for (final String key : keys) {
+      saveOrUpdate(existingMap.get(key), userId, key, data.getPersistentEntry(key));
     }
   }
 
@@ -243,8 +349,16 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
       // Do nothing.
       return;
     }
+    final UserXmlPreferencesDO userPrefs = getUserPreferencesByUserId(userId, key, checkAccess);
+    saveOrUpdate(userPrefs, userId, key, entry);
+  }
+
+  /**
+   * @param userPrefs The existing data base entry or null, if not exist.
+   */
+  private void saveOrUpdate(UserXmlPreferencesDO userPrefs, final Integer userId, final String key, final Object entry)
+  {
     boolean isNew = false;
-    UserXmlPreferencesDO userPrefs = getUserPreferencesByUserId(userId, key, checkAccess);
     final Date date = new Date();
     if (userPrefs == null) {
       isNew = true;
@@ -23,17 +23,22 @@
 
 package org.projectforge.user;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
 
 /**
  * User preferences contains a Map used by UserXmlPreferencesCache for storing user data application wide. Also persistent user preferences in
- * the database are supported.
+ * the database are supported.<br/>
+ * All maps are thread safe (the preferences of a user may be accessed by several requests concurrently). The persistent entries loaded
+ * from the data base are deserialized on first access of their key, the keys modified since the last flush are tracked.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -52,11 +57,20 @@ public class UserXmlPreferencesMap
   @XStreamOmitField
   private transient Map<String, Object> volatileData;
 
+  /**
+   * The persistent entries of the data base not yet deserialized.
+   */
+  @XStreamOmitField
+  private transient Map<String, UserXmlPreferencesDO> serializedData;
+
+  @XStreamOmitField
+  private transient UserXmlPreferencesDao userXmlPreferencesDao;
+
   protected Map<String, Object> getPersistentData()
   {
     synchronized (this) {
       if (persistentData == null) {
-        persistentData = new HashMap<String, Object>();
+        persistentData = new ConcurrentHashMap<String, Object>();
       }
     }
     return persistentData;
@@ -66,7 +80,7 @@ public class UserXmlPreferencesMap
   {
     synchronized (this) {
       if (volatileData == null) {
-        volatileData = new HashMap<String, Object>();
+        volatileData = new ConcurrentHashMap<String, Object>();
       }
     }
     return volatileData;
@@ -76,24 +90,52 @@ public class UserXmlPreferencesMap
   {
     synchronized (this) {
       if (modifiedObjects == null) {
-        modifiedObjects = new HashSet<String>();
+        modifiedObjects = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
       }
     }
     return modifiedObjects;
   }
 
+  private Map<String, UserXmlPreferencesDO> getSerializedData()
+  {
+    synchronized (this) {
+      if (serializedData == null) {
+        serializedData = new ConcurrentHashMap<String, UserXmlPreferencesDO>();
+      }
+    }
+    return serializedData;
+  }
+
+  /**
+   * Adds the given persistent entry of the data base. The entry will be deserialized on first access of its key.
+   * @param userPrefs
+   */
+  void putSerializedEntry(final UserXmlPreferencesDO userPrefs)
+  {
+    getSerializedData().put(userPrefs.getKey(), userPrefs);
+  }
+
+  /**
+   * @param userXmlPreferencesDao Needed for deserializing the persistent entries of the data base.
+   */
+  void setUserXmlPreferencesDao(final UserXmlPreferencesDao userXmlPreferencesDao)
+  {
+    this.userXmlPreferencesDao = userXmlPreferencesDao;
+  }
+
   /**
    * @param key
    * @param value
    * @param persistent If true, the object will be persisted in the database.
    */
-  public void putEntry(String key, Object value, boolean persistent)
+  public void putEntry(final String key, final Object value, final boolean persistent)
   {
     if (persistent == true) {
+      getSerializedData().remove(key);
       setModified(key, true);
-      getPersistentData().put(key, value);
+      put(getPersistentData(), key, value);
     } else {
-      getVolatileData().put(key, value);
+      put(getVolatileData(), key, value);
     }
   }
 
@@ -102,9 +144,9 @@ public class UserXmlPreferencesMap
    * @param key
    * @return Return a persistent object with this key, if existing, or if not a volatile object with this key, if existing, otherwise null;
    */
-  public Object getEntry(String key)
+  public Object getEntry(final String key)
   {
-    Object value = getPersistentData().get(key);
+    final Object value = getPersistentEntry(key);
     if (value != null) {
       // Assuming modification after use-age:
       setModified(key, true);
@@ -113,14 +155,53 @@ public class UserXmlPreferencesMap
     return getVolatileData().get(key);
   }
 
+  /**
+   * @param key
+   * @return The persistent object with this key, deserialized if not yet done.
+   */
+  protected Object getPersistentEntry(final String key)
+  {
+    final Object value = getPersistentData().get(key);
+    if (value != null) {
+      return value;
+    }
+    final UserXmlPreferencesDO userPrefs = getSerializedData().get(key);
+    if (userPrefs == null) {
+      return null;
+    }
+    synchronized (userPrefs) {
+      // Only one thread deserializes the entry, other threads of this user aren't blocked.
+      if (getSerializedData().containsKey(key) == true) {
+        final Object deserialized = userXmlPreferencesDao != null ? userXmlPreferencesDao.deserialize(userPrefs, true) : null;
+        if (deserialized != null) {
+          getPersistentData().put(key, deserialized);
+        }
+        getSerializedData().remove(key);
+      }
+    }
+    return getPersistentData().get(key);
+  }
+
+  /**
+   * @param key
+   * @return true, if an persistent entry with the given key exists (deserialized or not).
+   */
+  protected boolean isPersistent(final String key)
+  {
+    return getPersistentData().containsKey(key) == true || getSerializedData().containsKey(key) == true || isModified(key) == true;
+  }
+
   /**
    * Removes the entry from persistent and volatile storage if exist. Does not remove the entry from the data base!
    * @param key
    * @return the removed value if found.
    */
-  public Object removeEntry(String key)
+  public Object removeEntry(final String key)
   {
-    Object value = getPersistentData().remove(key);
+    Object value = getPersistentEntry(key);
+    getPersistentData().remove(key);
+    getSerializedData().remove(key);
+    setModified(key, false);
     if (value == null) {
       value = getVolatileData().remove(key);
     } else {
@@ -129,12 +210,24 @@ public class UserXmlPreferencesMap
     return value;
   }
 
+  /**
+   * The concurrent maps doesn't support null values, a null value removes the entry.
+   */
+  private void put(final Map<String, Object> map, final String key, final Object value)
+  {
+    if (value == null) {
+      map.remove(key);
+    } else {
+      map.put(key, value);
+    }
+  }
+
   public Integer getUserId()
   {
     return userId;
   }
 
-  public void setUserId(Integer userId)
+  public void setUserId(final Integer userId)
   {
     this.userId = userId;
   }
@@ -144,7 +237,7 @@ public class UserXmlPreferencesMap
     return getModifiedObjects().isEmpty() == false;
   }
 
-  protected void setModified(String key, boolean isModified)
+  protected void setModified(final String key, final boolean isModified)
   {
     if (isModified == true) {
       getModifiedObjects().add(key);
@@ -153,11 +246,36 @@ public class UserXmlPreferencesMap
     }
   }
 
-  protected boolean isModified(String key)
+  protected boolean isModified(final String key)
   {
     return getModifiedObjects().contains(key);
   }
 
+  /**
+   * Gets the keys of all modified persistent entries and resets their modified flags. A key modified again after calling this method is
+   * flushed by the next call.
+   * @return The keys of the entries to flush to the data base.
+   */
+  protected List<String> getAndResetModifiedKeys()
+  {
+    final List<String> keys = new ArrayList<String>();
+    for (final String key : new ArrayList<String>(getModifiedObjects())) {
+      if (getModifiedObjects().remove(key) == true) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Marks the given keys as modified again, e. g. if writing them to the data base failed.
+   * @param keys
+   */
+  protected void setModified(final Collection<String> keys)
+  {
+    getModifiedObjects().addAll(keys);
+  }
+
   /**
    * Clear all volatile data (after logout). Forces refreshing of volatile data after re-login.
    */
@@ -197,6 +197,10 @@ public class PhoneCallForm extends AbstractStandardForm<Object, PhoneCallPage>
       @Override
       protected List<AddressDO> getChoices(final String input)
       {
+        if (StringUtils.containsOnly(input, "+1234567890 -/()") == true) {
+          // Search the phone numbers (suffix matching).
+          return addressDao.getListByPhoneNumber(input);
+        }
         final AddressFilter addressFilter = new AddressFilter();
         addressFilter.setSearchString(input);
         addressFilter.setSearchFields("name", "firstName", "organization");
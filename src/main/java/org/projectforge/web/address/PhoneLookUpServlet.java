@@ -37,9 +37,7 @@ import org.projectforge.address.AddressDO;
 import org.projectforge.address.AddressDao;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.common.StringHelper;
-import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.ConfigXml;
-import org.projectforge.core.QueryFilter;
 import org.projectforge.registry.Registry;
 
 /**
@@ -82,13 +80,9 @@ public class PhoneLookUpServlet extends HttpServlet
     final String searchNumber = NumberHelper.extractPhonenumber(number);
     final AddressDao addressDao = (AddressDao) Registry.instance().getDao(AddressDao.class);
 
-    final BaseSearchFilter filter = new BaseSearchFilter();
-    filter.setSearchString("*" + searchNumber);
-    final QueryFilter queryFilter = new QueryFilter(filter);
-
     final StringBuffer buf = new StringBuffer();
-    // Use internal get list method for avoiding access checking (no user is logged-in):
-    final List<AddressDO> list = addressDao.internalGetList(queryFilter);
+    // Use the phone number index of the address cache (no access checking, no user is logged-in):
+    final List<AddressDO> list = addressDao.getAddressCache().getAddressesByPhoneNumber(searchNumber);
     if (list != null && list.size() >= 1) {
       AddressDO result = list.get(0);
       if (list.size() > 1) {
@@ -41,11 +41,14 @@ import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.projectforge.book.BookDO;
 import org.projectforge.book.BookDao;
 import org.projectforge.book.BookStatus;
+import org.projectforge.common.AbstractCache;
 import org.projectforge.common.DateHelper;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.Configuration;
 import org.projectforge.core.ConfigurationParam;
+import org.projectforge.core.HibernateSearchDependentObjectsReindexer;
 import org.projectforge.core.HibernateSearchReindexer;
+import org.projectforge.core.ReindexProgress;
 import org.projectforge.core.ReindexSettings;
 import org.projectforge.core.SystemDao;
 import org.projectforge.database.MyDatabaseUpdater;
@@ -176,6 +179,18 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
     final ContentMenuEntryPanel refreshCachesLinkMenuItem = new ContentMenuEntryPanel(cachesMenu.newSubMenuChildId(), refreshCachesLink,
         getString("system.admin.button.refreshCaches")).setTooltip(getString("system.admin.button.refreshCaches.tooltip"));
     cachesMenu.addSubMenuEntry(refreshCachesLinkMenuItem);
+    // Cache statistics.
+    final Link<Void> cacheStatisticsLink = new Link<Void>(ContentMenuEntryPanel.LINK_ID) {
+      @Override
+      public void onClick()
+      {
+        exportCacheStatistics();
+      }
+    };
+    final ContentMenuEntryPanel cacheStatisticsLinkMenuItem = new ContentMenuEntryPanel(cachesMenu.newSubMenuChildId(),
+        cacheStatisticsLink, getString("system.admin.button.cacheStatistics"))
+    .setTooltip(getString("system.admin.button.cacheStatistics.tooltip"));
+    cachesMenu.addSubMenuEntry(cacheStatisticsLinkMenuItem);
   }
 
   @SuppressWarnings("serial")
@@ -223,6 +238,18 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
         fixDBHistoryEntriesLink, getString("system.admin.button.fixDBHistoryEntries"))
     .setTooltip(getString("system.admin.button.fixDBHistoryEntries.tooltip"));
     databaseActionsMenu.addSubMenuEntry(fixDBHistoryEntriesLinkMenuItem);
+    // Progress of re-index job.
+    final Link<Void> reindexProgressLink = new Link<Void>(ContentMenuEntryPanel.LINK_ID) {
+      @Override
+      public void onClick()
+      {
+        exportReindexProgress();
+      }
+    };
+    final ContentMenuEntryPanel reindexProgressLinkMenuItem = new ContentMenuEntryPanel(databaseActionsMenu.newSubMenuChildId(),
+        reindexProgressLink, getString("system.admin.button.reindexProgress"))
+    .setTooltip(getString("system.admin.button.reindexProgress.tooltip"));
+    databaseActionsMenu.addSubMenuEntry(reindexProgressLinkMenuItem);
     {
       // Dump data-base.
       final Link<Void> dumpDatabaseLink = new Link<Void>(ContentMenuEntryPanel.LINK_ID) {
@@ -391,6 +418,19 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
     setResponsePage(new MessagePage("administration.refreshCachesDone", refreshedCaches));
   }
 
+  protected void exportCacheStatistics()
+  {
+    log.info("Administration: export of cache statistics.");
+    checkAccess();
+    final StringBuffer buf = new StringBuffer();
+    for (final AbstractCache cache : AbstractCache.getAllCaches()) {
+      buf.append(cache.getStatistics()).append("\n");
+    }
+    buf.append(HibernateSearchDependentObjectsReindexer.getSingleton().getStatistics()).append("\n");
+    final String filename = "projectforge_cache_statistics" + DateHelper.getDateAsFilenameSuffix(new Date()) + ".txt";
+    DownloadUtils.setDownloadTarget(buf.toString().getBytes(), filename);
+  }
+
   protected void rereadConfiguration()
   {
     log.info("Administration: reread configuration file config.xml.");
@@ -522,6 +562,16 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
     setResponsePage(new MessagePage("administration.databaseSearchIndicesRebuild", tables));
   }
 
+  protected void exportReindexProgress()
+  {
+    log.info("Administration: export of re-index progress.");
+    checkAccess();
+    final ReindexProgress progress = hibernateSearchReindexer.getCurrentProgress();
+    final String result = progress != null ? progress.getStatistics() : "No re-index job was started since start-up.";
+    final String filename = "projectforge_reindex_progress" + DateHelper.getDateAsFilenameSuffix(new Date()) + ".txt";
+    DownloadUtils.setDownloadTarget(result.getBytes(), filename);
+  }
+
   protected void schemaExport()
   {
     log.info("Administration: schema export.");
@@ -23,7 +23,11 @@
 
 package org.projectforge.web.calendar;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
@@ -36,16 +40,16 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import net.fortuna.ical4j.data.CalendarOutputter;
+import net.fortuna.ical4j.data.FoldingWriter;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.TimeZone;
-import net.fortuna.ical4j.model.ValidationException;
 import net.fortuna.ical4j.model.component.VEvent;
 import net.fortuna.ical4j.model.property.CalScale;
 import net.fortuna.ical4j.model.property.Description;
 import net.fortuna.ical4j.model.property.Location;
 import net.fortuna.ical4j.model.property.ProdId;
 import net.fortuna.ical4j.model.property.Version;
+import net.fortuna.ical4j.util.Strings;
 import net.ftlines.wicket.fullcalendar.Event;
 
 import org.apache.commons.httpclient.HttpStatus;
@@ -58,6 +62,7 @@ import org.projectforge.calendar.ICal4JUtils;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.common.StringHelper;
 import org.projectforge.plugins.teamcal.TeamCalConfig;
+import org.projectforge.plugins.teamcal.integration.TeamCalCalendarFeedHook;
 import org.projectforge.registry.Registry;
 import org.projectforge.timesheet.TimesheetDO;
 import org.projectforge.timesheet.TimesheetDao;
@@ -154,6 +159,9 @@ public class CalendarFeed extends HttpServlet
       resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
       return;
     }
+    final long begin = System.nanoTime();
+    boolean hit = false;
+    boolean notModified = false;
     PFUserDO user = null;
     String logMessage = null;
     try {
@@ -184,7 +192,6 @@ public class CalendarFeed extends HttpServlet
         return;
       }
       final Map<String, String> params = StringHelper.getKeyValues(decryptedParams, "&");
-      final Calendar calendar = createCal(params, userId, params.get("token"), params.get(PARAM_NAME_TIMESHEET_USER));
       final StringBuffer buf = new StringBuffer();
       boolean first = true;
       for (final Map.Entry<String, String> entry : params.entrySet()) {
@@ -197,21 +204,61 @@ public class CalendarFeed extends HttpServlet
       logMessage = buf.toString();
       log.info("Getting calendar entries for: " + logMessage);
 
-      if (calendar == null) {
+      // The authentication is checked for every request (also for cached feeds).
+      final PFUserDO loggedInUser = registry.getDao(UserDao.class).getUserByAuthenticationToken(userId, params.get("token"));
+      if (loggedInUser == null) {
         resp.sendError(HttpStatus.SC_BAD_REQUEST);
         log.error("Bad request, can't find calendar.");
         return;
       }
+      PFUserDO timesheetUser = null;
+      final Integer timesheetUserId = NumberHelper.parseInteger(params.get(PARAM_NAME_TIMESHEET_USER));
+      if (timesheetUserId != null) {
+        if (timesheetUserId.equals(loggedInUser.getId()) == false) {
+          log.error("Not yet allowed: all users are only allowed to download their own time-sheets.");
+          resp.sendError(HttpStatus.SC_BAD_REQUEST);
+          return;
+        }
+        timesheetUser = registry.getUserGroupCache().getUser(timesheetUserId);
+        if (timesheetUser == null) {
+          log.error("Time-sheet user with id '" + timesheetUserId + "' not found.");
+          resp.sendError(HttpStatus.SC_BAD_REQUEST);
+          return;
+        }
+      }
 
+      final CalendarFeedCache cache = CalendarFeedCache.getInstance();
+      final String cacheKey = userId + ":" + PFUserContext.getLocale() + ":" + PFUserContext.getTimeZone().getID() + ":" + decryptedParams;
+      CalendarFeedCache.FeedEntry feed = cache.get(cacheKey);
       resp.setContentType("text/calendar");
-      final CalendarOutputter output = new CalendarOutputter(false);
-      try {
-        output.output(calendar, resp.getOutputStream());
-      } catch (final ValidationException ex) {
-        ex.printStackTrace();
+      if (feed != null) {
+        hit = true;
+      } else {
+        final Integer feedTimesheetUserId = timesheetUser != null ? timesheetUser.getId() : null;
+        final List<Integer> teamCalIds = getTeamCalIds(params);
+        final long modificationCounter = cache.getModificationCounter(feedTimesheetUserId, teamCalIds);
+        final FeedOutputStream out = new FeedOutputStream(resp);
+        writeCal(out, params, loggedInUser, timesheetUser);
+        if (out.isStreamed() == true) {
+          // Too large for caching, already written to the client.
+          return;
+        }
+        feed = cache.put(cacheKey, out.toByteArray(), feedTimesheetUserId, teamCalIds, modificationCounter);
       }
+      resp.setHeader("ETag", feed.getETag());
+      resp.setDateHeader("Last-Modified", feed.getLastModified());
+      if (isNotModified(req, feed) == true) {
+        notModified = true;
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      resp.setContentLength(feed.getContent().length);
+      resp.getOutputStream().write(feed.getContent());
     } finally {
-      log.info("Finished request: " + logMessage);
+      final long duration = System.nanoTime() - begin;
+      CalendarFeedCache.getInstance().recordRequest(duration, hit, notModified);
+      log.info("Finished request (" + (hit == true ? "cached, " : "") + (notModified == true ? "not modified, " : "") + duration / 1000000
+          + "ms): " + logMessage);
       PFUserContext.setUser(null);
       MDC.remove("ip");
       MDC.remove("session");
@@ -222,66 +269,69 @@ public class CalendarFeed extends HttpServlet
   }
 
   /**
-   * creates a calendar for the user, identified by his name and authentication key.
-   * @param params
-   * 
-   * @param userName
-   * @param userKey
-   * @return a calendar, null if authentication fails
+   * @return true, if the client has the current version of the feed (If-None-Match or If-Modified-Since).
    */
-  private Calendar createCal(final Map<String, String> params, final Integer userId, final String authKey, final String timesheetUserParam)
+  private boolean isNotModified(final HttpServletRequest req, final CalendarFeedCache.FeedEntry feed)
   {
-    final UserDao userDao = Registry.instance().getDao(UserDao.class);
-    final PFUserDO loggedInUser = userDao.getUserByAuthenticationToken(userId, authKey);
-
-    if (loggedInUser == null) {
-      return null;
+    final String ifNoneMatch = req.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      return ifNoneMatch.contains(feed.getETag()) == true || "*".equals(ifNoneMatch.trim()) == true;
     }
-    PFUserDO timesheetUser = null;
-    if (StringUtils.isNotBlank(timesheetUserParam) == true) {
-      final Integer timesheetUserId = NumberHelper.parseInteger(timesheetUserParam);
-      if (timesheetUserId != null) {
-        if (timesheetUserId.equals(loggedInUser.getId()) == false) {
-          log.error("Not yet allowed: all users are only allowed to download their own time-sheets.");
-          return null;
-        }
-        timesheetUser = userDao.getUserGroupCache().getUser(timesheetUserId);
-        if (timesheetUser == null) {
-          log.error("Time-sheet user with id '" + timesheetUserParam + "' not found.");
-          return null;
+    final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+    return ifModifiedSince >= 0 && ifModifiedSince >= feed.getLastModified();
+  }
+
+  /**
+   * @return The ids of the team calendars contained in the feed (needed for invalidation of the cached feed).
+   */
+  private List<Integer> getTeamCalIds(final Map<String, String> params)
+  {
+    final List<Integer> result = new ArrayList<Integer>();
+    final String[] teamCalIds = StringUtils.split(params.get(TeamCalCalendarFeedHook.PARAM_NAME_TEAM_CALS), ";");
+    if (teamCalIds != null) {
+      for (final String teamCalId : teamCalIds) {
+        final Integer id = NumberHelper.parseInteger(teamCalId);
+        if (id != null) {
+          result.add(id);
         }
       }
     }
-    // creating a new calendar
-    final Calendar calendar = new Calendar();
+    return result;
+  }
+
+  /**
+   * Writes the calendar for the user event by event (folded like ical4j's CalendarOutputter does it, without validation), so the whole
+   * calendar is never held as ical4j object graph.
+   */
+  private void writeCal(final OutputStream out, final Map<String, String> params, final PFUserDO loggedInUser,
+      final PFUserDO timesheetUser) throws IOException
+  {
+    final Writer writer = new FoldingWriter(new OutputStreamWriter(out, "UTF-8"),
+        FoldingWriter.REDUCED_FOLD_LENGTH);
+    writer.write(Calendar.BEGIN + ":" + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
     final Locale locale = PFUserContext.getLocale();
-    calendar.getProperties().add(
-        new ProdId("-//" + loggedInUser.getDisplayUsername() + "//ProjectForge//" + locale.toString().toUpperCase()));
-    calendar.getProperties().add(Version.VERSION_2_0);
-    calendar.getProperties().add(CalScale.GREGORIAN);
+    writer.write(new ProdId("-//" + loggedInUser.getDisplayUsername() + "//ProjectForge//" + locale.toString().toUpperCase()).toString());
+    writer.write(Version.VERSION_2_0.toString());
+    writer.write(CalScale.GREGORIAN.toString());
 
     // setup event is needed for empty calendars
-    calendar.getComponents().add(new VEvent(new net.fortuna.ical4j.model.Date(0), SETUP_EVENT));
+    writer.write(new VEvent(new net.fortuna.ical4j.model.Date(0), SETUP_EVENT).toString());
 
     // adding events
-    for (final VEvent event : getEvents(params, timesheetUser)) {
-      calendar.getComponents().add(event);
-    }
-    return calendar;
+    writeEvents(writer, params, timesheetUser);
+    writer.write(Calendar.END + ":" + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+    writer.flush();
   }
 
   /**
-   * builds the list of events
-   * 
-   * @return
+   * Writes the events of the hooks, the time sheets, holidays and week of years (as requested by the given params).
    */
-  private List<VEvent> getEvents(final Map<String, String> params, PFUserDO timesheetUser)
+  private void writeEvents(final Writer writer, final Map<String, String> params, PFUserDO timesheetUser) throws IOException
   {
     final PFUserDO loggedInUser = PFUserContext.getUser();
     if (loggedInUser == null) {
       throw new AccessException("No logged-in-user found!");
     }
-    final List<VEvent> events = new ArrayList<VEvent>();
     final TimeZone timezone = ICal4JUtils.getUserTimeZone();
     final java.util.Calendar cal = java.util.Calendar.getInstance(PFUserContext.getTimeZone());
 
@@ -289,7 +339,9 @@ public class CalendarFeed extends HttpServlet
     for (final CalendarFeedHook hook : feedHooks) {
       final List<VEvent> list = hook.getEvents(params, timezone);
       if (list != null && list.size() > 0) {
-        events.addAll(list);
+        for (final VEvent event : list) {
+          writer.write(event.toString());
+        }
         eventsExist = true;
       }
     }
@@ -333,7 +385,7 @@ public class CalendarFeed extends HttpServlet
         if (StringUtils.isNotBlank(timesheet.getLocation()) == true) {
           vEvent.getProperties().add(new Location(timesheet.getLocation()));
         }
-        events.add(vEvent);
+        writer.write(vEvent.toString());
       }
     }
     final String holidays = params.get(PARAM_NAME_HOLIDAYS);
@@ -346,7 +398,7 @@ public class CalendarFeed extends HttpServlet
         final Date fromDate = event.getStart().toDate();
         final Date toDate = event.getEnd() != null ? event.getEnd().toDate() : fromDate;
         final VEvent vEvent = ICal4JUtils.createVEvent(fromDate, toDate, "pf-holiday" + event.getId(), event.getTitle(), true);
-        events.add(vEvent);
+        writer.write(vEvent.toString());
       }
     }
     final String weeksOfYear = params.get(PARAM_NAME_WEEK_OF_YEARS);
@@ -362,7 +414,7 @@ public class CalendarFeed extends HttpServlet
             + current.getYear()
             + "-"
             + paranoiaCounter, PFUserContext.getLocalizedString("calendar.weekOfYearShortLabel") + " " + current.getWeekOfYear(), true);
-        events.add(vEvent);
+        writer.write(vEvent.toString());
         current.add(java.util.Calendar.WEEK_OF_YEAR, 1);
         if (++paranoiaCounter > 500) {
           log.warn("Dear developer, please have a look here, paranoiaCounter exceeded! Aborting calculation of weeks of year.");
@@ -386,10 +438,9 @@ public class CalendarFeed extends HttpServlet
     // final Date fromDate = event.getStart().toDate();
     // final Date toDate = event.getEnd() != null ? event.getEnd().toDate() : fromDate;
     // final VEvent vEvent = ICal4JUtils.createVEvent(fromDate, toDate, "pf-hr-planning" + event.getId(), event.getTitle(), true);
-    // events.add(vEvent);
+    // writer.write(vEvent.toString());
     // }
     // }
-    return events;
   }
 
   /**
@@ -413,6 +464,53 @@ public class CalendarFeed extends HttpServlet
         ProjectForgeGroup.PROJECT_MANAGER);
   }
 
+  /**
+   * Buffers the feed for caching. If the feed exceeds {@link CalendarFeedCache#MAX_CACHED_FEED_SIZE} the buffer and all following data is
+   * written directly to the response.
+   */
+  private static class FeedOutputStream extends ByteArrayOutputStream
+  {
+    private final HttpServletResponse resp;
+
+    private OutputStream streamOut;
+
+    FeedOutputStream(final HttpServletResponse resp)
+    {
+      super(8192);
+      this.resp = resp;
+    }
+
+    @Override
+    public synchronized void write(final int b)
+    {
+      write(new byte[] { (byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len)
+    {
+      try {
+        if (streamOut == null && count + len > CalendarFeedCache.MAX_CACHED_FEED_SIZE) {
+          streamOut = resp.getOutputStream();
+          streamOut.write(buf, 0, count);
+          reset();
+        }
+        if (streamOut != null) {
+          streamOut.write(b, off, len);
+        } else {
+          super.write(b, off, len);
+        }
+      } catch (final IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+
+    boolean isStreamed()
+    {
+      return streamOut != null;
+    }
+  }
+
   public static void registerFeedHook(final CalendarFeedHook hook)
   {
     feedHooks.add(hook);
@@ -0,0 +1,372 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.web.calendar;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.projectforge.common.AbstractCache;
+import org.projectforge.database.TransactionHelper;
+
+/**
+ * Holds the generated iCal feeds of {@link CalendarFeed} by user and request parameters. Every feed is stored with the hash of its content
+ * (used as ETag) and the time of its last content change (used as Last-Modified), so polling clients get a cheap 304 (not modified).<br/>
+ * A feed is regenerated after modifications of the time sheets of its time sheet user or of the events or access rights of its team
+ * calendars and after the expire time (holidays and week of years depend on the current date). Feeds not requested since the last
+ * refresh are removed.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class CalendarFeedCache extends AbstractCache
+{
+  /**
+   * Larger feeds aren't cached (they're streamed directly to the client).
+   */
+  public static final int MAX_CACHED_FEED_SIZE = 2 * 1024 * 1024;
+
+  private static CalendarFeedCache instance = new CalendarFeedCache();
+
+  private final ConcurrentMap<String, FeedEntry> feeds = new ConcurrentHashMap<String, FeedEntry>();
+
+  /**
+   * Incremented on every invalidation of a time sheet user ("user:" + id) or team calendar ("calendar:" + id). A feed generated during an
+   * invalidation of its user or of one of its calendars is stored as expired (it may be outdated). Feeds of other users and calendars
+   * aren't affected.
+   */
+  private final ConcurrentMap<String, AtomicLong> invalidationCounters = new ConcurrentHashMap<String, AtomicLong>();
+
+  /**
+   * Incremented on every refresh (all feeds are expired).
+   */
+  private final AtomicLong refreshCounter = new AtomicLong();
+
+  private final AtomicLong requestCounter = new AtomicLong();
+
+  private final AtomicLong hitCounter = new AtomicLong();
+
+  private final AtomicLong notModifiedCounter = new AtomicLong();
+
+  private final AtomicLong requestDuration = new AtomicLong();
+
+  /**
+   * Only for tests, otherwise use {@link #getInstance()}.
+   */
+  CalendarFeedCache()
+  {
+    super(TICKS_PER_HOUR);
+  }
+
+  public static CalendarFeedCache getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * @param key The key of the feed (user and request parameters).
+   * @return The feed if cached and not expired, otherwise null.
+   */
+  public FeedEntry get(final String key)
+  {
+    checkRefresh();
+    final FeedEntry entry = feeds.get(key);
+    if (entry == null || entry.expired == true) {
+      return null;
+    }
+    entry.accessed = true;
+    return entry;
+  }
+
+  /**
+   * Should be called before generating a feed and the result should be given to {@link #put(String, byte[], Integer, Collection, long)}.
+   * @param timesheetUserId The user of the time sheets contained in the feed, may be null.
+   * @param calendarIds The team calendars contained in the feed, may be null.
+   * @return The sum of the invalidation counters of the given user and calendars (changed by every invalidation of any of them).
+   */
+  public long getModificationCounter(final Integer timesheetUserId, final Collection<Integer> calendarIds)
+  {
+    long result = refreshCounter.get();
+    if (timesheetUserId != null) {
+      result += getInvalidationCounter(getUserKey(timesheetUserId));
+    }
+    if (calendarIds != null) {
+      for (final Integer calendarId : calendarIds) {
+        result += getInvalidationCounter(getCalendarKey(calendarId));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stores the generated feed. If the content is unchanged since the last generation, the last modification time of the previous entry is
+   * kept.
+   * @param key The key of the feed (user and request parameters).
+   * @param content The serialized feed.
+   * @param timesheetUserId The user of the time sheets contained in this feed, may be null.
+   * @param calendarIds The team calendars contained in this feed, may be null.
+   * @param modificationCounter The modification counter got by {@link #getModificationCounter(Integer, Collection)} before generation of
+   *          the feed.
+   * @return The new entry.
+   */
+  public FeedEntry put(final String key, final byte[] content, final Integer timesheetUserId, final Collection<Integer> calendarIds,
+      final long modificationCounter)
+  {
+    final String etag = DigestUtils.md5Hex(content);
+    final FeedEntry previous = feeds.get(key);
+    final long lastModified;
+    if (previous != null && previous.etag.equals(etag) == true) {
+      lastModified = previous.lastModified;
+    } else {
+      // HTTP dates have a resolution of seconds:
+      lastModified = System.currentTimeMillis() / 1000 * 1000;
+    }
+    final Set<Integer> ids;
+    if (calendarIds == null || calendarIds.isEmpty() == true) {
+      ids = Collections.emptySet();
+    } else {
+      ids = Collections.unmodifiableSet(new HashSet<Integer>(calendarIds));
+    }
+    final FeedEntry entry = new FeedEntry(content, etag, lastModified, timesheetUserId, ids);
+    entry.accessed = true;
+    feeds.put(key, entry);
+    // Checked after putting, so an invalidation running concurrently either sees the new entry or changes the counter:
+    if (getModificationCounter(timesheetUserId, ids) != modificationCounter) {
+      entry.expired = true;
+    }
+    return entry;
+  }
+
+  /**
+   * All feeds containing time sheets of the given user will be regenerated on next request.
+   * @param userId
+   */
+  public void setTimesheetsExpired(final Integer userId)
+  {
+    if (userId == null) {
+      return;
+    }
+    incrementInvalidationCounter(getUserKey(userId));
+    for (final FeedEntry entry : feeds.values()) {
+      if (userId.equals(entry.timesheetUserId) == true) {
+        entry.expired = true;
+      }
+    }
+  }
+
+  /**
+   * All feeds containing events of the given team calendar will be regenerated on next request.
+   * @param calendarId
+   */
+  public void setCalendarExpired(final Integer calendarId)
+  {
+    if (calendarId == null) {
+      return;
+    }
+    incrementInvalidationCounter(getCalendarKey(calendarId));
+    for (final FeedEntry entry : feeds.values()) {
+      if (entry.calendarIds.contains(calendarId) == true) {
+        entry.expired = true;
+      }
+    }
+  }
+
+  /**
+   * Calls {@link #setTimesheetsExpired(Integer)} after the commit of the current transaction. Expired before the commit, a feed requested
+   * in the meantime would be regenerated with the old data base state and cached as current.
+   * @param userId
+   */
+  public void setTimesheetsExpiredAfterCommit(final Integer userId)
+  {
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        setTimesheetsExpired(userId);
+      }
+    });
+  }
+
+  /**
+   * Calls {@link #setCalendarExpired(Integer)} after the commit of the current transaction.
+   * @param calendarId
+   * @see #setTimesheetsExpiredAfterCommit(Integer)
+   */
+  public void setCalendarExpiredAfterCommit(final Integer calendarId)
+  {
+    TransactionHelper.runAfterCommit(new Runnable() {
+      @Override
+      public void run()
+      {
+        setCalendarExpired(calendarId);
+      }
+    });
+  }
+
+  private long getInvalidationCounter(final String key)
+  {
+    final AtomicLong counter = invalidationCounters.get(key);
+    return counter != null ? counter.get() : 0;
+  }
+
+  private void incrementInvalidationCounter(final String key)
+  {
+    AtomicLong counter = invalidationCounters.get(key);
+    if (counter == null) {
+      final AtomicLong newCounter = new AtomicLong();
+      counter = invalidationCounters.putIfAbsent(key, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.incrementAndGet();
+  }
+
+  private static String getUserKey(final Integer userId)
+  {
+    return "user:" + userId;
+  }
+
+  private static String getCalendarKey(final Integer calendarId)
+  {
+    return "calendar:" + calendarId;
+  }
+
+  /**
+   * Adds a feed request to the statistics.
+   * @param durationInNanos
+   * @param hit True, if the feed was served by the cache.
+   * @param notModified True, if the client got a 304 (not modified).
+   */
+  public void recordRequest(final long durationInNanos, final boolean hit, final boolean notModified)
+  {
+    requestCounter.incrementAndGet();
+    requestDuration.addAndGet(durationInNanos);
+    if (hit == true) {
+      hitCounter.incrementAndGet();
+    }
+    if (notModified == true) {
+      notModifiedCounter.incrementAndGet();
+    }
+  }
+
+  /**
+   * @see org.projectforge.common.AbstractCache#getStatistics()
+   */
+  @Override
+  public String getStatistics()
+  {
+    final long requests = requestCounter.get();
+    return super.getStatistics()
+        + ", feeds="
+        + feeds.size()
+        + ", requests="
+        + requests
+        + ", feedHits="
+        + hitCounter.get()
+        + ", feedHitRatio="
+        + (requests > 0 ? hitCounter.get() * 100 / requests : 0)
+        + "%, notModified="
+        + notModifiedCounter.get()
+        + ", averageRequestDuration="
+        + (requests > 0 ? requestDuration.get() / requests / 1000 : -1)
+        + "us";
+  }
+
+  /**
+   * Removes all feeds not requested since the last refresh, all other feeds will be regenerated on next request.
+   * @see org.projectforge.common.AbstractCache#refresh()
+   */
+  @Override
+  protected void refresh()
+  {
+    refreshCounter.incrementAndGet();
+    final Iterator<Map.Entry<String, FeedEntry>> it = feeds.entrySet().iterator();
+    while (it.hasNext() == true) {
+      final FeedEntry entry = it.next().getValue();
+      if (entry.accessed == false) {
+        it.remove();
+      } else {
+        entry.accessed = false;
+        entry.expired = true;
+      }
+    }
+  }
+
+  public static class FeedEntry
+  {
+    private final byte[] content;
+
+    private final String etag;
+
+    private final long lastModified;
+
+    private final Integer timesheetUserId;
+
+    private final Set<Integer> calendarIds;
+
+    private volatile boolean expired;
+
+    private volatile boolean accessed;
+
+    private FeedEntry(final byte[] content, final String etag, final long lastModified, final Integer timesheetUserId,
+        final Set<Integer> calendarIds)
+    {
+      this.content = content;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.timesheetUserId = timesheetUserId;
+      this.calendarIds = calendarIds;
+    }
+
+    /**
+     * @return The serialized feed, must not be modified.
+     */
+    public byte[] getContent()
+    {
+      return content;
+    }
+
+    /**
+     * @return The hash of the content (quoted as needed for the ETag header).
+     */
+    public String getETag()
+    {
+      return "\"" + etag + "\"";
+    }
+
+    /**
+     * @return The time of the last content change (in millis, seconds resolution).
+     */
+    public long getLastModified()
+    {
+      return lastModified;
+    }
+  }
+}
@@ -71,9 +71,11 @@ public class SearchAreaPanel extends Panel
    * @param id
    * @param filter
    * @param registryEntry the area to show.
+   * @param searchKey If given, the result of the search submitted with this key (see {@link SearchDao#submit}) is shown.
    */
   @SuppressWarnings("serial")
-  public SearchAreaPanel(final WebPage page, final String id, final SearchPageFilter filter, final WebRegistryEntry webRegistryEntry)
+  public SearchAreaPanel(final WebPage page, final String id, final SearchPageFilter filter, final WebRegistryEntry webRegistryEntry,
+      final String searchKey)
   {
     super(id);
     final long millis = System.currentTimeMillis();
@@ -87,31 +89,23 @@ public class SearchAreaPanel extends Panel
     if (listPageColumnsCreator instanceof AbstractListPage) {
       ((AbstractListPage< ? , ? , ? >) listPageColumnsCreator).setCalledBySearchPage(true);
     }
-    final Integer number = statisticsCache.getNumberOfEntities(webRegistryEntry.getDOClass());
-    final Class< ? extends BaseSearchFilter> registeredFilterClass = webRegistryEntry.getSearchFilterClass();
-    final boolean isTaskDependentFilter = registeredFilterClass != null
-        && TaskDependentFilter.class.isAssignableFrom(registeredFilterClass);
-    if (number > MAXIMUM_ENTRIES_WITHOUT_FILTER_SETTINGS
-        && (filter.getSearchString() == null || filter.getSearchString().length() < 3)
-        && (isTaskDependentFilter == false || filter.getTask() == null)
-        && filter.getStartTimeOfModification() == null
-        && filter.getStopTimeOfModification() == null) {
-      // Don't search to large tables if to less filter settings are given.
-      setVisible(false);
-      return;
-    }
-    filter.updateUseModificationFilterFlag();
-    final BaseSearchFilter baseSearchFilter;
-    if (isTaskDependentFilter == true) {
-      baseSearchFilter = (BaseSearchFilter) BeanHelper.newInstance(registeredFilterClass, new Class< ? >[] { BaseSearchFilter.class},
-          filter);
-      ((TaskDependentFilter) baseSearchFilter).setTaskId(filter.getTaskId());
-      baseSearchFilter.copyBaseSearchFieldsFrom(filter);
+    final SearchDao.AreaResult areaResult = searchKey != null ? searchDao.getResult(searchKey, webRegistryEntry.getDao()) : null;
+    final List<SearchResultData> searchResult;
+    final long duration;
+    boolean timedOut = false;
+    if (areaResult != null) {
+      searchResult = areaResult.getList();
+      duration = areaResult.getDuration();
+      timedOut = areaResult.isTimedOut();
     } else {
-      baseSearchFilter = filter;
+      final BaseSearchFilter baseSearchFilter = getSearchFilter(filter, webRegistryEntry, statisticsCache);
+      if (baseSearchFilter == null) {
+        setVisible(false);
+        return;
+      }
+      searchResult = searchDao.getEntries(baseSearchFilter, webRegistryEntry.getDOClass(), webRegistryEntry.getDao());
+      duration = System.currentTimeMillis() - millis;
     }
-    final List<SearchResultData> searchResult = searchDao.getEntries(baseSearchFilter, webRegistryEntry.getDOClass(),
-        webRegistryEntry.getDao());
     boolean hasError = false;
     if (searchResult == null) {
       // An error occured!
@@ -155,7 +149,7 @@ public class SearchAreaPanel extends Panel
     }
     final Label hasMoreEntries;
     if (hasError == true) {
-      hasMoreEntries = new Label("hasMoreEntries", page.getString("search.error") + " | ");
+      hasMoreEntries = new Label("hasMoreEntries", page.getString(timedOut == true ? "search.timedOut" : "search.error") + " | ");
     } else {
       hasMoreEntries = new Label("hasMoreEntries", page.getString("moreEntriesAvailable") + " | ");
       hasMoreEntries.setVisible(false);
@@ -205,8 +199,46 @@ public class SearchAreaPanel extends Panel
     } else {
       add(new Label("listPageLink", "[invisible]").setVisible(false));
     }
-    final long duration = System.currentTimeMillis() - millis;
     add(new Label("areaTitle", page.getString(webRegistryEntry.getI18nTitleHeading())));
     add(new Label("timeOfSearch", NumberFormatter.format(duration)));
   }
+
+  /**
+   * @param filter
+   * @param webRegistryEntry
+   * @param statisticsCache
+   * @return The filter for the search in the given area or null, if the area shouldn't be searched (not searchable or the table is to large
+   *         for the given filter settings).
+   */
+  static BaseSearchFilter getSearchFilter(final SearchPageFilter filter, final WebRegistryEntry webRegistryEntry,
+      final StatisticsCache statisticsCache)
+  {
+    if (webRegistryEntry.getListPageColumnsCreatorClass() == null) {
+      return null;
+    }
+    final Integer number = statisticsCache.getNumberOfEntities(webRegistryEntry.getDOClass());
+    final Class< ? extends BaseSearchFilter> registeredFilterClass = webRegistryEntry.getSearchFilterClass();
+    final boolean isTaskDependentFilter = registeredFilterClass != null
+        && TaskDependentFilter.class.isAssignableFrom(registeredFilterClass);
+    if (number > MAXIMUM_ENTRIES_WITHOUT_FILTER_SETTINGS
+        && (filter.getSearchString() == null || filter.getSearchString().length() < 3)
+        && (isTaskDependentFilter == false || filter.getTask() == null)
+        && filter.getStartTimeOfModification() == null
+        && filter.getStopTimeOfModification() == null) {
+      // Don't search to large tables if to less filter settings are given.
+      return null;
+    }
+    filter.updateUseModificationFilterFlag();
+    final BaseSearchFilter baseSearchFilter;
+    if (isTaskDependentFilter == true) {
+      baseSearchFilter = (BaseSearchFilter) BeanHelper.newInstance(registeredFilterClass, new Class< ? >[] { BaseSearchFilter.class},
+          filter);
+      ((TaskDependentFilter) baseSearchFilter).setTaskId(filter.getTaskId());
+      baseSearchFilter.copyBaseSearchFieldsFrom(filter);
+    } else {
+      // Own copy, because the areas may be searched in parallel:
+      baseSearchFilter = new BaseSearchFilter(filter);
+    }
+    return baseSearchFilter;
+  }
 }
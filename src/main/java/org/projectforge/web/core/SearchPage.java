@@ -23,6 +23,8 @@
 
 package org.projectforge.web.core;
 
+import java.util.UUID;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.wicket.Component;
 import org.apache.wicket.extensions.ajax.markup.html.AjaxLazyLoadPanel;
@@ -32,6 +34,9 @@ import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.markup.repeater.RepeatingView;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.projectforge.core.BaseSearchFilter;
+import org.projectforge.core.SearchDao;
+import org.projectforge.database.StatisticsCache;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserGroupCache;
 import org.projectforge.web.fibu.ISelectCallerPage;
@@ -50,8 +55,19 @@ public class SearchPage extends AbstractStandardFormPage implements ISelectCalle
   @SpringBean(name = "userGroupCache")
   private UserGroupCache userGroupCache;
 
+  @SpringBean(name = "searchDao")
+  private SearchDao searchDao;
+
+  @SpringBean(name = "statisticsCache")
+  private StatisticsCache statisticsCache;
+
   private final RepeatingView areaRepeater;
 
+  /**
+   * Id of the last search, the areas are submitted with this id for searching in parallel.
+   */
+  private String searchId;
+
   // Do not execute the search on the first call (due to performance issues):
   private boolean refreshed = true;
 
@@ -123,6 +139,7 @@ public class SearchPage extends AbstractStandardFormPage implements ISelectCalle
     if (form.filter.isEmpty() == true) {
       return;
     }
+    searchId = UUID.randomUUID().toString();
     if ("ALL".equals(form.filter.getArea()) == true) {
       for (final WebRegistryEntry registryEntry : WebRegistry.instance().getOrderedList()) {
         if (SearchForm.isSearchable(registryEntry.getRegistryEntry()) == true) {
@@ -141,12 +158,21 @@ public class SearchPage extends AbstractStandardFormPage implements ISelectCalle
 
   private void addArea(final WebRegistryEntry webRegistryEntry)
   {
+    // Submit the search of this area, so all areas are searched in parallel while the lazy load panels are requested:
+    final BaseSearchFilter baseSearchFilter = SearchAreaPanel.getSearchFilter(form.filter, webRegistryEntry, statisticsCache);
+    final String searchKey;
+    if (baseSearchFilter != null) {
+      searchKey = searchId + "." + webRegistryEntry.getId();
+      searchDao.submit(searchKey, baseSearchFilter, webRegistryEntry.getDOClass(), webRegistryEntry.getDao());
+    } else {
+      searchKey = null;
+    }
     @SuppressWarnings("serial")
     final Panel panel = new AjaxLazyLoadPanel(areaRepeater.newChildId()) {
       @Override
       public final Component getLazyLoadComponent(final String id)
       {
-        final SearchAreaPanel searchAreaPanel = new SearchAreaPanel(SearchPage.this, id, form.filter, webRegistryEntry);
+        final SearchAreaPanel searchAreaPanel = new SearchAreaPanel(SearchPage.this, id, form.filter, webRegistryEntry, searchKey);
         return searchAreaPanel;
       }
     };
@@ -0,0 +1,332 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.rest;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.projectforge.common.NumberHelper;
+import org.projectforge.user.PFUserDO;
+import org.projectforge.user.PasswordChangeListener;
+import org.projectforge.user.UserDao;
+
+/**
+ * In-memory sessions of rest clients: after the first authentication by username and password a session token is issued. Requests with
+ * a valid session token (or with the same credentials) are authenticated without any data base access. The last logins of the session
+ * users are written periodically in one transaction.<br/>
+ * Sessions expire after {@link #SESSION_TIMEOUT_MILLIS} of inactivity, but at the latest after {@link #MAX_SESSION_LIFETIME_MILLIS}, and
+ * are dropped immediately if the user's password is changed or the user is deactivated.<br/>
+ * Failed authentications are counted per ip and user: after {@link #FREE_LOGIN_FAILURES} failures further attempts are rejected for an
+ * exponentially growing period (without checking the credentials and without blocking the request thread).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class RestSessionStore implements PasswordChangeListener
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(RestSessionStore.class);
+
+  /** Sessions not used within this time expire. */
+  static final long SESSION_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+  /** Sessions expire after this time, also if they are used continuously. */
+  static final long MAX_SESSION_LIFETIME_MILLIS = 8 * 60 * 60 * 1000;
+
+  /** Interval of writing the last logins of the session users. */
+  static final long LAST_LOGIN_FLUSH_MILLIS = 60 * 1000;
+
+  /** Number of failed authentications without any delay. */
+  static final int FREE_LOGIN_FAILURES = 2;
+
+  static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+  private static final int SESSION_TOKEN_LENGTH = 32;
+
+  private final UserDao userDao;
+
+  /** The key is the session token. */
+  private final ConcurrentMap<String, RestSession> sessions = new ConcurrentHashMap<String, RestSession>();
+
+  /** The key is username and encrypted password, the value is the session token. */
+  private final ConcurrentMap<String, String> credentialSessions = new ConcurrentHashMap<String, String>();
+
+  /** Last logins to write, the key is the user id. */
+  private final ConcurrentMap<Integer, Timestamp> pendingLastLogins = new ConcurrentHashMap<Integer, Timestamp>();
+
+  /** The key is the ip or user name of failed authentications. */
+  private final ConcurrentMap<String, LoginFailures> loginFailures = new ConcurrentHashMap<String, LoginFailures>();
+
+  private ScheduledExecutorService executor;
+
+  public RestSessionStore(final UserDao userDao)
+  {
+    this.userDao = userDao;
+  }
+
+  /**
+   * Creates a new session for the given (successfully authenticated) user.
+   * @param user
+   * @param username
+   * @param encryptedPassword
+   * @return The session token.
+   */
+  public String createSession(final PFUserDO user, final String username, final String encryptedPassword)
+  {
+    final String token = NumberHelper.getSecureRandomUrlSaveString(SESSION_TOKEN_LENGTH);
+    final String credentialsKey = getCredentialsKey(username, encryptedPassword);
+    sessions.put(token, new RestSession(user, credentialsKey));
+    final String oldToken = credentialSessions.put(credentialsKey, token);
+    if (oldToken != null) {
+      sessions.remove(oldToken);
+    }
+    getExecutor(); // Starts the periodic writing of last logins and removing of expired sessions.
+    return token;
+  }
+
+  /**
+   * @param token
+   * @return The current user (from the UserGroupCache) of the session or null, if no such session exists or the session is expired or the
+   *         user is deactivated.
+   */
+  public PFUserDO getUser(final String token)
+  {
+    final RestSession session = sessions.get(token);
+    if (session == null) {
+      return null;
+    }
+    final long now = System.currentTimeMillis();
+    if (session.isExpired(now) == true) {
+      removeSession(token, session);
+      return null;
+    }
+    final Integer userId = session.user.getId();
+    PFUserDO user = session.user;
+    if (userId != null) {
+      // The cached user reflects the current rights, locale etc. of the user:
+      user = userDao.getUserGroupCache().getUser(userId);
+      if (user == null || user.hasSystemAccess() == false) {
+        log.warn("Deleted/deactivated user tried to use his rest session: " + session.user.getUsername());
+        removeSession(token, session);
+        return null;
+      }
+      pendingLastLogins.put(userId, new Timestamp(now));
+    }
+    session.lastAccess = now;
+    return user;
+  }
+
+  /**
+   * @param username
+   * @param encryptedPassword
+   * @return The user of the session created with the given credentials or null, if no such valid session exists.
+   */
+  public PFUserDO getUser(final String username, final String encryptedPassword)
+  {
+    final String token = credentialSessions.get(getCredentialsKey(username, encryptedPassword));
+    return token != null ? getUser(token) : null;
+  }
+
+  /**
+   * @param keys The ip and/or user name of the authentication attempt.
+   * @return true, if authentication attempts for any of the given keys are blocked, because of previous failed attempts.
+   */
+  public boolean isBlocked(final String... keys)
+  {
+    final long now = System.currentTimeMillis();
+    for (final String key : keys) {
+      final LoginFailures failures = loginFailures.get(key);
+      if (failures != null && failures.blockedUntil > now) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void loginFailed(final String... keys)
+  {
+    final long now = System.currentTimeMillis();
+    for (final String key : keys) {
+      LoginFailures failures = loginFailures.get(key);
+      if (failures == null) {
+        loginFailures.putIfAbsent(key, new LoginFailures());
+        failures = loginFailures.get(key);
+      }
+      synchronized (failures) {
+        failures.counter++;
+        failures.lastFailure = now;
+        if (failures.counter > FREE_LOGIN_FAILURES) {
+          // 1s, 2s, 4s, ... (maximum is MAX_BACKOFF_MILLIS):
+          final int exponent = Math.min(failures.counter - FREE_LOGIN_FAILURES - 1, 20);
+          failures.blockedUntil = now + Math.min(1000L << exponent, MAX_BACKOFF_MILLIS);
+        }
+      }
+    }
+  }
+
+  public void loginSucceeded(final String... keys)
+  {
+    for (final String key : keys) {
+      loginFailures.remove(key);
+    }
+  }
+
+  /**
+   * Drops all sessions of the given user.
+   * @see org.projectforge.user.PasswordChangeListener#passwordChanged(org.projectforge.user.PFUserDO)
+   */
+  @Override
+  public void passwordChanged(final PFUserDO user)
+  {
+    final Iterator<Map.Entry<String, RestSession>> it = sessions.entrySet().iterator();
+    while (it.hasNext() == true) {
+      final Map.Entry<String, RestSession> entry = it.next();
+      final PFUserDO sessionUser = entry.getValue().user;
+      if (user.getId() != null ? user.getId().equals(sessionUser.getId()) : user.getUsername().equals(sessionUser.getUsername())) {
+        log.info("Password changed, rest session of user dropped: " + sessionUser.getUsername());
+        removeSession(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Writes all pending last logins and stops the periodic writing.
+   */
+  public synchronized void shutdown()
+  {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    flushLastLogins();
+  }
+
+  void flushLastLogins()
+  {
+    if (pendingLastLogins.isEmpty() == true) {
+      return;
+    }
+    final Map<Integer, Timestamp> lastLogins = new HashMap<Integer, Timestamp>();
+    for (final Integer userId : pendingLastLogins.keySet()) {
+      final Timestamp lastLogin = pendingLastLogins.remove(userId);
+      if (lastLogin != null) {
+        lastLogins.put(userId, lastLogin);
+      }
+    }
+    try {
+      userDao.updateLastLogins(lastLogins);
+    } catch (final Exception ex) {
+      log.error("Error while writing the last logins of rest sessions: " + ex.getMessage(), ex);
+    }
+  }
+
+  private void removeExpiredEntries()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<Map.Entry<String, RestSession>> it = sessions.entrySet().iterator();
+    while (it.hasNext() == true) {
+      final Map.Entry<String, RestSession> entry = it.next();
+      if (entry.getValue().isExpired(now) == true) {
+        removeSession(entry.getKey(), entry.getValue());
+      }
+    }
+    final Iterator<LoginFailures> failuresIt = loginFailures.values().iterator();
+    while (failuresIt.hasNext() == true) {
+      final LoginFailures failures = failuresIt.next();
+      if (failures.blockedUntil < now && now - failures.lastFailure > MAX_BACKOFF_MILLIS) {
+        failuresIt.remove();
+      }
+    }
+  }
+
+  private void removeSession(final String token, final RestSession session)
+  {
+    sessions.remove(token);
+    credentialSessions.remove(session.credentialsKey, token);
+  }
+
+  private String getCredentialsKey(final String username, final String encryptedPassword)
+  {
+    return username + "\n" + encryptedPassword;
+  }
+
+  private synchronized ScheduledExecutorService getExecutor()
+  {
+    if (executor == null) {
+      executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "RestSessionStore");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.scheduleWithFixedDelay(new Runnable() {
+        public void run()
+        {
+          removeExpiredEntries();
+          flushLastLogins();
+        }
+      }, LAST_LOGIN_FLUSH_MILLIS, LAST_LOGIN_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    return executor;
+  }
+
+  private static class RestSession
+  {
+    private final PFUserDO user;
+
+    private final String credentialsKey;
+
+    private final long created = System.currentTimeMillis();
+
+    private volatile long lastAccess = created;
+
+    private RestSession(final PFUserDO user, final String credentialsKey)
+    {
+      this.user = user;
+      this.credentialsKey = credentialsKey;
+    }
+
+    private boolean isExpired(final long now)
+    {
+      return now - lastAccess > SESSION_TIMEOUT_MILLIS || now - created > MAX_SESSION_LIFETIME_MILLIS;
+    }
+  }
+
+  private static class LoginFailures
+  {
+    private int counter;
+
+    private long lastFailure;
+
+    private volatile long blockedUntil;
+  }
+}
@@ -55,9 +55,17 @@ public class RestUserFilter implements Filter
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(RestUserFilter.class);
 
+  /**
+   * Request header (or parameter) of the session token. The session token is returned as response header after a successful
+   * authentication via username and password and may be used by the client for the following requests instead of the credentials.
+   */
+  public static final String SESSION_TOKEN = "authenticationSessionToken";
+
   @Autowired
   UserDao userDao;
 
+  private RestSessionStore sessionStore;
+
   @Override
   public void init(final FilterConfig filterConfig) throws ServletException
   {
@@ -69,6 +77,7 @@ public class RestUserFilter implements Filter
    * <ol>
    * <li>Authentication userId (authenticationUserId) and authenticationToken (authenticationToken) or</li>
    * <li>Authentication username (authenticationUsername) and password (authenticationPassword) or</li>
+   * <li>Session token (authenticationSessionToken) of a previous authentication by username and password.</li>
    * </ol>
    * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
    */
@@ -83,16 +92,30 @@ public class RestUserFilter implements Filter
       return;
     }
     final HttpServletRequest req = (HttpServletRequest) request;
+    final RestSessionStore store = getSessionStore();
+    final String ipKey = request.getRemoteAddr() != null ? "ip:" + request.getRemoteAddr() : null;
+    final String sessionToken = getAttribute(req, SESSION_TOKEN);
     String userString = getAttribute(req, Authentication.AUTHENTICATION_USER_ID);
     PFUserDO user = null;
-    if (userString != null) {
+    // Only real credential failures are counted for the ip (not the requests rejected as blocked or without credentials):
+    boolean credentialsFailed = false;
+    if (sessionToken != null) {
+      // Valid sessions are never blocked, also not for clients behind the same ip as a brute force attacker.
+      user = store.getUser(sessionToken);
+      if (user == null) {
+        log.info(SESSION_TOKEN + " is unknown or expired. Rest call forbidden.");
+      }
+    } else if (userString != null) {
       final Integer userId = NumberHelper.parseInteger(userString);
       if (userId != null) {
         final String authenticationToken = getAttribute(req, Authentication.AUTHENTICATION_TOKEN);
         if (authenticationToken != null) {
-          if (authenticationToken.equals(userDao.getCachedAuthenticationToken(userId)) == true) {
+          if (isIpBlocked(store, ipKey) == true) {
+            // Avoid brute force attack.
+          } else if (authenticationToken.equals(userDao.getCachedAuthenticationToken(userId)) == true) {
             user = userDao.getUserGroupCache().getUser(userId);
           } else {
+            credentialsFailed = true;
             log.error(Authentication.AUTHENTICATION_TOKEN
                 + " doesn't match for "
                 + Authentication.AUTHENTICATION_USER_ID
@@ -111,16 +134,41 @@ public class RestUserFilter implements Filter
       final String password = getAttribute(req, Authentication.AUTHENTICATION_PASSWORD);
       if (userString != null && password != null) {
         final String encryptedPassword = userDao.encryptPassword(password);
-        user = userDao.authenticateUser(userString, encryptedPassword);
+        // Clients sending their credentials with every call don't need a data base access as long as their session is valid. As valid
+        // session tokens these sessions are never blocked:
+        user = store.getUser(userString, encryptedPassword);
         if (user == null) {
-          log.error("Authentication failed for "
-              + Authentication.AUTHENTICATION_USERNAME
-              + "='"
-              + userString
-              + "' with given password. Rest call forbidden.");
+          final String userKey = "user:" + userString;
+          if (isIpBlocked(store, ipKey) == true) {
+            // Avoid brute force attack.
+          } else if (store.isBlocked(userKey) == true) {
+            // Avoid brute force attack:
+            log.error("Too many failed authentications for "
+                + Authentication.AUTHENTICATION_USERNAME
+                + "='"
+                + userString
+                + "'. Rest call forbidden.");
+          } else {
+            user = userDao.authenticateUser(userString, encryptedPassword);
+            if (user == null) {
+              credentialsFailed = true;
+              store.loginFailed(userKey);
+              log.error("Authentication failed for "
+                  + Authentication.AUTHENTICATION_USERNAME
+                  + "='"
+                  + userString
+                  + "' with given password. Rest call forbidden.");
+            } else {
+              store.loginSucceeded(userKey);
+              final String token = store.createSession(user, userString, encryptedPassword);
+              ((HttpServletResponse) response).setHeader(SESSION_TOKEN, token);
+            }
+          }
         }
       } else {
         log.error("Neither "
+            + SESSION_TOKEN
+            + " nor "
             + Authentication.AUTHENTICATION_USER_ID
             + " nor "
             + Authentication.AUTHENTICATION_USERNAME
@@ -130,16 +178,16 @@ public class RestUserFilter implements Filter
       }
     }
     if (user == null) {
-      try {
-        // Avoid brute force attack:
-        Thread.sleep(1000);
-      } catch (final InterruptedException ex) {
-        log.fatal("Exception encountered while Thread.sleep(1000): " + ex, ex);
+      if (credentialsFailed == true && ipKey != null) {
+        // Avoid brute force attack (further attempts are rejected for an increasing period without blocking a request thread):
+        store.loginFailed(ipKey);
       }
       final HttpServletResponse resp = (HttpServletResponse) response;
       resp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
       return;
     }
+    // The failures of the ip aren't reset by a successful authentication: otherwise an attacker could try other user names endlessly by
+    // authenticating with an own account in between. They are dropped by the session store after a while without failures.
     try {
       PFUserContext.setUser(user);
       final ConnectionSettings settings = getConnectionSettings(req);
@@ -162,6 +210,18 @@ public class RestUserFilter implements Filter
     }
   }
 
+  /**
+   * @return true (and logs an error), if authentication attempts from the given ip are blocked because of too many failed attempts.
+   */
+  private boolean isIpBlocked(final RestSessionStore store, final String ipKey)
+  {
+    if (ipKey == null || store.isBlocked(ipKey) == false) {
+      return false;
+    }
+    log.error("Too many failed authentications from " + ipKey + ". Rest call forbidden.");
+    return true;
+  }
+
   private ConnectionSettings getConnectionSettings(final HttpServletRequest req)
   {
     final ConnectionSettings settings = new ConnectionSettings();
@@ -187,7 +247,22 @@ public class RestUserFilter implements Filter
   @Override
   public void destroy()
   {
-    // NOOP
+    synchronized (this) {
+      if (sessionStore != null) {
+        userDao.unregister(sessionStore);
+        sessionStore.shutdown();
+      }
+    }
+  }
+
+  private synchronized RestSessionStore getSessionStore()
+  {
+    if (sessionStore == null) {
+      sessionStore = new RestSessionStore(userDao);
+      // Sessions of users changing their password are dropped:
+      userDao.register(sessionStore);
+    }
+    return sessionStore;
   }
 
   public UserDao getUserDao()
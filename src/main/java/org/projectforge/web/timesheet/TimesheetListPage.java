@@ -54,6 +54,7 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.FileHelper;
 import org.projectforge.common.MyBeanComparator;
+import org.projectforge.core.QueryFilter;
 import org.projectforge.core.SystemInfoCache;
 import org.projectforge.jira.JiraUtils;
 import org.projectforge.renderer.PdfRenderer;
@@ -82,7 +83,7 @@ import org.projectforge.web.wicket.DownloadUtils;
 import org.projectforge.web.wicket.IListPageColumnsCreator;
 import org.projectforge.web.wicket.ListPage;
 import org.projectforge.web.wicket.ListSelectActionPanel;
-import org.projectforge.web.wicket.MyListPageSortableDataProvider;
+import org.projectforge.web.wicket.MyListPagePagedDataProvider;
 import org.projectforge.web.wicket.WicketUtils;
 import org.projectforge.web.wicket.components.ContentMenuEntryPanel;
 import org.projectforge.web.wicket.flowlayout.CheckBoxPanel;
@@ -490,6 +491,57 @@ IListPageColumnsCreator<TimesheetDO>
     return super.buildList();
   }
 
+  /**
+   * @see org.projectforge.web.wicket.AbstractListPage#getPagedQueryFilter()
+   */
+  @Override
+  protected QueryFilter getPagedQueryFilter()
+  {
+    final TimesheetFilter filter = form.getSearchFilter();
+    if (filter.getStartTime() == null && filter.getStopTime() == null && filter.getTaskId() == null) {
+      return null;
+    }
+    return super.getPagedQueryFilter();
+  }
+
+  /**
+   * @return The total duration of all time sheets matching the current filter. If paging is supported, the duration is calculated by the
+   *         data base, otherwise the complete list is used.
+   */
+  long getTotalDuration()
+  {
+    final QueryFilter queryFilter = getPagedQueryFilter();
+    if (queryFilter != null) {
+      return timesheetDao.getTotalDuration(queryFilter);
+    }
+    long duration = 0;
+    if (getList() != null) {
+      for (final TimesheetDO sheet : getList()) {
+        duration += sheet.getDuration();
+      }
+    }
+    return duration;
+  }
+
+  /**
+   * Maps the transient properties of the columns to data base properties. The durations and kost2 display names are sorted in memory.
+   * @see org.projectforge.web.wicket.AbstractListPage#getDatabaseSortProperty(java.lang.String)
+   */
+  @Override
+  protected String getDatabaseSortProperty(final String sortProperty)
+  {
+    if ("user.fullname".equals(sortProperty) == true) {
+      return "user.firstname";
+    } else if ("formattedWeekOfYear".equals(sortProperty) == true) {
+      return "startTime";
+    } else if ("shortDescription".equals(sortProperty) == true) {
+      return "description";
+    } else if ("duration".equals(sortProperty) == true || "kost2.shortDisplayName".equals(sortProperty) == true) {
+      return null;
+    }
+    return sortProperty;
+  }
+
   void exportPDF()
   {
     refresh();
@@ -556,7 +608,7 @@ IListPageColumnsCreator<TimesheetDO>
   @Override
   protected ISortableDataProvider<TimesheetDO, String> createSortableDataProvider(final SortParam<String> sortParam)
   {
-    this.listPageSortableDataProvider = new MyListPageSortableDataProvider<TimesheetDO>(sortParam, null, this) {
+    this.listPageSortableDataProvider = new MyListPagePagedDataProvider<TimesheetDO>(sortParam, null, this) {
       @Override
       protected Comparator<TimesheetDO> getComparator(final SortParam<String> sortParam, final SortParam<String> secondSortParam)
       {
@@ -566,28 +618,19 @@ IListPageColumnsCreator<TimesheetDO>
         final boolean secondAscending = secondSortParam != null ? secondSortParam.isAscending() : true;
         return new MyBeanComparator<TimesheetDO>(sortProperty, ascending, secondSortProperty, secondAscending) {
           @Override
-          public int compare(final TimesheetDO t1, final TimesheetDO t2)
+          protected void prepare(final TimesheetDO timesheet)
           {
             if ("user.fullname".equals(sortProperty) == true) {
-              PFUserDO user = t1.getUser();
+              final PFUserDO user = timesheet.getUser();
               if (user != null && Hibernate.isInitialized(user) == false) {
-                t1.setUser(userGroupCache.getUser(user.getId()));
-              }
-              user = t2.getUser();
-              if (user != null && Hibernate.isInitialized(user) == false) {
-                t2.setUser(userGroupCache.getUser(user.getId()));
+                timesheet.setUser(userGroupCache.getUser(user.getId()));
               }
             } else if ("task.title".equals(sortProperty) == true) {
-              TaskDO task = t1.getTask();
-              if (task != null && Hibernate.isInitialized(task) == false) {
-                t1.setTask(taskTree.getTaskById(task.getId()));
-              }
-              task = t2.getTask();
+              final TaskDO task = timesheet.getTask();
               if (task != null && Hibernate.isInitialized(task) == false) {
-                t2.setTask(taskTree.getTaskById(task.getId()));
+                timesheet.setTask(taskTree.getTaskById(task.getId()));
               }
             }
-            return super.compare(t1, t2);
           }
         };
       }
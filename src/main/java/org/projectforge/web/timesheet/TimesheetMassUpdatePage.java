@@ -23,8 +23,6 @@
 
 package org.projectforge.web.timesheet;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -96,8 +94,7 @@ public class TimesheetMassUpdatePage extends AbstractMassEditPage implements ISe
       public Iterator<TimesheetDO> iterator(final long first, final long count)
       {
         final SortParam sp = getSort();
-        final Comparator<TimesheetDO> comp = new MyBeanComparator<TimesheetDO>(sp.getProperty().toString(), sp.isAscending());
-        Collections.sort(timesheets, comp);
+        new MyBeanComparator<TimesheetDO>(sp.getProperty().toString(), sp.isAscending()).sort(timesheets);
         return timesheets.subList((int)first, (int)(first + count)).iterator();
       }
 
@@ -55,6 +55,7 @@ import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.IdObject;
 import org.projectforge.core.PropertyInfo;
+import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
 import org.projectforge.excel.ExportSheet;
 import org.projectforge.export.DOListExcelExporter;
@@ -539,7 +540,13 @@ extends AbstractSecuredPage implements ISelectCallerPage
   protected void onBeforeRender()
   {
     if (this.refreshResultList == true) {
-      getList();
+      if (listPageSortableDataProvider instanceof MyListPagePagedDataProvider< ? >
+          && ((MyListPagePagedDataProvider<O>) listPageSortableDataProvider).reset().isPaged() == true) {
+        // Only the displayed page will be loaded by the data provider:
+        this.refreshResultList = false;
+      } else {
+        getList();
+      }
     }
     super.onBeforeRender();
   }
@@ -667,11 +674,35 @@ extends AbstractSecuredPage implements ISelectCallerPage
       final SortParam<String> secondSortParam)
       {
     if (listPageSortableDataProvider == null) {
-      listPageSortableDataProvider = new MyListPageSortableDataProvider<O>(sortParam, secondSortParam, this);
+      listPageSortableDataProvider = new MyListPagePagedDataProvider<O>(sortParam, secondSortParam, this);
     }
     return listPageSortableDataProvider;
       }
 
+  /**
+   * Used by {@link MyListPagePagedDataProvider}.
+   * @return The query filter for the current search filter if the dao supports paged lists, otherwise null.
+   * @see BaseDao#getPagedQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  protected QueryFilter getPagedQueryFilter()
+  {
+    if (getBaseDao() instanceof BaseDao< ? > == false) {
+      return null;
+    }
+    return ((BaseDao< ? >) getBaseDao()).getPagedQueryFilter(form.getSearchFilter());
+  }
+
+  /**
+   * Maps the sort property of a column to the property used for sorting by the data base. Override this method for columns displaying
+   * transient properties.
+   * @param sortProperty
+   * @return The given sort property at default. If null is returned, the complete list is loaded and sorted in memory.
+   */
+  protected String getDatabaseSortProperty(final String sortProperty)
+  {
+    return sortProperty;
+  }
+
   /**
    * For displaying the hibernate search fields. Returns list as csv. These fields the user can directly address in his search string, e. g.
    * street:marie.
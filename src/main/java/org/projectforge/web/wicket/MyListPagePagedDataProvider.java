@@ -0,0 +1,253 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.web.wicket;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.projectforge.core.BaseDao;
+import org.projectforge.core.IdObject;
+import org.projectforge.core.QueryFilter;
+
+/**
+ * Data provider for list pages with large result sets: sorting, offset and limit are done by the data base (if supported by the dao for
+ * the current search filter, see {@link BaseDao#getPagedQueryFilter(org.projectforge.core.BaseSearchFilter)}), only the entries of the
+ * displayed page are loaded and only their id's are stored in the session. If the entries of the page have to be reloaded (after
+ * detaching), all of them are loaded with one query. The select access is checked for the entries of the displayed page.<br/>
+ * If paging isn't supported by the dao or for the current sort property, the complete list is loaded and sorted in memory as done by
+ * {@link MyListPageSortableDataProvider}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * 
+ */
+public class MyListPagePagedDataProvider<T extends IdObject< ? >> extends MyListPageSortableDataProvider<T>
+{
+  private static final long serialVersionUID = -1904370542207930546L;
+
+  private final AbstractListPage< ? , ? , T> listPage;
+
+  /**
+   * Is the current search filter supported by the dao? Null if not yet determined (will be reset on every refresh of the list page).
+   */
+  private Boolean pagingSupported;
+
+  /**
+   * Number of entries matching the current search filter, null if not yet read.
+   */
+  private Long size;
+
+  /**
+   * The id's of the entries of the current page.
+   */
+  private List<Serializable> pageIds;
+
+  /**
+   * The entries of the current page (by id), null after detaching.
+   */
+  private transient Map<Serializable, T> pageObjects;
+
+  public MyListPagePagedDataProvider(final SortParam<String> sortParam, final SortParam<String> secondSortParam,
+      final AbstractListPage< ? , ? , T> listPage)
+  {
+    super(sortParam, secondSortParam, listPage);
+    this.listPage = listPage;
+  }
+
+  /**
+   * Should be called after any modification of the search filter.
+   */
+  public MyListPagePagedDataProvider<T> reset()
+  {
+    this.pagingSupported = null;
+    this.size = null;
+    clearList();
+    return this;
+  }
+
+  /**
+   * @return true if paging is supported by the dao for the current search filter and the current sort property.
+   */
+  public boolean isPaged()
+  {
+    if (pagingSupported == null) {
+      pagingSupported = listPage.getPagedQueryFilter() != null;
+    }
+    if (pagingSupported == false) {
+      return false;
+    }
+    final SortParam<String> sp = getSort();
+    return sp == null || "NOSORT".equals(sp.getProperty()) == true || listPage.getDatabaseSortProperty(sp.getProperty()) != null;
+  }
+
+  /**
+   * Called after (re-)building the list by the list page, the search filter may have been changed. The complete list isn't stored in
+   * paging mode.
+   * @see org.projectforge.web.wicket.MyListPageSortableDataProvider#setCompleteList(java.util.List)
+   */
+  @Override
+  public MyListPageSortableDataProvider<T> setCompleteList(final List<T> completeList)
+  {
+    this.pagingSupported = null;
+    this.size = null;
+    if (isPaged() == true) {
+      clearList();
+      return this;
+    }
+    return super.setCompleteList(completeList);
+  }
+
+  /**
+   * @see org.apache.wicket.markup.repeater.data.IDataProvider#iterator(long, long)
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public Iterator<T> iterator(final long first, final long count)
+  {
+    if (isPaged() == false) {
+      return super.iterator(first, count);
+    }
+    clearList(); // Free memory if the complete list was loaded before (e. g. sorted by a non data base property).
+    final QueryFilter queryFilter = listPage.getPagedQueryFilter();
+    if (queryFilter == null) {
+      return new ArrayList<T>().iterator();
+    }
+    final SortParam<String> sp = getSort();
+    String sortProperty = null;
+    if (sp != null && "NOSORT".equals(sp.getProperty()) == false) {
+      sortProperty = listPage.getDatabaseSortProperty(sp.getProperty());
+    }
+    final boolean ascending = sp != null ? sp.isAscending() : true;
+    final List<T> list = (List<T>) getBaseDao().getPagedList(queryFilter, sortProperty, ascending, (int) first, (int) count);
+    if (list == null) {
+      return new ArrayList<T>().iterator();
+    }
+    pageIds = new ArrayList<Serializable>(list.size());
+    pageObjects = new HashMap<Serializable, T>();
+    for (final T obj : list) {
+      pageIds.add(obj.getId());
+      pageObjects.put(obj.getId(), obj);
+    }
+    return list.iterator();
+  }
+
+  /**
+   * @see org.apache.wicket.markup.repeater.data.IDataProvider#size()
+   */
+  @Override
+  public long size()
+  {
+    if (isPaged() == false) {
+      return super.size();
+    }
+    if (size == null) {
+      final QueryFilter queryFilter = listPage.getPagedQueryFilter();
+      size = queryFilter != null ? (long) getBaseDao().getPagedListSize(queryFilter) : 0L;
+    }
+    return size;
+  }
+
+  /**
+   * In paging mode only the id's are stored in the models.
+   * @see org.projectforge.web.wicket.MyListPageSortableDataProvider#model(org.projectforge.core.IdObject)
+   */
+  @Override
+  public IModel<T> model(final T object)
+  {
+    if (isPaged() == false) {
+      return super.model(object);
+    }
+    return new IdModel(object);
+  }
+
+  /**
+   * @see org.projectforge.web.wicket.MyListPageSortableDataProvider#detach()
+   */
+  @Override
+  public void detach()
+  {
+    super.detach();
+    this.pageObjects = null;
+  }
+
+  /**
+   * Loads all entries of the current page with one query, if the given entry isn't yet loaded.
+   */
+  @SuppressWarnings("unchecked")
+  private T getPageObject(final Serializable id)
+  {
+    if (pageObjects == null || pageObjects.containsKey(id) == false) {
+      final List<Serializable> ids = new ArrayList<Serializable>();
+      if (pageIds != null) {
+        ids.addAll(pageIds);
+      }
+      if (ids.contains(id) == false) {
+        ids.add(id);
+      }
+      pageObjects = new HashMap<Serializable, T>();
+      final List<T> list = (List<T>) getBaseDao().getListByIds(ids);
+      if (list != null) {
+        for (final T obj : list) {
+          pageObjects.put(obj.getId(), obj);
+        }
+      }
+      // Entries without select access (or deleted meanwhile) are stored as null:
+      for (final Serializable entryId : ids) {
+        if (pageObjects.containsKey(entryId) == false) {
+          pageObjects.put(entryId, null);
+        }
+      }
+    }
+    return pageObjects.get(id);
+  }
+
+  private BaseDao< ? > getBaseDao()
+  {
+    return (BaseDao< ? >) listPage.getBaseDao();
+  }
+
+  private class IdModel extends LoadableDetachableModel<T>
+  {
+    private static final long serialVersionUID = 7210938423517235687L;
+
+    private final Serializable id;
+
+    public IdModel(final T object)
+    {
+      super(object);
+      this.id = object.getId();
+    }
+
+    @Override
+    protected T load()
+    {
+      return getPageObject(id);
+    }
+  }
+}
@@ -174,12 +174,22 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
     return this.idList != null ? this.idList.size() : 0;
   }
 
+  /**
+   * Forces the reload of the complete list on next access and frees the memory of the stored list.
+   */
+  protected void clearList()
+  {
+    this.completeList = null;
+    this.idList = null;
+  }
+
   private void reloadList()
   {
     final List<T> list = listPage.getList();
     setCompleteList(list);
   }
 
+  @SuppressWarnings("unchecked")
   private void sortList(final List<T> list)
   {
     final SortParam<String> sp = getSort();
@@ -188,7 +198,12 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
         this.secondSortParam = this.sortParam;
       }
       final Comparator<T> comp = getComparator(sp, secondSortParam);
-      Collections.sort(list, comp);
+      if (comp instanceof MyBeanComparator) {
+        // Reads the sort properties only once per element:
+        ((MyBeanComparator<T>) comp).sort(list);
+      } else {
+        Collections.sort(list, comp);
+      }
     }
     this.sortParam = sp;
   }
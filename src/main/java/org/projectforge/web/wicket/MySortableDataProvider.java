@@ -59,6 +59,7 @@ public abstract class MySortableDataProvider<O> extends SortableDataProvider<O,
   /**
    * @see org.apache.wicket.markup.repeater.data.IDataProvider#iterator(int, int)
    */
+  @SuppressWarnings("unchecked")
   @Override
   public Iterator<? extends O> iterator(final long first, final long count)
   {
@@ -69,7 +70,11 @@ public abstract class MySortableDataProvider<O> extends SortableDataProvider<O,
     }
     if (sp != null && "NOSORT".equals(sp.getProperty()) == false) {
       final Comparator<O> comp = getComparator(sp.getProperty().toString(), sp.isAscending());
-      Collections.sort(list, comp);
+      if (comp instanceof MyBeanComparator) {
+        ((MyBeanComparator<O>) comp).sort(list);
+      } else {
+        Collections.sort(list, comp);
+      }
     }
     return list.subList((int)first, (int)(first + count)).iterator();
   }
@@ -159,6 +159,32 @@ public class AccessTestFork extends TestBase
     // }
   }
 
+  /**
+   * Checks the invalidation of the compiled permissions after modifications of the group task access entries.
+   */
+  @Test
+  public void checkCompiledPermissions()
+  {
+    logon(TEST_ADMIN_USER);
+    initTestDB.addTask("compiledPermissions", "root");
+    initTestDB.addTask("cP.child", "compiledPermissions");
+    final PFUserDO user1 = getUser("user1");
+    final Integer childId = getTask("cP.child").getId();
+    assertFalse(accessChecker.hasPermission(user1, childId, AccessType.TASKS, OperationType.SELECT, false));
+    GroupTaskAccessDO groupTaskAccess = new GroupTaskAccessDO();
+    accessDao.setTask(groupTaskAccess, getTask("compiledPermissions").getId());
+    groupTaskAccess.setGroup(getGroup("group1"));
+    groupTaskAccess.ensureAndGetAccessEntry(AccessType.TASKS).setAccess(true, false, false, false);
+    final Serializable id = accessDao.save(groupTaskAccess);
+    assertTrue("Inherited from parent task.", accessChecker.hasPermission(user1, childId, AccessType.TASKS, OperationType.SELECT, false));
+    assertFalse(accessChecker.hasPermission(user1, childId, AccessType.TASKS, OperationType.UPDATE, false));
+    groupTaskAccess = accessDao.getById(id);
+    groupTaskAccess.setRecursive(false);
+    accessDao.update(groupTaskAccess);
+    assertFalse("Not recursive anymore.", accessChecker.hasPermission(user1, childId, AccessType.TASKS, OperationType.SELECT, false));
+    assertTrue(accessChecker.hasPermission(user1, getTask("compiledPermissions").getId(), AccessType.TASKS, OperationType.SELECT, false));
+  }
+
   private void checkAccessEntry(final AccessEntryDO entry, final boolean accessSelect, final boolean accessInsert,
       final boolean accessUpdate, final boolean accessDelete)
   {
@@ -28,6 +28,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +39,7 @@ import org.junit.Test;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
+import org.projectforge.common.DateHolder;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.SimpleHistoryEntry;
@@ -55,11 +57,18 @@ public class AddressTest extends TestBase
 
   private AddressDao addressDao;
 
+  private PersonalAddressDao personalAddressDao;
+
   public void setAddressDao(AddressDao addressDao)
   {
     this.addressDao = addressDao;
   }
 
+  public void setPersonalAddressDao(final PersonalAddressDao personalAddressDao)
+  {
+    this.personalAddressDao = personalAddressDao;
+  }
+
   @Test
   public void testSaveAndUpdate()
   {
@@ -109,6 +118,86 @@ public class AddressTest extends TestBase
     assertEquals("Should be undeleted.", false, a1.isDeleted());
   }
 
+  @Test
+  public void testPhoneNumberIndex()
+  {
+    logon(ADMIN);
+    AddressDO a1 = new AddressDO();
+    a1.setName("Phone number test");
+    a1.setBusinessPhone("+49 561 / 9876543-21");
+    a1.setTask(getTask("1.1"));
+    addressDao.save(a1);
+    final Integer id = a1.getId();
+    assertPhoneNumber(id, "9876543-21", true);
+    assertPhoneNumber(id, "0561 987654321", true);
+    assertPhoneNumber(id, "98765432", false);
+    a1 = addressDao.getById(id);
+    a1.setBusinessPhone(null);
+    a1.setPrivateMobilePhone("0170 555 123 456");
+    addressDao.update(a1);
+    assertPhoneNumber(id, "987654321", false);
+    assertPhoneNumber(id, "555123456", true);
+    assertEquals(1, addressDao.getListByPhoneNumber("0170 555123456").size());
+    addressDao.markAsDeleted(a1);
+    assertPhoneNumber(id, "555123456", false);
+  }
+
+  @Test
+  public void testBirthdays()
+  {
+    logon(ADMIN);
+    AddressDO a1 = new AddressDO();
+    a1.setName("Birthday test");
+    a1.setBirthday(java.sql.Date.valueOf("1970-12-30"));
+    a1.setTask(getTask("1.1"));
+    addressDao.save(a1);
+    final Integer id = a1.getId();
+    assertBirthday(id, Calendar.DECEMBER, 30, Calendar.DECEMBER, 30, true, true);
+    assertBirthday(id, Calendar.DECEMBER, 1, Calendar.JANUARY, 31, true, true);
+    assertBirthday(id, Calendar.JANUARY, 1, Calendar.DECEMBER, 29, true, false);
+    assertBirthday(id, Calendar.DECEMBER, 1, Calendar.JANUARY, 31, false, false);
+    final PersonalAddressDO personalAddress = new PersonalAddressDO();
+    personalAddress.setAddress(a1);
+    personalAddress.setOwner(getUser(ADMIN));
+    personalAddress.setFavoriteCard(true);
+    personalAddressDao.saveOrUpdate(personalAddress);
+    assertBirthday(id, Calendar.DECEMBER, 1, Calendar.JANUARY, 31, false, true);
+    a1 = addressDao.getById(id);
+    a1.setBirthday(java.sql.Date.valueOf("1970-01-02"));
+    addressDao.update(a1);
+    assertBirthday(id, Calendar.DECEMBER, 1, Calendar.JANUARY, 1, true, false);
+    assertBirthday(id, Calendar.DECEMBER, 1, Calendar.JANUARY, 2, false, true);
+    addressDao.markAsDeleted(a1);
+    assertBirthday(id, Calendar.DECEMBER, 1, Calendar.JANUARY, 2, true, false);
+  }
+
+  private void assertBirthday(final Integer id, final int fromMonth, final int fromDay, final int toMonth, final int toDay,
+      final boolean all, final boolean expected)
+  {
+    final DateHolder from = new DateHolder();
+    from.setDate(2013, fromMonth, fromDay, 0, 0, 0);
+    final DateHolder to = new DateHolder();
+    to.setDate(2013, toMonth, toDay, 0, 0, 0);
+    boolean found = false;
+    for (final BirthdayAddress birthday : addressDao.getBirthdays(from.getDate(), to.getDate(), 1000, all)) {
+      if (id.equals(birthday.getAddress().getId()) == true) {
+        found = true;
+      }
+    }
+    assertEquals(expected, found);
+  }
+
+  private void assertPhoneNumber(final Integer id, final String number, final boolean expected)
+  {
+    boolean found = false;
+    for (final AddressDO address : addressDao.getAddressCache().getAddressesByPhoneNumber(number)) {
+      if (id.equals(address.getId()) == true) {
+        found = true;
+      }
+    }
+    assertEquals(number, expected, found);
+  }
+
   @Test(expected = RuntimeException.class)
   public void testDelete()
   {
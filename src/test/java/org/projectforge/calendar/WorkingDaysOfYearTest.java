@@ -0,0 +1,124 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.calendar;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Locale;
+
+import org.apache.log4j.Logger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.DateHolder;
+import org.projectforge.common.DatePrecision;
+import org.projectforge.core.ConfigXmlTest;
+import org.projectforge.core.Configuration;
+
+/**
+ * Compares the working day index with the day by day iteration (the former implementation of {@link DateHolder#addWorkingDays(int)} and
+ * {@link DayHolder#getNumberOfWorkingDays(DateHolder, DateHolder)}) and the time needed by both.
+ */
+public class WorkingDaysOfYearTest
+{
+  private static final Logger log = Logger.getLogger(WorkingDaysOfYearTest.class);
+
+  @BeforeClass
+  public static void setUp()
+  {
+    // Needed if this tests runs before the ConfigurationTest.
+    ConfigXmlTest.createTestConfiguration();
+    Configuration.init4TestMode();
+  }
+
+  @Test
+  public void workingDays()
+  {
+    final WorkingDaysOfYear workingDays = Holidays.getInstance().getWorkingDays(2010);
+    assertEquals(365, workingDays.getNumberOfDays());
+    final DateHolder day = new DateHolder(DatePrecision.DAY, DateHelper.UTC, Locale.GERMAN);
+    day.setDate(2010, Calendar.MAY, 24, 0, 0, 0); // Whit monday.
+    assertEquals(false, workingDays.isWorkingDay(day.getDayOfYear()));
+    day.setDate(2010, Calendar.MAY, 25, 0, 0, 0);
+    assertEquals(true, workingDays.isWorkingDay(day.getDayOfYear()));
+    assertEquals(day.getDayOfYear(), workingDays.getWorkingDay(workingDays.getNumberOfWorkingDaysUntil(day.getDayOfYear())));
+    assertEquals(Holidays.getInstance().getWorkingDays(2010), workingDays);
+  }
+
+  @Test
+  public void compareWithIteration()
+  {
+    final DateHolder start = new DateHolder(DatePrecision.MINUTE, DateHelper.UTC, Locale.GERMAN);
+    start.setDate(2009, Calendar.DECEMBER, 20, 4, 50, 0);
+    long iterationMillis = 0;
+    long indexMillis = 0;
+    for (int offset = -400; offset <= 400; offset += 7) {
+      for (int days = -300; days <= 300; days += 13) {
+        final DateHolder date = start.clone().add(Calendar.DAY_OF_YEAR, offset);
+        long millis = System.nanoTime();
+        final DateHolder expected = addWorkingDaysByIteration(date.clone(), days);
+        iterationMillis += System.nanoTime() - millis;
+        millis = System.nanoTime();
+        final DateHolder actual = date.clone().addWorkingDays(days);
+        indexMillis += System.nanoTime() - millis;
+        assertEquals(expected.getDate(), actual.getDate());
+        if (days > 0) {
+          final DayHolder from = new DayHolder(date);
+          final DayHolder to = new DayHolder(actual);
+          assertEquals(0, getNumberOfWorkingDaysByIteration(from, to).compareTo(DayHolder.getNumberOfWorkingDays(from, to)));
+        }
+      }
+    }
+    log.info("addWorkingDays: iteration=" + iterationMillis / 1000000 + "ms, index=" + indexMillis / 1000000 + "ms.");
+  }
+
+  private DateHolder addWorkingDaysByIteration(final DateHolder date, final int days)
+  {
+    final int sign = days < 0 ? -1 : 1;
+    for (int counter = 0; counter != days; counter += sign) {
+      do {
+        date.add(Calendar.DAY_OF_MONTH, sign);
+      } while (new DayHolder(date).isWorkingDay() == false);
+    }
+    return date;
+  }
+
+  private BigDecimal getNumberOfWorkingDaysByIteration(final DayHolder from, final DayHolder to)
+  {
+    final DayHolder day = new DayHolder(from);
+    BigDecimal numberOfWorkingDays = BigDecimal.ZERO;
+    while (true) {
+      if (day.isWorkingDay() == true) {
+        final BigDecimal workFraction = day.getWorkFraction();
+        numberOfWorkingDays = numberOfWorkingDays.add(workFraction != null ? workFraction : BigDecimal.ONE);
+      }
+      if (day.isSameDay(to) == true) {
+        return numberOfWorkingDays;
+      }
+      day.add(Calendar.DAY_OF_MONTH, 1);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AbstractCacheTest
+{
+  @Test
+  public void asyncRefresh() throws InterruptedException
+  {
+    final TestCache cache = new TestCache();
+    cache.setAsyncRefresh(true);
+    cache.expireTime = 100;
+    assertEquals("First load is done synchronously.", 1, cache.getData());
+    assertEquals(1, cache.getData());
+    assertEquals(1, cache.getHitCounter());
+    Thread.sleep(150);
+    assertEquals("Expired data expected while refreshing in the background.", 1, cache.getData());
+    assertEquals(1, cache.getStaleReadCounter());
+    for (int i = 0; i < 100 && cache.getRefreshCounter() < 2; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(2, cache.getRefreshCounter());
+    assertEquals(2, cache.getData());
+    cache.setExpired();
+    assertEquals("Explicit expired cache is refreshed synchronously.", 3, cache.getData());
+    assertTrue(cache.getLastRefreshDuration() >= 0);
+    assertTrue(AbstractCache.getAllCaches().contains(cache));
+  }
+
+  @Test
+  public void syncRefresh() throws InterruptedException
+  {
+    final TestCache cache = new TestCache();
+    cache.expireTime = 100;
+    assertEquals(1, cache.getData());
+    Thread.sleep(150);
+    assertEquals(2, cache.getData());
+    assertEquals(0, cache.getStaleReadCounter());
+  }
+
+  @Test
+  public void readDuringRefresh() throws InterruptedException
+  {
+    final TestCache cache = new TestCache();
+    final Thread thread = new Thread() {
+      @Override
+      public void run()
+      {
+        cache.getData();
+      }
+    };
+    thread.start();
+    Thread.sleep(10);
+    assertEquals("Readers must wait for the first refresh.", 1, cache.getData());
+    thread.join();
+    final Thread refreshThread = new Thread() {
+      @Override
+      public void run()
+      {
+        cache.forceReload();
+      }
+    };
+    refreshThread.start();
+    Thread.sleep(10);
+    assertEquals("Readers must wait for a forced refresh.", 2, cache.getData());
+    refreshThread.join();
+    cache.setExpired();
+    final Thread expireThread = new Thread() {
+      @Override
+      public void run()
+      {
+        try {
+          Thread.sleep(10);
+        } catch (final InterruptedException ex) {
+          // Nothing to do.
+        }
+        cache.setExpired();
+      }
+    };
+    expireThread.start();
+    assertEquals(3, cache.getData());
+    expireThread.join();
+    assertEquals("Expired during refresh, so refresh again.", 4, cache.getData());
+  }
+
+  private static class TestCache extends AbstractCache
+  {
+    private volatile int data;
+
+    int getData()
+    {
+      checkRefresh();
+      return data;
+    }
+
+    @Override
+    protected void refresh()
+    {
+      try {
+        Thread.sleep(50);
+      } catch (final InterruptedException ex) {
+        // Nothing to do.
+      }
+      data++;
+    }
+  }
+}
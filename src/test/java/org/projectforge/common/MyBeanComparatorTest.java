@@ -0,0 +1,67 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.projectforge.timesheet.TimesheetDO;
+import org.projectforge.user.PFUserDO;
+
+public class MyBeanComparatorTest
+{
+  @Test
+  public void sort()
+  {
+    final List<TimesheetDO> list = new ArrayList<TimesheetDO>();
+    list.add(createTimesheet("Berta", "b"));
+    list.add(createTimesheet("anton", "c"));
+    list.add(createTimesheet(null, "a"));
+    list.add(createTimesheet("anton", "a"));
+    list.add(new TimesheetDO().setDescription("x"));
+    final MyBeanComparator<TimesheetDO> comparator = new MyBeanComparator<TimesheetDO>("user.lastname", true, "description", false);
+    final List<TimesheetDO> sorted = new ArrayList<TimesheetDO>(list);
+    comparator.sort(sorted);
+    assertEquals("x", sorted.get(0).getDescription()); // No user.
+    assertEquals("a", sorted.get(1).getDescription()); // No last name.
+    assertEquals("c", sorted.get(2).getDescription()); // anton, descending description.
+    assertEquals("a", sorted.get(3).getDescription()); // anton
+    assertEquals("b", sorted.get(4).getDescription()); // Berta (strings are compared by the collator).
+    Collections.sort(list, comparator);
+    for (int i = 0; i < list.size(); i++) {
+      assertSame("sort and compare should result in the same order.", sorted.get(i), list.get(i));
+    }
+  }
+
+  private TimesheetDO createTimesheet(final String lastname, final String description)
+  {
+    return new TimesheetDO().setUser(new PFUserDO().setLastname(lastname)).setDescription(description);
+  }
+}
@@ -24,9 +24,11 @@
 package org.projectforge.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 
 import org.junit.BeforeClass;
@@ -72,6 +74,27 @@ public class AbstractBaseDOTest
     assertEquals(lastUpdate, DateHelper.getForTestCase(obj.getLastUpdate()));
   }
 
+  @Test
+  public void modifiedFields()
+  {
+    final FooDO obj = createFooDO(21, 22, false, true, "Hurzel");
+    final FooDO src = createFooDO(19, 20, false, false, "Test");
+    final List<String> modifiedFields = new ArrayList<String>();
+    assertEquals(ModificationStatus.MAJOR, AbstractBaseDO.copyValues(src, obj, modifiedFields));
+    assertEquals(2, modifiedFields.size());
+    assertTrue(modifiedFields.contains("testBoolean"));
+    assertTrue(modifiedFields.contains("testString"));
+    modifiedFields.clear();
+    assertEquals(ModificationStatus.NONE, AbstractBaseDO.copyValues(src, obj, modifiedFields));
+    assertEquals(0, modifiedFields.size());
+    src.setTestString("Changed");
+    src.setDeleted(true);
+    assertEquals(ModificationStatus.MAJOR, AbstractBaseDO.copyValues(src, obj, modifiedFields, "testString"));
+    assertEquals("Test", obj.getTestString());
+    assertEquals(1, modifiedFields.size());
+    assertEquals("deleted", modifiedFields.get(0));
+  }
+
   private FooDO createFooDO(final int createdDayOfMonth, final int lastUpdateDateOfMonth, final boolean deleted, final boolean testBoolean, final String testString)
   {
     final FooDO obj = new FooDO();
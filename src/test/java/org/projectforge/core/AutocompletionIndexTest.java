@@ -0,0 +1,57 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class AutocompletionIndexTest
+{
+  @Test
+  public void addAndRemove()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex();
+    index.add("Kassel", new Date(1000));
+    index.add("Kassel", new Date(2000));
+    index.add("Kiel", new Date(3000));
+    index.add(" ", new Date(4000));
+    assertEquals(2, index.size());
+    assertEquals("Most frequent first.", Arrays.asList("Kassel", "Kiel"), index.find("k"));
+    assertEquals("Most recent first.", Arrays.asList("Kiel", "Kassel"), index.getRecent(10));
+    index.remove("Kassel");
+    assertEquals("Equal frequency, most recent first.", Arrays.asList("Kiel", "Kassel"), index.find("k"));
+    index.remove("Kassel");
+    assertEquals(Arrays.asList("Kiel"), index.find("k"));
+    index.remove("Kassel");
+    index.remove("Bonn");
+    index.remove(null);
+    assertEquals(1, index.size());
+    index.add("Kassel", null);
+    assertEquals("Removed values are counted from scratch.", Arrays.asList("Kiel", "Kassel"), index.find(null));
+  }
+}
@@ -24,6 +24,8 @@
 package org.projectforge.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 
@@ -55,6 +57,17 @@ public class HibernateSearchDependentObjectsReindexerTest
     assertEntry(list.get(2), UserPrefDO.class, "user");
   }
 
+  @Test
+  public void coalesce()
+  {
+    final HibernateSearchDependentObjectsReindexer reindexer = new HibernateSearchDependentObjectsReindexer();
+    assertTrue(reindexer.enqueue(new HibernateSearchDependentObjectsReindexer.Key(PFUserDO.class, 1)));
+    assertTrue(reindexer.enqueue(new HibernateSearchDependentObjectsReindexer.Key(PFUserDO.class, 2)));
+    assertTrue(reindexer.enqueue(new HibernateSearchDependentObjectsReindexer.Key(TaskDO.class, 1)));
+    assertFalse("Already pending.", reindexer.enqueue(new HibernateSearchDependentObjectsReindexer.Key(PFUserDO.class, 1)));
+    assertEquals(3, reindexer.getQueueSize());
+  }
+
   private void assertEntry(final HibernateSearchDependentObjectsReindexer.Entry entry, final Class< ? > clazz, final String fieldName)
   {
     assertEquals(fieldName, entry.fieldName);
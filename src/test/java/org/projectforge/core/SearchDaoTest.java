@@ -0,0 +1,111 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.projectforge.timesheet.TimesheetDO;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class SearchDaoTest
+{
+  private final BaseDao<TimesheetDO> baseDao = new BaseDao<TimesheetDO>(TimesheetDO.class) {
+    @Override
+    public TimesheetDO newInstance()
+    {
+      return new TimesheetDO();
+    }
+  };
+
+  @Test
+  public void partialResults()
+  {
+    final SearchDao searchDao = createSearchDao(200);
+    submit(searchDao, "fast", 0);
+    submit(searchDao, "slow", 5000);
+    final SearchDao.AreaResult fast = searchDao.getResult("fast", baseDao);
+    assertFalse(fast.isTimedOut());
+    assertEquals(1, fast.getList().size());
+    final SearchDao.AreaResult slow = searchDao.getResult("slow", baseDao);
+    assertTrue(slow.isTimedOut());
+    assertNull(slow.getList());
+    assertTrue(slow.getDuration() < 5000);
+    assertNull("Result was already fetched.", searchDao.getResult("fast", baseDao));
+    assertTrue(searchDao.getStatistics().contains("timeouts=1"));
+  }
+
+  @Test
+  public void deadlineBeginsWithExecution()
+  {
+    final SearchDao searchDao = createSearchDao(300);
+    // More searches than threads, the last one has to wait for a free thread:
+    for (int i = 0; i < 5; i++) {
+      submit(searchDao, "area" + i, 200);
+    }
+    for (int i = 0; i < 5; i++) {
+      final SearchDao.AreaResult result = searchDao.getResult("area" + i, baseDao);
+      assertFalse("Time waiting for a thread doesn't count.", result.isTimedOut());
+      assertNotNull(result.getList());
+    }
+  }
+
+  private SearchDao createSearchDao(final long areaTimeoutMillis)
+  {
+    final SearchDao searchDao = new SearchDao() {
+      @SuppressWarnings("rawtypes")
+      @Override
+      List<SearchResultData> search(final BaseSearchFilter filter, final Class clazz, final BaseDao baseDao)
+      {
+        try {
+          Thread.sleep(Long.parseLong(filter.getSearchString()));
+        } catch (final InterruptedException ex) {
+          return null;
+        }
+        final List<SearchResultData> result = new ArrayList<SearchResultData>();
+        result.add(new SearchResultData());
+        return result;
+      }
+    };
+    searchDao.setTxTemplate(new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class)));
+    searchDao.setAreaTimeoutMillis(areaTimeoutMillis);
+    return searchDao;
+  }
+
+  private void submit(final SearchDao searchDao, final String searchKey, final long durationMillis)
+  {
+    final BaseSearchFilter filter = new BaseSearchFilter();
+    filter.setSearchString(String.valueOf(durationMillis));
+    searchDao.submit(searchKey, filter, TimesheetDO.class, baseDao);
+  }
+}
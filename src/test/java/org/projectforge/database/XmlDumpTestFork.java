@@ -26,6 +26,13 @@ package org.projectforge.database;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.projectforge.database.xstream.XStreamSavingConverter;
@@ -34,6 +41,11 @@ import org.projectforge.test.TestBase;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserGroupCache;
 
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+import de.micromata.hibernate.history.HistoryEntry;
+
 public class XmlDumpTestFork extends TestBase
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(XmlDumpTestFork.class);
@@ -76,6 +88,29 @@ public class XmlDumpTestFork extends TestBase
     final int counter = xmlDump.verifyDump(converter);
     assertTrue("Import was not successful.", counter > 0);
     assertTrue("Minimum expected number of tested object to low: " + counter + " < 50.", counter >= 50);
+    // Objects saved on cascade by their parents must not be saved twice:
+    assertRowCounts(converter);
+    // Dump and read the dump again: every object is written once as top level object.
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    xmlDump.dumpDatabase("dump.xml", out);
+    final HierarchicalStreamReader reader;
+    try {
+      reader = new XppDriver().createReader(new StringReader(out.toString("utf-8")));
+    } catch (final UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+    assertTrue("Dump with entity references expected.", XStreamSavingConverter.isEntityReferenceFormat(reader));
+    final Map<String, Integer> counts = new HashMap<String, Integer>();
+    while (reader.hasMoreChildren() == true) {
+      reader.moveDown();
+      final Integer count = counts.get(reader.getNodeName());
+      counts.put(reader.getNodeName(), count == null ? 1 : count + 1);
+      reader.moveUp();
+    }
+    for (final Map.Entry<String, Integer> entry : counts.entrySet()) {
+      final List< ? > count = hibernate.find("select count(*) from " + entry.getKey());
+      assertEquals("Number of " + entry.getKey() + " objects", (long) entry.getValue(), count.get(0));
+    }
     final PFUserDO user = userDao.internalLoadAll().get(0);
     user.setUsername("changed");
     userDao.internalUpdate(user);
@@ -83,4 +118,18 @@ public class XmlDumpTestFork extends TestBase
     assertEquals("Error should be detected.", -counter, xmlDump.verifyDump(converter));
     log.info("The previous import error from XmlDump are OK.");
   }
+
+  /**
+   * Compares the number of read objects of every entity type with the number of rows in the data base.
+   */
+  private void assertRowCounts(final XStreamSavingConverter converter)
+  {
+    for (final Map.Entry<Class< ? >, List<Object>> entry : converter.getAllObjects().entrySet()) {
+      if (HistoryEntry.class.isAssignableFrom(entry.getKey()) == true) {
+        continue;
+      }
+      final List< ? > count = hibernate.find("select count(*) from " + entry.getKey().getName());
+      assertEquals("Number of " + entry.getKey().getSimpleName() + " objects", (long) entry.getValue().size(), count.get(0));
+    }
+  }
 }
@@ -102,4 +102,25 @@ public class ReportTest extends TestBase
     assertFalse(Report.match(regExpList, "5.200.01.03", true));
     assertTrue(Report.match(regExpList, "5.190.01.02", true));
   }
+
+  @Test
+  public void testMatcher()
+  {
+    final ReportObjective objective = new ReportObjective();
+    assertTrue(objective.getMatcher().matches("3.000.00.00", "5.020.01.02"));
+    objective.addKost1IncludeRegExp("3.*");
+    objective.addKost2IncludeRegExp("5.020.*");
+    objective.addKost2IncludeRegExp("5.030.*");
+    objective.addKost2ExcludeRegExp("*.02");
+    final ReportObjectiveMatcher matcher = objective.getMatcher();
+    assertTrue(matcher.matches("3.000.00.00", "5.020.01.01"));
+    assertTrue(matcher.matches("3.000.00.00", "5.030.01.01"));
+    assertFalse(matcher.matches("4.000.00.00", "5.020.01.01"));
+    assertFalse(matcher.matches("3.000.00.00", "5.040.01.01"));
+    assertFalse("Excluded.", matcher.matches("3.000.00.00", "5.020.01.02"));
+    objective.addKost1ExcludeRegExp("'3\\.000\\.00\\.0[1-9]");
+    assertTrue("Matcher should be recompiled after modification.", objective.getMatcher() != matcher);
+    assertTrue(objective.getMatcher().matches("3.000.00.00", "5.020.01.01"));
+    assertFalse(objective.getMatcher().matches("3.000.00.01", "5.020.01.01"));
+  }
 }
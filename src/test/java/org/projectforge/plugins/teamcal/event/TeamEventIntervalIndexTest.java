@@ -0,0 +1,110 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class TeamEventIntervalIndexTest
+{
+  @Test
+  public void getEvents()
+  {
+    final TeamEventIntervalIndex emptyIndex = new TeamEventIntervalIndex(new ArrayList<TeamEventDO>());
+    Assert.assertEquals(0, emptyIndex.getEvents(0, 1000).size());
+    final List<TeamEventDO> events = new ArrayList<TeamEventDO>();
+    events.add(createEvent(1, 100L, 200L));
+    events.add(createEvent(2, 150L, 160L));
+    events.add(createEvent(3, 300L, 400L));
+    events.add(createEvent(4, null, 50L)); // Starts 1800.
+    events.add(createEvent(5, 500L, null)); // Ends 3000.
+    final TeamEventIntervalIndex index = new TeamEventIntervalIndex(events);
+    Assert.assertEquals(5, index.size());
+    assertIds(index.getEvents(0, 10), 4);
+    assertIds(index.getEvents(155, 155), 1, 2);
+    assertIds(index.getEvents(200, 300), 1, 3);
+    assertIds(index.getEvents(201, 299));
+    assertIds(index.getEvents(450, 460));
+    assertIds(index.getEvents(1000, 2000), 5);
+  }
+
+  @Test
+  public void compareWithLinearScan()
+  {
+    final Random random = new Random(42);
+    final List<TeamEventDO> events = new ArrayList<TeamEventDO>();
+    for (int i = 0; i < 1000; i++) {
+      final long start = random.nextInt(100000);
+      events.add(createEvent(i, start, start + random.nextInt(random.nextBoolean() == true ? 100 : 10000)));
+    }
+    final TeamEventIntervalIndex index = new TeamEventIntervalIndex(events);
+    for (int i = 0; i < 100; i++) {
+      final long startTime = random.nextInt(100000);
+      final long endTime = startTime + random.nextInt(5000);
+      final Set<Integer> expected = new HashSet<Integer>();
+      for (final TeamEventDO event : events) {
+        if (event.getStartDate().getTime() <= endTime && event.getEndDate().getTime() >= startTime) {
+          expected.add(event.getId());
+        }
+      }
+      final List<TeamEventDO> result = index.getEvents(startTime, endTime);
+      Assert.assertEquals(expected.size(), result.size());
+      long lastStartTime = Long.MIN_VALUE;
+      for (final TeamEventDO event : result) {
+        Assert.assertTrue(expected.contains(event.getId()));
+        Assert.assertTrue("Result should be ordered by start date.", lastStartTime <= event.getStartDate().getTime());
+        lastStartTime = event.getStartDate().getTime();
+      }
+    }
+  }
+
+  private void assertIds(final List<TeamEventDO> result, final Integer... ids)
+  {
+    final Set<Integer> set = new HashSet<Integer>();
+    for (final TeamEventDO event : result) {
+      set.add(event.getId());
+    }
+    Assert.assertEquals(ids.length, set.size());
+    for (final Integer id : ids) {
+      Assert.assertTrue("Event #" + id + " expected.", set.contains(id));
+    }
+  }
+
+  private TeamEventDO createEvent(final Integer id, final Long startTime, final Long endTime)
+  {
+    final TeamEventDO event = new TeamEventDO();
+    event.setId(id);
+    event.setStartDate(startTime != null ? new Timestamp(startTime) : null);
+    event.setEndDate(endTime != null ? new Timestamp(endTime) : null);
+    return event;
+  }
+}
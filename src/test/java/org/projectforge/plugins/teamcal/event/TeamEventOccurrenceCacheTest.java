@@ -0,0 +1,151 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.RecurrenceFrequency;
+import org.projectforge.test.AbstractTestBase;
+
+/**
+ * Compares the cached occurrences with the calculated ones and the time needed for browsing through weeks of a calendar with hundreds of
+ * recurrence events in several time zones.
+ */
+public class TeamEventOccurrenceCacheTest extends AbstractTestBase
+{
+  private static final Logger log = Logger.getLogger(TeamEventOccurrenceCacheTest.class);
+
+  private static final int NUMBER_OF_EVENTS = 300;
+
+  private static final int NUMBER_OF_WEEKS = 12;
+
+  private static final long ONE_WEEK = 7L * 24 * 60 * 60 * 1000;
+
+  private static final TimeZone[] TIME_ZONES = new TimeZone[] { DateHelper.EUROPE_BERLIN, DateHelper.UTC,
+    TimeZone.getTimeZone("America/Los_Angeles"), TimeZone.getTimeZone("Asia/Tokyo")};
+
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    preInit();
+    init(true);
+  }
+
+  @Test
+  public void benchmark()
+  {
+    final List<TeamEventDO> events = new ArrayList<TeamEventDO>();
+    for (int i = 0; i < NUMBER_OF_EVENTS; i++) {
+      final TimeZone timeZone = TIME_ZONES[i % TIME_ZONES.length];
+      final TeamEventDO event = new TeamEventDO();
+      event.setId(i + 1);
+      event.setLastUpdate(new Date());
+      final long start = DateHelper.parseIsoDate("2010-01-04", timeZone).getTime() + (i % 100) * 3600000L;
+      event.setStartDate(new Timestamp(start)).setEndDate(new Timestamp(start + 3600000L));
+      final TeamEventRecurrenceData recurData = new TeamEventRecurrenceData(timeZone);
+      recurData.setFrequency(i % 3 == 0 ? RecurrenceFrequency.DAILY : RecurrenceFrequency.WEEKLY);
+      recurData.setInterval(1);
+      event.setRecurrence(recurData);
+      events.add(event);
+    }
+    final TeamEventOccurrenceCache cache = TeamEventOccurrenceCache.getInstance();
+    long calculationTime = 0;
+    long cacheTime = 0;
+    int numberOfOccurrences = 0;
+    for (final TimeZone timeZone : TIME_ZONES) {
+      final long firstWeek = DateHelper.parseIsoDate("2013-11-04", timeZone).getTime();
+      for (int week = 0; week < NUMBER_OF_WEEKS; week++) {
+        final Date startDate = new Date(firstWeek + week * ONE_WEEK);
+        final Date endDate = new Date(startDate.getTime() + ONE_WEEK);
+        for (final TeamEventDO event : events) {
+          long begin = System.nanoTime();
+          final Collection<TeamEvent> expected = TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+          calculationTime += System.nanoTime() - begin;
+          begin = System.nanoTime();
+          final Collection<TeamEvent> result = cache.getRecurrenceEvents(startDate, endDate, event, timeZone);
+          cacheTime += System.nanoTime() - begin;
+          assertEquals(expected, result);
+          numberOfOccurrences += result.size();
+        }
+      }
+    }
+    log.info("Browsing "
+        + NUMBER_OF_WEEKS
+        + " weeks with "
+        + NUMBER_OF_EVENTS
+        + " recurrence events in "
+        + TIME_ZONES.length
+        + " time zones ("
+        + numberOfOccurrences
+        + " occurrences): calculated "
+        + (calculationTime / 1000000)
+        + "ms, cached "
+        + (cacheTime / 1000000)
+        + "ms.");
+    Assert.assertTrue("Cached occurrences should be faster than calculated ones.", cacheTime < calculationTime);
+  }
+
+  @Test
+  public void invalidate()
+  {
+    final TimeZone timeZone = DateHelper.EUROPE_BERLIN;
+    final TeamEventDO event = new TeamEventDO();
+    event.setId(4711);
+    event.setLastUpdate(new Date(0));
+    final long start = DateHelper.parseIsoDate("2013-01-07", timeZone).getTime();
+    event.setStartDate(new Timestamp(start)).setEndDate(new Timestamp(start + 3600000L));
+    event.setRecurrence(new TeamEventRecurrenceData(timeZone).setFrequency(RecurrenceFrequency.WEEKLY).setInterval(1));
+    final Date startDate = DateHelper.parseIsoDate("2013-11-04", timeZone);
+    final Date endDate = new Date(startDate.getTime() + ONE_WEEK);
+    final TeamEventOccurrenceCache cache = TeamEventOccurrenceCache.getInstance();
+    Assert.assertEquals(1, cache.getRecurrenceEvents(startDate, endDate, event, timeZone).size());
+    // Daily now (modified by another session, therefore with new last update):
+    event.setRecurrence(new TeamEventRecurrenceData(timeZone).setFrequency(RecurrenceFrequency.DAILY).setInterval(1));
+    event.setLastUpdate(new Date(1));
+    Assert.assertEquals(7, cache.getRecurrenceEvents(startDate, endDate, event, timeZone).size());
+  }
+
+  private void assertEquals(final Collection<TeamEvent> expected, final Collection<TeamEvent> result)
+  {
+    Assert.assertEquals(expected.size(), result.size());
+    final Iterator<TeamEvent> it = result.iterator();
+    for (final TeamEvent event : expected) {
+      final TeamEvent other = it.next();
+      Assert.assertEquals(event.getStartDate().getTime(), other.getStartDate().getTime());
+      Assert.assertEquals(event.getEndDate().getTime(), other.getEndDate().getTime());
+    }
+  }
+}
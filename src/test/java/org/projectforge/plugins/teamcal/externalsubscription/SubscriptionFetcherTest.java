@@ -0,0 +1,121 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.externalsubscription;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.fortuna.ical4j.model.Component;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the fetcher against a local http stub.
+ */
+public class SubscriptionFetcherTest
+{
+  private static final String ETAG = "\"4711\"";
+
+  private static final String ICS = "BEGIN:VCALENDAR\r\n"
+      + "VERSION:2.0\r\n"
+      + "PRODID:-//ProjectForge//Test//EN\r\n"
+      + "BEGIN:VEVENT\r\n"
+      + "UID:test-1@projectforge.org\r\n"
+      + "DTSTAMP:20130101T000000Z\r\n"
+      + "DTSTART:20130101T100000Z\r\n"
+      + "DTEND:20130101T110000Z\r\n"
+      + "SUMMARY:Test event\r\n"
+      + "END:VEVENT\r\n"
+      + "END:VCALENDAR\r\n";
+
+  private static HttpServer server;
+
+  private static final AtomicInteger bodiesSent = new AtomicInteger();
+
+  @BeforeClass
+  public static void startServer() throws IOException
+  {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/cal.ics", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException
+      {
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match")) == true) {
+          exchange.sendResponseHeaders(HttpStatus.SC_NOT_MODIFIED, -1);
+          exchange.close();
+          return;
+        }
+        final byte[] body = ICS.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.getResponseHeaders().add("Last-Modified", "Tue, 01 Jan 2013 00:00:00 GMT");
+        exchange.sendResponseHeaders(HttpStatus.SC_OK, body.length);
+        final OutputStream os = exchange.getResponseBody();
+        os.write(body);
+        os.close();
+        bodiesSent.incrementAndGet();
+      }
+    });
+    server.start();
+  }
+
+  @AfterClass
+  public static void stopServer()
+  {
+    server.stop(0);
+  }
+
+  @Test
+  public void conditionalGet() throws Exception
+  {
+    final SubscriptionFetcher fetcher = new SubscriptionFetcher(2);
+    final String url = "http://localhost:" + server.getAddress().getPort() + "/cal.ics";
+    SubscriptionFetcher.Result result = fetcher.fetch(url, null, null);
+    Assert.assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+    Assert.assertEquals(ETAG, result.getETag());
+    Assert.assertEquals("Tue, 01 Jan 2013 00:00:00 GMT", result.getLastModified());
+    Assert.assertEquals(1, result.getCalendar().getComponents(Component.VEVENT).size());
+    Assert.assertEquals(ICS, new String(result.getBytes(), "UTF-8"));
+    Assert.assertNotNull(result.getMd5());
+    Assert.assertEquals(1, bodiesSent.get());
+
+    result = fetcher.fetch(url, result.getETag(), result.getLastModified());
+    Assert.assertTrue(result.isNotModified());
+    Assert.assertNull(result.getCalendar());
+    Assert.assertEquals("Body shouldn't be sent again.", 1, bodiesSent.get());
+
+    final SubscriptionFetcher.Result result2 = fetcher.fetch(url, "\"other\"", null);
+    Assert.assertEquals(HttpStatus.SC_OK, result2.getStatusCode());
+    Assert.assertEquals("Same content, same hash.", fetcher.fetch(url, null, null).getMd5(), result2.getMd5());
+  }
+}
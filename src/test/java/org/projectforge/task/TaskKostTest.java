@@ -26,6 +26,7 @@ package org.projectforge.task;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.List;
 
@@ -37,6 +38,7 @@ import org.projectforge.fibu.kost.Kost2ArtDO;
 import org.projectforge.fibu.kost.Kost2ArtDao;
 import org.projectforge.fibu.kost.Kost2DO;
 import org.projectforge.fibu.kost.Kost2Dao;
+import org.projectforge.fibu.kost.KostentraegerStatus;
 import org.projectforge.test.TestBase;
 
 
@@ -165,6 +167,14 @@ public class TaskKostTest extends TestBase
     taskDao.update(task);
     list = taskTree.getKost2List(task.getId());
     assertEquals(4, list.size());
+    assertSame("Cached list expected.", list, taskTree.getKost2List(task.getId()));
+    kost2b.setKostentraegerStatus(KostentraegerStatus.ENDED);
+    kost2Dao.update(kost2b);
+    list = taskTree.getKost2List(task.getId());
+    assertEquals("Cached list should be invalidated by the modification of the kost2.", 3, list.size());
+    assertKost2(kost2a, list.get(0));
+    assertKost2(kost2c, list.get(1));
+    assertKost2(kost2d, list.get(2));
   }
 
   private void assertKost2(final Kost2DO expected, final Kost2DO actual)
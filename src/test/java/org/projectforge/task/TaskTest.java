@@ -532,6 +532,47 @@ public class TaskTest extends TestBase
     assertEquals(0, getDuration(subTask2.getId()));
   }
 
+  @Test
+  public void maintainTotalDurations()
+  {
+    logon(getUser(TEST_ADMIN_USER));
+    final TaskDO task = initTestDB.addTask("deltaDurationTask", "root");
+    final TaskDO subTask1 = initTestDB.addTask("deltaDurationTask.subtask1", "deltaDurationTask");
+    final TaskDO subTask2 = initTestDB.addTask("deltaDurationTask.subtask2", "deltaDurationTask");
+    final long rootDuration = getTotalDuration(taskTree.getRootTaskNode().getId());
+    final DateHolder dh = new DateHolder();
+    dh.setDate(2010, Calendar.MAY, 20, 8, 0);
+    final TimesheetDO ts = new TimesheetDO().setUser(getUser(TEST_USER)).setStartDate(dh.getDate()).setStopTime(
+        dh.add(Calendar.HOUR_OF_DAY, 4).getTimestamp()).setTask(subTask1);
+    final Serializable id = timesheetDao.internalSave(ts);
+    assertEquals(4 * 3600, getDuration(subTask1.getId()));
+    assertEquals(4 * 3600, getTotalDuration(task.getId()));
+    assertEquals(rootDuration + 4 * 3600, getTotalDuration(taskTree.getRootTaskNode().getId()));
+    // Change time period and task:
+    final TimesheetDO dbTs = timesheetDao.internalGetById(id);
+    dbTs.setStopTime(dh.add(Calendar.HOUR_OF_DAY, -1).getTimestamp());
+    dbTs.setTask(subTask2);
+    timesheetDao.internalUpdate(dbTs);
+    assertEquals(0, getDuration(subTask1.getId()));
+    assertEquals(3 * 3600, getDuration(subTask2.getId()));
+    assertEquals(3 * 3600, getTotalDuration(task.getId()));
+    // Move the task with its time sheets:
+    final TaskDO dbSubTask2 = taskDao.internalGetById(subTask2.getId());
+    dbSubTask2.setParentTask(subTask1);
+    taskDao.internalUpdate(dbSubTask2);
+    assertEquals(3 * 3600, getTotalDuration(subTask1.getId()));
+    assertEquals(0, getDuration(subTask1.getId()));
+    assertEquals(3 * 3600, getTotalDuration(task.getId()));
+    timesheetDao.internalMarkAsDeleted(timesheetDao.internalGetById(id));
+    assertEquals(0, getTotalDuration(task.getId()));
+    assertEquals(rootDuration, getTotalDuration(taskTree.getRootTaskNode().getId()));
+    timesheetDao.internalUndelete(timesheetDao.internalGetById(id));
+    assertEquals(3 * 3600, getTotalDuration(task.getId()));
+    // Nothing to correct:
+    assertEquals(0, taskTree.reconcileTotalDurations());
+    assertEquals(3 * 3600, getTotalDuration(task.getId()));
+  }
+
   private long getTotalDuration(final Integer taskId)
   {
     return taskTree.getTaskNodeById(taskId).getDuration(taskTree, true);
@@ -0,0 +1,142 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import org.projectforge.access.AccessDao;
+import org.projectforge.access.AccessType;
+import org.projectforge.access.GroupTaskAccessDO;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.GroupDO;
+
+/**
+ * Tests the incremental refresh of the task tree and compares the time of a full rebuild with the time of single updates.
+ */
+public class TaskTreeRefreshTest extends TestBase
+{
+  private static final Logger log = Logger.getLogger(TaskTreeRefreshTest.class);
+
+  private static final int NUMBER_OF_TASKS = 1000;
+
+  private TaskDao taskDao;
+
+  private TaskTree taskTree;
+
+  private AccessDao accessDao;
+
+  public void setTaskDao(final TaskDao taskDao)
+  {
+    this.taskDao = taskDao;
+  }
+
+  public void setTaskTree(final TaskTree taskTree)
+  {
+    this.taskTree = taskTree;
+  }
+
+  public void setAccessDao(final AccessDao accessDao)
+  {
+    this.accessDao = accessDao;
+  }
+
+  @Test
+  public void incrementalRefresh() throws InterruptedException
+  {
+    initTestDB.addTask("refresh", "root");
+    final TaskNode root = taskTree.getRootTaskNode();
+    taskTree.setExpireTimeInSeconds(0);
+    try {
+      final TaskDO task = initTestDB.addTask("refresh.1", "refresh");
+      Thread.sleep(10);
+      assertSame("No rebuild expected, the tree was updated incrementally.", root, taskTree.getRootTaskNode());
+      final TaskNode node = taskTree.getTaskNodeById(task.getId());
+      assertTrue(node.isBookableForTimesheets());
+      assertTrue("Parent task has child tasks now.", taskTree.getTaskNodeById(getTask("refresh").getId()).hasChilds());
+      // Modification outside of the task tree:
+      hibernate.bulkUpdate("update TaskDO set lastUpdate = ? where id = ?", new Object[] { new Date(System.currentTimeMillis() + 60000),
+          task.getId()});
+      Thread.sleep(10);
+      assertNotSame("Rebuild expected, the tree is inconsistent to the data base.", root, taskTree.getRootTaskNode());
+    } finally {
+      taskTree.setExpireTimeInHours(1);
+    }
+  }
+
+  @Test
+  public void accessModifications() throws InterruptedException
+  {
+    final TaskDO task = initTestDB.addTask("refreshAccess", "root");
+    final GroupDO group = initTestDB.addGroup("refreshAccessGroup");
+    final TaskNode root = taskTree.getRootTaskNode();
+    taskTree.setExpireTimeInSeconds(0);
+    try {
+      // Saved and updated:
+      final GroupTaskAccessDO access = initTestDB.createGroupTaskAccess(group, task, AccessType.TASKS, true, true, true, true);
+      Thread.sleep(10);
+      assertSame("No rebuild expected after updating a group task access.", root, taskTree.getRootTaskNode());
+      accessDao.internalMarkAsDeleted(access);
+      Thread.sleep(10);
+      assertSame("No rebuild expected after deleting a group task access.", root, taskTree.getRootTaskNode());
+    } finally {
+      taskTree.setExpireTimeInHours(1);
+    }
+  }
+
+  @Test
+  public void benchmark()
+  {
+    final TaskDO parent = initTestDB.addTask("benchmark", "root");
+    final List<TaskDO> tasks = new ArrayList<TaskDO>();
+    for (int i = 0; i < NUMBER_OF_TASKS; i++) {
+      final TaskDO task = new TaskDO();
+      task.setTitle("benchmark." + i);
+      task.setParentTask(parent);
+      taskDao.internalSave(task);
+      tasks.add(task);
+    }
+    long begin = System.nanoTime();
+    taskTree.forceReload();
+    final long rebuildTime = System.nanoTime() - begin;
+    begin = System.nanoTime();
+    for (final TaskDO task : tasks) {
+      task.setShortDescription("modified");
+      taskTree.addOrUpdateTaskNode(task);
+    }
+    final long updateTime = (System.nanoTime() - begin) / NUMBER_OF_TASKS;
+    log.info("Full rebuild of task tree with " + taskTree.getTaskNodeById(parent.getId()).getChilds().size() + " tasks: "
+        + (rebuildTime / 1000) + "µs, single update: " + (updateTime / 1000) + "µs.");
+    assertEquals(NUMBER_OF_TASKS, taskTree.getTaskNodeById(parent.getId()).getChilds().size());
+    assertTrue("Single update should be much faster than a full rebuild.", updateTime < rebuildTime);
+  }
+}
@@ -24,13 +24,19 @@
 package org.projectforge.timesheet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 import org.junit.Test;
 import org.projectforge.access.AccessException;
@@ -73,6 +79,15 @@ public class TimesheetTestFork extends TestBase
     this.txTemplate = txTemplate;
   }
 
+  @Test
+  public void taskIdsSqlRestriction()
+  {
+    assertEquals("({alias}.task_id in (1,3))", TimesheetDao.getTaskIdsSqlRestriction(Arrays.asList(3, 1)));
+    assertEquals("({alias}.task_id between 5 and 7)", TimesheetDao.getTaskIdsSqlRestriction(Arrays.asList(5, 6, 7)));
+    assertEquals("({alias}.task_id in (1,3,5,6) or {alias}.task_id between 8 and 12)",
+        TimesheetDao.getTaskIdsSqlRestriction(Arrays.asList(12, 8, 9, 10, 11, 1, 3, 5, 6)));
+  }
+
   @Test
   public void hasSelectAccess()
   {
@@ -115,6 +130,41 @@ public class TimesheetTestFork extends TestBase
     });
   }
 
+  @Test
+  public void pagedListWithSelectAccess()
+  {
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        getInitTestDB().addTask("ts-paged-task", "root");
+        getInitTestDB().addUser("ts-paged-user1");
+        getInitTestDB().addUser("ts-paged-user2");
+        final long current = System.currentTimeMillis();
+        for (final String user : new String[] { "ts-paged-user1", "ts-paged-user2"}) {
+          final TimesheetDO ts = new TimesheetDO();
+          ts.setTask(initTestDB.getTask("ts-paged-task")).setUser(getUser(user)).setLocation("Office").setStartTime(new Timestamp(current))
+          .setStopTime(new Timestamp(current + 2 * 60 * 60 * 1000));
+          timesheetDao.internalSave(ts);
+        }
+        return null;
+      }
+    });
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        // User has no access to the task, but sees his own time sheet:
+        logon(getUser("ts-paged-user1"));
+        final TimesheetFilter filter = new TimesheetFilter();
+        filter.setTaskId(getTask("ts-paged-task").getId());
+        assertEquals(1, timesheetDao.getList(filter).size());
+        assertEquals("Count must match the displayed entries.", 1, timesheetDao.getPagedListSize(timesheetDao.getPagedQueryFilter(filter)));
+        assertEquals(1, timesheetDao.getPagedList(timesheetDao.getPagedQueryFilter(filter), "startTime", true, 0, 10).size());
+        assertEquals(2 * 60 * 60 * 1000, timesheetDao.getTotalDuration(timesheetDao.getPagedQueryFilter(filter)));
+        return null;
+      }
+    });
+  }
+
   @Test
   public void saveAndModify()
   {
@@ -200,6 +250,66 @@ public class TimesheetTestFork extends TestBase
     }
   }
 
+  @Test
+  public void testTimesheetsWithTimeoverlap()
+  {
+    getInitTestDB().addTask("timesheetsWithTimeoverlap", "root");
+    getInitTestDB().addUser("tswt-user");
+    final Integer userId = getUserId("tswt-user");
+    final TimesheetDO ts1 = new TimesheetDO().setTask(getTask("timesheetsWithTimeoverlap")).setUser(getUser("tswt-user"));
+    setTimeperiod(ts1, 2010, Calendar.MARCH, 1, 8, 0, 1, 12, 0); // 03/01 from 8:00 to 12:00
+    final Integer id1 = (Integer) timesheetDao.internalSave(ts1);
+    assertTrue(timesheetDao.getTimesheetsWithTimeoverlap(userId).isEmpty());
+    final TimesheetDO ts2 = new TimesheetDO().setTask(getTask("timesheetsWithTimeoverlap")).setUser(getUser("tswt-user"));
+    setTimeperiod(ts2, 2010, Calendar.MARCH, 1, 11, 0, 1, 13, 0); // 03/01 from 11:00 to 13:00
+    final Integer id2 = (Integer) timesheetDao.internalSave(ts2); // Overlap (without access checking).
+    Set<Integer> overlaps = timesheetDao.getTimesheetsWithTimeoverlap(userId);
+    assertEquals(2, overlaps.size());
+    assertTrue(overlaps.contains(id1) && overlaps.contains(id2));
+    final TimesheetDO ts3 = new TimesheetDO().setTask(getTask("timesheetsWithTimeoverlap")).setUser(getUser("tswt-user"));
+    setTimeperiod(ts3, 2010, Calendar.MARCH, 1, 12, 0, 1, 14, 0); // 03/01 from 12:00 to 14:00
+    assertTrue(timesheetDao.hasTimeOverlap(ts3, false));
+    final TimesheetDO dbTs2 = timesheetDao.internalGetById(id2);
+    setTimeperiod(dbTs2, 2010, Calendar.MARCH, 1, 12, 0, 1, 13, 0); // 03/01 from 12:00 to 13:00
+    timesheetDao.internalUpdate(dbTs2);
+    assertTrue(timesheetDao.getTimesheetsWithTimeoverlap(userId).isEmpty());
+    assertTrue(timesheetDao.hasTimeOverlap(ts3, false));
+    timesheetDao.internalMarkAsDeleted(dbTs2);
+    assertFalse(timesheetDao.hasTimeOverlap(ts3, false));
+    timesheetDao.recheckTimesheetOverlap(userId);
+    assertTrue(timesheetDao.getTimesheetsWithTimeoverlap(userId).isEmpty());
+  }
+
+  @Test
+  public void pagedList()
+  {
+    logon(ADMIN);
+    getInitTestDB().addTask("pagedList", "root");
+    getInitTestDB().addUser("tspl-user");
+    for (int day = 1; day <= 5; day++) {
+      final TimesheetDO ts = new TimesheetDO().setTask(getTask("pagedList")).setUser(getUser("tspl-user"));
+      setTimeperiod(ts, 2011, Calendar.MARCH, day, 8, 0, day, 9, 0);
+      timesheetDao.internalSave(ts);
+    }
+    final TimesheetFilter filter = new TimesheetFilter();
+    filter.setUserId(getUserId("tspl-user"));
+    filter.setTaskId(getTask("pagedList").getId());
+    assertEquals(5, timesheetDao.getPagedListSize(timesheetDao.getPagedQueryFilter(filter)));
+    List<TimesheetDO> list = timesheetDao.getPagedList(timesheetDao.getPagedQueryFilter(filter), "startTime", false, 1, 2);
+    assertEquals(2, list.size());
+    assertEquals(4, getDayOfMonth(list.get(0)));
+    assertEquals(3, getDayOfMonth(list.get(1)));
+    list = timesheetDao.getPagedList(timesheetDao.getPagedQueryFilter(filter), "task.title", true, 4, 2);
+    assertEquals(1, list.size());
+    filter.setMarked(true);
+    assertNull("Marked time sheets are filtered in memory.", timesheetDao.getPagedQueryFilter(filter));
+  }
+
+  private int getDayOfMonth(final TimesheetDO timesheet)
+  {
+    return new DateHolder(timesheet.getStartTime()).getDayOfMonth();
+  }
+
   @Test
   public void testTimesheetProtection()
   {
@@ -26,6 +26,7 @@ package org.projectforge.user;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
 import org.projectforge.access.AccessException;
 import org.projectforge.test.TestBase;
@@ -35,11 +36,18 @@ public class UserXmlPreferencesTestFork extends TestBase
 {
   UserXmlPreferencesCache userXmlPreferencesCache;
 
+  UserXmlPreferencesDao userXmlPreferencesDao;
+
   public void setUserXmlPreferencesCache(UserXmlPreferencesCache userXmlPreferencesCache)
   {
     this.userXmlPreferencesCache = userXmlPreferencesCache;
   }
 
+  public void setUserXmlPreferencesDao(UserXmlPreferencesDao userXmlPreferencesDao)
+  {
+    this.userXmlPreferencesDao = userXmlPreferencesDao;
+  }
+
   @Test
   public void testUserDO()
   {
@@ -72,4 +80,27 @@ public class UserXmlPreferencesTestFork extends TestBase
     logon(user2);
     assertEquals("ProjectForge", userXmlPreferencesCache.getEntry(user1.getId(), "application"));
   }
+
+  @Test
+  public void testSerialization()
+  {
+    final UserXmlPreferencesDO userPrefs = new UserXmlPreferencesDO();
+    userPrefs.setVersion();
+    final String longValue = StringUtils.repeat("ProjectForge ", 100);
+    userXmlPreferencesDao.serialize(userPrefs, longValue);
+    assertEquals(true, userPrefs.getSerializedSettings().startsWith("!"));
+    assertEquals(longValue, userXmlPreferencesDao.deserialize(userPrefs, true));
+    try {
+      userXmlPreferencesDao.setBinarySerialization(true);
+      userXmlPreferencesDao.serialize(userPrefs, longValue);
+      assertEquals(true, userPrefs.getSerializedSettings().startsWith("#"));
+      assertEquals(longValue, userXmlPreferencesDao.deserialize(userPrefs, true));
+      userXmlPreferencesDao.serialize(userPrefs, 42);
+      assertEquals(42, userXmlPreferencesDao.deserialize(userPrefs, true));
+    } finally {
+      userXmlPreferencesDao.setBinarySerialization(false);
+    }
+    // Binary entries are readable independent of the setting:
+    assertEquals(42, userXmlPreferencesDao.deserialize(userPrefs, true));
+  }
 }
@@ -0,0 +1,111 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.web.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CalendarFeedCacheTest
+{
+  private static final List<Integer> CALENDARS = Arrays.asList(1, 2);
+
+  @Test
+  public void hit()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache();
+    assertNull(cache.get("feed"));
+    final long counter = cache.getModificationCounter(42, CALENDARS);
+    final CalendarFeedCache.FeedEntry entry = cache.put("feed", "content".getBytes(), 42, CALENDARS, counter);
+    assertSame(entry, cache.get("feed"));
+    assertNull(cache.get("other feed"));
+    // Unchanged content keeps the ETag and the time of the last modification:
+    final CalendarFeedCache.FeedEntry newEntry = cache.put("feed", "content".getBytes(), 42, CALENDARS, counter);
+    assertEquals(entry.getETag(), newEntry.getETag());
+    assertEquals(entry.getLastModified(), newEntry.getLastModified());
+  }
+
+  @Test
+  public void expiry()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache();
+    assertNull(cache.get("feed"));
+    cache.put("feed", "content".getBytes(), null, null, cache.getModificationCounter(null, null));
+    cache.put("not requested", "content".getBytes(), null, null, cache.getModificationCounter(null, null));
+    cache.setExpired();
+    assertNull("All feeds are expired by the refresh.", cache.get("feed"));
+    final long counter = cache.getModificationCounter(null, null);
+    cache.put("feed", "content".getBytes(), null, null, counter);
+    assertNotNull(cache.get("feed"));
+    cache.setExpired();
+    // The first refresh reset the accessed flags, feeds not requested since then are removed:
+    assertNull(cache.get("not requested"));
+    cache.put("feed", "content".getBytes(), null, null, counter);
+    assertNull("Feed was generated before the last refresh.", cache.get("feed"));
+  }
+
+  @Test
+  public void invalidation()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache();
+    put(cache, "user", 42, null);
+    put(cache, "other user", 43, null);
+    put(cache, "calendars", null, CALENDARS);
+    put(cache, "other calendar", null, Arrays.asList(3));
+    cache.setTimesheetsExpired(42);
+    assertNull(cache.get("user"));
+    assertNotNull(cache.get("other user"));
+    assertNotNull(cache.get("calendars"));
+    cache.setCalendarExpired(2);
+    assertNull(cache.get("calendars"));
+    assertNotNull(cache.get("other calendar"));
+    assertNotNull(cache.get("other user"));
+
+    // Invalidation while generating the feed:
+    long counter = cache.getModificationCounter(null, CALENDARS);
+    cache.setCalendarExpired(1);
+    cache.put("calendars", "content".getBytes(), null, CALENDARS, counter);
+    assertNull("Feed may be outdated.", cache.get("calendars"));
+    // Invalidations of other calendars don't affect the generated feed:
+    counter = cache.getModificationCounter(null, CALENDARS);
+    cache.setCalendarExpired(3);
+    cache.setTimesheetsExpired(42);
+    cache.put("calendars", "content".getBytes(), null, CALENDARS, counter);
+    assertNotNull(cache.get("calendars"));
+  }
+
+  private void put(final CalendarFeedCache cache, final String key, final Integer userId, final List<Integer> calendarIds)
+  {
+    // Like CalendarFeed, the cache is asked first (may refresh the cache):
+    assertNull(cache.get(key));
+    cache.put(key, key.getBytes(), userId, calendarIds, cache.getModificationCounter(userId, calendarIds));
+    assertNotNull(cache.get(key));
+  }
+}
@@ -25,6 +25,7 @@ package org.projectforge.web.rest;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,10 +36,15 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.projectforge.rest.Authentication;
 import org.projectforge.user.PFUserDO;
+import org.projectforge.user.PasswordChangeListener;
 import org.projectforge.user.UserDao;
 import org.projectforge.user.UserGroupCache;
 import org.projectforge.web.wicket.WicketApplication;
@@ -84,6 +90,154 @@ public class RestUserFilterTest
     verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
   }
 
+  @Test
+  public void testSessionToken() throws IOException, ServletException
+  {
+    WicketApplication.internalSetUpAndRunning(true);
+    final HttpServletResponse response = mock(HttpServletResponse.class);
+    final UserDao userDao = mock(UserDao.class);
+    when(userDao.authenticateUser(Mockito.eq("sessionUser"), Mockito.eq("sessionPassword"))).thenReturn(
+        new PFUserDO().setUsername("sessionUser"));
+    when(userDao.encryptPassword(Mockito.anyString())).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(final InvocationOnMock invocation)
+      {
+        return (String) invocation.getArguments()[0];
+      }
+    });
+    final RestUserFilter filter = new RestUserFilter();
+    filter.userDao = userDao;
+
+    HttpServletRequest request = mockRequest("sessionUser", "sessionPassword", null, null);
+    FilterChain chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+    final ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+    verify(response).setHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN), token.capture());
+    Assert.assertNotNull(token.getValue());
+
+    // Session token, no further authentication:
+    request = mock(HttpServletRequest.class);
+    when(request.getHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN))).thenReturn(token.getValue());
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+    // Same credentials again, no further authentication:
+    request = mockRequest("sessionUser", "sessionPassword", null, null);
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+    verify(userDao, times(1)).authenticateUser(Mockito.anyString(), Mockito.anyString());
+
+    // Unknown session token
+    request = mock(HttpServletRequest.class);
+    when(request.getHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN))).thenReturn("unknown");
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain, never()).doFilter(Mockito.any(HttpServletRequest.class), Mockito.any(HttpServletResponse.class));
+
+    // Too many failed attempts: even the correct password is rejected.
+    for (int i = 0; i <= RestSessionStore.FREE_LOGIN_FAILURES; i++) {
+      filter.doFilter(mockRequest("otherUser", "failed", null, null), response, mock(FilterChain.class));
+    }
+    when(userDao.authenticateUser(Mockito.eq("otherUser"), Mockito.eq("otherPassword"))).thenReturn(
+        new PFUserDO().setUsername("otherUser"));
+    request = mockRequest("otherUser", "otherPassword", null, null);
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain, never()).doFilter(Mockito.any(HttpServletRequest.class), Mockito.any(HttpServletResponse.class));
+    verify(userDao, never()).authenticateUser(Mockito.eq("otherUser"), Mockito.eq("otherPassword"));
+    filter.destroy();
+  }
+
+  @Test
+  public void testIpBlocking() throws IOException, ServletException
+  {
+    WicketApplication.internalSetUpAndRunning(true);
+    final HttpServletResponse response = mock(HttpServletResponse.class);
+    final UserDao userDao = mock(UserDao.class);
+    when(userDao.authenticateUser(Mockito.eq("ipUser"), Mockito.eq("ipPassword"))).thenReturn(new PFUserDO().setUsername("ipUser"));
+    when(userDao.encryptPassword(Mockito.anyString())).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(final InvocationOnMock invocation)
+      {
+        return (String) invocation.getArguments()[0];
+      }
+    });
+    final RestUserFilter filter = new RestUserFilter();
+    filter.userDao = userDao;
+
+    HttpServletRequest request = mockRequest("ipUser", "ipPassword", null, null);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+    filter.doFilter(request, response, mock(FilterChain.class));
+    final ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+    verify(response).setHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN), token.capture());
+
+    // Requests without valid credentials (unknown session tokens, missing credentials) don't block the ip:
+    for (int i = 0; i < 10; i++) {
+      request = mock(HttpServletRequest.class);
+      when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+      when(request.getHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN))).thenReturn("expired");
+      filter.doFilter(request, response, mock(FilterChain.class));
+      request = mockRequest(null, null, null, null);
+      when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+      filter.doFilter(request, response, mock(FilterChain.class));
+    }
+    request = mockRequest("ipUser", "ipPassword", null, null);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+    FilterChain chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+
+    // Failed passwords for different users block the ip:
+    for (int i = 0; i <= RestSessionStore.FREE_LOGIN_FAILURES; i++) {
+      request = mockRequest("user" + i, "failed", null, null);
+      when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+      filter.doFilter(request, response, mock(FilterChain.class));
+    }
+    when(userDao.authenticateUser(Mockito.eq("otherUser"), Mockito.eq("otherPassword"))).thenReturn(
+        new PFUserDO().setUsername("otherUser"));
+    request = mockRequest("otherUser", "otherPassword", null, null);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain, never()).doFilter(Mockito.any(HttpServletRequest.class), Mockito.any(HttpServletResponse.class));
+    verify(userDao, never()).authenticateUser(Mockito.eq("otherUser"), Mockito.eq("otherPassword"));
+    // But not other ips:
+    request = mockRequest("otherUser", "otherPassword", null, null);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.2");
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+
+    // Valid sessions aren't blocked by the ip:
+    request = mock(HttpServletRequest.class);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+    when(request.getHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN))).thenReturn(token.getValue());
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+    // Also not the sessions of clients sending their credentials with every call:
+    request = mockRequest("ipUser", "ipPassword", null, null);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain).doFilter(Mockito.eq(request), Mockito.eq(response));
+    verify(userDao, Mockito.times(1)).authenticateUser(Mockito.eq("ipUser"), Mockito.eq("ipPassword"));
+
+    // Password change drops the session:
+    final ArgumentCaptor<PasswordChangeListener> listener = ArgumentCaptor.forClass(PasswordChangeListener.class);
+    verify(userDao).register(listener.capture());
+    listener.getValue().passwordChanged(new PFUserDO().setUsername("ipUser"));
+    request = mock(HttpServletRequest.class);
+    when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+    when(request.getHeader(Mockito.eq(RestUserFilter.SESSION_TOKEN))).thenReturn(token.getValue());
+    chain = mock(FilterChain.class);
+    filter.doFilter(request, response, chain);
+    verify(chain, never()).doFilter(Mockito.any(HttpServletRequest.class), Mockito.any(HttpServletResponse.class));
+    filter.destroy();
+  }
+
   private HttpServletRequest mockRequest(final String username, final String password, final Integer userId,
       final String authenticationToken)
   {